@@ -0,0 +1,355 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The BatchBuilder class builds many CSV files at once.
+ *
+ * Each input file is a separate job, with its own CSV object, that is loaded,
+ * sorted and written to a file with the same name in the output directory.
+ * Jobs run at the same time: the files are read and written on virtual
+ * threads, and parsed and sorted on a fixed pool with one thread per core. At
+ * most maxConcurrentJobs files are held in memory at once. A job that fails
+ * does not stop the others; its error is kept in its Result.
+ * ```java
+ * List<BatchBuilder.Result> results = new BatchBuilder.Builder()
+ *     .outputDirectory(Paths.get("sorted"))
+ *     .sortOrder(sortOrder.ALPHABETICAL_BY_FULL_NAME)
+ *     .build()
+ *     .run(BatchBuilder.findInputs(Paths.get("shows")));
+ * System.out.print(BatchBuilder.report(results));
+ * ```
+ */
+public class BatchBuilder {
+    private final Path outputDirectory;
+    private final sortOrder order;
+    private final Locale locale;
+    private final Charset charset;
+    private final Metrics metrics;
+    private final int cpuThreads;
+    private final int maxConcurrentJobs;
+
+    private BatchBuilder(Builder builder) {
+        this.outputDirectory = builder.outputDirectory;
+        this.order = builder.order;
+        this.locale = builder.locale;
+        this.charset = builder.charset;
+        this.metrics = builder.metrics;
+        this.cpuThreads = builder.cpuThreads;
+        this.maxConcurrentJobs = builder.maxConcurrentJobs;
+    }
+
+    /**
+     * Builder class for BatchBuilder objects.
+     */
+    public static class Builder {
+        private Path outputDirectory = null;
+        private sortOrder order = sortOrder.NONE;
+        private Locale locale = Locale.getDefault();
+        private Charset charset = StandardCharsets.UTF_8;
+        private Metrics metrics = null;
+        private int cpuThreads = Runtime.getRuntime().availableProcessors();
+        private int maxConcurrentJobs = 2 * Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Sets the directory that the files are written to. It is created if
+         * it does not exist.
+         * @param outputDirectory - the output directory.
+         * @return returns the Builder object.
+         */
+        public Builder outputDirectory(Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the order that the lines of every file are sorted in.
+         * @param order - the sort order. The default is NONE.
+         * @return returns the Builder object.
+         */
+        public Builder sortOrder(sortOrder order) {
+            this.order = order;
+            return this;
+        }
+
+        /**
+         * Sets the locale used by the COLLATED sort orders.
+         * @param locale - the locale. The default is the default locale.
+         * @return returns the Builder object.
+         */
+        public Builder locale(Locale locale) {
+            this.locale = locale;
+            return this;
+        }
+
+        /**
+         * Sets the charset of the input files.
+         * @param charset - the charset. The default is UTF-8.
+         * @return returns the Builder object.
+         */
+        public Builder charset(Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics that every job and the batch as a whole record
+         * their measurements in.
+         * @param metrics - the Metrics, or null to not record measurements.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that parse and sort files.
+         * @param cpuThreads - the number of threads. The default is the number
+         * of available processors.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if cpuThreads is less than 1.
+         */
+        public Builder cpuThreads(int cpuThreads) {
+            if (cpuThreads < 1) {
+                throw new IllegalArgumentException("cpuThreads must be at least 1: " + cpuThreads);
+            }
+            this.cpuThreads = cpuThreads;
+            return this;
+        }
+
+        /**
+         * Sets the number of jobs that may run at once, which limits the
+         * number of files held in memory.
+         * @param maxConcurrentJobs - the number of jobs. The default is twice
+         * the number of available processors.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if maxConcurrentJobs is less than 1.
+         */
+        public Builder maxConcurrentJobs(int maxConcurrentJobs) {
+            if (maxConcurrentJobs < 1) {
+                throw new IllegalArgumentException("maxConcurrentJobs must be at least 1: " + maxConcurrentJobs);
+            }
+            this.maxConcurrentJobs = maxConcurrentJobs;
+            return this;
+        }
+
+        /**
+         * Builds the BatchBuilder object.
+         * @return the BatchBuilder object.
+         * @throws IllegalStateException if no output directory has been set.
+         */
+        public BatchBuilder build() {
+            if (outputDirectory == null) {
+                throw new IllegalStateException("No output directory has been set");
+            }
+            return new BatchBuilder(this);
+        }
+    }
+
+    /**
+     * The outcome of one job.
+     * @param input - the input file.
+     * @param output - the output file.
+     * @param rows - the number of lines written, including the header line.
+     * @param readNanos - the time taken to read the input file.
+     * @param processNanos - the time taken to parse and sort the lines, not
+     * including any time spent waiting for a free thread.
+     * @param writeNanos - the time taken to write the output file.
+     * @param totalNanos - the time from when the job started to when it ended,
+     * including any time spent waiting.
+     * @param error - a description of why the job failed, or null if it
+     * succeeded.
+     */
+    public record Result(Path input, Path output, int rows, long readNanos, long processNanos,
+            long writeNanos, long totalNanos, String error) {
+        /**
+         * Returns whether the job succeeded.
+         * @return true if the output file was written.
+         */
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Returns the CSV files to build. If the path is a directory, these are
+     * the files in it whose names end with ".csv", sorted by name. Otherwise
+     * the path is a manifest: a text file with the path of one CSV file on each
+     * line. Blank lines, and lines starting with "#", are ignored, and relative
+     * paths are relative to the directory of the manifest.
+     * @param directoryOrManifest - the directory or manifest file.
+     * @return the paths of the CSV files.
+     * @throws IOException if the directory or manifest cannot be read.
+     */
+    public static List<Path> findInputs(Path directoryOrManifest) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        if (Files.isDirectory(directoryOrManifest)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directoryOrManifest,
+                    file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")
+                        && Files.isRegularFile(file))) {
+                files.forEach(inputs::add);
+            }
+            inputs.sort(null);
+            return inputs;
+        }
+        Path base = directoryOrManifest.toAbsolutePath().getParent();
+        for (String line : Files.readAllLines(directoryOrManifest, StandardCharsets.UTF_8)) {
+            line = line.strip();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                inputs.add(base.resolve(line).normalize());
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Builds each of the files, and waits until they have all been built. The
+     * results are in the same order as the inputs. If two inputs have the same
+     * file name, only the first one is built.
+     * @param inputs - the CSV files to build.
+     * @return the result of each job.
+     * @throws IOException if the output directory cannot be created.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting; the jobs that have not finished are cancelled.
+     */
+    public List<Result> run(List<Path> inputs) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Files.createDirectories(outputDirectory);
+        Semaphore permits = new Semaphore(maxConcurrentJobs);
+        Map<Path, Path> firstInputs = new HashMap<>();
+        List<Future<Result>> futures = new ArrayList<>();
+        List<Result> results = new ArrayList<>();
+        ExecutorService cpu = Executors.newFixedThreadPool(cpuThreads);
+        try (ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                for (Path input : inputs) {
+                    Path output = outputDirectory.resolve(input.getFileName().toString());
+                    Path first = firstInputs.putIfAbsent(output, input);
+                    if (first != null) {
+                        futures.add(null);
+                        results.add(new Result(input, output, 0, 0, 0, 0, 0,
+                            "has the same file name as " + first));
+                    } else {
+                        futures.add(io.submit(() -> runJob(input, output, permits, cpu)));
+                        results.add(null);
+                    }
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    if (futures.get(i) != null) {
+                        results.set(i, futures.get(i).get());
+                    }
+                }
+            } catch (InterruptedException e) {
+                io.shutdownNow();
+                throw e;
+            } catch (ExecutionException e) {
+                // runJob catches everything that a job can throw.
+                throw new IllegalStateException(e.getCause());
+            }
+        } finally {
+            cpu.shutdownNow();
+        }
+        if (metrics != null) {
+            metrics.recordTime("batch.time", System.nanoTime() - start);
+            metrics.record("batch.jobs", Metrics.Unit.COUNT, results.size());
+            metrics.record("batch.failedJobs", Metrics.Unit.COUNT,
+                results.stream().filter(result -> !result.succeeded()).count());
+        }
+        return results;
+    }
+
+    // Runs one job on a virtual thread. Every failure is turned into a Result,
+    // so that the other jobs keep going.
+    private Result runJob(Path input, Path output, Semaphore permits, ExecutorService cpu)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long[] times = new long[3];
+        int rows = 0;
+        String error = null;
+        permits.acquire();
+        try {
+            long readStart = System.nanoTime();
+            byte[] data = Files.readAllBytes(input);
+            times[0] = System.nanoTime() - readStart;
+
+            CSV csv = cpu.submit(() -> {
+                long processStart = System.nanoTime();
+                CSV built = new CSV.Builder()
+                    .fileName(input.toString())
+                    .data(data)
+                    .charset(charset)
+                    .metrics(metrics)
+                    .build();
+                built.sort(order, locale);
+                times[1] = System.nanoTime() - processStart;
+                return built;
+            }).get();
+            rows = csv.lines.size();
+
+            long writeStart = System.nanoTime();
+            csv.writeTo(output);
+            times[2] = System.nanoTime() - writeStart;
+        } catch (ExecutionException e) {
+            error = message(e.getCause());
+        } catch (IOException | RuntimeException e) {
+            error = message(e);
+        } finally {
+            permits.release();
+        }
+        long total = System.nanoTime() - start;
+        if (metrics != null) {
+            metrics.recordTime("batch.job.time", total);
+        }
+        return new Result(input, output, rows, times[0], times[1], times[2], total, error);
+    }
+
+    private static String message(Throwable e) {
+        if (e instanceof UncheckedIOException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof NoSuchFileException) {
+            return "file not found";
+        }
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    /**
+     * Returns a report of the jobs, with one line for each job giving its
+     * times in milliseconds, followed by a line counting the failed jobs.
+     * @param results - the results returned by run.
+     * @return the report.
+     */
+    public static String report(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-30s %8s %10s %10s %10s %10s  %s\n",
+            "File", "Rows", "Read ms", "Process ms", "Write ms", "Total ms", "Status"));
+        int failed = 0;
+        for (Result result : results) {
+            if (!result.succeeded()) {
+                failed++;
+            }
+            sb.append(String.format(Locale.ROOT, "%-30s %8d %10.1f %10.1f %10.1f %10.1f  %s\n",
+                result.input().getFileName(), result.rows(), result.readNanos() / 1e6,
+                result.processNanos() / 1e6, result.writeNanos() / 1e6, result.totalNanos() / 1e6,
+                result.succeeded() ? "OK" : "FAILED: " + result.error()));
+        }
+        sb.append(String.format(Locale.ROOT, "%d jobs, %d failed\n", results.size(), failed));
+        return sb.toString();
+    }
+}
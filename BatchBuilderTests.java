@@ -0,0 +1,127 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+public class BatchBuilderTests {
+    @TempDir
+    Path tempDir;
+
+    private String sorted(String fileName, sortOrder order) {
+        CSV csv = new CSV.Builder().fileName(fileName).build();
+        csv.sort(order, Locale.ROOT);
+        return csv.toString();
+    }
+
+    @Test
+    void testBuildDirectory() throws IOException, InterruptedException {
+        Path input = tempDir.resolve("input");
+        Files.createDirectories(input);
+        for (String name : new String[] {"sort.csv", "accents.csv", "test.csv"}) {
+            Files.copy(Paths.get("testing/data", name), input.resolve(name));
+        }
+        Files.writeString(input.resolve("notes.txt"), "not a CSV file");
+        Path output = tempDir.resolve("output");
+
+        Metrics metrics = new Metrics();
+        List<BatchBuilder.Result> results = new BatchBuilder.Builder()
+            .outputDirectory(output)
+            .sortOrder(sortOrder.COLLATED_BY_FULL_NAME)
+            .locale(Locale.ROOT)
+            .metrics(metrics)
+            .cpuThreads(2)
+            .maxConcurrentJobs(2)
+            .build()
+            .run(BatchBuilder.findInputs(input));
+
+        assertEquals(3, results.size());
+        assertEquals(input.resolve("accents.csv"), results.get(0).input());
+        assertEquals(input.resolve("sort.csv"), results.get(1).input());
+        assertEquals(input.resolve("test.csv"), results.get(2).input());
+        for (BatchBuilder.Result result : results) {
+            assertTrue(result.succeeded(), result.error());
+            assertEquals(output.resolve(result.input().getFileName()), result.output());
+            String name = "testing/data/" + result.input().getFileName();
+            assertEquals(sorted(name, sortOrder.COLLATED_BY_FULL_NAME),
+                Files.readString(result.output(), StandardCharsets.UTF_8));
+            assertEquals(new CSV.Builder().fileName(name).build().lines.size(), result.rows());
+            assertTrue(result.totalNanos() >= result.readNanos() + result.processNanos() + result.writeNanos());
+        }
+        assertEquals(3, metrics.get("batch.jobs").total());
+        assertEquals(0, metrics.get("batch.failedJobs").total());
+        assertEquals(3, metrics.get("batch.job.time").count());
+        assertEquals(3, metrics.get("load.parse.time").count());
+        assertEquals(3, metrics.get("sort.COLLATED_BY_FULL_NAME.time").count());
+    }
+
+    @Test
+    void testFailedJobsDoNotStopOthers() throws IOException, InterruptedException {
+        Path shortLine = tempDir.resolve("short.csv");
+        Files.writeString(shortLine, "Filename,Title,Full Name,First Name,Last Name\nimage.jpg,Title\n");
+        Path unclosedQuote = tempDir.resolve("quote.csv");
+        Files.writeString(unclosedQuote, "Filename,Title,Full Name,First Name,Last Name\nimage.jpg,\"Title\n");
+        Path output = tempDir.resolve("output");
+
+        List<BatchBuilder.Result> results = new BatchBuilder.Builder()
+            .outputDirectory(output)
+            .maxConcurrentJobs(1)
+            .build()
+            .run(List.of(shortLine, tempDir.resolve("missing.csv"), Paths.get("testing/data/sort.csv"),
+                unclosedQuote, Paths.get("testing/data/subdirectory/sort.csv")));
+
+        assertEquals(5, results.size());
+        assertFalse(results.get(0).succeeded());
+        assertEquals("file not found", results.get(1).error());
+        assertTrue(results.get(2).succeeded(), results.get(2).error());
+        assertEquals(sorted("testing/data/sort.csv", sortOrder.NONE),
+            Files.readString(output.resolve("sort.csv"), StandardCharsets.UTF_8));
+        assertFalse(results.get(3).succeeded());
+        assertTrue(results.get(4).error().contains("same file name"));
+        assertFalse(Files.exists(output.resolve("short.csv")));
+
+        String report = BatchBuilder.report(results);
+        assertEquals(7, report.lines().count());
+        assertTrue(report.startsWith("File "));
+        assertTrue(report.contains("FAILED: file not found"));
+        assertTrue(report.endsWith("5 jobs, 4 failed\n"));
+    }
+
+    @Test
+    void testFindInputsFromManifest() throws IOException {
+        Path manifest = tempDir.resolve("shows.txt");
+        Files.writeString(manifest, "# weekly shows\n\nsort.csv\n  sub/test.csv  \n" +
+            Paths.get("testing/data/accents.csv").toAbsolutePath() + "\n");
+        assertEquals(List.of(tempDir.resolve("sort.csv"), tempDir.resolve("sub/test.csv"),
+                Paths.get("testing/data/accents.csv").toAbsolutePath()),
+            BatchBuilder.findInputs(manifest));
+    }
+
+    @Test
+    void testCharset() throws IOException, InterruptedException {
+        List<BatchBuilder.Result> results = new BatchBuilder.Builder()
+            .outputDirectory(tempDir)
+            .charset(Charset.forName("windows-1252"))
+            .sortOrder(sortOrder.ALPHABETICAL_BY_FULL_NAME)
+            .build()
+            .run(List.of(Paths.get("testing/data/windows1252.csv")));
+        assertTrue(results.get(0).succeeded(), results.get(0).error());
+        String written = Files.readString(tempDir.resolve("windows1252.csv"), StandardCharsets.UTF_8);
+        assertTrue(written.contains("Café – €5"));
+        assertTrue(written.indexOf("John Doe") < written.indexOf("Zoë Adams"));
+    }
+
+    @Test
+    void testBuilderErrors() {
+        assertThrows(IllegalStateException.class, () -> new BatchBuilder.Builder().build());
+        assertThrows(IllegalArgumentException.class, () -> new BatchBuilder.Builder().cpuThreads(0));
+        assertThrows(IllegalArgumentException.class, () -> new BatchBuilder.Builder().maxConcurrentJobs(0));
+    }
+}
@@ -1,31 +1,98 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import javax.swing.*;
-import javax.swing.filechooser.*;
+import java.text.Collator;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
+/**
+ * The order in which people are placed by CSV.sort. All of the lines for a
+ * person are always kept together, in the order in which they appear in the
+ * CSV file. Each value describes how people are compared.
+ *
+ * The ALPHABETICAL values compare names character by character. The COLLATED
+ * values compare names using the rules of a locale, so that accented and
+ * mixed case names are placed where a reader of that language expects.
+ */
 enum sortOrder {
-    NONE,
-    ALPHABETICAL_BY_FULL_NAME,
-    ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME,
-    ALPHABETICAL_BY_FULL_NAME_REVERSE,
-    ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME_REVERSE
+    NONE(PersonGroup.BY_FILE_ORDER, false),
+    ALPHABETICAL_BY_FULL_NAME(PersonGroup.BY_FULL_NAME, false),
+    ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME(PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME, false),
+    ALPHABETICAL_BY_FULL_NAME_REVERSE(PersonGroup.BY_FULL_NAME.reversed(), false),
+    ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME_REVERSE(PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME.reversed(), false),
+    COLLATED_BY_FULL_NAME(PersonGroup.BY_FULL_NAME_COLLATED, true),
+    COLLATED_BY_LAST_NAME_THEN_FIRST_NAME(PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME_COLLATED, true),
+    COLLATED_BY_FULL_NAME_REVERSE(PersonGroup.BY_FULL_NAME_COLLATED.reversed(), true),
+    COLLATED_BY_LAST_NAME_THEN_FIRST_NAME_REVERSE(PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME_COLLATED.reversed(), true);
+
+    final Comparator<PersonGroup> comparator;
+    final boolean collated;
+
+    sortOrder(Comparator<PersonGroup> comparator, boolean collated) {
+        this.comparator = comparator;
+        this.collated = collated;
+    }
 }
 
 /**
  * The CSV class stores multiple CSVLine objects.
  * 
  * It uses the Builder pattern to create a CSV object. The only required
- * parameter is the name of the CSV file to read. If no file name is provided,
- * a file chooser dialog is displayed to select a CSV file.
+ * parameter is the name of the CSV file to read. The CSV class does not use
+ * any user interface classes, so it can be used by programs that have no
+ * display. Errors are reported by throwing exceptions.
  * ```java
  * CSV csv = new CSV.Builder()
- *     .fileName("test.csv")  // optional, if not provided a file chooser dialog is displayed
+ *     .fileName("test.csv")  // required
+ *     .streaming(true)       // optional, read the file in fixed-size chunks
+ *     .parallel(true)        // optional, parse the file on all available cores
+ *     .columnar(true)        // optional, store the lines column by column
+ *     .lazyFields(true)      // optional, create field Strings only when they are used
+ *     .charset(Charset.forName("windows-1252"))  // optional, the default is UTF-8
+ *     .metrics(metrics)      // optional, record the time taken by each stage
+ *     .indexed(true)         // optional, index the lines by name and image
+ *     .snapshot(true)        // optional, keep a snapshot to reload the file quickly
  *     .build();
  * ```
+ * Loading, grouping, sorting and writing each emit a Java Flight Recorder
+ * event, which are described in PipelineEvents.
  */
 public class CSV {
+    /**
+     * The number of lines at which sort switches to sorting on all available
+     * cores, unless the Builder sets another threshold.
+     */
+    public static final int DEFAULT_PARALLEL_SORT_THRESHOLD = 200_000;
+
     String fileName = null;
-    CSVLine[] lines = new CSVLine[0];
+    boolean streaming = false;
+    boolean parallel = false;
+    boolean lazyFields = false;
+    boolean snapshot = false;
+    Charset charset = StandardCharsets.UTF_8;
+    ColumnarRows columns = null;
+    Metrics metrics = null;
+    CSVIndex csvIndex = null;
+    int parallelSortThreshold = DEFAULT_PARALLEL_SORT_THRESHOLD;
+    CSVLineList lines = new CSVLineList();
+    // the contents of the file, if they were read before the CSV was built;
+    // only kept until the file is loaded
+    private byte[] data = null;
+    // the channel to read the contents from instead of the file; only kept
+    // until the file is loaded
+    private ReadableByteChannel channel = null;
+    // given each batch of lines as they are loaded, so that later stages of a
+    // ShowPipeline can start on them
+    private Consumer<List<CSVLine>> lineBatches = null;
+
+    // The number of lines given to lineBatches at a time.
+    static final int LINE_BATCH_SIZE = 1024;
 
     /**
      * This constructor is private. Use the Builder class to create a CSV object.
@@ -33,6 +100,22 @@ public class CSV {
      */
     private CSV(Builder builder) {
         this.fileName = builder.fileName;
+        this.streaming = builder.streaming;
+        this.parallel = builder.parallel;
+        this.lazyFields = builder.lazyFields;
+        this.snapshot = builder.snapshot;
+        this.charset = builder.charset;
+        this.metrics = builder.metrics;
+        this.data = builder.data;
+        this.channel = builder.channel;
+        this.lineBatches = builder.lineBatches;
+        this.parallelSortThreshold = builder.parallelSortThreshold;
+        if (builder.columnar) {
+            this.columns = new ColumnarRows(1024);
+        }
+        if (builder.indexed) {
+            this.csvIndex = new CSVIndex();
+        }
     }
 
     /**
@@ -40,6 +123,18 @@ public class CSV {
      */
     public static class Builder {
         private String fileName;
+        private boolean streaming = false;
+        private boolean parallel = false;
+        private boolean columnar = false;
+        private boolean lazyFields = false;
+        private boolean snapshot = false;
+        private Charset charset = StandardCharsets.UTF_8;
+        private Metrics metrics = null;
+        private byte[] data = null;
+        private ReadableByteChannel channel = null;
+        private Consumer<List<CSVLine>> lineBatches = null;
+        private boolean indexed = false;
+        private int parallelSortThreshold = DEFAULT_PARALLEL_SORT_THRESHOLD;
 
         /**
          * Sets the name of the CSV file to read.
@@ -52,12 +147,206 @@ public class CSV {
         }
 
         /**
-         * Builds the CSV object.
+         * Sets whether the CSV file is read in streaming mode. In streaming mode,
+         * the file is read through a fixed-size buffer and each record is parsed
+         * as it is read, so the full text of the file is never held in memory.
+         * @param streaming - true to read the file in streaming mode.
+         * @return returns the Builder object.
+         */
+        public Builder streaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        /**
+         * Sets whether the CSV file is loaded in parallel. In parallel mode, the
+         * file is split into line-aligned ranges that are parsed on all available
+         * cores, and the lines are kept in file order. Each range is read through
+         * a fixed-size buffer, so parallel mode also streams the file.
+         * @param parallel - true to load the file in parallel, false to load
+         * it sequentially.
+         * @return returns the Builder object.
+         */
+        public Builder parallel(boolean parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
+        /**
+         * Sets whether the lines that are loaded are stored column by column.
+         * In columnar mode, each person's names are stored once in a shared
+         * table rather than on every line, which uses much less memory for
+         * large files, and the lines are grouped by comparing int ids.
+         * @param columnar - true to store the loaded lines in columns.
+         * @return returns the Builder object.
+         */
+        public Builder columnar(boolean columnar) {
+            this.columnar = columnar;
+            return this;
+        }
+
+        /**
+         * Sets whether the fields of each loaded line are only turned into
+         * Strings when they are used. In lazy mode, each line keeps the bytes
+         * of its record and only decodes a field when it is used, and lines are
+         * grouped by name without creating a String for every line. Fields
+         * cannot be added to lazy lines, so the default is to create every
+         * field String when the file is loaded. This has no effect in columnar
+         * mode, which copies every field into the columns.
+         * @param lazyFields - true to create field Strings only when needed,
+         * false to create them all when the file is loaded.
+         * @return returns the Builder object.
+         */
+        public Builder lazyFields(boolean lazyFields) {
+            this.lazyFields = lazyFields;
+            return this;
+        }
+
+        /**
+         * Sets the charset of the CSV file. The default is UTF-8. The ASCII
+         * characters must be single bytes in the charset, as they are in
+         * windows-1252 and ISO-8859-1. If the file starts with a UTF-8 byte
+         * order mark, it is read as UTF-8 whatever charset is set.
+         * @param charset - the charset of the CSV file.
+         * @return returns the Builder object.
+         */
+        public Builder charset(Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics object that the time taken by each stage, and the
+         * amount of data it handles, are recorded in. Several CSV objects may
+         * share a Metrics object. The names of the measurements begin with
+         * "load.", "group.", "index.", "sort." and "write.". Loads from a
+         * snapshot record "load.snapshot." measurements instead of
+         * "load.parse." ones.
+         * @param metrics - the Metrics object, or null to record nothing.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the contents of the CSV file, when they have already been read.
+         * The file is then not read again, and the file name is only used to
+         * identify the file in error messages and events. The streaming and
+         * parallel settings have no effect. The array must not be changed while
+         * the CSV object is being built.
+         * @param data - the contents of the CSV file, or null to read the file.
+         * @return returns the Builder object.
+         */
+        public Builder data(byte[] data) {
+            this.data = data;
+            return this;
+        }
+
+        /**
+         * Sets a channel that the contents of the CSV file are read from, such
+         * as a pipe, instead of opening the file. The file name is only used to
+         * identify the file in error messages and events. The streaming,
+         * parallel and snapshot settings have no effect. The channel is read
+         * to its end, and closed, when the CSV object is built.
+         * @param channel - the channel to read the contents from, or null to
+         * read the file.
+         * @return returns the Builder object.
+         */
+        public Builder channel(ReadableByteChannel channel) {
+            this.channel = channel;
+            return this;
+        }
+
+        /**
+         * Sets a consumer that is given the lines as they are loaded, at most
+         * LINE_BATCH_SIZE at a time and in file order, starting with the
+         * header line. When the file is loaded in parallel or from a snapshot,
+         * the consumer is given every line at once at the end. It is called on
+         * the thread that builds the CSV object.
+         * @param lineBatches - the consumer, or null.
+         * @return returns the Builder object.
+         */
+        Builder lineBatches(Consumer<List<CSVLine>> lineBatches) {
+            this.lineBatches = lineBatches;
+            return this;
+        }
+
+        /**
+         * Returns whether the CSV object reads the file itself, rather than
+         * from a channel, because it loads the file in parallel or from a
+         * snapshot.
+         * @return true if the file must be read by the CSV object.
+         */
+        boolean readsFileItself() {
+            return parallel || snapshot;
+        }
+
+        /**
+         * Sets whether the lines are indexed by the person's full name, the
+         * person's last name and the image file name. The index is built the
+         * first time it is used, and is then kept up to date as lines are
+         * inserted, so that looking up lines and sorting do not have to read
+         * every line again.
+         * @param indexed - true to index the lines.
+         * @return returns the Builder object.
+         */
+        public Builder indexed(boolean indexed) {
+            this.indexed = indexed;
+            return this;
+        }
+
+        /**
+         * Sets whether a snapshot of the loaded lines is kept next to the CSV
+         * file, in a file with ".snapshot" added to its name. While the CSV
+         * file is unchanged, it is loaded from the snapshot without being
+         * parsed, which is many times quicker. Otherwise it is parsed as usual,
+         * and the snapshot is written again. Lines loaded from a snapshot
+         * always have their fields as Strings, whatever lazyFields is set to.
+         * A snapshot that cannot be written, such as in a read-only directory,
+         * is not an error. Snapshots are not used with data.
+         * @param snapshot - true to keep a snapshot.
+         * @return returns the Builder object.
+         */
+        public Builder snapshot(boolean snapshot) {
+            this.snapshot = snapshot;
+            return this;
+        }
+
+        /**
+         * Sets the number of lines at which sort uses all available cores.
+         * Below it, sorting on one thread is quicker, as the work is too small
+         * to be worth sharing out. The lines are placed in the same order
+         * either way.
+         * @param parallelSortThreshold - the number of lines, including the
+         * header line. 0 always sorts in parallel, and Integer.MAX_VALUE
+         * never does. The default is DEFAULT_PARALLEL_SORT_THRESHOLD.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if parallelSortThreshold is
+         * negative.
+         */
+        public Builder parallelSortThreshold(int parallelSortThreshold) {
+            if (parallelSortThreshold < 0) {
+                throw new IllegalArgumentException("parallelSortThreshold must not be negative: "
+                    + parallelSortThreshold);
+            }
+            this.parallelSortThreshold = parallelSortThreshold;
+            return this;
+        }
+
+        /**
+         * Builds the CSV object and loads the CSV file.
          * @return the CSV object.
+         * @throws IllegalStateException if no file name has been set.
+         * @throws UncheckedIOException if the file cannot be read, or contains a
+         * quoted field that is not closed.
+         * @throws ArrayIndexOutOfBoundsException if a line of the file does not
+         * contain at least five fields.
          */
         public CSV build() {
             if (fileName == null) {
-                fileName = CSV.getCSVFileName();
+                throw new IllegalStateException("No CSV file name has been set");
             }
             CSV csv = new CSV(this);
             csv.loadCSVFile();
@@ -66,24 +355,115 @@ public class CSV {
     }
 
     /**
-     * Returns a string representation of the CSV object.
+     * Returns a string representation of the CSV object. This is the CSV text
+     * of the lines, with any field that needs it enclosed in quotes. For large
+     * files, use writeTo instead, which does not hold all of the text in memory.
      * @return a string representation of the CSV object.
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        for (CSVLine line : lines) {
-            for (int i = 0; i < line.length(); i++) {
-                sb.append(line.field(i));
-                if (i < line.length() - 1) {
-                    sb.append(",");
-                }
-            }
-            sb.append("\n");
+        StringBuilder sb = new StringBuilder(lines.size() * 64);
+        try {
+            writeLines(sb);
+        } catch (IOException e) {
+            // a StringBuilder never throws IOException
+            throw new UncheckedIOException(e);
         }
         return sb.toString();
     }
 
+    /**
+     * Writes the CSV text of the lines to an Appendable, one line at a time.
+     * Any field that needs it is enclosed in quotes, and each line is ended
+     * with "\n".
+     * @param out - the Appendable to write to.
+     * @throws IOException if the Appendable throws it.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        PipelineEvents.Write event = new PipelineEvents.Write();
+        event.begin();
+        long start = System.nanoTime();
+        writeLines(out);
+        recordWrite(event, out.getClass().getName(), System.nanoTime() - start, -1);
+    }
+
+    /**
+     * Writes the CSV text of the lines to a file in UTF-8. The file is created,
+     * or replaced if it exists. The lines are encoded through a fixed-size
+     * buffer, so the memory used does not depend on the number of lines.
+     * @param path - the path of the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeTo(Path path) throws IOException {
+        writeTo(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the CSV text of the lines to a file. The file is created, or
+     * replaced if it exists. The lines are encoded through a fixed-size
+     * buffer, so the memory used does not depend on the number of lines.
+     * @param path - the path of the file to write.
+     * @param charset - the charset to write the file in.
+     * @throws IOException if the file cannot be written, or a field contains a
+     * character that the charset cannot encode.
+     */
+    public void writeTo(Path path, Charset charset) throws IOException {
+        PipelineEvents.Write event = new PipelineEvents.Write();
+        event.begin();
+        long start = System.nanoTime();
+        try (CSVWriter writer = new CSVWriter(path, charset)) {
+            writeLines(writer);
+        }
+        recordWrite(event, path.toString(), System.nanoTime() - start, Files.size(path));
+    }
+
+    /**
+     * Writes the lines to an Excel 97 (.xls) workbook, the format that
+     * Flexishow reads, with each line as a row of text cells. The file is
+     * created, or replaced if it exists. The rows are written through a
+     * fixed-size buffer, so the memory used does not depend on the number of
+     * lines.
+     * @param path - the path of the file to write.
+     * @throws IOException if the file cannot be written, or the lines do not
+     * fit in a worksheet.
+     */
+    public void writeXLSTo(Path path) throws IOException {
+        PipelineEvents.Write event = new PipelineEvents.Write();
+        event.begin();
+        long start = System.nanoTime();
+        try (XLSWriter writer = new XLSWriter(path)) {
+            for (CSVLine line : lines) {
+                writer.writeLine(line);
+            }
+        }
+        recordWrite(event, path.toString(), System.nanoTime() - start, Files.size(path));
+    }
+
+    private void writeLines(Appendable out) throws IOException {
+        for (CSVLine line : lines) {
+            CSVWriter.appendLine(out, line);
+        }
+    }
+
+    // bytes is -1 if the lines were not written to a file.
+    private void recordWrite(PipelineEvents.Write event, String destination, long nanos, long bytes) {
+        event.destination = destination;
+        event.rows = lines.size();
+        event.bytes = Math.max(bytes, 0);
+        event.commit();
+        record("write.time", Metrics.Unit.NANOSECONDS, nanos);
+        record("write.rows", Metrics.Unit.COUNT, lines.size());
+        if (bytes >= 0) {
+            record("write.bytes", Metrics.Unit.BYTES, bytes);
+        }
+    }
+
+    private void record(String name, Metrics.Unit unit, long value) {
+        if (metrics != null) {
+            metrics.record(name, unit, value);
+        }
+    }
+
     /**
      * Inserts a CSVLine at the specified index.   
      * @param index - the index at which to insert the line
@@ -92,18 +472,33 @@ public class CSV {
      * greater than the number of lines.
      */
     public void insertAt(int index, CSVLine line) {
-        if (index < 0 || index > lines.length) {
+        if (index < 0 || index > lines.size()) {
             throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
         }
-        CSVLine[] newLines = new CSVLine[lines.length + 1];
-        for (int i = 0; i < index; i++) {
-            newLines[i] = lines[i];
+        if (csvIndex != null) {
+            csvIndex.insert(lines, index, Collections.singletonList(line));
+        } else {
+            lines.add(index, line);
+        }
+    }
+
+    /**
+     * Inserts multiple CSVLines at the specified index. The existing lines are
+     * only shifted once, no matter how many lines are inserted.
+     * @param index    - the index at which to insert the first line
+     * @param newLines - the lines to insert, in order
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * greater than the number of lines.
+     */
+    public void insertAll(int index, Collection<CSVLine> newLines) {
+        if (index < 0 || index > lines.size()) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
         }
-        newLines[index] = line;
-        for (int i = index; i < lines.length; i++) {
-            newLines[i + 1] = lines[i];
+        if (csvIndex != null) {
+            csvIndex.insert(lines, index, newLines);
+        } else {
+            lines.addAll(index, newLines);
         }
-        lines = newLines;
     }
 
     /**
@@ -111,213 +506,496 @@ public class CSV {
      * @param line - the line to append
      */
     public void append(CSVLine line) {
-        insertAt(lines.length, line);
+        insertAt(lines.size(), line);
     }
 
     /**
-     * Opens a file chooser dialog to select a CSV file.
-     * @return The name of the selected CSV file, or null if no file was selected.
+     * Appends multiple CSVLines to the end of the CSV object.
+     * @param newLines - the lines to append, in order
      */
-    private static String getCSVFileName() {
-        JFileChooser j = new JFileChooser(FileSystemView.getFileSystemView().getHomeDirectory());
-        j.setDialogTitle("Select a CSV file");
-        j.setAcceptAllFileFilterUsed(false);
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV files", "csv");
-        j.addChoosableFileFilter(filter);  
-        int r = j.showOpenDialog(null);
-        String fileName = null;
-        if (r == JFileChooser.APPROVE_OPTION) {
-            fileName = j.getSelectedFile().getAbsolutePath();
-        } else {
-            JOptionPane.showMessageDialog(null, "No file selected. Exiting.");
-            System.exit(0);
+    public void appendAll(Collection<CSVLine> newLines) {
+        insertAll(lines.size(), newLines);
+    }
+
+    /**
+     * Returns the lines for a person, in the order in which they appear. If
+     * the CSV object is indexed, this takes time proportional to the number of
+     * lines returned; otherwise every line is read.
+     * @param fullName - the person's full name.
+     * @return the lines, which may be empty. The list cannot be modified.
+     */
+    public List<ImageAndPersonLine> linesForPerson(String fullName) {
+        if (csvIndex != null) {
+            return currentIndex().linesForPerson(fullName);
         }
-        return fileName;
+        return Collections.unmodifiableList(find(2, fullName, false));
+    }
+
+    /**
+     * Returns the lines grouped by person, in the order in which each person
+     * first appears, with each person's lines in file order. The lines after
+     * the header line must all be ImageAndPersonLines, as for sorting.
+     * @return the groups.
+     */
+    List<PersonGroup> personGroups() {
+        PersonGroup[] groups = csvIndex != null ? currentIndex().groups() : null;
+        if (groups != null) {
+            return List.of(groups);
+        }
+        return new ArrayList<>(buildFullNameHashMap().values());
+    }
+
+    /**
+     * Returns the lines whose last name field is the given name, in the order
+     * in which they appear. If the CSV object is indexed, this takes time
+     * proportional to the number of lines returned; otherwise every line is
+     * read.
+     * @param lastName - the last name.
+     * @return the lines, which may be empty. The list cannot be modified.
+     */
+    public List<ImageAndPersonLine> linesForLastName(String lastName) {
+        if (csvIndex != null) {
+            return currentIndex().linesForLastName(lastName);
+        }
+        return Collections.unmodifiableList(find(4, lastName, false));
+    }
+
+    /**
+     * Returns the first line for an image. If the CSV object is indexed, this
+     * takes constant time; otherwise the lines are read until it is found.
+     * @param imageFileName - the image file name.
+     * @return the line, or null if there is no line for the image.
+     */
+    public ImageAndPersonLine lineForImage(String imageFileName) {
+        if (csvIndex != null) {
+            return currentIndex().lineForImage(imageFileName);
+        }
+        List<ImageAndPersonLine> found = find(0, imageFileName, true);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // Reads the lines after the header for those whose field is the value.
+    // Lines that are not ImageAndPersonLines are skipped.
+    private List<ImageAndPersonLine> find(int field, String value, boolean firstOnly) {
+        List<ImageAndPersonLine> found = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            CSVLine line = lines.get(i);
+            if (line instanceof ImageAndPersonLine && CharSequence.compare(line.fieldChars(field), value) == 0) {
+                found.add((ImageAndPersonLine) line);
+                if (firstOnly) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    // Returns the index, after building it again if the lines have changed
+    // other than through insertAt, insertAll, append, appendAll and sort.
+    private CSVIndex currentIndex() {
+        long start = System.nanoTime();
+        if (csvIndex.update(lines)) {
+            record("index.build.time", Metrics.Unit.NANOSECONDS, System.nanoTime() - start);
+        }
+        return csvIndex;
     }
 
     /**
      * Loads the CSV file specified by the fileName field.
-     * The lines field is populated with CSVLine objects.
-     * If there is an error reading the file, an error message is
-     * displayed and the program exits.
+     * The lines field is populated with CSVLine objects. Fields may be quoted
+     * as described in RFC 4180, and empty lines are skipped.
      * 
      * This file is protected rather than private so that
      * it can called for testing purposes.
+     * @throws UncheckedIOException if the file cannot be read, or contains a
+     * quoted field that is not closed.
+     * @throws ArrayIndexOutOfBoundsException if a line of the file does not
+     * contain at least five fields.
      */
     protected void loadCSVFile() {
         Path path = Paths.get(fileName);
+        ParseCounts counts = new ParseCounts();
+        PipelineEvents.FileRead read = new PipelineEvents.FileRead();
+        PipelineEvents.Parse parse = new PipelineEvents.Parse();
+        read.begin();
+        long readStart = System.nanoTime();
+        long parseStart = readStart;
+        long bytes;
+        String mode = data != null ? "preloaded" : channel != null ? "channel"
+            : parallel ? "parallel" : streaming ? "streaming" : "memory";
+        CSVSnapshot.Source source = null;
         try {
-            List<String> allLines = java.nio.file.Files.readAllLines(path);
-            lines = new CSVLine[allLines.size()];
-            for (int i = 0; i < allLines.size(); i++) {
-                lines[i] = new ImageAndPersonLine(allLines.get(i));
+            if (snapshot && data == null && channel == null) {
+                source = CSVSnapshot.source(path);
+                CSVSnapshot.Contents contents = CSVSnapshot.read(source, charset);
+                if (contents != null) {
+                    loadSnapshot(contents, source, read, readStart);
+                    return;
+                }
             }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(null, "Error reading file: " + e.getMessage());
-            System.exit(0);
+            if (data != null) {
+                byte[] preloaded = data;
+                data = null;
+                bytes = preloaded.length;
+                read.end();
+                parse.begin();
+                parseStart = System.nanoTime();
+                loadRecords(new CSVTokenizer(preloaded, charset), counts);
+            } else if (channel != null) {
+                // Reading and parsing overlap, as for streaming.
+                parse.begin();
+                CountingChannel counting = new CountingChannel(channel);
+                channel = null;
+                try (CSVTokenizer tokenizer = new CSVTokenizer(counting, CSVTokenizer.DEFAULT_BUFFER_SIZE,
+                        charset)) {
+                    loadRecords(tokenizer, counts);
+                }
+                bytes = counting.count;
+            } else if (parallel) {
+                // Reading and parsing overlap, so both cover the whole load.
+                parse.begin();
+                bytes = Files.size(path);
+                CSVLine[] loaded = ParallelCSVLoader.load(path, charset,
+                    tokenizer -> parseLine(tokenizer, counts));
+                for (int i = 0; i < loaded.length; i++) {
+                    loaded[i] = store((ImageAndPersonLine) loaded[i]);
+                }
+                lines = new CSVLineList(loaded);
+                if (lineBatches != null) {
+                    lineBatches.accept(List.of(loaded));
+                }
+            } else if (streaming) {
+                // Only the record being parsed is held in memory.
+                parse.begin();
+                bytes = Files.size(path);
+                try (CSVTokenizer tokenizer = new CSVTokenizer(path, charset)) {
+                    loadRecords(tokenizer, counts);
+                }
+            } else {
+                byte[] data = Files.readAllBytes(path);
+                bytes = data.length;
+                read.end();
+                parse.begin();
+                parseStart = System.nanoTime();
+                loadRecords(new CSVTokenizer(data, charset), counts);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+        long end = System.nanoTime();
+        long readEnd = mode.equals("parallel") || mode.equals("streaming") || mode.equals("channel")
+            ? end : parseStart;
+
+        read.path = fileName;
+        read.mode = mode;
+        read.bytes = bytes;
+        read.commit();
+        parse.rows = lines.size();
+        parse.malformedRows = counts.malformedRows.sum();
+        parse.emptyLines = counts.emptyLines.sum();
+        parse.rowsPerSecond = lines.size() * 1e9 / Math.max(1, end - parseStart);
+        parse.commit();
+
+        record("load.read.time", Metrics.Unit.NANOSECONDS, readEnd - readStart);
+        record("load.read.bytes", Metrics.Unit.BYTES, bytes);
+        record("load.parse.time", Metrics.Unit.NANOSECONDS, end - parseStart);
+        record("load.parse.rows", Metrics.Unit.COUNT, parse.rows);
+        record("load.parse.rowsPerSecond", Metrics.Unit.COUNT, Math.round(parse.rowsPerSecond));
+        record("load.parse.malformedRows", Metrics.Unit.COUNT, parse.malformedRows);
+        record("load.parse.emptyLines", Metrics.Unit.COUNT, parse.emptyLines);
+        if (source != null) {
+            writeSnapshot(source, parse.malformedRows, parse.emptyLines);
         }
     }
 
-    private HashMap<String, ImageAndPersonLine[]> buildFullNameHashMap() {
-        HashMap<String, ImageAndPersonLine[]> map = new HashMap<>();
-        boolean firstLine = true;
-        for (CSVLine line : lines) {
-            if (firstLine) {
-                firstLine = false;
-                continue; // skip header line
+    // Keeps the lines read from a snapshot, and writes the snapshot again if
+    // the CSV file's time had changed.
+    private void loadSnapshot(CSVSnapshot.Contents contents, CSVSnapshot.Source source,
+            PipelineEvents.FileRead read, long start) {
+        CSVLine[] loaded = new CSVLine[contents.lines().length];
+        for (int i = 0; i < loaded.length; i++) {
+            loaded[i] = store(contents.lines()[i]);
+        }
+        lines = new CSVLineList(loaded);
+        if (lineBatches != null) {
+            lineBatches.accept(List.of(loaded));
+        }
+        read.path = fileName;
+        read.mode = "snapshot";
+        read.bytes = contents.bytes();
+        read.commit();
+        record("load.snapshot.time", Metrics.Unit.NANOSECONDS, System.nanoTime() - start);
+        record("load.snapshot.bytes", Metrics.Unit.BYTES, contents.bytes());
+        record("load.snapshot.rows", Metrics.Unit.COUNT, loaded.length);
+        record("load.parse.malformedRows", Metrics.Unit.COUNT, contents.malformedRows());
+        record("load.parse.emptyLines", Metrics.Unit.COUNT, contents.emptyLines());
+        if (contents.stale()) {
+            writeSnapshot(source, contents.malformedRows(), contents.emptyLines());
+        }
+    }
+
+    // Writes the snapshot of the lines just loaded, unless the CSV file
+    // changed while it was being loaded.
+    private void writeSnapshot(CSVSnapshot.Source source, long malformedRows, long emptyLines) {
+        long start = System.nanoTime();
+        try {
+            if (!source.sameFile(CSVSnapshot.source(source.path))) {
+                return;
             }
-            ImageAndPersonLine ipLine = (ImageAndPersonLine) line;
-            String fullName = ipLine.personFullName();
-            if (!map.containsKey(fullName)) {
-                map.put(fullName, new ImageAndPersonLine[] { ipLine });
-            } else {
-                ImageAndPersonLine[] existingLines = map.get(fullName);
-                ImageAndPersonLine[] newLines = new ImageAndPersonLine[existingLines.length + 1];
-                System.arraycopy(existingLines, 0, newLines, 0, existingLines.length);
-                newLines[existingLines.length] = ipLine;
-                map.put(fullName, newLines);
+            long bytes = CSVSnapshot.write(source, charset, lines, malformedRows, emptyLines);
+            record("load.snapshot.write.time", Metrics.Unit.NANOSECONDS, System.nanoTime() - start);
+            record("load.snapshot.write.bytes", Metrics.Unit.BYTES, bytes);
+        } catch (IOException e) {
+            // The file is parsed again next time.
+            record("load.snapshot.write.failures", Metrics.Unit.COUNT, 1);
+        }
+    }
+
+    private void loadRecords(CSVTokenizer tokenizer, ParseCounts counts) throws IOException {
+        lines = new CSVLineList();
+        CSVLine[] batch = lineBatches != null ? new CSVLine[LINE_BATCH_SIZE] : null;
+        int batchSize = 0;
+        while (tokenizer.next()) {
+            ImageAndPersonLine line = parseLine(tokenizer, counts);
+            if (line != null) {
+                CSVLine stored = store(line);
+                lines.add(stored);
+                if (batch != null) {
+                    batch[batchSize++] = stored;
+                    if (batchSize == batch.length) {
+                        lineBatches.accept(List.of(batch));
+                        batchSize = 0;
+                    }
+                }
             }
         }
+        if (batchSize > 0) {
+            lineBatches.accept(List.of(Arrays.copyOf(batch, batchSize)));
+        }
+    }
+
+    // Counts the bytes read from a channel whose size is not known.
+    private static final class CountingChannel implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        long count = 0;
+
+        CountingChannel(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            int read = channel.read(destination);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Counts the records that were not simple lines of five fields. The
+    // parallel loader parses records on several threads at once.
+    private static final class ParseCounts {
+        final LongAdder malformedRows = new LongAdder();
+        final LongAdder emptyLines = new LongAdder();
+    }
+
+    // Creates the line for the tokenizer's current record. Empty lines in the
+    // file are skipped.
+    private ImageAndPersonLine parseLine(CSVTokenizer tokenizer, ParseCounts counts) {
+        if (tokenizer.isEmptyLine()) {
+            counts.emptyLines.increment();
+            return null;
+        }
+        if (tokenizer.fieldCount() > 5) {
+            counts.malformedRows.increment();
+        }
+        if (lazyFields) {
+            return new LazyImageAndPersonLine(tokenizer);
+        }
+        return new ImageAndPersonLine(tokenizer.fields());
+    }
+
+    // Returns the line to keep for a loaded line. In columnar mode the line's
+    // fields are copied into the columns and a view of that row is kept instead.
+    private CSVLine store(ImageAndPersonLine line) {
+        if (columns == null) {
+            return line;
+        }
+        return columns.line(columns.add(line));
+    }
+
+    // Groups the lines by full name in a single pass. The groups are in the
+    // order in which each person first appears, and the lines in each group are
+    // in file order. Lines stored in the columns are grouped by their name id.
+    // Other lines are looked up by the characters of their full name field, so
+    // a String is only created for the name the first time each person is seen.
+    private LinkedHashMap<String, PersonGroup> buildFullNameHashMap() {
+        PipelineEvents.Group event = new PipelineEvents.Group();
+        event.begin();
+        long start = System.nanoTime();
+        LinkedHashMap<String, PersonGroup> map = new LinkedHashMap<>();
+        HashMap<NameKey, PersonGroup> groupsByName = new HashMap<>();
+        NameKey probe = new NameKey();
+        PersonGroup[] byId = new PersonGroup[columns == null ? 0 : columns.names().size()];
+        for (int i = 1; i < lines.size(); i++) { // skip header line
+            ImageAndPersonLine ipLine = (ImageAndPersonLine) lines.get(i);
+            int id = -1;
+            if (ipLine instanceof ColumnarRows.Line && ((ColumnarRows.Line) ipLine).rows() == columns) {
+                id = ((ColumnarRows.Line) ipLine).personId();
+                if (byId[id] != null) {
+                    byId[id].add(ipLine);
+                    continue;
+                }
+            }
+            PersonGroup group = groupsByName.get(probe.set(ipLine.fieldChars(2)));
+            if (group == null) {
+                String fullName = ipLine.personFullName();
+                group = new PersonGroup(fullName, i);
+                map.put(fullName, group);
+                groupsByName.put(new NameKey().set(fullName), group);
+            }
+            if (id >= 0) {
+                byId[id] = group;
+            }
+            group.add(ipLine);
+        }
+        long nanos = System.nanoTime() - start;
+        event.end();
+
+        // The group sizes are only needed for the metrics and the event, so
+        // grouping does no more work when neither is in use.
+        int largestGroup = 0;
+        if (metrics != null || event.shouldCommit()) {
+            for (PersonGroup group : map.values()) {
+                largestGroup = Math.max(largestGroup, group.size());
+                record("group.size", Metrics.Unit.COUNT, group.size());
+            }
+        }
+        event.rows = lines.size() - 1;
+        event.people = map.size();
+        event.largestGroup = largestGroup;
+        event.commit();
+        record("group.time", Metrics.Unit.NANOSECONDS, nanos);
+        record("group.people", Metrics.Unit.COUNT, map.size());
         return map;
     }
 
+    // A person's full name as a HashMap key. The name may be any CharSequence,
+    // so the same probe key can be pointed at the name field of each line in
+    // turn. The hash code is the same as String.hashCode.
+    private static final class NameKey {
+        private CharSequence name;
+        private int hash;
+
+        NameKey set(CharSequence name) {
+            this.name = name;
+            int h = 0;
+            for (int i = 0; i < name.length(); i++) {
+                h = 31 * h + name.charAt(i);
+            }
+            hash = h;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof NameKey && hash == ((NameKey) other).hash
+                && CharSequence.compare(name, ((NameKey) other).name) == 0;
+        }
+    }
+
     /**
      * Sorts the lines in the CSV object according to the specified order.
+     * The header line stays first, and all of the lines for a person are
+     * placed together in their original order.
      * @param order - the sort order. See the sortOrder enum for possible values.
+     * The COLLATED orders use the rules of the default locale.
      * This file is protected rather than private so that
      * it can called for testing purposes.
      */
     protected void sort(sortOrder order) {
-        HashMap<String, ImageAndPersonLine[]> ipMap = buildFullNameHashMap();
-        switch (order) {
-            case NONE:
-                sortNone(ipMap);
-                break;
-            case ALPHABETICAL_BY_FULL_NAME:
-                sortLinesAlphabeticallyByFullName(ipMap);
-                break;
-            case ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME:
-                sortLinesAlphabeticallyByLastNamelFirstName(ipMap);
-                break;
-                case ALPHABETICAL_BY_FULL_NAME_REVERSE:
-                sortLinesAlphabeticallyByFullNameReverse(ipMap);
-                break;
-                case ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME_REVERSE:
-                sortLinesAlphabeticallytByLastNamelFirstNameReverse(ipMap);
-                break;
-        }       
-    }
-
-    private void sortLinesAlphabeticallyByFullName(HashMap<String, ImageAndPersonLine[]> ipMap  ) {
-        List<ImageAndPersonLine> entries = new ArrayList<ImageAndPersonLine>();
-        entries.add((ImageAndPersonLine)this.lines[0]);
-        Set<String> fullNamekeys = ipMap.keySet();
-        String[] fullNames = fullNamekeys.toArray(new String[ipMap.size()]);
-        Arrays.sort(fullNames);
-        for (String fName: fullNames) {
-            ImageAndPersonLine[] linesForName = ipMap.get(fName);
-            for (ImageAndPersonLine line: linesForName) {
-                entries.add(line);
-            }
-        }
-        this.lines = entries.toArray(new CSVLine[entries.size()]);
+        sort(order, Locale.getDefault());
     }
 
-    private void sortLinesAlphabeticallyByFullNameReverse(HashMap<String, ImageAndPersonLine[]> ipMap  ) {
-        List<ImageAndPersonLine> entries = new ArrayList<ImageAndPersonLine>();
-        entries.add((ImageAndPersonLine)this.lines[0]);
-        Set<String> fullNamekeys = ipMap.keySet();
-        String[] fullNames = fullNamekeys.toArray(new String[ipMap.size()]);
-        Arrays.sort(fullNames, Collections.reverseOrder());
-        for (String fName: fullNames) {
-            ImageAndPersonLine[] linesForName = ipMap.get(fName);
-            for (ImageAndPersonLine line: linesForName) {
-                entries.add(line);
-            }
+    /**
+     * Sorts the lines in the CSV object according to the specified order.
+     * The header line stays first, and all of the lines for a person are
+     * placed together in their original order. If there are at least
+     * parallelSortThreshold lines, the people are sorted, and their lines
+     * copied into place, on all available cores.
+     * @param order  - the sort order. See the sortOrder enum for possible values.
+     * @param locale - the locale whose rules are used by the COLLATED orders.
+     * This file is protected rather than private so that
+     * it can called for testing purposes.
+     */
+    protected void sort(sortOrder order, Locale locale) {
+        if (lines.size() == 0) {
+            return;
         }
-        this.lines = entries.toArray(new CSVLine[entries.size()]);
-    }
-
-    private void sortLinesAlphabeticallyByLastNamelFirstName(HashMap<String, ImageAndPersonLine[]> ipMap  ) {
-        List<ImageAndPersonLine> entries = new ArrayList<ImageAndPersonLine>();
-        entries.add((ImageAndPersonLine)this.lines[0]);
-        Set<String> fullNamekeys = ipMap.keySet();
-        String[] fullNames = fullNamekeys.toArray(new String[ipMap.size()]);
-        Arrays.sort(fullNames, new Comparator<String>() {
-            @Override
-            public int compare(String name1, String name2) {
-                String[] parts1 = name1.split(" ");
-                String[] parts2 = name2.split(" ");
-                String lastName1 = parts1[parts1.length - 1];
-                String lastName2 = parts2[parts2.length - 1];
-                int lastNameComparison = lastName1.compareTo(lastName2);
-                if (lastNameComparison != 0) {
-                    return lastNameComparison;
-                } else {
-                    String firstName1 = parts1[0];
-                    String firstName2 = parts2[0];
-                    return firstName1.compareTo(firstName2);
-                }
-            }
-        });
-        for (String fName: fullNames) {
-            ImageAndPersonLine[] linesForName = ipMap.get(fName);
-            for (ImageAndPersonLine line: linesForName) {
-                entries.add(line);
-            }
+        PipelineEvents.Sort event = new PipelineEvents.Sort();
+        event.begin();
+        long start = System.nanoTime();
+        // The index already holds the groups, unless a line cannot be sorted.
+        PersonGroup[] groups = csvIndex != null ? currentIndex().groups() : null;
+        boolean indexed = groups != null;
+        if (!indexed) {
+            LinkedHashMap<String, PersonGroup> ipMap = buildFullNameHashMap();
+            groups = ipMap.values().toArray(new PersonGroup[ipMap.size()]);
         }
-        this.lines = entries.toArray(new CSVLine[entries.size()]);
-    }
-
-    private void sortLinesAlphabeticallytByLastNamelFirstNameReverse(HashMap<String, ImageAndPersonLine[]> ipMap  ) {
-        List<ImageAndPersonLine> entries = new ArrayList<ImageAndPersonLine>();
-        entries.add((ImageAndPersonLine)this.lines[0]);
-        Set<String> fullNamekeys = ipMap.keySet();
-        String[] fullNames = fullNamekeys.toArray(new String[ipMap.size()]);
-        Arrays.sort(fullNames, new Comparator<String>() {
-            @Override
-            public int compare(String name1, String name2) {
-                String[] parts1 = name1.split(" ");
-                String[] parts2 = name2.split(" ");
-                String lastName1 = parts1[parts1.length - 1];
-                String lastName2 = parts2[parts2.length - 1];
-                int lastNameComparison = lastName2.compareTo(lastName1);
-                if (lastNameComparison != 0) {
-                    return lastNameComparison;
-                } else {
-                    String firstName1 = parts1[0];
-                    String firstName2 = parts2[0];
-                    return firstName2.compareTo(firstName1);
-                }
+        boolean parallelSort = lines.size() >= parallelSortThreshold;
+        if (order.collated) {
+            PersonGroup.collate(groups, Collator.getInstance(locale), parallelSort);
+        }
+        CSVLine[] sorted = new CSVLine[lines.size()];
+        sorted[0] = lines.get(0);
+        if (parallelSort) {
+            // Arrays.parallelSort is stable, like Arrays.sort.
+            Arrays.parallelSort(groups, order.comparator);
+            // Each group's place is known once the sizes of the groups before
+            // it are added up, so the groups can be copied independently.
+            int[] offsets = new int[groups.length];
+            int next = 1;
+            for (int i = 0; i < groups.length; i++) {
+                offsets[i] = next;
+                next += groups[i].size();
             }
-        });
-        for (String fName: fullNames) {
-            ImageAndPersonLine[] linesForName = ipMap.get(fName);
-            for (ImageAndPersonLine line: linesForName) {
-                entries.add(line);
+            PersonGroup[] sortedGroups = groups;
+            IntStream.range(0, groups.length).parallel()
+                .forEach(i -> sortedGroups[i].copyTo(sorted, offsets[i]));
+        } else {
+            Arrays.sort(groups, order.comparator);
+            int next = 1;
+            for (PersonGroup group : groups) {
+                next = group.copyTo(sorted, next);
             }
         }
-        this.lines = entries.toArray(new CSVLine[entries.size()]);
-    }
-
-    // This actually sorts the lines so that all entries for a given full name are
-    // together, but the order of the names is not changed.
-    private void sortNone(HashMap<String, ImageAndPersonLine[]> ipMap) {
-        List<ImageAndPersonLine> entries = new ArrayList<ImageAndPersonLine>();
-        Set<String> fullNameKeys = ipMap.keySet();
-        entries.add((ImageAndPersonLine)this.lines[0]);
-        for (int i = 1; i < lines.length; i++) {
-            String fullName = ((ImageAndPersonLine)lines[i]).personFullName();
-            if (fullNameKeys.contains(fullName)) {
-                ImageAndPersonLine[] ipLines = ipMap.get(fullName);
-                if (ipLines != null) {
-                    for (ImageAndPersonLine ipLine: ipLines) {
-                        entries.add(ipLine);
-                    }
-                }
-                fullNameKeys.remove(fullName); // so we don't add person entries again
-            }
+        lines = new CSVLineList(sorted);
+        if (indexed) {
+            csvIndex.sorted(lines, groups);
         }
-        this.lines = entries.toArray(new CSVLine[entries.size()]);
+
+        event.order = order.name();
+        event.locale = locale.toLanguageTag();
+        event.rows = lines.size();
+        event.people = groups.length;
+        event.parallel = parallelSort;
+        event.commit();
+        record("sort." + order.name() + ".time", Metrics.Unit.NANOSECONDS, System.nanoTime() - start);
     }
 }
@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The CSVIndex class indexes the lines of a CSV object by the person's full
+ * name, the person's last name and the image file name.
+ *
+ * The index is kept up to date as lines are inserted, so finding the k lines
+ * for a name takes O(k) time rather than a scan of every line, and sorting can
+ * group the lines by person without reading every name again.
+ *
+ * Each person's lines must be kept in list order, but their positions change
+ * whenever a line is inserted before them. Instead of positions, each line is
+ * given a label, and the labels increase along the list. An inserted line is
+ * labelled halfway between the labels of its neighbours, and when there is no
+ * room left between them, every line is labelled again.
+ *
+ * The header line, at index 0, is not indexed. If the list is changed in any
+ * other way, such as by removing a line or inserting a line at index 0, the
+ * index is rebuilt the next time it is used.
+ */
+final class CSVIndex {
+    // The distance between the labels of adjacent lines when they are
+    // labelled, which leaves room to insert lines between them.
+    private static final long SPACING = 1L << 20;
+
+    private static final Comparator<Entry> BY_LABEL = Comparator.comparingLong(entry -> entry.label);
+
+    private final HashMap<String, Bucket> byFullName = new HashMap<>();
+    private final HashMap<String, Bucket> byLastName = new HashMap<>();
+    private final HashMap<String, Bucket> byImageFileName = new HashMap<>();
+    private EntryList positions = new EntryList(new Entry[0]);
+    // the number of lines that are not ImageAndPersonLines, which cannot be
+    // indexed or sorted
+    private int unindexedLines = 0;
+    // changed whenever the lines are labelled in a different order, so that
+    // each bucket knows whether it must be sorted by label again
+    private int ordering = 0;
+    private CSVLineList indexedLines = null;
+    private int indexedVersion;
+
+    // A line and its label.
+    private static final class Entry {
+        final CSVLine line;
+        long label;
+
+        Entry(CSVLine line, long label) {
+            this.line = line;
+            this.label = label;
+        }
+    }
+
+    // The entries for one key. Entries are appended as they are indexed, and
+    // only sorted by label when the bucket is read.
+    private static final class Bucket {
+        final String key;
+        Entry[] entries = new Entry[1];
+        int count = 0;
+        boolean sorted = true;
+        int ordering;
+
+        Bucket(String key, int ordering) {
+            this.key = key;
+            this.ordering = ordering;
+        }
+
+        void add(Entry entry) {
+            if (count == entries.length) {
+                entries = Arrays.copyOf(entries, count * 2);
+            }
+            if (count > 0 && entry.label < entries[count - 1].label) {
+                sorted = false;
+            }
+            entries[count++] = entry;
+        }
+
+        Entry[] ordered(int currentOrdering) {
+            if (!sorted || ordering != currentOrdering) {
+                Arrays.sort(entries, 0, count, BY_LABEL);
+                sorted = true;
+                ordering = currentOrdering;
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Builds the index again if the lines have changed since it was last
+     * used. The index is not built until it is first used.
+     * @param lines - the lines of the CSV object.
+     * @return true if the index was built.
+     */
+    boolean update(CSVLineList lines) {
+        if (isCurrent(lines)) {
+            return false;
+        }
+        byFullName.clear();
+        byLastName.clear();
+        byImageFileName.clear();
+        unindexedLines = 0;
+        Entry[] entries = new Entry[lines.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry(lines.get(i), i * SPACING);
+            if (i > 0) {
+                index(entries[i]);
+            }
+        }
+        positions = new EntryList(entries);
+        indexedLines = lines;
+        indexedVersion = lines.version();
+        return true;
+    }
+
+    private boolean isCurrent(CSVLineList lines) {
+        return lines == indexedLines && lines.version() == indexedVersion;
+    }
+
+    private void index(Entry entry) {
+        if (!(entry.line instanceof ImageAndPersonLine)) {
+            unindexedLines++;
+            return;
+        }
+        ImageAndPersonLine line = (ImageAndPersonLine) entry.line;
+        bucket(byFullName, line.personFullName()).add(entry);
+        bucket(byLastName, line.personLastName()).add(entry);
+        bucket(byImageFileName, line.imageFileName()).add(entry);
+    }
+
+    private Bucket bucket(HashMap<String, Bucket> map, String key) {
+        Bucket bucket = map.get(key);
+        if (bucket == null) {
+            bucket = new Bucket(key, ordering);
+            map.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Inserts lines into the list, and adds them to the index.
+     * @param lines - the lines of the CSV object.
+     * @param index - the index at which to insert the first line.
+     * @param newLines - the lines to insert, in order.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * greater than the number of lines.
+     */
+    void insert(CSVLineList lines, int index, Collection<? extends CSVLine> newLines) {
+        boolean current = isCurrent(lines);
+        int count = newLines.size();
+        lines.addAll(index, newLines);
+        if (!current || index == 0 || count == 0) {
+            // The index is built again when it is next used.
+            return;
+        }
+        long previous = positions.get(index - 1).label;
+        if (index < positions.size() && positions.get(index).label - previous <= count) {
+            relabel(index, count);
+            previous = positions.get(index - 1).label;
+        }
+        long next = index < positions.size() ? positions.get(index).label : previous + (count + 1) * SPACING;
+        long step = (next - previous) / (count + 1);
+        Entry[] entries = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new Entry(lines.get(index + i), previous + (i + 1) * step);
+            index(entries[i]);
+        }
+        positions.insert(index, entries);
+        indexedVersion = lines.version();
+    }
+
+    // Labels every line again, leaving room for count lines at index.
+    private void relabel(int index, int count) {
+        for (int i = 0; i < positions.size(); i++) {
+            positions.get(i).label = (i < index ? i : i + count) * SPACING;
+        }
+    }
+
+    /**
+     * Returns a group for each person, in the order in which they first
+     * appear, for sorting. The groups are numbered in that order, rather than
+     * by the index of their first line. update must be called first.
+     * @return the groups, or null if some of the lines are not
+     * ImageAndPersonLines.
+     */
+    PersonGroup[] groups() {
+        if (unindexedLines > 0) {
+            return null;
+        }
+        Bucket[] people = byFullName.values().toArray(new Bucket[0]);
+        for (Bucket person : people) {
+            person.ordered(ordering);
+        }
+        Arrays.sort(people, Comparator.comparingLong(person -> person.entries[0].label));
+        PersonGroup[] groups = new PersonGroup[people.length];
+        for (int i = 0; i < people.length; i++) {
+            groups[i] = new PersonGroup(people[i].key, i + 1);
+            for (int j = 0; j < people[i].count; j++) {
+                groups[i].add((ImageAndPersonLine) people[i].entries[j].line);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Records that the lines have been sorted into the order of the groups
+     * returned by groups, after the header line.
+     * @param lines - the sorted lines of the CSV object.
+     * @param groups - the groups, in their sorted order.
+     */
+    void sorted(CSVLineList lines, PersonGroup[] groups) {
+        Entry[] entries = new Entry[lines.size()];
+        entries[0] = positions.get(0);
+        int next = 1;
+        for (PersonGroup group : groups) {
+            Bucket person = byFullName.get(group.fullName());
+            System.arraycopy(person.entries, 0, entries, next, person.count);
+            next += person.count;
+        }
+        for (int i = 0; i < entries.length; i++) {
+            entries[i].label = i * SPACING;
+        }
+        positions = new EntryList(entries);
+        ordering++;
+        indexedLines = lines;
+        indexedVersion = lines.version();
+    }
+
+    /**
+     * Returns the lines for a person, in list order. update must be called
+     * first.
+     * @param fullName - the person's full name.
+     * @return the lines, which may be empty.
+     */
+    List<ImageAndPersonLine> linesForPerson(String fullName) {
+        return lines(byFullName.get(fullName));
+    }
+
+    /**
+     * Returns the lines whose last name field is the given name, in list
+     * order. update must be called first.
+     * @param lastName - the last name.
+     * @return the lines, which may be empty.
+     */
+    List<ImageAndPersonLine> linesForLastName(String lastName) {
+        return lines(byLastName.get(lastName));
+    }
+
+    /**
+     * Returns the first line for an image. update must be called first.
+     * @param imageFileName - the image file name.
+     * @return the line, or null if there is no line for the image.
+     */
+    ImageAndPersonLine lineForImage(String imageFileName) {
+        Bucket image = byImageFileName.get(imageFileName);
+        return image == null ? null : (ImageAndPersonLine) image.ordered(ordering)[0].line;
+    }
+
+    private List<ImageAndPersonLine> lines(Bucket bucket) {
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        Entry[] entries = bucket.ordered(ordering);
+        List<ImageAndPersonLine> lines = new ArrayList<>(bucket.count);
+        for (int i = 0; i < bucket.count; i++) {
+            lines.add((ImageAndPersonLine) entries[i].line);
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+    // The entries in list order, in a gap buffer like CSVLineList's, so that
+    // inserting near the previous insertion is cheap.
+    private static final class EntryList {
+        private Entry[] buffer;
+        private int gapStart;
+        private int gapEnd;
+
+        EntryList(Entry[] entries) {
+            buffer = entries;
+            gapStart = entries.length;
+            gapEnd = entries.length;
+        }
+
+        int size() {
+            return buffer.length - (gapEnd - gapStart);
+        }
+
+        Entry get(int index) {
+            return buffer[index < gapStart ? index : index + (gapEnd - gapStart)];
+        }
+
+        void insert(int index, Entry[] entries) {
+            if (gapEnd - gapStart < entries.length) {
+                int size = size();
+                Entry[] newBuffer = new Entry[Math.max(Math.max(buffer.length * 2, size + entries.length), 16)];
+                moveGap(size);
+                System.arraycopy(buffer, 0, newBuffer, 0, size);
+                buffer = newBuffer;
+                gapStart = size;
+                gapEnd = newBuffer.length;
+            }
+            moveGap(index);
+            System.arraycopy(entries, 0, buffer, gapStart, entries.length);
+            gapStart += entries.length;
+        }
+
+        private void moveGap(int index) {
+            if (index < gapStart) {
+                int count = gapStart - index;
+                System.arraycopy(buffer, index, buffer, gapEnd - count, count);
+                gapStart = index;
+                gapEnd -= count;
+            } else if (index > gapStart) {
+                int count = index - gapStart;
+                System.arraycopy(buffer, gapEnd, buffer, gapStart, count);
+                gapStart = index;
+                gapEnd += count;
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class CSVIndexTests {
+    private static final String[] PEOPLE = {
+        "John Doe", "Jane Smith", "Fred Flintstone", "Wilma Flintstone", "Barney Rubble", "Zoë Adams", "émile Zola"
+    };
+
+    private static ImageAndPersonLine line(int image, String fullName) {
+        int space = fullName.indexOf(' ');
+        return new ImageAndPersonLine(new String[] {"image" + image + ".jpg", "Title " + image, fullName,
+            fullName.substring(0, space), fullName.substring(space + 1)});
+    }
+
+    private static CSV load(boolean indexed) {
+        return new CSV.Builder().fileName("testing/data/sort.csv").indexed(indexed).build();
+    }
+
+    // Lines do not override equals, and the two CSV objects load different
+    // line objects, so lines are compared by their text.
+    private static String text(List<? extends CSVLine> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (CSVLine line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Checks the lookups of an indexed CSV object against the same lookups on
+    // one that is not indexed, which read every line.
+    private static void assertSameLookups(CSV expected, CSV indexed) {
+        assertEquals(expected.toString(), indexed.toString());
+        for (String person : PEOPLE) {
+            assertEquals(text(expected.linesForPerson(person)), text(indexed.linesForPerson(person)), person);
+            String lastName = person.substring(person.indexOf(' ') + 1);
+            assertEquals(text(expected.linesForLastName(lastName)), text(indexed.linesForLastName(lastName)),
+                lastName);
+        }
+        for (int i = 1; i < expected.lines.size(); i++) {
+            String image = expected.lines.get(i).field(0);
+            assertEquals(String.valueOf(expected.lineForImage(image)), String.valueOf(indexed.lineForImage(image)),
+                image);
+        }
+    }
+
+    @Test
+    void testLookups() {
+        CSV csv = load(true);
+        List<ImageAndPersonLine> fred = csv.linesForPerson("Fred Flintstone");
+        assertEquals(2, fred.size());
+        assertEquals("DSC-0424.jpg", fred.get(0).imageFileName());
+        assertEquals("IMG-276.jpg", fred.get(1).imageFileName());
+        assertEquals(3, csv.linesForLastName("Flintstone").size());
+        assertEquals("Wifey", csv.lineForImage("IMG-842.jpg").imageTitle());
+        assertNull(csv.lineForImage("missing.jpg"));
+        assertNull(csv.lineForImage("Filename"));
+        assertEquals(List.of(), csv.linesForPerson("Nobody"));
+        assertThrows(UnsupportedOperationException.class, () -> fred.remove(0));
+        assertSameLookups(load(false), csv);
+    }
+
+    @Test
+    void testInsertsKeepPersonOrder() {
+        CSV csv = load(true);
+        csv.linesForPerson("Fred Flintstone"); // builds the index
+        ImageAndPersonLine first = line(100, "Fred Flintstone");
+        ImageAndPersonLine middle = line(101, "Fred Flintstone");
+        ImageAndPersonLine last = line(102, "Fred Flintstone");
+        csv.insertAt(1, first);
+        csv.insertAt(5, middle);
+        csv.append(last);
+        assertEquals(List.of(first, (ImageAndPersonLine) csv.lines.get(4), middle,
+                (ImageAndPersonLine) csv.lines.get(7), last),
+            csv.linesForPerson("Fred Flintstone"));
+        assertSame(middle, csv.lineForImage("image101.jpg"));
+
+        // Fred Flintstone now appears first.
+        csv.sort(sortOrder.NONE);
+        assertSame(first, csv.lines.get(1));
+        assertSame(middle, csv.lines.get(3));
+        assertSame(last, csv.lines.get(5));
+        assertEquals("John Doe", ((ImageAndPersonLine) csv.lines.get(6)).personFullName());
+    }
+
+    // Applies the same random inserts and sorts to an indexed CSV object and
+    // one that is not indexed.
+    @Test
+    void testRandomEditsMatchUnindexed() {
+        Random random = new Random(16);
+        CSV expected = load(false);
+        CSV indexed = load(true);
+        sortOrder[] orders = sortOrder.values();
+        int image = 1000;
+        for (int step = 0; step < 400; step++) {
+            int choice = random.nextInt(10);
+            if (choice == 0) {
+                sortOrder order = orders[random.nextInt(orders.length)];
+                expected.sort(order, Locale.ROOT);
+                indexed.sort(order, Locale.ROOT);
+            } else if (choice == 1) {
+                List<CSVLine> newLines = new ArrayList<>();
+                for (int i = random.nextInt(4); i >= 0; i--) {
+                    newLines.add(line(image++, PEOPLE[random.nextInt(PEOPLE.length)]));
+                }
+                int index = 1 + random.nextInt(expected.lines.size());
+                expected.insertAll(index, newLines);
+                indexed.insertAll(index, newLines);
+            } else {
+                ImageAndPersonLine newLine = line(image++, PEOPLE[random.nextInt(PEOPLE.length)]);
+                int index = 1 + random.nextInt(expected.lines.size());
+                expected.insertAt(index, newLine);
+                indexed.insertAt(index, newLine);
+            }
+            if (step % 20 == 0) {
+                assertSameLookups(expected, indexed);
+            }
+        }
+        assertSameLookups(expected, indexed);
+    }
+
+    // Inserting many lines at the same place uses up the room between the
+    // labels, so the lines are labelled again.
+    @Test
+    void testManyInsertsAtSamePlace() {
+        CSV expected = load(false);
+        CSV indexed = load(true);
+        indexed.linesForPerson("John Doe");
+        for (int i = 0; i < 100; i++) {
+            ImageAndPersonLine newLine = line(i, PEOPLE[i % PEOPLE.length]);
+            expected.insertAt(2, newLine);
+            indexed.insertAt(2, newLine);
+        }
+        // more lines than there is room for between two labels
+        List<CSVLine> many = Collections.nCopies(1_100_000, line(-2, "John Doe"));
+        expected.insertAll(3, many);
+        indexed.insertAll(3, many);
+        ImageAndPersonLine between = line(-1, "John Doe");
+        expected.insertAt(3, between);
+        indexed.insertAt(3, between);
+        assertEquals(text(expected.linesForPerson("John Doe")), text(indexed.linesForPerson("John Doe")));
+        expected.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        indexed.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        assertEquals(expected.toString(), indexed.toString());
+    }
+
+    @Test
+    void testIndexIsOnlyBuiltWhenLinesChangeDirectly() {
+        Metrics metrics = new Metrics();
+        CSV csv = new CSV.Builder().fileName("testing/data/sort.csv").indexed(true).metrics(metrics).build();
+        assertNull(metrics.get("index.build.time"));
+        csv.insertAt(2, line(1, "Jane Smith"));
+        assertNull(metrics.get("index.build.time"));
+        assertEquals(2, csv.linesForPerson("Jane Smith").size());
+        csv.append(line(2, "Jane Smith"));
+        csv.sort(sortOrder.COLLATED_BY_FULL_NAME);
+        csv.insertAt(3, line(3, "Jane Smith"));
+        assertEquals(4, csv.linesForPerson("Jane Smith").size());
+        assertEquals(1, metrics.get("index.build.time").count());
+        assertNull(metrics.get("group.time"));
+
+        csv.lines.remove(csv.lines.indexOf(csv.lineForImage("image3.jpg")));
+        assertEquals(3, csv.linesForPerson("Jane Smith").size());
+        csv.lines.set(1, line(4, "Zoë Adams"));
+        assertEquals(1, csv.linesForPerson("Zoë Adams").size());
+        csv.insertAt(0, line(5, "Zoë Adams"));
+        assertEquals(1, csv.linesForPerson("Zoë Adams").size());
+        csv.lines = new CSVLineList(csv.lines.toArray());
+        assertEquals(1, csv.linesForLastName("Adams").size());
+        assertEquals(5, metrics.get("index.build.time").count());
+    }
+
+    @Test
+    void testSortWithLinesThatCannotBeIndexed() {
+        CSV csv = load(true);
+        csv.append(new CSVLine(new String[] {"not", "a", "person"}));
+        assertEquals(2, csv.linesForPerson("Fred Flintstone").size());
+        assertThrows(ClassCastException.class, () -> csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME));
+    }
+
+    @Test
+    void testEmptyCSV() {
+        CSV csv = new CSV.Builder().fileName("testing/data/empty.csv").indexed(true).build();
+        assertEquals(Collections.emptyList(), csv.linesForPerson("John Doe"));
+        csv.sort(sortOrder.NONE);
+        csv.append(line(1, "John Doe"));
+        csv.append(line(2, "John Doe"));
+        assertEquals(1, csv.linesForPerson("John Doe").size());
+        assertNull(csv.lineForImage("image1.jpg"));
+    }
+}
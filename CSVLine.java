@@ -1,14 +1,46 @@
+import java.util.Arrays;
+
 /**
  * The CSVLine class stores each field of a CSV line.
+ *
+ * Fields may be added to a CSVLine after it has been created. The field array
+ * grows by doubling, so adding fields one at a time does not copy every field
+ * each time. To assemble a line from many fields without any spare capacity,
+ * use the Builder class:
+ * ```java
+ * CSVLine line = new CSVLine.Builder(8)
+ *     .fields(existingLine)
+ *     .field("Camera Club")
+ *     .field("Nature")
+ *     .build();
+ * ```
  */
 public class CSVLine {
+    private static final String[] NO_FIELDS = new String[0];
+
     private String[] fields;
+    private int count;
 
     /**
      * Constructor - creates an empty CSVLine object.
      */
     public CSVLine() {
-        fields = new String[0];
+        fields = NO_FIELDS;
+        count = 0;
+    }
+
+    /**
+     * Constructor - creates an empty CSVLine object with room for the
+     * specified number of fields before the field array has to grow.
+     * @param capacity - the initial number of fields the line can hold.
+     * @throws IllegalArgumentException if capacity is negative.
+     */
+    public CSVLine(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        fields = capacity == 0 ? NO_FIELDS : new String[capacity];
+        count = 0;
     }
 
     /**
@@ -17,6 +49,7 @@ public class CSVLine {
      */
     public CSVLine(String[] csvFields) {
         fields = csvFields;
+        count = csvFields.length;
     }
 
     /**
@@ -25,7 +58,7 @@ public class CSVLine {
      * CSVLine object.
      */
     public int length() {
-        return fields.length;
+        return count;
     }
 
     /**
@@ -36,20 +69,32 @@ public class CSVLine {
      * greater than the number of fields.
      */
     public String field(int index) {
+        if (index >= count) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
+        }
         return fields[index];
     }
 
+    /**
+     * Returns the characters of the field specified by the argument. Subclasses
+     * that keep their fields in a shared buffer return a view of the buffer,
+     * so that fields can be compared without creating Strings.
+     * @param index - the index of the field to return
+     * @return the characters of the field specified by the index argument
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * greater than the number of fields.
+     */
+    public CharSequence fieldChars(int index) {
+        return field(index);
+    }
+
     /**
      * Adds a field to the end of the CSVLine.
      * @param field
      */
     public void addField(String field) {
-        String[] newFields = new String[fields.length + 1];
-        for (int i = 0; i < fields.length; i++) {
-            newFields[i] = fields[i];
-        }
-        newFields[fields.length] = field;
-        fields = newFields;
+        ensureCapacity(count + 1);
+        fields[count++] = field;
     }
 
     /**
@@ -57,8 +102,150 @@ public class CSVLine {
      * @param newFields - the fields to add
      */
     public void addFields(String[] newFields) {
-        for (String field : newFields) {
-            addField(field);
+        ensureCapacity(count + newFields.length);
+        System.arraycopy(newFields, 0, fields, count, newFields.length);
+        count += newFields.length;
+    }
+
+    /**
+     * Makes sure that the line can hold at least the specified number of fields
+     * without the field array having to grow again.
+     * @param capacity - the number of fields the line must be able to hold.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(capacity, Math.max(4, fields.length * 2)));
+        }
+    }
+
+    /**
+     * Shrinks the field array so that it holds exactly the fields in the line.
+     */
+    public void trimToSize() {
+        if (count < fields.length) {
+            fields = count == 0 ? NO_FIELDS : Arrays.copyOf(fields, count);
+        }
+    }
+
+    /**
+     * Returns a field as it must be written in a CSV file. If the field contains
+     * a comma, quote or line break, it is enclosed in quotes and each quote in it
+     * is doubled. Otherwise, the field is returned unchanged.
+     * @param field - the value of the field.
+     * @return the field, quoted if necessary.
+     */
+    public static String quote(String field) {
+        if (!needsQuotes(field)) {
+            return field;
+        }
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Returns true if a field must be enclosed in quotes when it is written in
+     * a CSV file, because it contains a comma, quote or line break.
+     * @param field - the value of the field.
+     * @return true if the field must be quoted.
+     */
+    static boolean needsQuotes(CharSequence field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The Builder class assembles the fields of a CSVLine, and then creates
+     * the CSVLine with a field array that is exactly the right size.
+     */
+    public static class Builder {
+        private String[] fields;
+        private int count = 0;
+
+        /**
+         * Constructor - creates a Builder with room for eight fields.
+         */
+        public Builder() {
+            this(8);
+        }
+
+        /**
+         * Constructor - creates a Builder with room for the specified number of
+         * fields before it has to grow.
+         * @param capacity - the expected number of fields.
+         * @throws IllegalArgumentException if capacity is negative.
+         */
+        public Builder(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("capacity must not be negative");
+            }
+            fields = new String[capacity];
+        }
+
+        /**
+         * Adds a field to the end of the line.
+         * @param field - the field to add.
+         * @return returns the Builder object.
+         */
+        public Builder field(String field) {
+            ensureCapacity(count + 1);
+            fields[count++] = field;
+            return this;
+        }
+
+        /**
+         * Adds multiple fields to the end of the line.
+         * @param newFields - the fields to add.
+         * @return returns the Builder object.
+         */
+        public Builder fields(String... newFields) {
+            ensureCapacity(count + newFields.length);
+            System.arraycopy(newFields, 0, fields, count, newFields.length);
+            count += newFields.length;
+            return this;
+        }
+
+        /**
+         * Adds all of the fields of an existing line to the end of the line.
+         * @param line - the line whose fields are added.
+         * @return returns the Builder object.
+         */
+        public Builder fields(CSVLine line) {
+            int length = line.length();
+            ensureCapacity(count + length);
+            for (int i = 0; i < length; i++) {
+                fields[count++] = line.field(i);
+            }
+            return this;
+        }
+
+        /**
+         * Returns the number of fields added so far.
+         * @return the number of fields added so far.
+         */
+        public int length() {
+            return count;
+        }
+
+        /**
+         * Builds the CSVLine. The Builder is emptied, so it can be used to
+         * build another line.
+         * @return the CSVLine containing the fields that were added.
+         */
+        public CSVLine build() {
+            String[] lineFields = count == fields.length ? fields : Arrays.copyOf(fields, count);
+            fields = new String[Math.max(count, 1)];
+            count = 0;
+            return new CSVLine(lineFields);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > fields.length) {
+                fields = Arrays.copyOf(fields, Math.max(capacity, Math.max(4, fields.length * 2)));
+            }
         }
     }
 }
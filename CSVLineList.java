@@ -0,0 +1,260 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * The CSVLineList class is a growable list of CSVLine objects.
+ *
+ * The lines are stored in a gap buffer: an array with an unused gap at the
+ * position of the most recent insertion. Inserting at the gap, such as when
+ * appending lines one at a time or inserting several lines at the same place,
+ * takes constant time. Moving the gap only shifts the lines between the old and
+ * new gap positions, and when the gap is used up, the capacity is doubled.
+ */
+public class CSVLineList extends AbstractList<CSVLine> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private CSVLine[] buffer;
+    private int gapStart;
+    private int gapEnd;
+    // the number of lines that have been replaced by set, which does not
+    // change modCount
+    private int replacements = 0;
+
+    /**
+     * Constructor - creates an empty list with the default capacity.
+     */
+    public CSVLineList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor - creates an empty list.
+     * @param capacity - the number of lines the list can hold before it grows.
+     * @throws IllegalArgumentException if capacity is negative.
+     */
+    public CSVLineList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        buffer = new CSVLine[capacity];
+        gapStart = 0;
+        gapEnd = capacity;
+    }
+
+    /**
+     * Constructor - creates a list that takes ownership of the given array.
+     * The array must not be modified by the caller afterwards.
+     * @param lines - the initial lines.
+     */
+    public CSVLineList(CSVLine[] lines) {
+        buffer = lines;
+        gapStart = lines.length;
+        gapEnd = lines.length;
+    }
+
+    /**
+     * Returns the number of lines in the list.
+     * @return the number of lines in the list.
+     */
+    @Override
+    public int size() {
+        return buffer.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * Returns the line at the specified index.
+     * @param index - the index of the line to return.
+     * @return the line at the specified index.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * not less than the number of lines.
+     */
+    @Override
+    public CSVLine get(int index) {
+        checkIndex(index);
+        return buffer[physicalIndex(index)];
+    }
+
+    /**
+     * Replaces the line at the specified index.
+     * @param index - the index of the line to replace.
+     * @param line - the new line.
+     * @return the line that was replaced.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * not less than the number of lines.
+     */
+    @Override
+    public CSVLine set(int index, CSVLine line) {
+        checkIndex(index);
+        int i = physicalIndex(index);
+        CSVLine old = buffer[i];
+        buffer[i] = line;
+        replacements++;
+        return old;
+    }
+
+    /**
+     * Inserts a line at the specified index.
+     * @param index - the index at which to insert the line.
+     * @param line - the line to insert.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * greater than the number of lines.
+     */
+    @Override
+    public void add(int index, CSVLine line) {
+        checkPositionIndex(index);
+        openGap(index, 1);
+        buffer[gapStart++] = line;
+        modCount++;
+    }
+
+    /**
+     * Inserts all of the lines in a collection at the specified index. The
+     * existing lines are shifted at most once, however many lines are inserted.
+     * @param index - the index at which to insert the first line.
+     * @param lines - the lines to insert.
+     * @return true if the list changed.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * greater than the number of lines.
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends CSVLine> lines) {
+        checkPositionIndex(index);
+        Object[] newLines = lines.toArray();
+        if (newLines.length == 0) {
+            return false;
+        }
+        openGap(index, newLines.length);
+        System.arraycopy(newLines, 0, buffer, gapStart, newLines.length);
+        gapStart += newLines.length;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Appends all of the lines in a collection to the end of the list.
+     * @param lines - the lines to append.
+     * @return true if the list changed.
+     */
+    @Override
+    public boolean addAll(Collection<? extends CSVLine> lines) {
+        return addAll(size(), lines);
+    }
+
+    /**
+     * Removes the line at the specified index.
+     * @param index - the index of the line to remove.
+     * @return the line that was removed.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * not less than the number of lines.
+     */
+    @Override
+    public CSVLine remove(int index) {
+        checkIndex(index);
+        moveGap(index);
+        CSVLine line = buffer[gapEnd];
+        buffer[gapEnd++] = null;
+        modCount++;
+        return line;
+    }
+
+    /**
+     * Removes all lines from the list. The capacity is not changed.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(buffer, null);
+        gapStart = 0;
+        gapEnd = buffer.length;
+        modCount++;
+    }
+
+    /**
+     * Returns the lines in an array that is exactly the size of the list.
+     * @return the lines in list order.
+     */
+    @Override
+    public CSVLine[] toArray() {
+        CSVLine[] lines = new CSVLine[size()];
+        System.arraycopy(buffer, 0, lines, 0, gapStart);
+        System.arraycopy(buffer, gapEnd, lines, gapStart, buffer.length - gapEnd);
+        return lines;
+    }
+
+    /**
+     * Returns a number that changes whenever the list is changed, including
+     * when a line is replaced. This is used to detect that the list has been
+     * changed since an index of it was built.
+     * @return the version of the list.
+     */
+    int version() {
+        return modCount + replacements;
+    }
+
+    private int physicalIndex(int index) {
+        return index < gapStart ? index : index + (gapEnd - gapStart);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+    }
+
+    private void checkPositionIndex(int index) {
+        if (index < 0 || index > size()) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+    }
+
+    // Moves the gap to index and makes sure that it can hold at least count lines.
+    private void openGap(int index, int count) {
+        if (gapEnd - gapStart < count) {
+            grow(index, count);
+        } else {
+            moveGap(index);
+        }
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int count = gapStart - index;
+            System.arraycopy(buffer, index, buffer, gapEnd - count, count);
+            Arrays.fill(buffer, index, Math.min(gapStart, gapEnd - count), null);
+            gapStart = index;
+            gapEnd -= count;
+        } else if (index > gapStart) {
+            int count = index - gapStart;
+            System.arraycopy(buffer, gapEnd, buffer, gapStart, count);
+            Arrays.fill(buffer, Math.max(gapEnd, index), gapEnd + count, null);
+            gapStart = index;
+            gapEnd += count;
+        }
+    }
+
+    // Reallocates the buffer with at least double the capacity, placing the gap
+    // at index, so the lines are only copied once.
+    private void grow(int index, int count) {
+        int size = size();
+        long wanted = Math.max((long)buffer.length * 2, (long)size + count);
+        int capacity = (int)Math.min(Math.max(wanted, DEFAULT_CAPACITY), Integer.MAX_VALUE - 8);
+        if (capacity - size < count) {
+            throw new OutOfMemoryError("CSVLineList is too large");
+        }
+        CSVLine[] newBuffer = new CSVLine[capacity];
+        int tail = size - index;
+        if (index <= gapStart) {
+            System.arraycopy(buffer, 0, newBuffer, 0, index);
+            System.arraycopy(buffer, index, newBuffer, capacity - tail, gapStart - index);
+            System.arraycopy(buffer, gapEnd, newBuffer, capacity - (buffer.length - gapEnd), buffer.length - gapEnd);
+        } else {
+            System.arraycopy(buffer, 0, newBuffer, 0, gapStart);
+            System.arraycopy(buffer, gapEnd, newBuffer, gapStart, index - gapStart);
+            System.arraycopy(buffer, physicalIndex(index), newBuffer, capacity - tail, tail);
+        }
+        buffer = newBuffer;
+        gapStart = index;
+        gapEnd = capacity - tail;
+    }
+}
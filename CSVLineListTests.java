@@ -0,0 +1,110 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CSVLineListTests {
+    private static CSVLine line(int value) {
+        return new CSVLine(new String[] {Integer.toString(value)});
+    }
+
+    private static void assertSameLines(List<CSVLine> expected, CSVLineList actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+        assertArrayEquals(expected.toArray(), actual.toArray());
+    }
+
+    @Test
+    void testEmpty() {
+        CSVLineList list = new CSVLineList();
+        assertEquals(0, list.size());
+        assertEquals(0, list.toArray().length);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> list.get(0));
+    }
+
+    @Test
+    void testAppend() {
+        CSVLineList list = new CSVLineList(0);
+        List<CSVLine> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            CSVLine line = line(i);
+            list.add(line);
+            expected.add(line);
+        }
+        assertSameLines(expected, list);
+    }
+
+    @Test
+    void testArrayConstructor() {
+        CSVLine[] lines = {line(0), line(1), line(2)};
+        CSVLineList list = new CSVLineList(lines);
+        list.add(1, line(3));
+        assertEquals(4, list.size());
+        assertEquals("3", list.get(1).field(0));
+        assertEquals("1", list.get(2).field(0));
+    }
+
+    @Test
+    void testRandomInsertsAndRemoves() {
+        Random random = new Random(42);
+        CSVLineList list = new CSVLineList(2);
+        List<CSVLine> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 6 || expected.isEmpty()) {
+                int index = random.nextInt(expected.size() + 1);
+                CSVLine line = line(i);
+                list.add(index, line);
+                expected.add(index, line);
+            } else if (operation < 8) {
+                int index = random.nextInt(expected.size() + 1);
+                List<CSVLine> lines = List.of(line(i), line(-i), line(i + 1));
+                list.addAll(index, lines);
+                expected.addAll(index, lines);
+            } else if (operation < 9) {
+                int index = random.nextInt(expected.size());
+                assertSame(expected.remove(index), list.remove(index));
+            } else {
+                int index = random.nextInt(expected.size());
+                CSVLine line = line(-i);
+                assertSame(expected.set(index, line), list.set(index, line));
+            }
+        }
+        assertSameLines(expected, list);
+    }
+
+    @Test
+    void testAddAllEmpty() {
+        CSVLineList list = new CSVLineList();
+        assertFalse(list.addAll(0, List.of()));
+        assertTrue(list.addAll(List.of(line(1))));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    void testClear() {
+        CSVLineList list = new CSVLineList();
+        list.add(line(1));
+        list.add(line(2));
+        list.clear();
+        assertEquals(0, list.size());
+        list.add(line(3));
+        assertEquals("3", list.get(0).field(0));
+    }
+
+    @Test
+    void testInvalidIndex() {
+        CSVLineList list = new CSVLineList();
+        list.add(line(1));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> list.add(2, line(2)));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> list.add(-1, line(2)));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> list.get(1));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> list.set(-1, line(2)));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> list.remove(1));
+        assertThrows(IllegalArgumentException.class, () -> new CSVLineList(-1));
+    }
+}
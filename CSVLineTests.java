@@ -50,4 +50,74 @@ class CSVLineTests {
         assertEquals("b", csvL.field(1));
         assertEquals("c", csvL.field(2)); 
     } 
+
+    @Test
+    void capacityConstructor() {
+        CSVLine csvL = new CSVLine(2);
+        assertEquals(0, csvL.length());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            csvL.field(0));
+        for (int i = 0; i < 100; i++) {
+            csvL.addField(Integer.toString(i));
+        }
+        assertEquals(100, csvL.length());
+        assertEquals("0", csvL.field(0));
+        assertEquals("99", csvL.field(99));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            csvL.field(100));
+        assertThrows(IllegalArgumentException.class, () ->
+            new CSVLine(-1));
+    }
+
+    @Test
+    void addFieldsToExistingFields() {
+        String[] fields = {"a", "b"};
+        CSVLine csvL = new CSVLine(fields);
+        csvL.addFields(new String[] {"c", "d", "e"});
+        csvL.addField("f");
+        assertEquals(6, csvL.length());
+        assertEquals("a", csvL.field(0));
+        assertEquals("e", csvL.field(4));
+        assertEquals("f", csvL.field(5));
+        assertEquals("a", fields[0]);
+    }
+
+    @Test
+    void trimToSize() {
+        CSVLine csvL = new CSVLine(10);
+        csvL.addField("a");
+        csvL.ensureCapacity(20);
+        csvL.trimToSize();
+        assertEquals(1, csvL.length());
+        assertEquals("a", csvL.field(0));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            csvL.field(1));
+        csvL.addField("b");
+        assertEquals("b", csvL.field(1));
+    }
+
+    @Test
+    void builder() {
+        CSVLine original = new CSVLine(new String[] {"image.jpg", "title"});
+        CSVLine.Builder builder = new CSVLine.Builder(1)
+            .fields(original)
+            .field("club")
+            .fields("category", "score");
+        assertEquals(5, builder.length());
+        CSVLine csvL = builder.build();
+        assertEquals(5, csvL.length());
+        assertEquals("image.jpg", csvL.field(0));
+        assertEquals("title", csvL.field(1));
+        assertEquals("club", csvL.field(2));
+        assertEquals("category", csvL.field(3));
+        assertEquals("score", csvL.field(4));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            csvL.field(5));
+
+        assertEquals(0, builder.length());
+        CSVLine second = builder.field("x").build();
+        assertEquals(1, second.length());
+        assertEquals("x", second.field(0));
+        assertEquals("club", csvL.field(2));
+    }
 }
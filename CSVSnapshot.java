@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The CSVSnapshot class saves the lines loaded from a CSV file in a compact
+ * binary file next to it, so that the CSV file can be loaded again without
+ * parsing it.
+ *
+ * A snapshot is used only while it matches its CSV file. It records the size,
+ * last modified time and SHA-256 hash of the CSV file. If the size and time
+ * are unchanged, the snapshot is used straight away. If only the time has
+ * changed, such as when the file has been copied, the CSV file is hashed, and
+ * the snapshot is used if the hash is unchanged. A snapshot that is stale, was
+ * made by another version of the format or with another charset, or is damaged
+ * is ignored.
+ *
+ * The snapshot file is the CSV file's name followed by ".snapshot", and is
+ * read with a single memory mapping. All numbers are big-endian. Version 1 of
+ * the format is:
+ * ```
+ * int     magic, "FSBS"
+ * int     format version, 1
+ * long    size of the CSV file
+ * long    last modified time of the CSV file, in milliseconds
+ * byte[32] SHA-256 hash of the CSV file
+ * short   length of the charset name, then the name in ASCII
+ * long    number of malformed rows, long number of empty lines
+ * int     number of distinct strings, int number of lines
+ * each string: int length in bytes, then the string in UTF-8
+ * each line: five int ids of strings, one for each field
+ * int     CRC-32C of everything before it
+ * ```
+ * Each distinct field value is stored once, so a person's names are stored
+ * once however many images they submit, and the loaded lines share them.
+ */
+final class CSVSnapshot {
+    /**
+     * The version of the format. It changes whenever the format does, so that
+     * snapshots written in an older format are ignored.
+     */
+    static final int VERSION = 1;
+
+    private static final int MAGIC = 0x46534253;
+    private static final int FIELDS = 5;
+    private static final int HASH_LENGTH = 32;
+
+    // The lines read from a snapshot, and the parse counts of the CSV file.
+    // stale is true if the CSV file had to be hashed because its time had
+    // changed, so the snapshot should be written again.
+    record Contents(ImageAndPersonLine[] lines, long malformedRows, long emptyLines, long bytes, boolean stale) {
+    }
+
+    // The size and last modified time of a CSV file, and its hash once it has
+    // been computed.
+    static final class Source {
+        final Path path;
+        final long size;
+        final long lastModified;
+        private byte[] hash = null;
+
+        private Source(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        byte[] hash() throws IOException {
+            if (hash == null) {
+                hash = CSVSnapshot.hash(path);
+            }
+            return hash;
+        }
+
+        boolean sameFile(Source other) {
+            return size == other.size && lastModified == other.lastModified;
+        }
+    }
+
+    private CSVSnapshot() {
+    }
+
+    /**
+     * Returns the path of the snapshot of a CSV file.
+     * @param csvFile - the path of the CSV file.
+     * @return the path of the snapshot.
+     */
+    static Path pathFor(Path csvFile) {
+        return csvFile.resolveSibling(csvFile.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Reads the size and last modified time of a CSV file.
+     * @param csvFile - the path of the CSV file.
+     * @return the source.
+     * @throws IOException if the file does not exist or cannot be read.
+     */
+    static Source source(Path csvFile) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(csvFile, BasicFileAttributes.class);
+        return new Source(csvFile, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Reads the snapshot of a CSV file, if it matches the file.
+     * @param source - the CSV file.
+     * @param charset - the charset that the CSV file is read with.
+     * @return the contents of the snapshot, or null if there is no snapshot
+     * that matches the file.
+     */
+    static Contents read(Source source, Charset charset) {
+        Path path = pathFor(source.path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return read(buffer, source, charset, size);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+                | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            // A snapshot that cannot be read is ignored, and written again.
+            return null;
+        }
+    }
+
+    private static Contents read(ByteBuffer buffer, Source source, Charset charset, long size)
+            throws IOException {
+        if (size < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long sourceSize = buffer.getLong();
+        long sourceModified = buffer.getLong();
+        byte[] sourceHash = new byte[HASH_LENGTH];
+        buffer.get(sourceHash);
+        if (sourceSize != source.size) {
+            return null;
+        }
+        if (sourceModified != source.lastModified && !Arrays.equals(sourceHash, source.hash())) {
+            return null;
+        }
+        byte[] charsetName = new byte[buffer.getShort()];
+        buffer.get(charsetName);
+        if (!new String(charsetName, StandardCharsets.US_ASCII).equals(charset.name())) {
+            return null;
+        }
+        // Checked before anything else is decoded, so damage is never
+        // mistaken for lines.
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(0).limit((int) size - 4));
+        if ((int) crc.getValue() != buffer.getInt((int) size - 4)) {
+            return null;
+        }
+        long malformedRows = buffer.getLong();
+        long emptyLines = buffer.getLong();
+        String[] strings = new String[buffer.getInt()];
+        ImageAndPersonLine[] lines = new ImageAndPersonLine[buffer.getInt()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < lines.length; i++) {
+            String[] fields = new String[FIELDS];
+            for (int field = 0; field < FIELDS; field++) {
+                fields[field] = strings[buffer.getInt()];
+            }
+            lines[i] = new ImageAndPersonLine(fields);
+        }
+        return new Contents(lines, malformedRows, emptyLines, size, sourceModified != source.lastModified);
+    }
+
+    /**
+     * Writes the snapshot of a CSV file. The snapshot is written to a
+     * temporary file that then replaces the old snapshot, so a snapshot is
+     * never seen half written.
+     * @param source - the CSV file, as it was before it was loaded.
+     * @param charset - the charset that the CSV file was read with.
+     * @param lines - the lines loaded from the file.
+     * @param malformedRows - the number of malformed rows in the file.
+     * @param emptyLines - the number of empty lines in the file.
+     * @return the size of the snapshot in bytes.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    static long write(Source source, Charset charset, List<CSVLine> lines, long malformedRows, long emptyLines)
+            throws IOException {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] fieldIds = new int[lines.size() * FIELDS];
+        ByteArrayBuilder strings = new ByteArrayBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            CSVLine line = lines.get(i);
+            for (int field = 0; field < FIELDS; field++) {
+                String value = line.field(field);
+                Integer id = ids.get(value);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(value, id);
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    strings.putInt(bytes.length);
+                    strings.put(bytes, 0, bytes.length);
+                }
+                fieldIds[i * FIELDS + field] = id;
+            }
+        }
+
+        byte[] charsetName = charset.name().getBytes(StandardCharsets.US_ASCII);
+        ByteArrayBuilder header = new ByteArrayBuilder();
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(source.size);
+        header.putLong(source.lastModified);
+        header.put(source.hash(), 0, HASH_LENGTH);
+        header.putShort(charsetName.length);
+        header.put(charsetName, 0, charsetName.length);
+        header.putLong(malformedRows);
+        header.putLong(emptyLines);
+        header.putInt(ids.size());
+        header.putInt(lines.size());
+        ByteArrayBuilder rows = new ByteArrayBuilder();
+        for (int id : fieldIds) {
+            rows.putInt(id);
+        }
+        CRC32C crc = new CRC32C();
+        header.update(crc);
+        strings.update(crc);
+        rows.update(crc);
+        ByteArrayBuilder trailer = new ByteArrayBuilder();
+        trailer.putInt((int) crc.getValue());
+
+        Path path = pathFor(source.path);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                header.writeTo(out);
+                strings.writeTo(out);
+                rows.writeTo(out);
+                trailer.writeTo(out);
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return header.size() + strings.size() + rows.size() + trailer.size();
+    }
+
+    // Hashes a file through a memory mapping.
+    private static byte[] hash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java implementation must provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(Integer.MAX_VALUE, size - position)));
+            }
+        }
+        return digest.digest();
+    }
+
+    // A growable big-endian byte array.
+    private static final class ByteArrayBuilder {
+        private byte[] bytes = new byte[256];
+        private int size = 0;
+
+        private void ensure(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + count, bytes.length * 2));
+            }
+        }
+
+        void put(byte[] source, int offset, int count) {
+            ensure(count);
+            System.arraycopy(source, offset, bytes, size, count);
+            size += count;
+        }
+
+        void putShort(int value) {
+            ensure(2);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        void putInt(int value) {
+            putShort(value >>> 16);
+            putShort(value);
+        }
+
+        void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void update(CRC32C crc) {
+            crc.update(bytes, 0, size);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+public class CSVSnapshotTests {
+    @TempDir
+    Path tempDir;
+
+    private Path copy(String name) throws IOException {
+        return Files.copy(Paths.get("testing/data", name), tempDir.resolve(name));
+    }
+
+    private static CSV load(Path path, Metrics metrics) {
+        return load(path, StandardCharsets.UTF_8, metrics);
+    }
+
+    private static CSV load(Path path, Charset charset, Metrics metrics) {
+        return new CSV.Builder().fileName(path.toString()).charset(charset).snapshot(true).metrics(metrics).build();
+    }
+
+    private static boolean fromSnapshot(Metrics metrics) {
+        return metrics.get("load.snapshot.time") != null;
+    }
+
+    @Test
+    void testReload() throws IOException {
+        for (String name : new String[] {"sort.csv", "quoted.csv", "accents.csv", "bom.csv", "empty.csv"}) {
+            Path path = copy(name);
+            String expected = new CSV.Builder().fileName(path.toString()).build().toString();
+            Metrics metrics = new Metrics();
+            assertEquals(expected, load(path, metrics).toString(), name);
+            assertFalse(fromSnapshot(metrics), name);
+            assertEquals(Files.size(CSVSnapshot.pathFor(path)), metrics.get("load.snapshot.write.bytes").total());
+
+            metrics = new Metrics();
+            CSV csv = load(path, metrics);
+            assertEquals(expected, csv.toString(), name);
+            assertTrue(fromSnapshot(metrics), name);
+            assertNull(metrics.get("load.parse.time"), name);
+            assertNull(metrics.get("load.snapshot.write.time"), name);
+            assertEquals(csv.lines.size(), metrics.get("load.snapshot.rows").total());
+        }
+    }
+
+    @Test
+    void testSnapshotKeepsParseCounts() throws IOException {
+        Path path = tempDir.resolve("legacy.csv");
+        Files.writeString(path, "Filename,Title,Full Name,First Name,Last Name\n\n" +
+            "image1.jpg,Image, One,John Doe,John,Doe\n" +
+            "image2.jpg,Image Two,Jane Smith,Jane,Smith\n");
+        load(path, new Metrics());
+        Metrics metrics = new Metrics();
+        CSV csv = load(path, metrics);
+        assertTrue(fromSnapshot(metrics));
+        assertEquals(1, metrics.get("load.parse.malformedRows").total());
+        assertEquals(1, metrics.get("load.parse.emptyLines").total());
+        assertEquals("Image, One", ((ImageAndPersonLine) csv.lines.get(1)).imageTitle());
+    }
+
+    @Test
+    void testChangedFileIsParsedAgain() throws IOException {
+        Path path = copy("test.csv");
+        load(path, new Metrics());
+
+        // A new time alone does not make the snapshot stale, but the file is
+        // hashed, and the snapshot is written again with the new time.
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 60_000));
+        Metrics metrics = new Metrics();
+        load(path, metrics);
+        assertTrue(fromSnapshot(metrics));
+        assertNotNull(metrics.get("load.snapshot.write.time"));
+        metrics = new Metrics();
+        load(path, metrics);
+        assertTrue(fromSnapshot(metrics));
+        assertNull(metrics.get("load.snapshot.write.time"));
+
+        // different contents of the same size
+        String text = Files.readString(path).replace("Jane Smith", "Jane Smyth");
+        Files.writeString(path, text);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 60_000));
+        metrics = new Metrics();
+        CSV csv = load(path, metrics);
+        assertFalse(fromSnapshot(metrics));
+        assertEquals("Jane Smyth", ((ImageAndPersonLine) csv.lines.get(2)).personFullName());
+
+        Files.writeString(path, text.stripTrailing() + "\nimage3.jpg,Image Three,Fred Flintstone,Fred,Flintstone\n");
+        metrics = new Metrics();
+        assertEquals(4, load(path, metrics).lines.size());
+        assertFalse(fromSnapshot(metrics));
+        metrics = new Metrics();
+        assertEquals(4, load(path, metrics).lines.size());
+        assertTrue(fromSnapshot(metrics));
+    }
+
+    @Test
+    void testDamagedOrOtherSnapshotsAreIgnored() throws IOException {
+        Path path = copy("sort.csv");
+        String expected = new CSV.Builder().fileName(path.toString()).build().toString();
+        Path snapshot = CSVSnapshot.pathFor(path);
+        load(path, new Metrics());
+
+        // a damaged string
+        long size = Files.size(snapshot);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(size - 100);
+            int b = file.read();
+            file.seek(size - 100);
+            file.write(b ^ 0x20);
+        }
+        Metrics metrics = new Metrics();
+        assertEquals(expected, load(path, metrics).toString());
+        assertFalse(fromSnapshot(metrics));
+
+        // another version of the format
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(4);
+            file.writeInt(CSVSnapshot.VERSION + 1);
+        }
+        metrics = new Metrics();
+        assertEquals(expected, load(path, metrics).toString());
+        assertFalse(fromSnapshot(metrics));
+
+        // a truncated snapshot
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.setLength(30);
+        }
+        metrics = new Metrics();
+        assertEquals(expected, load(path, metrics).toString());
+        assertFalse(fromSnapshot(metrics));
+
+        // another charset
+        metrics = new Metrics();
+        load(path, StandardCharsets.ISO_8859_1, metrics);
+        assertFalse(fromSnapshot(metrics));
+        metrics = new Metrics();
+        load(path, StandardCharsets.ISO_8859_1, metrics);
+        assertTrue(fromSnapshot(metrics));
+    }
+
+    @Test
+    void testSnapshotWithOtherModes() throws IOException {
+        Path path = copy("sort.csv");
+        String expected = new CSV.Builder().fileName(path.toString()).build().toString();
+        new CSV.Builder().fileName(path.toString()).parallel(true).snapshot(true).build();
+        Metrics metrics = new Metrics();
+        CSV csv = new CSV.Builder().fileName(path.toString()).columnar(true).indexed(true).snapshot(true)
+            .metrics(metrics).build();
+        assertTrue(fromSnapshot(metrics));
+        assertEquals(expected, csv.toString());
+        assertTrue(csv.lines.get(1) instanceof ColumnarRows.Line);
+        assertEquals(2, csv.linesForPerson("Fred Flintstone").size());
+        csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        CSV parsed = new CSV.Builder().fileName(path.toString()).build();
+        parsed.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        assertEquals(parsed.toString(), csv.toString());
+    }
+}
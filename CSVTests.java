@@ -1,5 +1,15 @@
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 
 // Most of these tests read from a file named "testing/data/test.csv"
 // with the following content:
@@ -27,10 +37,10 @@ public class CSVTests {
             .build();
         CSVLine newLine = new ImageAndPersonLine("image4.jpg,\"Image, Two\",Bob Brown,Bob,Brown");
         csv.insertAt(1, newLine);
-        assertEquals(4, csv.lines.length);
-        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines[1]).imageFileName());
-        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines[2]).imageFileName());
-        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines[3]).imageFileName());
+        assertEquals(4, csv.lines.size());
+        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(3)).imageFileName());
     }
 
     @Test
@@ -40,10 +50,10 @@ public class CSVTests {
             .build();
         CSVLine newLine = new ImageAndPersonLine("image4.jpg,Image Four,Bob Brown,Bob,Brown");
         csv.insertAt(0, newLine);
-        assertEquals(4, csv.lines.length);
-        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines[0]).imageFileName());
-        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines[2]).imageFileName());
-        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines[3]).imageFileName());
+        assertEquals(4, csv.lines.size());
+        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines.get(0)).imageFileName());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(3)).imageFileName());
     }
 
     @Test
@@ -53,10 +63,10 @@ public class CSVTests {
             .build();
        CSVLine newLine = new ImageAndPersonLine("image4.jpg,Image Three,Bob Brown,Bob,Brown");
         csv.insertAt(3, newLine);
-        assertEquals(4, csv.lines.length);
-        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines[1]).imageFileName());
-        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines[2]).imageFileName());
-        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines[3]).imageFileName());
+        assertEquals(4, csv.lines.size());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines.get(3)).imageFileName());
     }
 
     @Test
@@ -78,10 +88,10 @@ public class CSVTests {
             .build();
         CSVLine newLine = new ImageAndPersonLine("image4.jpg,Image Four,Bob Brown,Bob,Brown");
         csv.append(newLine);
-        assertEquals(4, csv.lines.length);
-        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines[1]).imageFileName());
-        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines[2]).imageFileName());
-        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines[3]).imageFileName());
+        assertEquals(4, csv.lines.size());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines.get(3)).imageFileName());
     }
 
     @Test
@@ -91,8 +101,8 @@ public class CSVTests {
             .build();
         CSVLine newLine = new ImageAndPersonLine("image1.jpg,Image One,John Doe,John,Doe");
         csv.append(newLine);
-        assertEquals(1, csv.lines.length);
-        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines[0]).imageFileName());
+        assertEquals(1, csv.lines.size());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(0)).imageFileName());
     }
 
     @Test
@@ -106,10 +116,46 @@ public class CSVTests {
         csv.append(line1);
         csv.append(line2);
         csv.append(line3);
-        assertEquals(3, csv.lines.length);
-        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines[0]).imageFileName());
-        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines[1]).imageFileName());
-        assertEquals("image3.jpg", ((ImageAndPersonLine)csv.lines[2]).imageFileName());
+        assertEquals(3, csv.lines.size());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(0)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("image3.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+    }
+
+    @Test
+    void testInsertAll() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/test.csv")
+            .build();
+        List<CSVLine> newLines = List.of(
+            new ImageAndPersonLine("image3.jpg,Image Three,Bob Brown,Bob,Brown"),
+            new ImageAndPersonLine("image4.jpg,Image Four,Bob Brown,Bob,Brown"));
+        csv.insertAll(2, newLines);
+        assertEquals(5, csv.lines.size());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("image3.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+        assertEquals("image4.jpg", ((ImageAndPersonLine)csv.lines.get(3)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(4)).imageFileName());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            csv.insertAll(6, newLines));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            csv.insertAll(-1, newLines));
+    }
+
+    @Test
+    void testAppendAll() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/empty.csv")
+            .build();
+        csv.appendAll(List.of(
+            new ImageAndPersonLine("image1.jpg,Image One,John Doe,John,Doe"),
+            new ImageAndPersonLine("image2.jpg,Image Two,Jane Smith,Jane,Smith")));
+        csv.appendAll(List.of(
+            new ImageAndPersonLine("image3.jpg,Image Three,Bob Brown,Bob,Brown")));
+        assertEquals(3, csv.lines.size());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(0)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("image3.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
     }
 
     @Test
@@ -117,15 +163,54 @@ public class CSVTests {
         CSV csv = new CSV.Builder()
             .fileName("testing/data/test.csv")
             .build();
-        assertEquals(3, csv.lines.length);
-        assertEquals("Filename", ((ImageAndPersonLine)csv.lines[0]).imageFileName());
-        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines[1]).imageFileName());
-        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines[2]).imageFileName());
+        assertEquals(3, csv.lines.size());
+        assertEquals("Filename", ((ImageAndPersonLine)csv.lines.get(0)).imageFileName());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+
+        assertEquals(5, csv.lines.get(0).length());
+        assertEquals("Title", ((ImageAndPersonLine)csv.lines.get(0)).imageTitle());
+        assertEquals("Image One", ((ImageAndPersonLine)csv.lines.get(1)).imageTitle());
+        assertEquals("Image, Two", ((ImageAndPersonLine)csv.lines.get(2)).imageTitle());
+    }
 
-        assertEquals(5, csv.lines[0].length());
-        assertEquals("Title", ((ImageAndPersonLine)csv.lines[0]).imageTitle());
-        assertEquals("Image One", ((ImageAndPersonLine)csv.lines[1]).imageTitle());
-        assertEquals("\"Image, Two\"", ((ImageAndPersonLine)csv.lines[2]).imageTitle());
+    @Test
+    void testLoadCSVFileStreaming() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/test.csv")
+            .streaming(true)
+            .build();
+        assertEquals(3, csv.lines.size());
+        assertEquals("Filename", ((ImageAndPersonLine)csv.lines.get(0)).imageFileName());
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("Image, Two", ((ImageAndPersonLine)csv.lines.get(2)).imageTitle());
+        CSV expected = new CSV.Builder()
+            .fileName("testing/data/test.csv")
+            .build();
+        assertEquals(expected.toString(), csv.toString());
+    }
+
+    @Test
+    void testLoadEmptyCSVFileStreaming() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/empty.csv")
+            .streaming(true)
+            .build();
+        assertEquals(0, csv.lines.size());
+    }
+
+    @Test
+    void testLoadCSVFileParallel() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/sort.csv")
+            .parallel(true)
+            .build();
+        CSV expected = new CSV.Builder()
+            .fileName("testing/data/sort.csv")
+            .parallel(false)
+            .build();
+        assertEquals(7, csv.lines.size());
+        assertEquals(expected.toString(), csv.toString());
     }
 
     @Test
@@ -134,13 +219,13 @@ public class CSVTests {
             .fileName("testing/data/sort.csv")
             .build();
         csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
-        assertEquals(7, csv.lines.length);
-        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines[1]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[2]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[3]).personFullName());
-        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines[4]).personFullName());
-        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines[5]).personFullName());
-        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines[6]).personFullName());
+        assertEquals(7, csv.lines.size());
+        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines.get(6)).personFullName());
     }
 
     @Test
@@ -149,13 +234,13 @@ public class CSVTests {
             .fileName("testing/data/sort.csv")
             .build();
         csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME_REVERSE);
-        assertEquals(7, csv.lines.length);
-        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines[6]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[4]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[5]).personFullName());
-        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines[3]).personFullName());
-        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines[2]).personFullName());
-        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines[1]).personFullName());
+        assertEquals(7, csv.lines.size());
+        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines.get(6)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
     }
 
     @Test
@@ -164,13 +249,13 @@ public class CSVTests {
             .fileName("testing/data/sort.csv")
             .build();
         csv.sort(sortOrder.ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME);
-        assertEquals(7, csv.lines.length);
-        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines[5]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[3]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[2]).personFullName());
-        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines[4]).personFullName());
-        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines[6]).personFullName());
-        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines[1]).personFullName());
+        assertEquals(7, csv.lines.size());
+        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines.get(6)).personFullName());
+        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
     }
 
     @Test
@@ -179,13 +264,13 @@ public class CSVTests {
             .fileName("testing/data/sort.csv")
             .build();
         csv.sort(sortOrder.ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME_REVERSE);
-        assertEquals(7, csv.lines.length);
-        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines[2]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[4]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[5]).personFullName());
-        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines[3]).personFullName());
-        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines[1]).personFullName());
-        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines[6]).personFullName());
+        assertEquals(7, csv.lines.size());
+        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines.get(6)).personFullName());
     }
 
     @Test
@@ -194,13 +279,373 @@ public class CSVTests {
             .fileName("testing/data/sort.csv")
             .build();
         csv.sort(sortOrder.NONE);
-        assertEquals(7, csv.lines.length);
-        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines[5]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[3]).personFullName());
-        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines[4]).personFullName());
-        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines[6]).personFullName());
-        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines[2]).personFullName());
-        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines[1]).personFullName());
+        assertEquals(7, csv.lines.size());
+        assertEquals("Barney Rubble", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("Fred Flintstone", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("Wilma Flintstone", ((ImageAndPersonLine)csv.lines.get(6)).personFullName());
+        assertEquals("Jane Smith", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("John Doe", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+    }
+
+    @Test
+    void testSortEmpty() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/empty.csv")
+            .build();
+        csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        assertEquals(0, csv.lines.size());
+    }
+
+    // testing/data/accents.csv contains names with accents and mixed case:
+    // Zoë Adams, émile Zola (two images), Édith Brontë and eve Young.
+    @Test
+    void testSortAlphaByFullNameIsNotLocaleAware() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/accents.csv")
+            .build();
+        csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        assertEquals("Zoë Adams", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        assertEquals("eve Young", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("Édith Brontë", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("émile Zola", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+    }
+
+    @Test
+    void testSortCollatedByFullName() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/accents.csv")
+            .build();
+        csv.sort(sortOrder.COLLATED_BY_FULL_NAME, Locale.ENGLISH);
+        assertEquals(6, csv.lines.size());
+        assertEquals("Filename", ((ImageAndPersonLine)csv.lines.get(0)).imageFileName());
+        assertEquals("Édith Brontë", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(2)).imageFileName());
+        assertEquals("image5.jpg", ((ImageAndPersonLine)csv.lines.get(3)).imageFileName());
+        assertEquals("eve Young", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("Zoë Adams", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+    }
+
+    @Test
+    void testSortCollatedByFullNameReverse() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/accents.csv")
+            .build();
+        csv.sort(sortOrder.COLLATED_BY_FULL_NAME_REVERSE, Locale.ENGLISH);
+        assertEquals("Zoë Adams", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        assertEquals("eve Young", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("image2.jpg", ((ImageAndPersonLine)csv.lines.get(3)).imageFileName());
+        assertEquals("image5.jpg", ((ImageAndPersonLine)csv.lines.get(4)).imageFileName());
+        assertEquals("Édith Brontë", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+    }
+
+    @Test
+    void testSortCollatedByLastNameFirstName() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/accents.csv")
+            .build();
+        csv.sort(sortOrder.COLLATED_BY_LAST_NAME_THEN_FIRST_NAME, Locale.ENGLISH);
+        assertEquals("Zoë Adams", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        assertEquals("Édith Brontë", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("eve Young", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("émile Zola", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("émile Zola", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
+    }
+
+    @Test
+    void testSortCollatedByLastNameFirstNameReverse() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/accents.csv")
+            .build();
+        csv.sort(sortOrder.COLLATED_BY_LAST_NAME_THEN_FIRST_NAME_REVERSE, Locale.ENGLISH);
+        assertEquals("émile Zola", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        assertEquals("émile Zola", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+        assertEquals("eve Young", ((ImageAndPersonLine)csv.lines.get(3)).personFullName());
+        assertEquals("Édith Brontë", ((ImageAndPersonLine)csv.lines.get(4)).personFullName());
+        assertEquals("Zoë Adams", ((ImageAndPersonLine)csv.lines.get(5)).personFullName());
     }
 
+    @Test
+    void testLoadCSVFileColumnar() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/test.csv")
+            .columnar(true)
+            .build();
+        assertEquals(3, csv.lines.size());
+        assertTrue(csv.lines.get(1) instanceof ColumnarRows.Line);
+        assertEquals("image1.jpg", ((ImageAndPersonLine)csv.lines.get(1)).imageFileName());
+        assertEquals("Image, Two", ((ImageAndPersonLine)csv.lines.get(2)).imageTitle());
+        CSV expected = new CSV.Builder()
+            .fileName("testing/data/test.csv")
+            .build();
+        assertEquals(expected.toString(), csv.toString());
+    }
+
+    @Test
+    void testSortColumnar() {
+        for (sortOrder order : sortOrder.values()) {
+            CSV csv = new CSV.Builder()
+                .fileName("testing/data/sort.csv")
+                .columnar(true)
+                .parallel(true)
+                .build();
+            csv.append(new ImageAndPersonLine("image9.jpg,Image Nine,Fred Flintstone,Fred,Flintstone"));
+            csv.sort(order);
+            CSV expected = new CSV.Builder()
+                .fileName("testing/data/sort.csv")
+                .build();
+            expected.append(new ImageAndPersonLine("image9.jpg,Image Nine,Fred Flintstone,Fred,Flintstone"));
+            expected.sort(order);
+            assertEquals(expected.toString(), csv.toString(), order.toString());
+        }
+    }
+
+    @Test
+    void testSortLazyFields() {
+        for (sortOrder order : sortOrder.values()) {
+            CSV csv = new CSV.Builder()
+                .fileName("testing/data/sort.csv")
+                .lazyFields(true)
+                .build();
+            assertTrue(csv.lines.get(1) instanceof LazyImageAndPersonLine);
+            csv.sort(order);
+            CSV expected = new CSV.Builder()
+                .fileName("testing/data/sort.csv")
+                .lazyFields(false)
+                .build();
+            assertFalse(expected.lines.get(1) instanceof LazyImageAndPersonLine);
+            expected.sort(order);
+            assertEquals(expected.toString(), csv.toString(), order.toString());
+        }
+    }
+
+    // testing/data/quoted.csv has CRLF line endings, a blank line, and quoted
+    // fields that contain commas, quotes and a line break.
+    @Test
+    void testLoadQuotedFields() {
+        String expected = "Filename,Title,Full Name,First Name,Last Name\n" +
+                          "image1.jpg,\"Sunrise,\r\nover the \"\"Lake\"\"\",John Doe,John,Doe\n" +
+                          "image2.jpg,Image Two,\"Smith, Jane\",Jane,Smith\n";
+        CSV[] csvs = {
+            new CSV.Builder().fileName("testing/data/quoted.csv").build(),
+            new CSV.Builder().fileName("testing/data/quoted.csv").streaming(true).build(),
+            new CSV.Builder().fileName("testing/data/quoted.csv").parallel(true).build(),
+            new CSV.Builder().fileName("testing/data/quoted.csv").lazyFields(false).build(),
+            new CSV.Builder().fileName("testing/data/quoted.csv").columnar(true).build()
+        };
+        for (CSV csv : csvs) {
+            assertEquals(3, csv.lines.size());
+            ImageAndPersonLine line = (ImageAndPersonLine)csv.lines.get(1);
+            assertEquals("Sunrise,\r\nover the \"Lake\"", line.imageTitle());
+            assertEquals("Smith, Jane", ((ImageAndPersonLine)csv.lines.get(2)).personFullName());
+            assertEquals(expected, csv.toString());
+        }
+    }
+
+    @Test
+    void testLoadCSVFileIsEagerByDefault() {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/test.csv")
+            .build();
+        assertFalse(csv.lines.get(1) instanceof LazyImageAndPersonLine);
+        csv.lines.get(1).addField("Nature");
+        assertEquals("Nature", csv.lines.get(1).field(5));
+    }
+
+    // testing/data/bom.csv is UTF-8 with a byte order mark, and
+    // testing/data/windows1252.csv is encoded in windows-1252. Both contain
+    // accented names.
+    @Test
+    void testLoadByteOrderMark() {
+        CSV[] csvs = {
+            new CSV.Builder().fileName("testing/data/bom.csv").build(),
+            new CSV.Builder().fileName("testing/data/bom.csv").lazyFields(false).build(),
+            new CSV.Builder().fileName("testing/data/bom.csv").streaming(true).build(),
+            new CSV.Builder().fileName("testing/data/bom.csv").parallel(true).build(),
+            new CSV.Builder().fileName("testing/data/bom.csv").charset(Charset.forName("windows-1252")).build()
+        };
+        for (CSV csv : csvs) {
+            assertEquals(3, csv.lines.size());
+            assertEquals("Filename", csv.lines.get(0).field(0));
+            ImageAndPersonLine line = (ImageAndPersonLine)csv.lines.get(1);
+            assertEquals("Café", line.imageTitle());
+            assertEquals("Zoë Adams", line.personFullName());
+        }
+    }
+
+    @Test
+    void testLoadWindows1252() {
+        Charset windows1252 = Charset.forName("windows-1252");
+        CSV[] csvs = {
+            new CSV.Builder().fileName("testing/data/windows1252.csv").charset(windows1252).build(),
+            new CSV.Builder().fileName("testing/data/windows1252.csv").charset(windows1252).lazyFields(false).build(),
+            new CSV.Builder().fileName("testing/data/windows1252.csv").charset(windows1252).streaming(true).build(),
+            new CSV.Builder().fileName("testing/data/windows1252.csv").charset(windows1252).parallel(true).build(),
+            new CSV.Builder().fileName("testing/data/windows1252.csv").charset(windows1252).columnar(true).build()
+        };
+        for (CSV csv : csvs) {
+            assertEquals(3, csv.lines.size());
+            ImageAndPersonLine line = (ImageAndPersonLine)csv.lines.get(1);
+            assertEquals("Café – €5", line.imageTitle());
+            assertEquals("Zoë Adams", line.personFullName());
+            assertEquals("Zoë", line.personFirstName());
+            csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+            assertEquals("John Doe", ((ImageAndPersonLine)csv.lines.get(1)).personFullName());
+        }
+    }
+
+    @Test
+    void testLoadPreloadedData() throws IOException {
+        byte[] data = Files.readAllBytes(Path.of("testing/data/quoted.csv"));
+        String expected = new CSV.Builder().fileName("testing/data/quoted.csv").build().toString();
+        CSV[] csvs = {
+            new CSV.Builder().fileName("not-read.csv").data(data).build(),
+            new CSV.Builder().fileName("not-read.csv").data(data).lazyFields(false).build(),
+            new CSV.Builder().fileName("not-read.csv").data(data).streaming(true).parallel(true).build(),
+            new CSV.Builder().fileName("not-read.csv").data(data).columnar(true).build()
+        };
+        for (CSV csv : csvs) {
+            assertEquals(expected, csv.toString());
+        }
+
+        Metrics metrics = new Metrics();
+        new CSV.Builder().fileName("not-read.csv").data(data).metrics(metrics).build();
+        assertEquals(data.length, metrics.get("load.read.bytes").total());
+        assertEquals(3, metrics.get("load.parse.rows").total());
+    }
+
+    @Test
+    void testWriteToAppendable() throws IOException {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/quoted.csv")
+            .build();
+        StringBuilder sb = new StringBuilder();
+        csv.writeTo(sb);
+        assertEquals(csv.toString(), sb.toString());
+    }
+
+    @Test
+    void testWriteToPath(@TempDir Path tempDir) throws IOException {
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/sort.csv")
+            .build();
+        csv.sort(sortOrder.ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME);
+        Path path = tempDir.resolve("sorted.csv");
+        csv.writeTo(path);
+        assertEquals(csv.toString(), Files.readString(path, StandardCharsets.UTF_8));
+        CSV reloaded = new CSV.Builder()
+            .fileName(path.toString())
+            .build();
+        assertEquals(csv.toString(), reloaded.toString());
+    }
+
+    @Test
+    void testWriteXLSTo(@TempDir Path tempDir) throws IOException {
+        Metrics metrics = new Metrics();
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/quoted.csv")
+            .metrics(metrics)
+            .build();
+        csv.insertAt(1, new TitleImageLine("title.jpg"));
+        Path path = tempDir.resolve("show.xls");
+        csv.writeXLSTo(path);
+        XLSWriterTests.Sheet sheet = XLSWriterTests.read(path);
+        assertEquals(csv.lines.size(), sheet.rows());
+        assertEquals(List.of("title.jpg"), sheet.cells().get(1));
+        for (int i = 0; i < csv.lines.size(); i++) {
+            CSVLine line = csv.lines.get(i);
+            for (int j = 0; j < sheet.cells().get(i).size(); j++) {
+                assertEquals(line.field(j), sheet.cells().get(i).get(j));
+            }
+        }
+        assertEquals(Files.size(path), metrics.get("write.bytes").total());
+    }
+
+    @Test
+    void testWriteToPathWithCharset(@TempDir Path tempDir) throws IOException {
+        Charset windows1252 = Charset.forName("windows-1252");
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/bom.csv")
+            .build();
+        Path path = tempDir.resolve("ansi.csv");
+        csv.writeTo(path, windows1252);
+        assertArrayEquals(csv.toString().getBytes(windows1252), Files.readAllBytes(path));
+    }
+
+    @Test
+    void testMetrics(@TempDir Path tempDir) throws IOException {
+        Metrics metrics = new Metrics();
+        CSV csv = new CSV.Builder()
+            .fileName("testing/data/quoted.csv")
+            .metrics(metrics)
+            .build();
+        assertEquals(Files.size(Path.of("testing/data/quoted.csv")), metrics.get("load.read.bytes").total());
+        assertEquals(1, metrics.get("load.read.time").count());
+        assertEquals(1, metrics.get("load.parse.time").count());
+        assertEquals(3, metrics.get("load.parse.rows").total());
+        assertEquals(1, metrics.get("load.parse.emptyLines").total());
+        assertEquals(0, metrics.get("load.parse.malformedRows").total());
+
+        csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        csv.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        assertEquals(2, metrics.get("sort.ALPHABETICAL_BY_FULL_NAME.time").count());
+        assertEquals(2, metrics.get("group.time").count());
+        assertEquals(4, metrics.get("group.people").total());
+        assertEquals(4, metrics.get("group.size").count());
+        assertEquals(1, metrics.get("group.size").max());
+
+        csv.writeTo(tempDir.resolve("out.csv"));
+        assertEquals(Files.size(tempDir.resolve("out.csv")), metrics.get("write.bytes").total());
+        assertEquals(3, metrics.get("write.rows").total());
+        csv.toString();
+        assertEquals(1, metrics.get("write.time").count());
+    }
+
+    @Test
+    void testMetricsMalformedRows(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("legacy.csv");
+        Files.writeString(path, "Filename,Title,Full Name,First Name,Last Name\n" +
+            "image1.jpg,Image, One,John Doe,John,Doe\n" +
+            "image2.jpg,Image, Two, Too,Jane Smith,Jane,Smith\n" +
+            "image3.jpg,Image Three,Jane Smith,Jane,Smith\n");
+        for (boolean parallel : new boolean[] {false, true}) {
+            Metrics metrics = new Metrics();
+            new CSV.Builder()
+                .fileName(path.toString())
+                .parallel(parallel)
+                .metrics(metrics)
+                .build();
+            assertEquals(2, metrics.get("load.parse.malformedRows").total());
+            assertEquals(4, metrics.get("load.parse.rows").total());
+        }
+    }
+
+    // Sorts a show with many people and repeated names, whose lines for each
+    // person are spread through the file, both ways.
+    @Test
+    void testParallelSortMatchesSequentialSort(@TempDir Path tempDir) throws IOException {
+        String[] first = {"Zoë", "émile", "Anne", "anne", "Édith", "Bob", "Mary Ann", "Mary Jo"};
+        String[] last = {"Adams", "Zola", "Brontë", "brontë", "Smith", "Ng", "O'Neil"};
+        StringBuilder text = new StringBuilder("Filename,Title,Full Name,First Name,Last Name\n");
+        Random random = new Random(20);
+        for (int i = 1; i <= 5000; i++) {
+            String firstName = first[random.nextInt(first.length)];
+            String lastName = last[random.nextInt(last.length)] + (random.nextInt(60) == 0 ? "" : random.nextInt(40));
+            text.append("image").append(i).append(".jpg,Image ").append(i).append(',')
+                .append(firstName).append(' ').append(lastName).append(',').append(firstName).append(',')
+                .append(lastName).append('\n');
+        }
+        Path path = tempDir.resolve("people.csv");
+        Files.writeString(path, text);
+        for (sortOrder order : sortOrder.values()) {
+            CSV sequential = new CSV.Builder().fileName(path.toString())
+                .parallelSortThreshold(Integer.MAX_VALUE).build();
+            CSV parallel = new CSV.Builder().fileName(path.toString()).parallelSortThreshold(0).build();
+            sequential.sort(order, Locale.FRENCH);
+            parallel.sort(order, Locale.FRENCH);
+            assertEquals(sequential.toString(), parallel.toString(), order.name());
+            assertEquals(5001, parallel.lines.size());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new CSV.Builder().parallelSortThreshold(-1));
+    }
 }
@@ -0,0 +1,603 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The CSVTokenizer class splits CSV data into records and fields in one pass.
+ *
+ * The data follows RFC 4180: any field may be enclosed in double quotes, and a
+ * quoted field may contain commas, line breaks and escaped quotes (""). Records
+ * may end with "\r\n", "\n" or "\r". The tokenizer works on the bytes of the
+ * data and searches for the next comma, quote or line break eight bytes at a
+ * time (SWAR), so plain text between delimiters is skipped quickly. A field is
+ * only decoded into a String when it is asked for.
+ *
+ * The data is UTF-8 unless another charset is given. Any charset in which the
+ * ASCII characters are single bytes, such as windows-1252, may be used. A
+ * UTF-8 byte order mark at the start of the data is skipped, and the data is
+ * then read as UTF-8 whatever charset was given. While the tokenizer searches
+ * a field for delimiters it also notes whether the field has any bytes above
+ * 0x7F. If it does not, the field is plain ASCII and is copied straight into a
+ * String without going through the charset's decoder.
+ * ```java
+ * try (CSVTokenizer tokenizer = new CSVTokenizer(Paths.get("test.csv"))) {
+ *     while (tokenizer.next()) {
+ *         String fileName = tokenizer.field(0);
+ *     }
+ * }
+ * ```
+ * The fields of a record can only be read until next is called again.
+ */
+public class CSVTokenizer implements Closeable {
+    /**
+     * The size of the read buffer used if no size is specified. The buffer only
+     * grows if a single record is larger than the buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final VarHandle LONGS =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long COMMAS = ONES * ',';
+    private static final long QUOTES = ONES * '"';
+    private static final long LINE_FEEDS = ONES * '\n';
+    private static final long CARRIAGE_RETURNS = ONES * '\r';
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final ReadableByteChannel channel;
+    private Charset charset;
+    private boolean checkByteOrderMark;
+    private byte[] buffer;
+    private int limit;
+    private int position = 0;
+    private boolean endOfInput;
+    private boolean skipLineFeed = false;
+    private long recordNumber = 0;
+
+    private int recordStart = 0;
+    private int fieldStart = 0;
+    private int[] bounds = new int[16];
+    private boolean[] plainFields = new boolean[8];
+    private int fieldCount = 0;
+    private int state = FIELD_START;
+    private long scannedBits = 0;
+    private long recordBits = 0;
+
+    /**
+     * Constructor - opens the specified file using the default buffer size.
+     * @param path - the path to the CSV file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public CSVTokenizer(Path path) throws IOException {
+        this(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor - opens the specified file using the default buffer size.
+     * @param path - the path to the CSV file.
+     * @param charset - the charset of the file.
+     * @throws IOException if the file cannot be opened.
+     * @throws IllegalArgumentException if the ASCII characters are not single
+     * bytes in the charset.
+     */
+    public CSVTokenizer(Path path, Charset charset) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), DEFAULT_BUFFER_SIZE, charset);
+    }
+
+    /**
+     * Constructor - reads CSV data from an already open channel. The channel
+     * is closed when the tokenizer is closed.
+     * @param channel - the channel to read from.
+     * @param bufferSize - the initial size in bytes of the read buffer.
+     * @throws IllegalArgumentException if bufferSize is less than 1.
+     */
+    public CSVTokenizer(ReadableByteChannel channel, int bufferSize) {
+        this(channel, bufferSize, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor - reads CSV data from an already open channel. The channel
+     * is closed when the tokenizer is closed.
+     * @param channel - the channel to read from.
+     * @param bufferSize - the initial size in bytes of the read buffer.
+     * @param charset - the charset of the data.
+     * @throws IllegalArgumentException if bufferSize is less than 1, or the
+     * ASCII characters are not single bytes in the charset.
+     */
+    public CSVTokenizer(ReadableByteChannel channel, int bufferSize, Charset charset) {
+        this(channel, bufferSize, charset, true);
+    }
+
+    /**
+     * Constructor - reads CSV data from an already open channel that may not
+     * start at the beginning of the data.
+     * @param channel - the channel to read from.
+     * @param bufferSize - the initial size in bytes of the read buffer.
+     * @param charset - the charset of the data.
+     * @param checkByteOrderMark - true to skip a byte order mark at the start of
+     * the channel. This must be false if the channel starts part way through
+     * the data.
+     */
+    CSVTokenizer(ReadableByteChannel channel, int bufferSize, Charset charset, boolean checkByteOrderMark) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+        }
+        this.channel = channel;
+        this.charset = checkCharset(charset);
+        this.checkByteOrderMark = checkByteOrderMark;
+        buffer = new byte[bufferSize];
+        limit = 0;
+        endOfInput = false;
+    }
+
+    /**
+     * Constructor - splits CSV data that is already in memory. The array is
+     * used directly, and must not be changed while the tokenizer is in use.
+     * @param data - the CSV data, encoded in UTF-8.
+     */
+    public CSVTokenizer(byte[] data) {
+        this(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor - splits CSV data that is already in memory. The array is
+     * used directly, and must not be changed while the tokenizer is in use.
+     * @param data - the CSV data.
+     * @param charset - the charset of the data.
+     * @throws IllegalArgumentException if the ASCII characters are not single
+     * bytes in the charset.
+     */
+    public CSVTokenizer(byte[] data, Charset charset) {
+        channel = null;
+        this.charset = checkCharset(charset);
+        checkByteOrderMark = true;
+        buffer = data;
+        limit = data.length;
+        endOfInput = true;
+    }
+
+    /**
+     * Splits a single CSV record into its fields.
+     * @param record - the record.
+     * @return the value of each field in the record.
+     * @throws IllegalArgumentException if the text contains more than one
+     * record, or a quoted field that is not closed.
+     */
+    public static String[] split(String record) {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(record.getBytes(StandardCharsets.UTF_8))) {
+            if (!tokenizer.next()) {
+                return new String[] {""};
+            }
+            String[] fields = tokenizer.fields();
+            if (tokenizer.next()) {
+                throw new IllegalArgumentException("Text contains more than one record: " + record);
+            }
+            return fields;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Moves to the next record.
+     * @return true if there is another record, false at the end of the data.
+     * @throws IOException if the data cannot be read, or ends inside a quoted
+     * field.
+     */
+    public boolean next() throws IOException {
+        if (checkByteOrderMark) {
+            checkByteOrderMark = false;
+            skipByteOrderMark();
+        }
+        fieldCount = 0;
+        state = FIELD_START;
+        scannedBits = 0;
+        recordBits = 0;
+        recordStart = position;
+        fieldStart = position;
+        while (true) {
+            if (position == limit) {
+                if (!endOfInput) {
+                    fill();
+                    continue;
+                }
+                if (state == QUOTED) {
+                    throw new IOException("Quoted field is not closed in record " + (recordNumber + 1));
+                }
+                if (position > recordStart || fieldCount > 0) {
+                    endField(position);
+                    recordNumber++;
+                    return true;
+                }
+                return false;
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buffer[position] == '\n') {
+                    position++;
+                    recordStart = position;
+                    fieldStart = position;
+                    continue;
+                }
+            }
+            switch (state) {
+                case FIELD_START:
+                    if (buffer[position] == '"') {
+                        position++;
+                        state = QUOTED;
+                    } else {
+                        state = UNQUOTED;
+                    }
+                    break;
+                case UNQUOTED:
+                    if (scanUnquoted()) {
+                        recordNumber++;
+                        return true;
+                    }
+                    break;
+                case QUOTED:
+                    position = findQuote(position, limit);
+                    if (position < limit) {
+                        position++;
+                        state = QUOTE_IN_QUOTED;
+                    }
+                    break;
+                default: // QUOTE_IN_QUOTED
+                    if (buffer[position] == '"') {
+                        // an escaped quote, so the field is still quoted
+                        position++;
+                        state = QUOTED;
+                    } else {
+                        // the closing quote; anything up to the next delimiter is
+                        // kept as it is
+                        state = UNQUOTED;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the charset that the fields are decoded with. This is UTF-8 if
+     * the data started with a UTF-8 byte order mark.
+     * @return the charset of the data.
+     */
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * Returns the number of fields in the current record.
+     * @return the number of fields in the current record.
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns true if the current record is an empty line.
+     * @return true if the current record is an empty line.
+     */
+    public boolean isEmptyLine() {
+        return fieldCount == 1 && bounds[0] == bounds[1];
+    }
+
+    /**
+     * Returns the value of a field in the current record. Enclosing quotes are
+     * removed, and escaped quotes are replaced by a single quote.
+     * @param index - the index of the field.
+     * @return the value of the field.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or not
+     * less than the number of fields.
+     */
+    public String field(int index) {
+        checkField(index);
+        return decodeField(buffer, bounds[2 * index], bounds[2 * index + 1], fieldCharset(index));
+    }
+
+    /**
+     * Returns the values of all of the fields in the current record.
+     * @return the value of each field in the current record.
+     */
+    public String[] fields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = decodeField(buffer, bounds[2 * i], bounds[2 * i + 1], fieldCharset(i));
+        }
+        return fields;
+    }
+
+    /**
+     * Copies the bytes of the current record, as they appear in the data.
+     * @param fieldBounds - receives the start and end of each field in the copy.
+     * Field i starts at fieldBounds[2 * i] and ends just before
+     * fieldBounds[2 * i + 1]. It must hold at least 2 * fieldCount() ints.
+     * @return the bytes of the current record, without its line terminator.
+     */
+    public byte[] recordBytes(int[] fieldBounds) {
+        int end = fieldCount == 0 ? recordStart : bounds[2 * fieldCount - 1];
+        for (int i = 0; i < 2 * fieldCount; i++) {
+            fieldBounds[i] = bounds[i] - recordStart;
+        }
+        return Arrays.copyOfRange(buffer, recordStart, end);
+    }
+
+    /**
+     * Returns the charset to decode the fields of the current record with.
+     * This is ISO-8859-1 if the record is plain ASCII, as Strings are created
+     * from ISO-8859-1 bytes by copying them, and ASCII is the same in every
+     * charset the tokenizer accepts.
+     * @return the charset to decode the current record with.
+     */
+    Charset recordCharset() {
+        return (recordBits & HIGH_BITS) == 0 ? StandardCharsets.ISO_8859_1 : charset;
+    }
+
+    // Returns the charset to decode a field of the current record with, which
+    // is ISO-8859-1 if the field is plain ASCII, as for recordCharset.
+    private Charset fieldCharset(int index) {
+        return plainFields[index] ? StandardCharsets.ISO_8859_1 : charset;
+    }
+
+    /**
+     * Closes the underlying channel, if there is one.
+     * @throws IOException if the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Decodes a field as it appears in CSV data. If the field starts with a
+     * quote, the enclosing quotes are removed and each escaped quote is
+     * replaced by a single quote.
+     * @param data - the CSV data.
+     * @param start - the index of the first byte of the field.
+     * @param end - the index just after the last byte of the field.
+     * @param charset - the charset of the data.
+     * @return the value of the field.
+     */
+    static String decodeField(byte[] data, int start, int end, Charset charset) {
+        if (start == end || data[start] != '"') {
+            return new String(data, start, end - start, charset);
+        }
+        byte[] value = new byte[end - start];
+        int length = 0;
+        boolean quoted = true;
+        for (int i = start + 1; i < end; i++) {
+            byte b = data[i];
+            if (b == '"' && quoted) {
+                if (i + 1 < end && data[i + 1] == '"') {
+                    value[length++] = '"';
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else {
+                value[length++] = b;
+            }
+        }
+        return new String(value, 0, length, charset);
+    }
+
+    /**
+     * Returns true if a UTF-8 byte order mark starts at the specified index.
+     * @param data - the data.
+     * @param offset - the index to look at.
+     * @param limit - the index just after the last byte of the data.
+     * @return true if there is a byte order mark at offset.
+     */
+    static boolean isByteOrderMark(byte[] data, int offset, int limit) {
+        return limit - offset >= 3 && data[offset] == (byte) 0xEF
+            && data[offset + 1] == (byte) 0xBB && data[offset + 2] == (byte) 0xBF;
+    }
+
+    /**
+     * Counts the quotes in part of an array of CSV data. In RFC 4180 data, a
+     * position is inside a quoted field exactly when an odd number of quotes
+     * come before it, so this is used to find places where the data can be split.
+     * @param data - the CSV data.
+     * @param from - the index of the first byte to count.
+     * @param to - the index just after the last byte to count.
+     * @return the number of quote bytes.
+     */
+    static int countQuotes(byte[] data, int from, int to) {
+        int count = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            count += Long.bitCount(zeroBytes((long) LONGS.get(data, i) ^ QUOTES));
+        }
+        for (; i < to; i++) {
+            if (data[i] == '"') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The tokenizer relies on the delimiters being single bytes, and on ASCII
+    // bytes meaning the same as in ISO-8859-1.
+    private static Charset checkCharset(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII)) {
+            return charset;
+        }
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        if (!new String(ascii, charset).equals(new String(ascii, StandardCharsets.ISO_8859_1))) {
+            throw new IllegalArgumentException(charset + " does not encode ASCII as single bytes");
+        }
+        return charset;
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        while (limit - position < 3 && !endOfInput) {
+            fill();
+        }
+        if (isByteOrderMark(buffer, position, limit)) {
+            position += 3;
+            charset = StandardCharsets.UTF_8;
+        }
+    }
+
+    private void checkField(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+    }
+
+    private void endField(int end) {
+        if (2 * fieldCount + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            plainFields = Arrays.copyOf(plainFields, bounds.length / 2);
+        }
+        bounds[2 * fieldCount] = fieldStart;
+        bounds[2 * fieldCount + 1] = end;
+        plainFields[fieldCount] = (scannedBits & HIGH_BITS) == 0;
+        recordBits |= scannedBits;
+        scannedBits = 0;
+        fieldCount++;
+    }
+
+    // Reads more data. The unfinished record is moved to the start of the
+    // buffer first, and the buffer is only made larger if the record fills it.
+    private void fill() throws IOException {
+        if (recordStart > 0) {
+            int shift = recordStart;
+            System.arraycopy(buffer, shift, buffer, 0, limit - shift);
+            limit -= shift;
+            position -= shift;
+            fieldStart -= shift;
+            recordStart = 0;
+            for (int i = 0; i < 2 * fieldCount; i++) {
+                bounds[i] -= shift;
+            }
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    // Ends the unquoted field at position, and the unquoted fields that follow
+    // it, without going back through the states in next for each one. Stops at
+    // the end of the record, a quoted field or the end of the buffer.
+    // Returns true at the end of the record.
+    private boolean scanUnquoted() {
+        int end = limit;
+        int i = position;
+        while (true) {
+            i = findDelimiter(i, end);
+            if (i == end) {
+                position = i;
+                return false;
+            }
+            if (endUnquoted(i)) {
+                return true;
+            }
+            if (state == FIELD_START) {
+                return false;
+            }
+            i++;
+        }
+    }
+
+    // Ends the unquoted field at the delimiter at index, and moves past it.
+    // If the next field starts with a quote, or may do once more data is read,
+    // the state goes back to FIELD_START.
+    // Returns true at the end of the record.
+    private boolean endUnquoted(int index) {
+        byte delimiter = buffer[index];
+        endField(index);
+        position = index + 1;
+        if (delimiter != ',') {
+            skipLineFeed = delimiter == '\r';
+            return true;
+        }
+        fieldStart = position;
+        if (position == limit || buffer[position] == '"') {
+            state = FIELD_START;
+        }
+        return false;
+    }
+
+    // Returns the index of the first comma or line break at or after from, or
+    // to if there is none. Every byte before it is added to scannedBits, so that
+    // a field with no high bytes can be decoded as ASCII. The bytes of a word
+    // after the delimiter belong to the next field, so they are masked off.
+    private int findDelimiter(int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = (long) LONGS.get(buffer, i);
+            long found = zeroBytes(word ^ COMMAS) | zeroBytes(word ^ LINE_FEEDS)
+                | zeroBytes(word ^ CARRIAGE_RETURNS);
+            if (found != 0) {
+                scannedBits |= word & ((found & -found) - 1);
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            scannedBits |= word;
+        }
+        for (; i < to; i++) {
+            byte b = buffer[i];
+            if (b == ',' || b == '\n' || b == '\r') {
+                return i;
+            }
+            scannedBits |= b;
+        }
+        return to;
+    }
+
+    // Returns the index of the first quote at or after from, or to if there
+    // is none. Every byte before it is added to scannedBits.
+    private int findQuote(int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = (long) LONGS.get(buffer, i);
+            long found = zeroBytes(word ^ QUOTES);
+            if (found != 0) {
+                scannedBits |= word & ((found & -found) - 1);
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            scannedBits |= word;
+        }
+        for (; i < to; i++) {
+            if (buffer[i] == '"') {
+                return i;
+            }
+            scannedBits |= buffer[i];
+        }
+        return to;
+    }
+
+    // Sets the high bit of each byte of the result whose byte in word is zero.
+    private static long zeroBytes(long word) {
+        long low = (word & LOW_BITS) + LOW_BITS;
+        return ~(low | word | LOW_BITS);
+    }
+}
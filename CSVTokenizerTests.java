@@ -0,0 +1,269 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CSVTokenizerTests {
+    // Tokenizes the data with every buffer size from 1 to 32 bytes, as well as
+    // from memory, and checks that the results are all the same.
+    private static List<List<String>> tokenize(String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        List<List<String>> expected = records(new CSVTokenizer(bytes));
+        for (int size = 1; size <= 32; size++) {
+            CSVTokenizer tokenizer = new CSVTokenizer(
+                Channels.newChannel(new ByteArrayInputStream(bytes)), size);
+            assertEquals(expected, records(tokenizer), "buffer size " + size);
+        }
+        return expected;
+    }
+
+    private static List<List<String>> records(CSVTokenizer tokenizer) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (tokenizer) {
+            while (tokenizer.next()) {
+                records.add(List.of(tokenizer.fields()));
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void testFile() throws IOException {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(Paths.get("testing/data/test.csv"))) {
+            assertTrue(tokenizer.next());
+            assertEquals(5, tokenizer.fieldCount());
+            assertEquals("Filename", tokenizer.field(0));
+            assertTrue(tokenizer.next());
+            assertEquals("image1.jpg", tokenizer.field(0));
+            assertTrue(tokenizer.next());
+            assertEquals("Image, Two", tokenizer.field(1));
+            assertEquals("Smith", tokenizer.field(4));
+            assertFalse(tokenizer.next());
+            assertFalse(tokenizer.next());
+        }
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        assertEquals(List.of(), tokenize(""));
+    }
+
+    @Test
+    void testLineTerminators() throws IOException {
+        assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f"), List.of(""), List.of("g", "h")),
+            tokenize("a,b\r\nc,d\re,f\n\ng,h"));
+        assertEquals(List.of(List.of("a", "b")), tokenize("a,b\r\n"));
+    }
+
+    @Test
+    void testEmptyFields() throws IOException {
+        assertEquals(List.of(List.of("", "", ""), List.of("a", "")), tokenize(",,\na,\n"));
+    }
+
+    @Test
+    void testQuotedFields() throws IOException {
+        assertEquals(List.of(
+                List.of("a,b", "say \"hi\"", "line 1\nline 2\r\nline 3", "", "x")),
+            tokenize("\"a,b\",\"say \"\"hi\"\"\",\"line 1\nline 2\r\nline 3\",\"\",x\n"));
+    }
+
+    @Test
+    void testQuotesInUnquotedField() throws IOException {
+        assertEquals(List.of(List.of("5\" x 7\" print", "b")), tokenize("5\" x 7\" print,b"));
+    }
+
+    @Test
+    void testTextAfterClosingQuote() throws IOException {
+        assertEquals(List.of(List.of("ab c", "d")), tokenize("\"ab\" c,d"));
+    }
+
+    @Test
+    void testLongFields() throws IOException {
+        String longText = "x".repeat(1000);
+        assertEquals(List.of(List.of(longText, longText + "," + longText), List.of("y")),
+            tokenize(longText + ",\"" + longText + "," + longText + "\"\ny"));
+    }
+
+    @Test
+    void testUnicode() throws IOException {
+        assertEquals(List.of(List.of("Zoë", "Brontë, Émile", "日本")), tokenize("Zoë,\"Brontë, Émile\",日本\n"));
+    }
+
+    @Test
+    void testUnclosedQuote() {
+        assertThrows(IOException.class, () -> tokenize("a,\"b,c\nd,e"));
+    }
+
+    @Test
+    void testIsEmptyLine() throws IOException {
+        CSVTokenizer tokenizer = new CSVTokenizer("a\n\n,\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(tokenizer.next());
+        assertFalse(tokenizer.isEmptyLine());
+        assertTrue(tokenizer.next());
+        assertTrue(tokenizer.isEmptyLine());
+        assertTrue(tokenizer.next());
+        assertFalse(tokenizer.isEmptyLine());
+        assertFalse(tokenizer.next());
+    }
+
+    @Test
+    void testRecordBytes() throws IOException {
+        CSVTokenizer tokenizer = new CSVTokenizer("x\nab,\"c,d\",e\r\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(tokenizer.next());
+        assertTrue(tokenizer.next());
+        int[] bounds = new int[6];
+        byte[] record = tokenizer.recordBytes(bounds);
+        assertEquals("ab,\"c,d\",e", new String(record, StandardCharsets.UTF_8));
+        assertArrayEquals(new int[] {0, 2, 3, 8, 9, 10}, bounds);
+        assertEquals("c,d", CSVTokenizer.decodeField(record, bounds[2], bounds[3], StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testInvalidField() throws IOException {
+        CSVTokenizer tokenizer = new CSVTokenizer("a,b".getBytes(StandardCharsets.UTF_8));
+        assertTrue(tokenizer.next());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> tokenizer.field(2));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> tokenizer.field(-1));
+    }
+
+    @Test
+    void testSplit() {
+        assertArrayEquals(new String[] {"a", "b,c", ""}, CSVTokenizer.split("a,\"b,c\","));
+        assertArrayEquals(new String[] {""}, CSVTokenizer.split(""));
+        assertThrows(IllegalArgumentException.class, () -> CSVTokenizer.split("a\nb"));
+        assertThrows(IllegalArgumentException.class, () -> CSVTokenizer.split("\"a"));
+    }
+
+    @Test
+    void testCountQuotes() {
+        byte[] bytes = "\"a\",\"\"\"b\"\"\" and some more text \"".getBytes(StandardCharsets.UTF_8);
+        assertEquals(9, CSVTokenizer.countQuotes(bytes, 0, bytes.length));
+        assertEquals(2, CSVTokenizer.countQuotes(bytes, 0, 3));
+        byte[] high = new byte[64];
+        java.util.Arrays.fill(high, (byte) 0xA2);
+        high[9] = '"';
+        assertEquals(1, CSVTokenizer.countQuotes(high, 0, high.length));
+    }
+
+    @Test
+    void testByteOrderMark() throws IOException {
+        assertEquals(List.of(List.of("Zoë", "b"), List.of("c")), tokenize("\uFEFFZoë,b\nc"));
+        assertEquals(List.of(), tokenize("\uFEFF"));
+        // only a byte order mark at the very start is skipped
+        assertEquals(List.of(List.of("a"), List.of("\uFEFFb")), tokenize("a\n\uFEFFb"));
+    }
+
+    @Test
+    void testByteOrderMarkOverridesCharset() throws IOException {
+        byte[] data = "\uFEFFZoë,b".getBytes(StandardCharsets.UTF_8);
+        CSVTokenizer tokenizer = new CSVTokenizer(data, Charset.forName("windows-1252"));
+        assertTrue(tokenizer.next());
+        assertEquals("Zoë", tokenizer.field(0));
+        assertEquals(StandardCharsets.UTF_8, tokenizer.charset());
+    }
+
+    @Test
+    void testWindows1252() throws IOException {
+        Charset windows1252 = Charset.forName("windows-1252");
+        byte[] data = "Zoë,\"€5, “quoted”\"\r\nplain".getBytes(windows1252);
+        for (int size = 1; size <= 16; size++) {
+            CSVTokenizer tokenizer = new CSVTokenizer(
+                Channels.newChannel(new ByteArrayInputStream(data)), size, windows1252);
+            assertTrue(tokenizer.next());
+            assertArrayEquals(new String[] {"Zoë", "€5, “quoted”"}, tokenizer.fields());
+            assertEquals(windows1252, tokenizer.recordCharset());
+            assertTrue(tokenizer.next());
+            assertEquals("plain", tokenizer.field(0));
+            assertEquals(StandardCharsets.ISO_8859_1, tokenizer.recordCharset());
+            assertFalse(tokenizer.next());
+        }
+    }
+
+    @Test
+    void testAsciiRecords() throws IOException {
+        byte[] data = ("plain,\"quoted, text\"\n" + "x".repeat(20) + "é\n\"é\"\nascii again")
+            .getBytes(StandardCharsets.UTF_8);
+        CSVTokenizer tokenizer = new CSVTokenizer(data);
+        assertTrue(tokenizer.next());
+        assertEquals(StandardCharsets.ISO_8859_1, tokenizer.recordCharset());
+        assertEquals("quoted, text", tokenizer.field(1));
+        assertTrue(tokenizer.next());
+        assertEquals(StandardCharsets.UTF_8, tokenizer.recordCharset());
+        assertEquals("x".repeat(20) + "é", tokenizer.field(0));
+        assertTrue(tokenizer.next());
+        assertEquals(StandardCharsets.UTF_8, tokenizer.recordCharset());
+        assertEquals("é", tokenizer.field(0));
+        assertTrue(tokenizer.next());
+        assertEquals(StandardCharsets.ISO_8859_1, tokenizer.recordCharset());
+        assertEquals("ascii again", tokenizer.field(0));
+    }
+
+    @Test
+    void testAsciiFieldsBesideOthers() throws IOException {
+        // the high bytes of the second record are in the same word as the end
+        // of the first, and must not make it look like UTF-8
+        byte[] data = "ab,cd\nZoë,Smith,\"Chloé, \"\"Zo\"\"\"\n".getBytes(StandardCharsets.UTF_8);
+        for (int size = 1; size <= 32; size++) {
+            CSVTokenizer tokenizer = new CSVTokenizer(
+                Channels.newChannel(new ByteArrayInputStream(data)), size);
+            assertTrue(tokenizer.next());
+            assertArrayEquals(new String[] {"ab", "cd"}, tokenizer.fields());
+            assertEquals(StandardCharsets.ISO_8859_1, tokenizer.recordCharset());
+            assertTrue(tokenizer.next());
+            assertArrayEquals(new String[] {"Zoë", "Smith", "Chloé, \"Zo\""}, tokenizer.fields());
+            assertEquals("Smith", tokenizer.field(1));
+            assertEquals(StandardCharsets.UTF_8, tokenizer.recordCharset());
+            assertFalse(tokenizer.next());
+        }
+    }
+
+    @Test
+    void testInvalidCharset() {
+        assertThrows(IllegalArgumentException.class, () ->
+            new CSVTokenizer(new byte[0], StandardCharsets.UTF_16));
+    }
+
+    // Streams a file of roughly 256MB, as CSV.Builder.streaming does, and
+    // checks that the heap in use does not grow with the amount of data read.
+    @Test
+    void testBoundedMemory(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("large.csv");
+        String record = "IMG-0000.jpg,\"A Title, With Comma\",Firstname Lastname,Firstname,Lastname";
+        long records = 256L * 1024 * 1024 / (record.length() + 1);
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (long i = 0; i < records; i++) {
+                writer.write(record);
+                writer.newLine();
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        long maxGrowth = 0;
+        long count = 0;
+        try (CSVTokenizer tokenizer = new CSVTokenizer(path, StandardCharsets.UTF_8)) {
+            while (tokenizer.next()) {
+                assertEquals(5, tokenizer.fieldCount());
+                if (++count % (records / 4) == 0) {
+                    assertEquals("A Title, With Comma", tokenizer.field(1));
+                    System.gc();
+                    long used = runtime.totalMemory() - runtime.freeMemory();
+                    maxGrowth = Math.max(maxGrowth, used - baseline);
+                }
+            }
+        }
+        assertEquals(records, count);
+        assertTrue(maxGrowth < 16L * 1024 * 1024, "heap grew by " + maxGrowth + " bytes");
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The CSVWriter class writes CSV lines to a file one at a time.
+ *
+ * The lines are encoded through fixed-size NIO buffers, so the memory used
+ * does not depend on how many lines are written. Each field is quoted as
+ * described in RFC 4180 if it needs to be, and each line is ended with "\n".
+ * ```java
+ * try (CSVWriter writer = new CSVWriter(Paths.get("sorted.csv"))) {
+ *     for (CSVLine line : lines) {
+ *         writer.writeLine(line);
+ *     }
+ * }
+ * ```
+ * A CSVWriter is also an Appendable, so other text can be written with it.
+ */
+public class CSVWriter implements Appendable, Flushable, Closeable {
+    /**
+     * The size of the byte buffer used if no size is specified.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final CharsetEncoder encoder;
+    private boolean closed = false;
+
+    /**
+     * Constructor - creates or replaces the specified file, and writes it in
+     * UTF-8 using the default buffer size.
+     * @param path - the path to the CSV file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public CSVWriter(Path path) throws IOException {
+        this(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor - creates or replaces the specified file using the default
+     * buffer size.
+     * @param path - the path to the CSV file.
+     * @param charset - the charset to write the file in.
+     * @throws IOException if the file cannot be opened.
+     */
+    public CSVWriter(Path path, Charset charset) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING), charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor - writes lines to an already open channel. The channel is
+     * closed when the writer is closed.
+     * @param channel - the channel to write to.
+     * @param charset - the charset to write the lines in.
+     * @param bufferSize - the size in bytes of the write buffer.
+     * @throws IllegalArgumentException if bufferSize is smaller than the
+     * longest character in the charset.
+     */
+    public CSVWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+        encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        if (bufferSize < Math.ceil(2 * encoder.maxBytesPerChar())) {
+            throw new IllegalArgumentException("bufferSize is too small for " + charset);
+        }
+        this.channel = channel;
+        bytes = ByteBuffer.allocateDirect(bufferSize);
+        chars = CharBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Writes a line, quoting each field that needs it, followed by "\n".
+     * @param line - the line to write.
+     * @throws IOException if the line cannot be written, or contains a
+     * character that the charset cannot encode.
+     */
+    public void writeLine(CSVLine line) throws IOException {
+        appendLine(this, line);
+    }
+
+    /**
+     * Appends a line to an Appendable, quoting each field that needs it,
+     * followed by "\n". Fields are read with fieldChars, so lines that keep
+     * their fields in a buffer do not have to create Strings for them.
+     * @param out - the Appendable to append the line to.
+     * @param line - the line to append.
+     * @throws IOException if the Appendable throws it.
+     */
+    public static void appendLine(Appendable out, CSVLine line) throws IOException {
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendField(out, line.fieldChars(i));
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Appends a field to an Appendable. If the field contains a comma, quote or
+     * line break, it is enclosed in quotes and each quote in it is doubled.
+     * @param out - the Appendable to append the field to.
+     * @param field - the value of the field.
+     * @throws IOException if the Appendable throws it.
+     */
+    public static void appendField(Appendable out, CharSequence field) throws IOException {
+        if (!CSVLine.needsQuotes(field)) {
+            out.append(field);
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < field.length(); i++) {
+            if (field.charAt(i) == '"') {
+                out.append(field, start, i + 1);
+                start = i;
+            }
+        }
+        out.append(field, start, field.length());
+        out.append('"');
+    }
+
+    @Override
+    public CSVWriter append(char c) throws IOException {
+        ensureOpen();
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+        return this;
+    }
+
+    @Override
+    public CSVWriter append(CharSequence text) throws IOException {
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public CSVWriter append(CharSequence text, int start, int end) throws IOException {
+        ensureOpen();
+        if (start < 0 || start > end || end > text.length()) {
+            throw new IndexOutOfBoundsException("Range out of bounds: " + start + ", " + end);
+        }
+        while (start < end) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int count = Math.min(end - start, chars.remaining());
+            if (text instanceof String) {
+                chars.put((String) text, start, start + count);
+            } else {
+                for (int i = start; i < start + count; i++) {
+                    chars.put(text.charAt(i));
+                }
+            }
+            start += count;
+        }
+        return this;
+    }
+
+    /**
+     * Writes all of the text that has been buffered to the channel. A
+     * character that is split over two appends is only written once both
+     * halves have been appended.
+     * @throws IOException if the text cannot be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        encode(false);
+        writeBytes();
+    }
+
+    /**
+     * Writes any buffered text and closes the channel.
+     * @throws IOException if the text cannot be written, or the channel
+     * cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            encode(true);
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBytes();
+            }
+            writeBytes();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("CSVWriter is closed");
+        }
+    }
+
+    // Encodes the buffered characters into the byte buffer, writing the byte
+    // buffer to the channel whenever it fills up.
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                writeBytes();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        chars.compact();
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CSVWriterTests {
+    @TempDir
+    Path tempDir;
+
+    private static String appendLine(CSVLine line) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        CSVWriter.appendLine(sb, line);
+        return sb.toString();
+    }
+
+    @Test
+    void testAppendLine() throws IOException {
+        assertEquals("a,b,c\n", appendLine(new CSVLine(new String[] {"a", "b", "c"})));
+        assertEquals("\n", appendLine(new CSVLine()));
+        assertEquals(",\n", appendLine(new CSVLine(new String[] {"", ""})));
+    }
+
+    @Test
+    void testQuotedFields() throws IOException {
+        CSVLine line = new CSVLine(new String[] {
+            "a,b", "say \"hi\"", "\"", "line 1\nline 2", "cr\r", "5\" x 7\""});
+        assertEquals("\"a,b\",\"say \"\"hi\"\"\",\"\"\"\",\"line 1\nline 2\",\"cr\r\",\"5\"\" x 7\"\"\"\n",
+            appendLine(line));
+    }
+
+    @Test
+    void testLazyLine() throws IOException {
+        LazyImageAndPersonLine line = new LazyImageAndPersonLine("image.jpg,\"Image, Two\",Jane Smith,Jane,Smith");
+        assertEquals("image.jpg,\"Image, Two\",Jane Smith,Jane,Smith\n", appendLine(line));
+    }
+
+    @Test
+    void testWriteLines() throws IOException {
+        Path path = tempDir.resolve("out.csv");
+        try (CSVWriter writer = new CSVWriter(path)) {
+            writer.writeLine(new CSVLine(new String[] {"Filename", "Title"}));
+            writer.writeLine(new CSVLine(new String[] {"image.jpg", "Zoë's \"Café\", 2"}));
+        }
+        assertEquals("Filename,Title\nimage.jpg,\"Zoë's \"\"Café\"\", 2\"\n",
+            Files.readString(path, StandardCharsets.UTF_8));
+        try (CSVTokenizer tokenizer = new CSVTokenizer(path)) {
+            assertTrue(tokenizer.next());
+            assertTrue(tokenizer.next());
+            assertEquals("Zoë's \"Café\", 2", tokenizer.field(1));
+        }
+    }
+
+    @Test
+    void testReplacesFile() throws IOException {
+        Path path = tempDir.resolve("out.csv");
+        Files.writeString(path, "x".repeat(1000));
+        try (CSVWriter writer = new CSVWriter(path)) {
+            writer.append("short\n");
+        }
+        assertEquals("short\n", Files.readString(path));
+    }
+
+    @Test
+    void testSmallBuffer() throws IOException {
+        // Characters of several bytes, including a surrogate pair, must be
+        // encoded correctly when they do not fit in what is left of a buffer.
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CSVWriter writer = new CSVWriter(Channels.newChannel(out), StandardCharsets.UTF_8, 8)) {
+            for (int i = 0; i < 200; i++) {
+                CSVLine line = new CSVLine(new String[] {"é" + i, "日本,📷", "a\"b"});
+                writer.writeLine(line);
+                expected.append("é" + i + ",\"日本,📷\",\"a\"\"b\"\n");
+            }
+        }
+        assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testCharset() throws IOException {
+        Charset windows1252 = Charset.forName("windows-1252");
+        Path path = tempDir.resolve("ansi.csv");
+        try (CSVWriter writer = new CSVWriter(path, windows1252)) {
+            writer.writeLine(new CSVLine(new String[] {"Zoë", "€5"}));
+        }
+        assertArrayEquals("Zoë,€5\n".getBytes(windows1252), Files.readAllBytes(path));
+    }
+
+    @Test
+    void testUnmappableCharacter() throws IOException {
+        Path path = tempDir.resolve("ansi.csv");
+        CSVWriter writer = new CSVWriter(path, Charset.forName("windows-1252"));
+        writer.writeLine(new CSVLine(new String[] {"日本"}));
+        assertThrows(CharacterCodingException.class, writer::flush);
+    }
+
+    @Test
+    void testFlush() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CSVWriter writer = new CSVWriter(Channels.newChannel(out), StandardCharsets.UTF_8, 64)) {
+            writer.append("abc");
+            assertEquals(0, out.size());
+            writer.flush();
+            assertEquals("abc", out.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testClosed() throws IOException {
+        CSVWriter writer = new CSVWriter(tempDir.resolve("out.csv"));
+        writer.close();
+        writer.close();
+        assertThrows(IOException.class, () -> writer.append('a'));
+        assertThrows(IOException.class, () -> writer.writeLine(new CSVLine()));
+    }
+
+    @Test
+    void testInvalidBufferSize() {
+        assertThrows(IllegalArgumentException.class, () ->
+            new CSVWriter(Channels.newChannel(new ByteArrayOutputStream()), StandardCharsets.UTF_8, 2));
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/**
+ * The ColumnarRows class stores image and person rows one column at a time.
+ *
+ * The image file name and title are kept in one String array each. The person's
+ * full, first and last names repeat on every image the person submits, so they
+ * are stored as int ids into a StringTable that all three name columns share.
+ * Rows are appended with add, and are read through Line objects, which are
+ * ImageAndPersonLines that fetch their fields from the columns.
+ * ```java
+ * ColumnarRows rows = new ColumnarRows(1000);
+ * ImageAndPersonLine line = rows.line(rows.add(parsedLine));
+ * String name = line.personFullName();
+ * ```
+ */
+public class ColumnarRows {
+    private String[] imageFileNames;
+    private String[] imageTitles;
+    private int[] fullNameIds;
+    private int[] firstNameIds;
+    private int[] lastNameIds;
+    private final StringTable names = new StringTable();
+    private int count = 0;
+
+    /**
+     * Constructor - creates an empty store with room for the specified number
+     * of rows before the columns have to grow.
+     * @param capacity - the expected number of rows.
+     */
+    public ColumnarRows(int capacity) {
+        capacity = Math.max(capacity, 1);
+        imageFileNames = new String[capacity];
+        imageTitles = new String[capacity];
+        fullNameIds = new int[capacity];
+        firstNameIds = new int[capacity];
+        lastNameIds = new int[capacity];
+    }
+
+    /**
+     * Appends a row containing the fields of an ImageAndPersonLine.
+     * @param line - the line whose fields are stored.
+     * @return the index of the new row.
+     */
+    public int add(ImageAndPersonLine line) {
+        if (count == imageFileNames.length) {
+            int capacity = count * 2;
+            imageFileNames = Arrays.copyOf(imageFileNames, capacity);
+            imageTitles = Arrays.copyOf(imageTitles, capacity);
+            fullNameIds = Arrays.copyOf(fullNameIds, capacity);
+            firstNameIds = Arrays.copyOf(firstNameIds, capacity);
+            lastNameIds = Arrays.copyOf(lastNameIds, capacity);
+        }
+        imageFileNames[count] = line.imageFileName();
+        imageTitles[count] = line.imageTitle();
+        fullNameIds[count] = names.id(line.personFullName());
+        firstNameIds[count] = names.id(line.personFirstName());
+        lastNameIds[count] = names.id(line.personLastName());
+        return count++;
+    }
+
+    /**
+     * Returns the number of rows in the store.
+     * @return the number of rows in the store.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the table holding the person names of every row.
+     * @return the shared name table.
+     */
+    public StringTable names() {
+        return names;
+    }
+
+    /**
+     * Returns the id in the name table of the person's full name in a row.
+     * Two rows are for the same person exactly when their ids are equal.
+     * @param row - the index of the row.
+     * @return the id of the person's full name.
+     */
+    public int fullNameId(int row) {
+        checkRow(row);
+        return fullNameIds[row];
+    }
+
+    /**
+     * Returns a line that reads the fields of a row from the columns.
+     * @param row - the index of the row.
+     * @return a line for the row.
+     * @throws ArrayIndexOutOfBoundsException if there is no such row.
+     */
+    public Line line(int row) {
+        checkRow(row);
+        return new Line(this, row);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= count) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + row);
+        }
+    }
+
+    /**
+     * The Line class is an ImageAndPersonLine whose fields are read from a row
+     * of a ColumnarRows object. Fields cannot be added to it.
+     */
+    public static class Line extends ImageAndPersonLine {
+        private final ColumnarRows rows;
+        private final int row;
+
+        private Line(ColumnarRows rows, int row) {
+            this.rows = rows;
+            this.row = row;
+        }
+
+        /**
+         * Returns the store that holds the line's fields.
+         * @return the store that holds the line's fields.
+         */
+        public ColumnarRows rows() {
+            return rows;
+        }
+
+        /**
+         * Returns the id of the person's full name in the store's name table.
+         * @return the id of the person's full name.
+         */
+        public int personId() {
+            return rows.fullNameIds[row];
+        }
+
+        @Override
+        public int length() {
+            return 5;
+        }
+
+        @Override
+        public String field(int index) {
+            switch (index) {
+                case 0:
+                    return rows.imageFileNames[row];
+                case 1:
+                    return rows.imageTitles[row];
+                case 2:
+                    return rows.names.string(rows.fullNameIds[row]);
+                case 3:
+                    return rows.names.string(rows.firstNameIds[row]);
+                case 4:
+                    return rows.names.string(rows.lastNameIds[row]);
+                default:
+                    throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
+            }
+        }
+
+        /**
+         * Fields cannot be added to a Line.
+         * @throws UnsupportedOperationException always.
+         */
+        @Override
+        public void addField(String field) {
+            throw new UnsupportedOperationException("Fields cannot be added to a columnar line");
+        }
+
+        /**
+         * Fields cannot be added to a Line.
+         * @throws UnsupportedOperationException always.
+         */
+        @Override
+        public void addFields(String[] newFields) {
+            throw new UnsupportedOperationException("Fields cannot be added to a columnar line");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class ColumnarRowsTests {
+    @Test
+    void testAddAndRead() {
+        ColumnarRows rows = new ColumnarRows(1);
+        assertEquals(0, rows.add(new ImageAndPersonLine("image1.jpg,Image One,John Doe,John,Doe")));
+        assertEquals(1, rows.add(new ImageAndPersonLine("image2.jpg,\"Image, Two\",Jane Smith,Jane,Smith")));
+        assertEquals(2, rows.add(new ImageAndPersonLine("image3.jpg,Image Three,John Doe,John,Doe")));
+        assertEquals(3, rows.size());
+
+        ImageAndPersonLine line = rows.line(1);
+        assertEquals(5, line.length());
+        assertEquals("image2.jpg", line.imageFileName());
+        assertEquals("Image, Two", line.imageTitle());
+        assertEquals("Jane Smith", line.personFullName());
+        assertEquals("Jane", line.personFirstName());
+        assertEquals("Smith", line.personLastName());
+        assertEquals("image2.jpg,\"Image, Two\",Jane Smith,Jane,Smith", line.toString());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> line.field(5));
+    }
+
+    @Test
+    void testNamesAreShared() {
+        ColumnarRows rows = new ColumnarRows(4);
+        rows.add(new ImageAndPersonLine("image1.jpg,Image One,John Doe,John,Doe"));
+        rows.add(new ImageAndPersonLine("image2.jpg,Image Two,Jane Doe,Jane,Doe"));
+        rows.add(new ImageAndPersonLine("image3.jpg,Image Three,John Doe,John,Doe"));
+        // John Doe, John, Doe, Jane Doe, Jane
+        assertEquals(5, rows.names().size());
+        assertEquals(rows.fullNameId(0), rows.fullNameId(2));
+        assertNotEquals(rows.fullNameId(0), rows.fullNameId(1));
+        assertEquals(rows.fullNameId(0), rows.line(2).personId());
+        assertSame(rows.line(0).personLastName(), rows.line(1).personLastName());
+    }
+
+    @Test
+    void testLinesCannotBeChanged() {
+        ColumnarRows rows = new ColumnarRows(1);
+        rows.add(new ImageAndPersonLine("image1.jpg,Image One,John Doe,John,Doe"));
+        ColumnarRows.Line line = rows.line(0);
+        assertThrows(UnsupportedOperationException.class, () -> line.addField("club"));
+        assertThrows(UnsupportedOperationException.class, () -> line.addFields(new String[] {"club"}));
+    }
+
+    @Test
+    void testInvalidRow() {
+        ColumnarRows rows = new ColumnarRows(1);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> rows.line(0));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> rows.fullNameId(-1));
+    }
+}
@@ -0,0 +1,747 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+/**
+ * The ContactSheetMaker class draws contact sheets of the images of a CSV
+ * object, so that every submission can be looked over before a show.
+ *
+ * The sheets are JPEG files named sheet-001.jpg, sheet-002.jpg and so on. Each
+ * person has a heading with their name, followed by a thumbnail and the title
+ * of each of their images, and the people are in the order in which they
+ * first appear in the CSV object. A person whose images do not fit on one
+ * sheet is continued on the next.
+ *
+ * Decoding a large photo fully just to shrink it is slow, so a thumbnail is
+ * made in the cheapest way available:
+ * <ol>
+ * <li>from the thumbnail cache, which holds each thumbnail made before under
+ * the SHA-256 hash of the image's contents, so a renamed or copied image is
+ * still found, and a changed image is not;</li>
+ * <li>from the thumbnail embedded in the image's EXIF data, if it is large
+ * enough and has the same shape as the image;</li>
+ * <li>by decoding only every nth pixel of the image, with ImageReadParam
+ * source subsampling, so that the decoded image is just larger than the
+ * thumbnail.</li>
+ * </ol>
+ * The thumbnails of each sheet are made on several threads at once, each with
+ * its own ImageReader.
+ * ```java
+ * ContactSheetMaker.Result result = new ContactSheetMaker.Builder()
+ *     .imageDirectory(Paths.get("downloads"))
+ *     .outputDirectory(Paths.get("sheets"))
+ *     .build()
+ *     .make(csv);
+ * System.err.print(ContactSheetMaker.report(result));
+ * ```
+ */
+public class ContactSheetMaker {
+    /**
+     * The default size of the longest side of a thumbnail, in pixels. This is
+     * the size of most EXIF thumbnails.
+     */
+    public static final int DEFAULT_THUMBNAIL_SIZE = 160;
+
+    /**
+     * How a thumbnail was made.
+     */
+    public enum Source {
+        /** The thumbnail was read from the thumbnail cache. */
+        CACHED,
+        /** The thumbnail was read from the image's EXIF data. */
+        EMBEDDED,
+        /** The image was decoded with subsampling. */
+        DECODED,
+        /** The image could not be read, and an empty box was drawn. */
+        FAILED
+    }
+
+    private static final int GAP = 16;
+
+    private final Path imageDirectory;
+    private final Path outputDirectory;
+    private final Path cacheDirectory;
+    private final int thumbnailSize;
+    private final int sheetWidth;
+    private final int sheetHeight;
+    private final int threads;
+    private final Metrics metrics;
+    private final Font headingFont;
+    private final Font captionFont;
+    private final int headingHeight;
+    private final int captionHeight;
+
+    private ContactSheetMaker(Builder builder) {
+        this.imageDirectory = builder.imageDirectory;
+        this.outputDirectory = builder.outputDirectory;
+        this.cacheDirectory = builder.cacheDirectory != null ? builder.cacheDirectory
+            : builder.outputDirectory.resolve(".thumbnails");
+        this.thumbnailSize = builder.thumbnailSize;
+        this.sheetWidth = builder.sheetWidth;
+        this.sheetHeight = builder.sheetHeight;
+        this.threads = builder.threads;
+        this.metrics = builder.metrics;
+        this.headingFont = new Font(Font.SANS_SERIF, Font.BOLD, Math.max(10, thumbnailSize / 7));
+        this.captionFont = new Font(Font.SANS_SERIF, Font.PLAIN, Math.max(9, thumbnailSize / 12));
+        this.headingHeight = headingFont.getSize() * 2;
+        this.captionHeight = captionFont.getSize() * 3 / 2;
+    }
+
+    /**
+     * Builder class for ContactSheetMaker objects.
+     */
+    public static class Builder {
+        private Path imageDirectory = null;
+        private Path outputDirectory = null;
+        private Path cacheDirectory = null;
+        private int thumbnailSize = DEFAULT_THUMBNAIL_SIZE;
+        private int sheetWidth = 1920;
+        private int sheetHeight = 1080;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private Metrics metrics = null;
+
+        /**
+         * Sets the directory that the images are in.
+         * @param imageDirectory - the directory containing the images.
+         * @return returns the Builder object.
+         */
+        public Builder imageDirectory(Path imageDirectory) {
+            this.imageDirectory = imageDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the directory that the sheets are written to. It is created if
+         * it does not exist.
+         * @param outputDirectory - the output directory.
+         * @return returns the Builder object.
+         */
+        public Builder outputDirectory(Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the directory that thumbnails are kept in between runs. It may
+         * be shared by several shows.
+         * @param cacheDirectory - the directory. The default is the
+         * ".thumbnails" directory in the output directory.
+         * @return returns the Builder object.
+         */
+        public Builder cacheDirectory(Path cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the size of the longest side of each thumbnail.
+         * @param thumbnailSize - the size in pixels. The default is
+         * DEFAULT_THUMBNAIL_SIZE.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if thumbnailSize is less than 16.
+         */
+        public Builder thumbnailSize(int thumbnailSize) {
+            if (thumbnailSize < 16) {
+                throw new IllegalArgumentException("thumbnailSize must be at least 16: " + thumbnailSize);
+            }
+            this.thumbnailSize = thumbnailSize;
+            return this;
+        }
+
+        /**
+         * Sets the size of each sheet.
+         * @param width - the width in pixels. The default is 1920.
+         * @param height - the height in pixels. The default is 1080.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if width or height is less than 1.
+         */
+        public Builder sheetSize(int width, int height) {
+            if (width < 1 || height < 1) {
+                throw new IllegalArgumentException("The size must be at least 1x1: " + width + "x" + height);
+            }
+            this.sheetWidth = width;
+            this.sheetHeight = height;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that make thumbnails.
+         * @param threads - the number of threads. The default is the number
+         * of available processors.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if threads is less than 1.
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be at least 1: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics that the time taken and the number of sheets and
+         * thumbnails are recorded in. The names of the measurements begin
+         * with "sheets.".
+         * @param metrics - the Metrics, or null to not record measurements.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds the ContactSheetMaker object.
+         * @return the ContactSheetMaker object.
+         * @throws IllegalStateException if the image directory or the output
+         * directory has not been set, or a heading and a row of thumbnails
+         * do not fit on a sheet.
+         */
+        public ContactSheetMaker build() {
+            if (imageDirectory == null) {
+                throw new IllegalStateException("No image directory has been set");
+            }
+            if (outputDirectory == null) {
+                throw new IllegalStateException("No output directory has been set");
+            }
+            ContactSheetMaker maker = new ContactSheetMaker(this);
+            if (maker.columns() < 1 || GAP + maker.headingHeight + maker.rowHeight() > sheetHeight) {
+                throw new IllegalStateException("A " + thumbnailSize + " pixel thumbnail does not fit on a "
+                    + sheetWidth + "x" + sheetHeight + " sheet");
+            }
+            return maker;
+        }
+    }
+
+    /**
+     * How the thumbnail of one line was made.
+     * @param imageFileName - the image file name from the CSV object.
+     * @param sheet - the path of the sheet that the thumbnail is on.
+     * @param source - how the thumbnail was made.
+     * @param error - a description of why the image could not be read, or
+     * null if it was.
+     */
+    public record Thumbnail(String imageFileName, Path sheet, Source source, String error) {
+    }
+
+    /**
+     * The sheets that were drawn.
+     * @param sheets - the paths of the sheets, in order.
+     * @param thumbnails - how the thumbnail of each line was made, in the
+     * order in which they appear on the sheets.
+     */
+    public record Result(List<Path> sheets, List<Thumbnail> thumbnails) {
+    }
+
+    // A heading or a thumbnail, and where it is drawn on its sheet.
+    private record Cell(ImageAndPersonLine line, String heading, int x, int y) {
+    }
+
+    /**
+     * Draws the contact sheets of the lines of a CSV object, after the header
+     * line. The lines must all be ImageAndPersonLines, as for sorting.
+     * @param csv - the CSV object.
+     * @return the sheets that were drawn.
+     * @throws IOException if the output directory cannot be created, or a
+     * sheet cannot be written.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the thumbnails to be made.
+     */
+    public Result make(CSV csv) throws IOException, InterruptedException {
+        return make(csv.personGroups());
+    }
+
+    /**
+     * Draws the contact sheets of groups of lines.
+     * @param groups - the groups, in the order in which they are drawn.
+     * @return the sheets that were drawn.
+     * @throws IOException if the output directory cannot be created, or a
+     * sheet cannot be written.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the thumbnails to be made.
+     */
+    Result make(List<PersonGroup> groups) throws IOException, InterruptedException {
+        PipelineEvents.ContactSheets event = new PipelineEvents.ContactSheets();
+        event.begin();
+        long start = System.nanoTime();
+        Files.createDirectories(outputDirectory);
+        Files.createDirectories(cacheDirectory);
+        List<List<Cell>> layout = layout(groups);
+        List<Path> sheets = new ArrayList<>();
+        List<Thumbnail> thumbnails = new ArrayList<>();
+        int threadCount = Math.max(1, threads);
+        Worker[] workers = new Worker[threadCount];
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        BufferedImage sheet = new BufferedImage(sheetWidth, sheetHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = sheet.createGraphics();
+        try {
+            for (int t = 0; t < threadCount; t++) {
+                workers[t] = new Worker();
+            }
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            for (List<Cell> cells : layout) {
+                Path path = outputDirectory.resolve(String.format(Locale.ROOT, "sheet-%03d.jpg", sheets.size() + 1));
+                BufferedImage[] images = new BufferedImage[cells.size()];
+                Thumbnail[] made = new Thumbnail[cells.size()];
+                makeThumbnails(executor, workers, cells, path, images, made);
+                drawSheet(graphics, cells, images, made);
+                writeImage(sheet, path);
+                sheets.add(path);
+                for (Thumbnail thumbnail : made) {
+                    if (thumbnail != null) {
+                        thumbnails.add(thumbnail);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            graphics.dispose();
+            for (Worker worker : workers) {
+                if (worker != null) {
+                    worker.close();
+                }
+            }
+        }
+
+        long[] counts = new long[Source.values().length];
+        for (Thumbnail thumbnail : thumbnails) {
+            counts[thumbnail.source().ordinal()]++;
+        }
+        event.directory = outputDirectory.toString();
+        event.sheets = sheets.size();
+        event.thumbnails = thumbnails.size();
+        event.cached = counts[Source.CACHED.ordinal()];
+        event.embedded = counts[Source.EMBEDDED.ordinal()];
+        event.decoded = counts[Source.DECODED.ordinal()];
+        event.failed = counts[Source.FAILED.ordinal()];
+        event.commit();
+        if (metrics != null) {
+            metrics.recordTime("sheets.time", System.nanoTime() - start);
+            metrics.record("sheets.sheets", Metrics.Unit.COUNT, sheets.size());
+            for (Source source : Source.values()) {
+                metrics.record("sheets." + source.name().toLowerCase(Locale.ROOT), Metrics.Unit.COUNT,
+                    counts[source.ordinal()]);
+            }
+        }
+        return new Result(List.copyOf(sheets), List.copyOf(thumbnails));
+    }
+
+    /**
+     * Returns a report of the images that could not be read, with one line for
+     * each, followed by a line counting the sheets and how the thumbnails were
+     * made.
+     * @param result - the result returned by make.
+     * @return the report.
+     */
+    public static String report(Result result) {
+        StringBuilder sb = new StringBuilder();
+        long[] counts = new long[Source.values().length];
+        for (Thumbnail thumbnail : result.thumbnails()) {
+            counts[thumbnail.source().ordinal()]++;
+            if (thumbnail.source() == Source.FAILED) {
+                sb.append(String.format(Locale.ROOT, "FAILED %s: %s\n", thumbnail.imageFileName(),
+                    thumbnail.error()));
+            }
+        }
+        sb.append(result.sheets().size()).append(result.sheets().size() == 1 ? " sheet, " : " sheets, ")
+            .append(result.thumbnails().size()).append(" thumbnails");
+        for (Source source : Source.values()) {
+            if (counts[source.ordinal()] > 0) {
+                sb.append(", ").append(counts[source.ordinal()]).append(' ')
+                    .append(source.name().toLowerCase(Locale.ROOT));
+            }
+        }
+        return sb.append('\n').toString();
+    }
+
+    private int columns() {
+        return (sheetWidth - GAP) / (thumbnailSize + GAP);
+    }
+
+    private int rowHeight() {
+        return thumbnailSize + captionHeight + GAP;
+    }
+
+    // Places each person's heading and thumbnails, starting a new sheet when
+    // the next row does not fit. A heading is never left at the bottom of a
+    // sheet without a row of thumbnails after it.
+    private List<List<Cell>> layout(List<PersonGroup> groups) {
+        List<List<Cell>> sheets = new ArrayList<>();
+        List<Cell> cells = new ArrayList<>();
+        int columns = columns();
+        int left = (sheetWidth - columns * (thumbnailSize + GAP) + GAP) / 2;
+        int y = GAP;
+        for (PersonGroup group : groups) {
+            for (int i = 0; i < group.size(); i += columns) {
+                boolean first = i == 0;
+                int needed = (first ? headingHeight : 0) + rowHeight();
+                if (y + needed > sheetHeight) {
+                    sheets.add(cells);
+                    cells = new ArrayList<>();
+                    y = GAP;
+                }
+                if (first || y == GAP) {
+                    cells.add(new Cell(null, group.fullName() + (first ? "" : " (continued)"), left, y));
+                    y += headingHeight;
+                }
+                for (int column = 0; column < columns && i + column < group.size(); column++) {
+                    cells.add(new Cell(group.line(i + column), null, left + column * (thumbnailSize + GAP), y));
+                }
+                y += rowHeight();
+            }
+        }
+        if (!cells.isEmpty()) {
+            sheets.add(cells);
+        }
+        return sheets;
+    }
+
+    // Makes the thumbnails of one sheet. Each thread takes the next thumbnail
+    // that has not been made, with its own Worker.
+    private void makeThumbnails(ExecutorService executor, Worker[] workers, List<Cell> cells, Path sheet,
+            BufferedImage[] images, Thumbnail[] made) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Worker worker : workers) {
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < cells.size(); i = next.getAndIncrement()) {
+                    Cell cell = cells.get(i);
+                    if (cell.line() != null) {
+                        made[i] = worker.thumbnail(cell.line().imageFileName(), sheet, images, i);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // thumbnail turns every problem with an image into a Thumbnail
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void drawSheet(Graphics2D graphics, List<Cell> cells, BufferedImage[] images, Thumbnail[] made) {
+        graphics.setColor(Color.DARK_GRAY);
+        graphics.fillRect(0, 0, sheetWidth, sheetHeight);
+        for (int i = 0; i < cells.size(); i++) {
+            Cell cell = cells.get(i);
+            if (cell.heading() != null) {
+                graphics.setColor(Color.WHITE);
+                graphics.setFont(headingFont);
+                FontMetrics fontMetrics = graphics.getFontMetrics();
+                graphics.drawString(fit(cell.heading(), fontMetrics, sheetWidth - 2 * cell.x()), cell.x(),
+                    cell.y() + fontMetrics.getAscent());
+                continue;
+            }
+            BufferedImage image = images[i];
+            if (image != null) {
+                graphics.drawImage(image, cell.x() + (thumbnailSize - image.getWidth()) / 2,
+                    cell.y() + (thumbnailSize - image.getHeight()) / 2, null);
+            } else {
+                graphics.setColor(Color.GRAY);
+                graphics.drawRect(cell.x(), cell.y(), thumbnailSize - 1, thumbnailSize - 1);
+                graphics.drawLine(cell.x(), cell.y(), cell.x() + thumbnailSize - 1, cell.y() + thumbnailSize - 1);
+            }
+            String caption = cell.line().imageTitle().isEmpty() ? cell.line().imageFileName()
+                : cell.line().imageTitle();
+            graphics.setColor(made[i].source() == Source.FAILED ? Color.ORANGE : Color.LIGHT_GRAY);
+            graphics.setFont(captionFont);
+            FontMetrics fontMetrics = graphics.getFontMetrics();
+            graphics.drawString(fit(caption, fontMetrics, thumbnailSize), cell.x(),
+                cell.y() + thumbnailSize + fontMetrics.getAscent());
+        }
+    }
+
+    // Shortens text with an ellipsis until it fits in width.
+    private static String fit(String text, FontMetrics fontMetrics, int width) {
+        if (fontMetrics.stringWidth(text) <= width) {
+            return text;
+        }
+        int end = text.length();
+        while (end > 0 && fontMetrics.stringWidth(text.substring(0, end) + "…") > width) {
+            end--;
+        }
+        return text.substring(0, end) + "…";
+    }
+
+    // Writes an image as a JPEG file through a temporary file, so that it is
+    // never seen half written.
+    private static void writeImage(BufferedImage image, Path path) throws IOException {
+        Path temporary = path.resolveSibling("." + path.getFileName() + "." + Thread.currentThread().threadId()
+            + ".part");
+        try {
+            if (!ImageIO.write(image, "jpg", temporary.toFile())) {
+                throw new IOException("No JPEG writer is available");
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the thumbnail in the EXIF data of a JPEG image. The thumbnail is
+     * itself a JPEG image, given by the JPEGInterchangeFormat tags of the
+     * second image file directory of the EXIF data.
+     * @param data - the JPEG image.
+     * @return the thumbnail, or null if the image has no EXIF thumbnail or its
+     * EXIF data is not valid.
+     */
+    static ByteBuffer exifThumbnail(ByteBuffer data) {
+        try {
+            if ((data.get(0) & 0xFF) != 0xFF || (data.get(1) & 0xFF) != 0xD8) {
+                return null;
+            }
+            int position = 2;
+            while (position + 4 <= data.limit()) {
+                if ((data.get(position) & 0xFF) != 0xFF) {
+                    return null;
+                }
+                int marker = data.get(position + 1) & 0xFF;
+                if (marker == 0xFF) {
+                    position++;
+                    continue;
+                }
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                    position += 2;
+                    continue;
+                }
+                if (marker == 0xDA || marker == 0xD9) {
+                    // The EXIF data comes before the image data.
+                    return null;
+                }
+                int length = data.getShort(position + 2) & 0xFFFF;
+                if (marker == 0xE1 && length >= 16 && data.getInt(position + 4) == 0x45786966
+                        && data.getShort(position + 8) == 0) {
+                    // "Exif" and two zero bytes, then a TIFF file
+                    return tiffThumbnail(data, position + 10, position + 2 + length);
+                }
+                position += 2 + length;
+            }
+            return null;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer tiffThumbnail(ByteBuffer data, int tiff, int end) {
+        ByteBuffer tiffData = data.duplicate();
+        int byteOrder = data.getShort(tiff) & 0xFFFF;
+        if (byteOrder == 0x4949) {
+            tiffData.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (byteOrder != 0x4D4D) {
+            return null;
+        }
+        long firstDirectory = tiffData.getInt(tiff + 4) & 0xFFFFFFFFL;
+        if (firstDirectory < 8 || tiff + firstDirectory + 2 > end) {
+            return null;
+        }
+        int directory = (int) (tiff + firstDirectory);
+        int entries = tiffData.getShort(directory) & 0xFFFF;
+        long secondDirectory = tiffData.getInt(directory + 2 + entries * 12) & 0xFFFFFFFFL;
+        if (secondDirectory < 8 || tiff + secondDirectory + 2 > end) {
+            return null;
+        }
+        directory = (int) (tiff + secondDirectory);
+        entries = tiffData.getShort(directory) & 0xFFFF;
+        long offset = -1;
+        long length = -1;
+        for (int i = 0; i < entries; i++) {
+            int entry = directory + 2 + i * 12;
+            int tag = tiffData.getShort(entry) & 0xFFFF;
+            if (tag == 0x0201) {
+                offset = value(tiffData, entry);
+            } else if (tag == 0x0202) {
+                length = value(tiffData, entry);
+            }
+        }
+        if (offset <= 0 || length <= 0 || tiff + offset + length > end) {
+            return null;
+        }
+        return data.slice((int) (tiff + offset), (int) length);
+    }
+
+    // The value of a directory entry holding one SHORT or LONG.
+    private static long value(ByteBuffer tiffData, int entry) {
+        int type = tiffData.getShort(entry + 2) & 0xFFFF;
+        if (type == 3) {
+            return tiffData.getShort(entry + 8) & 0xFFFF;
+        }
+        return type == 4 ? tiffData.getInt(entry + 8) & 0xFFFFFFFFL : -1;
+    }
+
+    // The ImageReader and digest that one thread makes thumbnails with.
+    private final class Worker {
+        private final ImageReader reader;
+        private final ImageReadParam param;
+        private final MessageDigest digest;
+
+        Worker() {
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+            if (!readers.hasNext()) {
+                // Every Java implementation includes a JPEG reader.
+                throw new IllegalStateException("No JPEG reader is available");
+            }
+            reader = readers.next();
+            param = reader.getDefaultReadParam();
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java implementation must provide SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // Makes the thumbnail of one image, and stores it in images. Every
+        // problem with the image is turned into a Thumbnail.
+        Thumbnail thumbnail(String imageFileName, Path sheet, BufferedImage[] images, int index) {
+            Path path;
+            try {
+                path = imageDirectory.resolve(imageFileName);
+            } catch (InvalidPathException e) {
+                return new Thumbnail(imageFileName, sheet, Source.FAILED, "not a valid file name");
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    return new Thumbnail(imageFileName, sheet, Source.FAILED, "the file is too large");
+                }
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                digest.update(data.duplicate());
+                Path cached = cacheDirectory.resolve(HexFormat.of().formatHex(digest.digest()) + "-"
+                    + thumbnailSize + ".jpg");
+                if (Files.exists(cached)) {
+                    BufferedImage image = ImageIO.read(cached.toFile());
+                    if (image != null) {
+                        images[index] = image;
+                        return new Thumbnail(imageFileName, sheet, Source.CACHED, null);
+                    }
+                }
+                Source source = Source.EMBEDDED;
+                BufferedImage image = embedded(data, path);
+                if (image == null) {
+                    source = Source.DECODED;
+                    image = decode(path);
+                }
+                images[index] = image;
+                writeImage(image, cached);
+                return new Thumbnail(imageFileName, sheet, source, null);
+            } catch (NoSuchFileException e) {
+                return new Thumbnail(imageFileName, sheet, Source.FAILED, "file not found");
+            } catch (IOException | RuntimeException e) {
+                // ImageIO throws runtime exceptions for some damaged images.
+                return new Thumbnail(imageFileName, sheet, Source.FAILED,
+                    e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        }
+
+        // Reads the EXIF thumbnail, if it is at least as large as the
+        // thumbnail and has the same shape as the image. Many cameras add
+        // black bars to fit a 4:3 thumbnail, which would show on the sheet.
+        private BufferedImage embedded(ByteBuffer data, Path path) throws IOException {
+            ByteBuffer exif = exifThumbnail(data);
+            if (exif == null) {
+                return null;
+            }
+            byte[] bytes = new byte[exif.remaining()];
+            exif.get(bytes);
+            BufferedImage image;
+            try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes))) {
+                reader.setInput(in, true, true);
+                image = reader.read(0);
+            } catch (IOException | RuntimeException e) {
+                // A damaged thumbnail is ignored, and the image decoded.
+                return null;
+            } finally {
+                reader.setInput(null);
+            }
+            if (Math.max(image.getWidth(), image.getHeight()) < thumbnailSize) {
+                return null;
+            }
+            JPEGHeader header = JPEGHeader.read(path);
+            double imageShape = (double) header.width() / header.height();
+            double thumbnailShape = (double) image.getWidth() / image.getHeight();
+            if (Math.abs(imageShape - thumbnailShape) > 0.02 * imageShape) {
+                return null;
+            }
+            return scale(image);
+        }
+
+        // Decodes every nth pixel of the image, so that the decoded image is
+        // at least as large as the thumbnail, and no more than twice as large.
+        private BufferedImage decode(Path path) throws IOException {
+            try (ImageInputStream in = new FileImageInputStream(path.toFile())) {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longest / thumbnailSize);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return scale(reader.read(0, param));
+            } finally {
+                reader.setInput(null);
+            }
+        }
+
+        // Shrinks an image to fit in a square of the thumbnail size.
+        private BufferedImage scale(BufferedImage image) {
+            double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+            int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+            BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = thumbnail.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(image, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            return thumbnail;
+        }
+
+        void close() {
+            reader.dispose();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+public class ContactSheetMakerTests {
+    @TempDir
+    Path tempDir;
+
+    private static byte[] jpeg(int width, int height, Color color) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    // Adds an APP1 segment holding EXIF data with a thumbnail to a JPEG image.
+    static byte[] withExifThumbnail(byte[] image, byte[] thumbnail, ByteOrder order) {
+        // TIFF header, IFD0 with no entries, then IFD1 with the two
+        // thumbnail tags, then the thumbnail.
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 6 + 2 + 2 * 12 + 4 + thumbnail.length).order(order);
+        tiff.putShort((short) (order == ByteOrder.LITTLE_ENDIAN ? 0x4949 : 0x4D4D)).putShort((short) 42).putInt(8);
+        tiff.putShort((short) 0).putInt(14);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(8 + 6 + 2 + 2 * 12 + 4);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        tiff.putInt(0);
+        tiff.put(thumbnail);
+        int length = 2 + 6 + tiff.capacity();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(image, 0, 2);
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xE1, (byte) (length >> 8), (byte) length});
+        out.writeBytes(new byte[] {'E', 'x', 'i', 'f', 0, 0});
+        out.writeBytes(tiff.array());
+        out.write(image, 2, image.length - 2);
+        return out.toByteArray();
+    }
+
+    // Returns the number of pixels of a sheet that are close to a color.
+    private static int pixels(Path sheet, Color color) throws IOException {
+        BufferedImage image = ImageIO.read(sheet.toFile());
+        int count = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                Color pixel = new Color(image.getRGB(x, y));
+                if (Math.abs(pixel.getRed() - color.getRed()) < 30
+                        && Math.abs(pixel.getGreen() - color.getGreen()) < 30
+                        && Math.abs(pixel.getBlue() - color.getBlue()) < 30) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private CSV createShow(Path images) throws IOException {
+        Files.createDirectories(images);
+        Files.write(images.resolve("red.jpg"), jpeg(1600, 1200, Color.RED));
+        // The EXIF thumbnail is blue, so the sheet shows which was used.
+        Files.write(images.resolve("exif.jpg"), withExifThumbnail(jpeg(1600, 1200, Color.RED),
+            jpeg(160, 120, Color.BLUE), ByteOrder.BIG_ENDIAN));
+        // A 4:3 thumbnail of a 3:2 image is not used.
+        Files.write(images.resolve("wide.jpg"), withExifThumbnail(jpeg(1800, 1200, Color.GREEN),
+            jpeg(160, 120, Color.BLUE), ByteOrder.LITTLE_ENDIAN));
+        Path csv = tempDir.resolve("show.csv");
+        Files.writeString(csv, "Filename,Title,Full Name,First Name,Last Name\n" +
+            "red.jpg,One,John Doe,John,Doe\n" +
+            "exif.jpg,Two,Jane Smith,Jane,Smith\n" +
+            "wide.jpg,Three,John Doe,John,Doe\n" +
+            "missing.jpg,Four,Jane Smith,Jane,Smith\n");
+        return new CSV.Builder().fileName(csv.toString()).build();
+    }
+
+    @Test
+    void testMake() throws IOException, InterruptedException {
+        Path images = tempDir.resolve("images");
+        CSV csv = createShow(images);
+        Path output = tempDir.resolve("sheets");
+        Metrics metrics = new Metrics();
+        ContactSheetMaker maker = new ContactSheetMaker.Builder()
+            .imageDirectory(images)
+            .outputDirectory(output)
+            .sheetSize(800, 600)
+            .metrics(metrics)
+            .build();
+        ContactSheetMaker.Result result = maker.make(csv);
+
+        Path sheet = output.resolve("sheet-001.jpg");
+        assertEquals(List.of(sheet), result.sheets());
+        // grouped by person, in the order in which they first appear
+        assertEquals(List.of("red.jpg", "wide.jpg", "exif.jpg", "missing.jpg"),
+            result.thumbnails().stream().map(ContactSheetMaker.Thumbnail::imageFileName).toList());
+        assertEquals(List.of(ContactSheetMaker.Source.DECODED, ContactSheetMaker.Source.DECODED,
+            ContactSheetMaker.Source.EMBEDDED, ContactSheetMaker.Source.FAILED),
+            result.thumbnails().stream().map(ContactSheetMaker.Thumbnail::source).toList());
+        assertEquals("file not found", result.thumbnails().get(3).error());
+        BufferedImage image = ImageIO.read(sheet.toFile());
+        assertEquals(800, image.getWidth());
+        assertEquals(600, image.getHeight());
+        // 160x120 thumbnails, and a 160x107 one for the wide image, with
+        // a few pixels at their edges blurred by JPEG compression
+        assertEquals(160 * 120, pixels(sheet, Color.RED), 1000);
+        assertEquals(160 * 120, pixels(sheet, Color.BLUE), 1000);
+        assertEquals(160 * 107, pixels(sheet, Color.GREEN), 1000);
+        assertEquals("FAILED missing.jpg: file not found\n1 sheet, 4 thumbnails, 1 embedded, 2 decoded, 1 failed\n",
+            ContactSheetMaker.report(result));
+        assertEquals(1, metrics.get("sheets.sheets").total());
+        assertEquals(2, metrics.get("sheets.decoded").total());
+
+        // The thumbnails are cached by their contents, so they are found
+        // again under another name.
+        Files.move(images.resolve("red.jpg"), images.resolve("renamed.jpg"));
+        csv.lines.set(1, new ImageAndPersonLine("renamed.jpg,One,John Doe,John,Doe"));
+        result = maker.make(csv);
+        assertEquals(List.of(ContactSheetMaker.Source.CACHED, ContactSheetMaker.Source.CACHED,
+            ContactSheetMaker.Source.CACHED, ContactSheetMaker.Source.FAILED),
+            result.thumbnails().stream().map(ContactSheetMaker.Thumbnail::source).toList());
+        assertEquals(160 * 120, pixels(sheet, Color.BLUE), 1000);
+        try (var files = Files.list(output.resolve(".thumbnails"))) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    void testPeopleContinueOnTheNextSheet() throws IOException, InterruptedException {
+        Path images = Files.createDirectory(tempDir.resolve("images"));
+        Files.write(images.resolve("photo.jpg"), jpeg(400, 300, Color.RED));
+        StringBuilder text = new StringBuilder("Filename,Title,Full Name,First Name,Last Name\n");
+        for (int i = 0; i < 7; i++) {
+            text.append("photo.jpg,Photo ").append(i).append(",John Doe,John,Doe\n");
+        }
+        text.append("photo.jpg,Last,Jane Smith,Jane,Smith\n");
+        Path path = tempDir.resolve("show.csv");
+        Files.writeString(path, text);
+        CSV csv = new CSV.Builder().fileName(path.toString()).indexed(true).build();
+
+        // Two columns fit on a sheet, with a heading and one row.
+        ContactSheetMaker.Result result = new ContactSheetMaker.Builder()
+            .imageDirectory(images)
+            .outputDirectory(tempDir.resolve("sheets"))
+            .cacheDirectory(tempDir.resolve("cache"))
+            .thumbnailSize(64)
+            .sheetSize(180, 200)
+            .threads(3)
+            .build()
+            .make(csv);
+        assertEquals(5, result.sheets().size());
+        assertEquals(8, result.thumbnails().size());
+        List<Integer> sheets = result.thumbnails().stream()
+            .map(thumbnail -> result.sheets().indexOf(thumbnail.sheet())).toList();
+        assertEquals(List.of(0, 0, 1, 1, 2, 2, 3, 4), sheets);
+        assertTrue(Files.exists(tempDir.resolve("cache")));
+        assertFalse(Files.exists(tempDir.resolve("sheets/.thumbnails")));
+    }
+
+    @Test
+    void testExifThumbnail() throws IOException {
+        byte[] image = jpeg(64, 48, Color.RED);
+        byte[] thumbnail = jpeg(16, 12, Color.BLUE);
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer found = ContactSheetMaker.exifThumbnail(ByteBuffer.wrap(withExifThumbnail(image, thumbnail,
+                order)));
+            byte[] bytes = new byte[found.remaining()];
+            found.get(bytes);
+            assertArrayEquals(thumbnail, bytes);
+        }
+        assertNull(ContactSheetMaker.exifThumbnail(ByteBuffer.wrap(image)));
+        assertNull(ContactSheetMaker.exifThumbnail(ByteBuffer.wrap(new byte[] {1, 2, 3, 4})));
+        // a thumbnail that runs past the end of the EXIF data
+        byte[] damaged = withExifThumbnail(image, thumbnail, ByteOrder.BIG_ENDIAN);
+        damaged[4] = 0;
+        damaged[5] = 40;
+        assertNull(ContactSheetMaker.exifThumbnail(ByteBuffer.wrap(damaged)));
+        assertNull(ContactSheetMaker.exifThumbnail(ByteBuffer.wrap(Arrays.copyOf(damaged, 30))));
+    }
+
+    @Test
+    void testBuilder() {
+        assertThrows(IllegalStateException.class,
+            () -> new ContactSheetMaker.Builder().outputDirectory(tempDir).build());
+        assertThrows(IllegalStateException.class,
+            () -> new ContactSheetMaker.Builder().imageDirectory(tempDir).build());
+        assertThrows(IllegalStateException.class, () -> new ContactSheetMaker.Builder().imageDirectory(tempDir)
+            .outputDirectory(tempDir).sheetSize(100, 100).build());
+        assertThrows(IllegalArgumentException.class, () -> new ContactSheetMaker.Builder().thumbnailSize(8));
+        assertThrows(IllegalArgumentException.class, () -> new ContactSheetMaker.Builder().sheetSize(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ContactSheetMaker.Builder().threads(0));
+    }
+}
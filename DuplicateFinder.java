@@ -0,0 +1,456 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DuplicateFinder class finds lines of a CSV object whose images have the
+ * same contents, such as the same photo submitted twice under different file
+ * names or titles.
+ *
+ * Only images that are the same size as another image can be duplicates, so
+ * the size of every image is read first, and only those images are hashed.
+ * They are hashed with SHA-256 on several threads at once, reading each file
+ * through a memory mapping so that its bytes are not copied into the Java heap.
+ *
+ * The hash of each file is kept with its size and last modified time, and is
+ * used again while the file has not changed. If a cache file is set, the hashes
+ * are also read from it before searching and written back after, so searching
+ * a large archive again only reads the size of each image.
+ * ```java
+ * List<DuplicateFinder.Group> duplicates = new DuplicateFinder.Builder()
+ *     .imageDirectory(Paths.get("downloads"))
+ *     .cacheFile(Paths.get("downloads/.hashes"))
+ *     .build()
+ *     .find(csv);
+ * System.err.print(DuplicateFinder.report(duplicates));
+ * ```
+ */
+public class DuplicateFinder {
+    // The first line of a cache file, which changes if its format does.
+    private static final String CACHE_HEADER = "# FShowBuilder image hashes 1";
+
+    // The largest part of a file that is mapped at once, so that a huge file
+    // does not need a huge mapping.
+    private static final long MAX_MAPPING = 64L * 1024 * 1024;
+
+    private final Path imageDirectory;
+    private final Path cacheFile;
+    private final int threads;
+    private final Metrics metrics;
+    private final ConcurrentHashMap<Path, CachedHash> cache = new ConcurrentHashMap<>();
+    private boolean cacheLoaded = false;
+
+    private DuplicateFinder(Builder builder) {
+        this.imageDirectory = builder.imageDirectory;
+        this.cacheFile = builder.cacheFile;
+        this.threads = builder.threads;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * Builder class for DuplicateFinder objects.
+     */
+    public static class Builder {
+        private Path imageDirectory = null;
+        private Path cacheFile = null;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private Metrics metrics = null;
+
+        /**
+         * Sets the directory that the image file names are relative to.
+         * @param imageDirectory - the directory containing the images.
+         * @return returns the Builder object.
+         */
+        public Builder imageDirectory(Path imageDirectory) {
+            this.imageDirectory = imageDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the file that the hashes are kept in between runs. It is
+         * created if it does not exist. A file that cannot be read is ignored.
+         * @param cacheFile - the cache file, or null to only keep the hashes
+         * in memory. The default is null.
+         * @return returns the Builder object.
+         */
+        public Builder cacheFile(Path cacheFile) {
+            this.cacheFile = cacheFile;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that hash images.
+         * @param threads - the number of threads. The default is the number
+         * of available processors.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if threads is less than 1.
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be at least 1: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics that the time taken and the number of images
+         * hashed are recorded in. The names of the measurements begin with
+         * "duplicates.".
+         * @param metrics - the Metrics, or null to not record measurements.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds the DuplicateFinder object.
+         * @return the DuplicateFinder object.
+         * @throws IllegalStateException if no image directory has been set.
+         */
+        public DuplicateFinder build() {
+            if (imageDirectory == null) {
+                throw new IllegalStateException("No image directory has been set");
+            }
+            return new DuplicateFinder(this);
+        }
+    }
+
+    /**
+     * A set of images with the same contents, and the lines that use them.
+     * @param hash - the SHA-256 hash of the contents, in hexadecimal.
+     * @param size - the size of each image in bytes.
+     * @param imageFileNames - the image file names, in the order in which they
+     * first appear. There are at least two.
+     * @param lines - the lines whose image is one of the images, in list
+     * order.
+     */
+    public record Group(String hash, long size, List<String> imageFileNames, List<CSVLine> lines) {
+    }
+
+    // A hash, and the size and last modified time of the file it was made
+    // from.
+    private record CachedHash(long size, long lastModified, String hash) {
+    }
+
+    // An image file, and what is known about it so far.
+    private static final class Image {
+        final Path path;
+        final List<String> names = new ArrayList<>();
+        final List<Integer> lineIndexes = new ArrayList<>();
+        long size = -1;
+        long lastModified;
+        String hash = null;
+
+        Image(Path path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * Finds the lines of a CSV object, after the header line, whose images
+     * have the same contents. Lines that use the same image file name are not
+     * duplicates of each other. Images that are missing or cannot be read are
+     * ignored; ImageValidator reports them. Title slides are not downloaded
+     * images, so TitleImageLines are skipped.
+     * @param csv - the CSV object.
+     * @return a group for each set of duplicate images, in the order in which
+     * they first appear, which is empty if there are no duplicates.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for the images to be hashed.
+     */
+    public List<Group> find(CSV csv) throws InterruptedException {
+        return find(csv.lines);
+    }
+
+    /**
+     * Finds the lines, after the header line, whose images have the same
+     * contents, as for find(CSV).
+     * @param lines - the lines, starting with the header line. They must not
+     * be changed while find is running.
+     * @return a group for each set of duplicate images.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for the images to be hashed.
+     */
+    List<Group> find(List<CSVLine> lines) throws InterruptedException {
+        PipelineEvents.Duplicates event = new PipelineEvents.Duplicates();
+        event.begin();
+        long start = System.nanoTime();
+        if (cacheFile != null && !cacheLoaded) {
+            loadCache();
+            cacheLoaded = true;
+        }
+
+        // Different names for the same file are the same image.
+        LinkedHashMap<Path, Image> images = new LinkedHashMap<>();
+        for (int i = 1; i < lines.size(); i++) {
+            if (!(lines.get(i) instanceof ImageAndPersonLine line)) {
+                continue;
+            }
+            String name = line.imageFileName();
+            Path path;
+            try {
+                path = imageDirectory.resolve(name).toAbsolutePath().normalize();
+            } catch (InvalidPathException e) {
+                continue;
+            }
+            Image image = images.computeIfAbsent(path, Image::new);
+            if (!image.names.contains(name)) {
+                image.names.add(name);
+            }
+            image.lineIndexes.add(i);
+        }
+        Image[] all = images.values().toArray(new Image[0]);
+        forEach(all, DuplicateFinder::readAttributes);
+
+        // Only an image that is the same size as another needs to be hashed.
+        HashMap<Long, List<Image>> bySize = new HashMap<>();
+        for (Image image : all) {
+            if (image.size >= 0) {
+                bySize.computeIfAbsent(image.size, size -> new ArrayList<>()).add(image);
+            }
+        }
+        List<Image> candidates = new ArrayList<>();
+        for (Image image : all) {
+            if (image.size >= 0 && bySize.get(image.size).size() > 1) {
+                candidates.add(image);
+            }
+        }
+        AtomicLong cached = new AtomicLong();
+        AtomicLong bytesHashed = new AtomicLong();
+        forEach(candidates.toArray(new Image[0]), image -> {
+            CachedHash known = cache.get(image.path);
+            if (known != null && known.size() == image.size && known.lastModified() == image.lastModified) {
+                image.hash = known.hash();
+                cached.incrementAndGet();
+                return;
+            }
+            try {
+                image.hash = hash(image.path, image.size);
+                bytesHashed.addAndGet(image.size);
+                cache.put(image.path, new CachedHash(image.size, image.lastModified, image.hash));
+            } catch (IOException e) {
+                // The file was removed or cannot be read.
+            }
+        });
+
+        LinkedHashMap<String, List<Image>> byHash = new LinkedHashMap<>();
+        for (Image image : candidates) {
+            if (image.hash != null) {
+                byHash.computeIfAbsent(image.size + "/" + image.hash, key -> new ArrayList<>()).add(image);
+            }
+        }
+        List<Group> groups = new ArrayList<>();
+        for (List<Image> same : byHash.values()) {
+            if (same.size() > 1) {
+                groups.add(group(lines, same));
+            }
+        }
+
+        if (cacheFile != null && bytesHashed.get() > 0) {
+            saveCache();
+        }
+        event.directory = imageDirectory.toString();
+        event.images = all.length;
+        event.hashed = candidates.size() - cached.get();
+        event.cached = cached.get();
+        event.groups = groups.size();
+        event.commit();
+        if (metrics != null) {
+            metrics.recordTime("duplicates.time", System.nanoTime() - start);
+            metrics.record("duplicates.images", Metrics.Unit.COUNT, all.length);
+            metrics.record("duplicates.hashed", Metrics.Unit.COUNT, candidates.size() - cached.get());
+            metrics.record("duplicates.cached", Metrics.Unit.COUNT, cached.get());
+            metrics.record("duplicates.hashedBytes", Metrics.Unit.BYTES, bytesHashed.get());
+            metrics.record("duplicates.groups", Metrics.Unit.COUNT, groups.size());
+        }
+        return groups;
+    }
+
+    private static Group group(List<CSVLine> lines, List<Image> same) {
+        List<String> names = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (Image image : same) {
+            names.addAll(image.names);
+            indexes.addAll(image.lineIndexes);
+        }
+        // in list order, rather than grouped by image
+        Collections.sort(indexes);
+        List<CSVLine> groupLines = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            groupLines.add(lines.get(index));
+        }
+        return new Group(same.get(0).hash, same.get(0).size, Collections.unmodifiableList(names),
+            Collections.unmodifiableList(groupLines));
+    }
+
+    private static void readAttributes(Image image) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(image.path, BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+                image.size = attributes.size();
+                image.lastModified = attributes.lastModifiedTime().toMillis();
+            }
+        } catch (IOException e) {
+            // A missing image cannot be a duplicate.
+        }
+    }
+
+    // Hashes the file through memory mappings of at most MAX_MAPPING bytes.
+    private static String hash(Path path, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java implementation must provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != size) {
+                throw new IOException(path + " changed while it was being read");
+            }
+            for (long position = 0; position < size; position += MAX_MAPPING) {
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAX_MAPPING, size - position));
+                digest.update(mapping);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private interface ImageTask {
+        void run(Image image);
+    }
+
+    // Runs the task for every image. Each thread takes the next image, so a
+    // large file does not hold up the images after it.
+    private void forEach(Image[] images, ImageTask task) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        int threadCount = Math.max(1, Math.min(threads, images.length));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < images.length; i = next.getAndIncrement()) {
+                        task.run(images[i]);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // the tasks turn every IOException into a missing hash
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Reads the cache file. Each line holds the size, last modified time, hash
+    // and path of a file, separated by tabs.
+    private void loadCache() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            // The hashes are made again.
+            return;
+        }
+        if (lines.isEmpty() || !lines.get(0).equals(CACHE_HEADER)) {
+            return;
+        }
+        for (int i = 1; i < lines.size(); i++) {
+            String[] fields = lines.get(i).split("\t", 4);
+            if (fields.length != 4) {
+                continue;
+            }
+            try {
+                cache.put(Path.of(fields[3]), new CachedHash(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                    fields[2]));
+            } catch (NumberFormatException | InvalidPathException e) {
+                // a damaged line
+            }
+        }
+    }
+
+    // Writes the cache file, through a temporary file so that a run that is
+    // stopped part way does not leave it half written.
+    private void saveCache() {
+        Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(CACHE_HEADER);
+                writer.write('\n');
+                for (Map.Entry<Path, CachedHash> entry : cache.entrySet()) {
+                    String path = entry.getKey().toString();
+                    if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                        continue;
+                    }
+                    CachedHash hash = entry.getValue();
+                    writer.write(hash.size() + "\t" + hash.lastModified() + "\t" + hash.hash() + "\t" + path + "\n");
+                }
+            }
+            try {
+                Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // The hashes are made again next time.
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // nothing more can be done
+            }
+        }
+    }
+
+    /**
+     * Returns a report of the duplicate images, with a line for each group
+     * listing its image file names, followed by a line counting the groups.
+     * @param groups - the groups returned by find.
+     * @return the report.
+     */
+    public static String report(List<Group> groups) {
+        StringBuilder sb = new StringBuilder();
+        for (Group group : groups) {
+            sb.append("DUPLICATE ").append(String.join(", ", group.imageFileNames()))
+                .append(" (").append(group.lines().size()).append(" lines)\n");
+        }
+        return sb.append(groups.size()).append(groups.size() == 1 ? " set" : " sets")
+            .append(" of duplicate images\n").toString();
+    }
+}
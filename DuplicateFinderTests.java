@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+public class DuplicateFinderTests {
+    @TempDir
+    Path tempDir;
+
+    // Writes a CSV file whose lines refer to two copies of the same image, an
+    // image of the same size with different contents, an image of a different
+    // size and a missing image.
+    private CSV createShow() throws IOException {
+        byte[] photo = JPEGHeaderTests.jpeg(1920, 1080, 100, 0xC0);
+        Files.write(tempDir.resolve("photo.jpg"), photo);
+        Files.write(tempDir.resolve("copy.jpg"), photo);
+        Files.write(tempDir.resolve("other.jpg"), JPEGHeaderTests.jpeg(1080, 1920, 100, 0xC0));
+        Files.write(tempDir.resolve("small.jpg"), JPEGHeaderTests.jpeg(640, 480, 10, 0xC0));
+        Path csv = tempDir.resolve("show.csv");
+        Files.writeString(csv, "Filename,Title,Full Name,First Name,Last Name\n" +
+            "photo.jpg,One,John Doe,John,Doe\n" +
+            "other.jpg,Two,John Doe,John,Doe\n" +
+            "copy.jpg,Three,Jane Smith,Jane,Smith\n" +
+            "small.jpg,Four,Jane Smith,Jane,Smith\n" +
+            "missing.jpg,Five,Jane Smith,Jane,Smith\n" +
+            "photo.jpg,Six,Fred Flintstone,Fred,Flintstone\n");
+        return new CSV.Builder().fileName(csv.toString()).build();
+    }
+
+    @Test
+    void testFind() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        Metrics metrics = new Metrics();
+        List<DuplicateFinder.Group> groups = new DuplicateFinder.Builder()
+            .imageDirectory(tempDir)
+            .metrics(metrics)
+            .build()
+            .find(csv);
+        assertEquals(1, groups.size());
+        DuplicateFinder.Group group = groups.get(0);
+        assertEquals(List.of("photo.jpg", "copy.jpg"), group.imageFileNames());
+        assertEquals(List.of(csv.lines.get(1), csv.lines.get(3), csv.lines.get(6)), group.lines());
+        assertEquals(Files.size(tempDir.resolve("photo.jpg")), group.size());
+        assertEquals(64, group.hash().length());
+        assertEquals("DUPLICATE photo.jpg, copy.jpg (3 lines)\n1 set of duplicate images\n",
+            DuplicateFinder.report(groups));
+
+        assertEquals(5, metrics.get("duplicates.images").total());
+        // small.jpg is the only image of its size, and missing.jpg is missing
+        assertEquals(3, metrics.get("duplicates.hashed").total());
+        assertEquals(0, metrics.get("duplicates.cached").total());
+        assertEquals(1, metrics.get("duplicates.groups").total());
+    }
+
+    // Title slides are drawn into another directory, so a download with the
+    // same name as one is not the same image.
+    @Test
+    void testTitleImageLinesAreSkipped() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        Files.copy(tempDir.resolve("photo.jpg"), tempDir.resolve("title.jpg"));
+        csv.insertAt(1, new TitleImageLine("title.jpg"));
+        List<DuplicateFinder.Group> groups = new DuplicateFinder.Builder().imageDirectory(tempDir).build().find(csv);
+        assertEquals(1, groups.size());
+        assertEquals(List.of("photo.jpg", "copy.jpg"), groups.get(0).imageFileNames());
+        assertEquals(List.of(csv.lines.get(2), csv.lines.get(4), csv.lines.get(7)), groups.get(0).lines());
+    }
+
+    @Test
+    void testNoDuplicates() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        Files.delete(tempDir.resolve("copy.jpg"));
+        List<DuplicateFinder.Group> groups = new DuplicateFinder.Builder().imageDirectory(tempDir).build().find(csv);
+        assertEquals(List.of(), groups);
+        assertEquals("0 sets of duplicate images\n", DuplicateFinder.report(groups));
+    }
+
+    @Test
+    void testCache() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        Path cacheFile = tempDir.resolve("hashes");
+        Metrics metrics = new Metrics();
+        DuplicateFinder finder = new DuplicateFinder.Builder()
+            .imageDirectory(tempDir)
+            .cacheFile(cacheFile)
+            .metrics(metrics)
+            .build();
+        assertEquals(1, finder.find(csv).size());
+        assertTrue(Files.exists(cacheFile));
+        assertEquals(1, finder.find(csv).size());
+        assertEquals(3, metrics.get("duplicates.cached").total());
+
+        // A new DuplicateFinder reads the hashes from the cache file.
+        metrics = new Metrics();
+        finder = new DuplicateFinder.Builder().imageDirectory(tempDir).cacheFile(cacheFile).metrics(metrics).build();
+        assertEquals(1, finder.find(csv).size());
+        assertEquals(0, metrics.get("duplicates.hashed").total());
+        assertEquals(3, metrics.get("duplicates.cached").total());
+
+        // A changed image is hashed again.
+        Files.write(tempDir.resolve("copy.jpg"), JPEGHeaderTests.jpeg(1080, 1920, 100, 0xC0));
+        Files.setLastModifiedTime(tempDir.resolve("copy.jpg"), FileTime.fromMillis(1_000_000));
+        metrics = new Metrics();
+        finder = new DuplicateFinder.Builder().imageDirectory(tempDir).cacheFile(cacheFile).metrics(metrics).build();
+        List<DuplicateFinder.Group> groups = finder.find(csv);
+        assertEquals(1, metrics.get("duplicates.hashed").total());
+        assertEquals(List.of("other.jpg", "copy.jpg"), groups.get(0).imageFileNames());
+    }
+
+    @Test
+    void testDamagedCacheFile() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        Path cacheFile = tempDir.resolve("hashes");
+        Files.writeString(cacheFile, "not a cache file\n");
+        DuplicateFinder finder = new DuplicateFinder.Builder().imageDirectory(tempDir).cacheFile(cacheFile).build();
+        assertEquals(1, finder.find(csv).size());
+
+        // lines that cannot be read are ignored
+        Files.writeString(cacheFile, Files.readString(cacheFile) + "12\tnot a time\tabc\t/a.jpg\nshort line\n");
+        Metrics metrics = new Metrics();
+        finder = new DuplicateFinder.Builder().imageDirectory(tempDir).cacheFile(cacheFile).metrics(metrics).build();
+        assertEquals(1, finder.find(csv).size());
+        assertEquals(3, metrics.get("duplicates.cached").total());
+    }
+
+    @Test
+    void testBuilder() {
+        assertThrows(IllegalStateException.class, () -> new DuplicateFinder.Builder().build());
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateFinder.Builder().threads(0));
+    }
+}
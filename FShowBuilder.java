@@ -1,7 +1,41 @@
+import java.io.IOException;
+import javax.swing.*;
+import javax.swing.filechooser.*;
+
 public class FShowBuilder {
-    public static void main(String[] args) {
-        CSV csv = new CSV.Builder()
-        .build();
-        System.out.println(csv);
+    public static void main(String[] args) throws IOException {
+        CSV csv = null;
+        try {
+            csv = new CSV.Builder()
+            .fileName(getCSVFileName())
+            .build();
+        } catch (RuntimeException e) {
+            JOptionPane.showMessageDialog(null, "Error reading file: " + e.getMessage());
+            System.exit(0);
+        }
+        csv.writeTo(System.out);
+        System.out.flush();
+    }
+
+    /**
+     * Opens a file chooser dialog to select a CSV file. If no file is selected,
+     * a message is displayed and the program exits.
+     * @return The name of the selected CSV file.
+     */
+    private static String getCSVFileName() {
+        JFileChooser j = new JFileChooser(FileSystemView.getFileSystemView().getHomeDirectory());
+        j.setDialogTitle("Select a CSV file");
+        j.setAcceptAllFileFilterUsed(false);
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV files", "csv");
+        j.addChoosableFileFilter(filter);  
+        int r = j.showOpenDialog(null);
+        String fileName = null;
+        if (r == JFileChooser.APPROVE_OPTION) {
+            fileName = j.getSelectedFile().getAbsolutePath();
+        } else {
+            JOptionPane.showMessageDialog(null, "No file selected. Exiting.");
+            System.exit(0);
+        }
+        return fileName;
     }
 }
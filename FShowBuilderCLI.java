@@ -0,0 +1,430 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The FShowBuilderCLI class is the command line version of FShowBuilder.
+ *
+ * It reads a CSV file, optionally sorts it, and writes the result to a file or
+ * to the standard output, with the stages overlapping in a ShowPipeline. It
+ * runs headless, so it works on machines with no display, and it never uses
+ * Swing. Only --contact-sheets uses AWT's imaging classes, so otherwise AWT
+ * is not loaded and it starts quickly. Errors are written to the standard
+ * error, and the exit status is 0 on success, 1 if the file cannot be
+ * processed, and 2 if the arguments are not valid. An output file whose name
+ * ends in .xls is written as an Excel workbook for Flexishow.
+ * ```
+ * java FShowBuilderCLI input.csv sorted.csv --sort=ALPHABETICAL_BY_FULL_NAME
+ * ```
+ * With --validate-images, the JPEG header of each image is checked while the
+ * file is loaded, and any image that is missing, damaged or too large is
+ * reported on the standard error and makes the exit status 1.
+ * With --find-duplicates, images with the same contents are reported on the
+ * standard error, and make the exit status 1.
+ * With --package, the images of the show are collected into a directory while
+ * the file is written, by hard links where possible, skipping any that are
+ * already up to date.
+ * With --contact-sheets, sheets of thumbnails of the images, grouped by person,
+ * are drawn for looking over the submissions. An image that cannot be read
+ * is reported, but does not change the exit status.
+ * With --batch, every CSV file in a directory or manifest is built at once by
+ * BatchBuilder, and a report of the time taken by each one is written to the
+ * standard output. The exit status is 1 if any of them failed.
+ * ```
+ * java FShowBuilderCLI --batch shows/ sorted/ --sort=ALPHABETICAL_BY_FULL_NAME
+ * ```
+ */
+public class FShowBuilderCLI {
+    static final int SUCCESS = 0;
+    static final int FAILURE = 1;
+    static final int USAGE_ERROR = 2;
+
+    private static final String USAGE =
+        "Usage: FShowBuilderCLI <input.csv> [<output.csv>] [options]\n" +
+        "       FShowBuilderCLI --batch <directory|manifest> <output-directory> [options]\n" +
+        "Writes the CSV file to <output.csv>, or to the standard output if it is\n" +
+        "omitted or is -. An output file ending in .xls is written as an Excel\n" +
+        "workbook for Flexishow. With --batch, builds every CSV file in the directory, or\n" +
+        "listed one per line in the manifest, at once into the output directory.\n" +
+        "Options:\n" +
+        "  --sort=<order>     the order to sort the lines in, one of:\n" +
+        "                     " + orderNames() + "\n" +
+        "  --locale=<tag>     the locale used by the COLLATED orders, such as fr-CA\n" +
+        "  --charset=<name>   the charset of the input file, such as windows-1252\n" +
+        "  --parallel         load the input file on all available cores\n" +
+        "  --snapshot         keep a snapshot next to the input file, so that it loads\n" +
+        "                     quickly while it is unchanged\n" +
+        "  --metrics          write the time taken by each stage to the standard error\n" +
+        "  --validate-images  check the JPEG header of every image, and report any\n" +
+        "                     that are missing, truncated or too large\n" +
+        "  --images=<dir>     the directory containing the images; the default is\n" +
+        "                     the directory of the input file\n" +
+        "  --max-image-size=<width>x<height>\n" +
+        "                     the largest size allowed by --validate-images\n" +
+        "  --find-duplicates  report images that have the same contents\n" +
+        "  --hash-cache=<file>\n" +
+        "                     the file that --find-duplicates keeps the hashes of\n" +
+        "                     the images in, so that they are only made once\n" +
+        "  --package=<dir>    collect the images of the show into the directory\n" +
+        "  --copy             with --package, copy the images rather than linking\n" +
+        "                     them when they are on the same file system\n" +
+        "  --contact-sheets=<dir>\n" +
+        "                     draw sheets of thumbnails of the images, grouped by\n" +
+        "                     person, into the directory\n" +
+        "  --batch            build many CSV files at once\n" +
+        "  --jobs=<n>         the number of files that --batch builds at once\n" +
+        "  --help             print this message\n";
+
+    public static void main(String[] args) {
+        // Contact sheets are drawn with AWT, which must not look for a display.
+        System.setProperty("java.awt.headless", "true");
+        int status = run(args, System.out, System.err);
+        if (status != SUCCESS) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs the command line program.
+     * @param args - the command line arguments.
+     * @param out - the stream that the CSV text is written to if no output file
+     * is given, and that the usage message is written to.
+     * @param err - the stream that error messages are written to.
+     * @return the exit status.
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        long start = System.nanoTime();
+        Metrics metrics = null;
+        String input = null;
+        String output = null;
+        sortOrder order = sortOrder.NONE;
+        Locale locale = Locale.getDefault();
+        Charset charset = null;
+        boolean batch = false;
+        boolean snapshot = false;
+        int jobs = 0;
+        ImageValidator.Builder validation = null;
+        String images = null;
+        int[] maxImageSize = null;
+        DuplicateFinder.Builder duplicates = null;
+        String hashCache = null;
+        ShowPackager.Builder packaging = null;
+        boolean copy = false;
+        ContactSheetMaker.Builder contactSheets = null;
+        CSV.Builder builder = new CSV.Builder();
+        try {
+            for (String arg : args) {
+                if (arg.equals("--help")) {
+                    out.print(USAGE);
+                    return SUCCESS;
+                } else if (arg.equals("--parallel")) {
+                    builder.parallel(true);
+                } else if (arg.equals("--snapshot")) {
+                    snapshot = true;
+                    builder.snapshot(true);
+                } else if (arg.equals("--metrics")) {
+                    metrics = new Metrics();
+                    builder.metrics(metrics);
+                } else if (arg.startsWith("--sort=")) {
+                    order = parseOrder(arg.substring("--sort=".length()));
+                } else if (arg.startsWith("--locale=")) {
+                    locale = Locale.forLanguageTag(arg.substring("--locale=".length()));
+                } else if (arg.startsWith("--charset=")) {
+                    charset = Charset.forName(arg.substring("--charset=".length()));
+                    builder.charset(charset);
+                } else if (arg.equals("--validate-images")) {
+                    validation = new ImageValidator.Builder();
+                } else if (arg.startsWith("--images=")) {
+                    images = arg.substring("--images=".length());
+                } else if (arg.startsWith("--max-image-size=")) {
+                    maxImageSize = parseSize(arg.substring("--max-image-size=".length()));
+                } else if (arg.equals("--find-duplicates")) {
+                    duplicates = new DuplicateFinder.Builder();
+                } else if (arg.startsWith("--hash-cache=")) {
+                    hashCache = arg.substring("--hash-cache=".length());
+                } else if (arg.startsWith("--package=")) {
+                    packaging = new ShowPackager.Builder()
+                        .outputDirectory(Paths.get(arg.substring("--package=".length())));
+                } else if (arg.equals("--copy")) {
+                    copy = true;
+                } else if (arg.startsWith("--contact-sheets=")) {
+                    contactSheets = new ContactSheetMaker.Builder()
+                        .outputDirectory(Paths.get(arg.substring("--contact-sheets=".length())));
+                } else if (arg.equals("--batch")) {
+                    batch = true;
+                } else if (arg.startsWith("--jobs=")) {
+                    jobs = parseJobs(arg.substring("--jobs=".length()));
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else if (input == null) {
+                    input = arg;
+                } else if (output == null) {
+                    output = arg;
+                } else {
+                    throw new IllegalArgumentException("Too many file names: " + arg);
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("No input file given");
+            }
+            if (batch && output == null) {
+                throw new IllegalArgumentException("No output directory given");
+            }
+            if (batch && validation != null) {
+                throw new IllegalArgumentException("--validate-images cannot be used with --batch");
+            }
+            if (batch && snapshot) {
+                throw new IllegalArgumentException("--snapshot cannot be used with --batch");
+            }
+            if (batch && packaging != null) {
+                throw new IllegalArgumentException("--package cannot be used with --batch");
+            }
+            if (batch && duplicates != null) {
+                throw new IllegalArgumentException("--find-duplicates cannot be used with --batch");
+            }
+            if (batch && contactSheets != null) {
+                throw new IllegalArgumentException("--contact-sheets cannot be used with --batch");
+            }
+            if (duplicates == null && hashCache != null) {
+                throw new IllegalArgumentException("--hash-cache needs --find-duplicates");
+            }
+            if (validation == null && maxImageSize != null) {
+                throw new IllegalArgumentException("--max-image-size needs --validate-images");
+            }
+            if (validation == null && duplicates == null && packaging == null && contactSheets == null
+                    && images != null) {
+                throw new IllegalArgumentException(
+                    "--images needs --validate-images, --find-duplicates, --package or --contact-sheets");
+            }
+            if (packaging == null && copy) {
+                throw new IllegalArgumentException("--copy needs --package");
+            }
+            Path imageDirectory = images != null ? Paths.get(images)
+                : Paths.get(input).toAbsolutePath().getParent();
+            if (validation != null) {
+                validation.imageDirectory(imageDirectory);
+                if (maxImageSize != null) {
+                    validation.maxSize(maxImageSize[0], maxImageSize[1]);
+                }
+                validation.metrics(metrics);
+            }
+            if (duplicates != null) {
+                duplicates.imageDirectory(imageDirectory).metrics(metrics);
+                if (hashCache != null) {
+                    duplicates.cacheFile(Paths.get(hashCache));
+                }
+            }
+            if (packaging != null) {
+                packaging.imageDirectory(imageDirectory).links(!copy).metrics(metrics);
+            }
+            if (contactSheets != null) {
+                contactSheets.imageDirectory(imageDirectory).metrics(metrics);
+            }
+        } catch (IllegalArgumentException e) {
+            // IllegalCharsetNameException and UnsupportedCharsetException are
+            // both IllegalArgumentExceptions.
+            err.println("Error: " + e.getMessage());
+            err.print(USAGE);
+            return USAGE_ERROR;
+        }
+
+        int status;
+        if (batch) {
+            BatchBuilder.Builder batchBuilder = new BatchBuilder.Builder()
+                .outputDirectory(Paths.get(output))
+                .sortOrder(order)
+                .locale(locale)
+                .metrics(metrics);
+            if (charset != null) {
+                batchBuilder.charset(charset);
+            }
+            if (jobs > 0) {
+                batchBuilder.maxConcurrentJobs(jobs);
+            }
+            status = processBatch(batchBuilder.build(), input, out, err);
+        } else {
+            status = process(builder, input, output, order, locale, validation, duplicates, packaging,
+                contactSheets, metrics, out, err);
+        }
+        if (metrics != null) {
+            metrics.recordTime("total.time", System.nanoTime() - start);
+            err.println("Metrics:");
+            err.print(metrics.summary());
+        }
+        return status;
+    }
+
+    // Builds the show with a ShowPipeline, and returns the exit status. If
+    // validation is not null, the images are checked while the file is
+    // loaded, and the file is still written if any of them have problems.
+    // Duplicate images are found in the same way if duplicates is not null.
+    // If packaging is not null, the images are packaged while the file is
+    // written, and if contactSheets is not null, contact sheets are drawn
+    // while it is sorted.
+    private static int process(CSV.Builder builder, String input, String output, sortOrder order,
+            Locale locale, ImageValidator.Builder validation, DuplicateFinder.Builder duplicates,
+            ShowPackager.Builder packaging, ContactSheetMaker.Builder contactSheets, Metrics metrics,
+            PrintStream out, PrintStream err) {
+        boolean toOut = output == null || output.equals("-");
+        ShowPipeline.Builder pipeline = new ShowPipeline.Builder()
+            .input(Paths.get(input))
+            .csv(builder)
+            .sortOrder(order)
+            .locale(locale)
+            .validator(validation)
+            .duplicateFinder(duplicates)
+            .packager(packaging)
+            .contactSheets(contactSheets)
+            .metrics(metrics);
+        if (toOut) {
+            pipeline.output(out);
+        } else {
+            pipeline.output(Paths.get(output));
+        }
+        ShowPipeline.Result result;
+        try {
+            result = pipeline.build().run();
+            if (toOut) {
+                out.flush();
+                if (out.checkError()) {
+                    throw new ShowPipeline.StageException("write",
+                        new IOException("the output could not be written"));
+                }
+            }
+        } catch (ShowPipeline.StageException e) {
+            err.println(stageError(e, input, toOut ? "-" : output));
+            return FAILURE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Interrupted");
+            return FAILURE;
+        }
+        int status = SUCCESS;
+        if (result.validation() != null) {
+            err.print(ImageValidator.report(result.validation()));
+            for (ImageValidator.Result image : result.validation()) {
+                if (!image.ok()) {
+                    status = FAILURE;
+                }
+            }
+        }
+        if (result.duplicates() != null) {
+            err.print(DuplicateFinder.report(result.duplicates()));
+            if (!result.duplicates().isEmpty()) {
+                status = FAILURE;
+            }
+        }
+        if (result.sheets() != null) {
+            err.print(ContactSheetMaker.report(result.sheets()));
+        }
+        if (result.packaged() != null) {
+            err.print(ShowPackager.report(result.packaged()));
+            for (ShowPackager.Result image : result.packaged()) {
+                if (image.action() == ShowPackager.Action.FAILED) {
+                    status = FAILURE;
+                }
+            }
+        }
+        return status;
+    }
+
+    // Returns the error message for a stage of the pipeline that failed.
+    private static String stageError(ShowPipeline.StageException e, String input, String output) {
+        Throwable cause = e.getCause();
+        if (cause instanceof InterruptedException) {
+            return "Interrupted";
+        }
+        String message = cause instanceof IOException ioException ? message(ioException) : cause.getMessage();
+        switch (e.stage()) {
+            case "read":
+            case "parse":
+                return "Error reading " + input + ": " + message;
+            case "write":
+                return "Error writing " + output + ": " + message;
+            case "package":
+                return "Error packaging the images: " + message;
+            case "sheets":
+                return "Error drawing the contact sheets: " + message;
+            default:
+                return "Error checking the images: " + message;
+        }
+    }
+
+    // Builds every file in the directory or manifest, and returns the exit
+    // status.
+    private static int processBatch(BatchBuilder batchBuilder, String input, PrintStream out,
+            PrintStream err) {
+        List<BatchBuilder.Result> results;
+        try {
+            results = batchBuilder.run(BatchBuilder.findInputs(Paths.get(input)));
+        } catch (IOException e) {
+            err.println("Error reading " + input + ": " + message(e));
+            return FAILURE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Interrupted");
+            return FAILURE;
+        }
+        out.print(BatchBuilder.report(results));
+        out.flush();
+        for (BatchBuilder.Result result : results) {
+            if (!result.succeeded()) {
+                return FAILURE;
+            }
+        }
+        return SUCCESS;
+    }
+
+    private static String message(IOException e) {
+        if (e instanceof NoSuchFileException) {
+            return "file not found";
+        }
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    private static sortOrder parseOrder(String name) {
+        try {
+            return sortOrder.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown sort order: " + name);
+        }
+    }
+
+    private static int parseJobs(String value) {
+        try {
+            int jobs = Integer.parseInt(value);
+            if (jobs > 0) {
+                return jobs;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("The number of jobs must be a positive integer: " + value);
+    }
+
+    private static int[] parseSize(String value) {
+        String[] parts = value.split("x", -1);
+        try {
+            if (parts.length == 2) {
+                int[] size = {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+                if (size[0] >= 0 && size[1] >= 0) {
+                    return size;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("The size must be written as <width>x<height>: " + value);
+    }
+
+    private static String orderNames() {
+        return Arrays.toString(sortOrder.values()).replace("[", "").replace("]", "")
+            .replace(", ", ",\n                     ");
+    }
+}
@@ -0,0 +1,262 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class FShowBuilderCLITests {
+    @TempDir
+    Path tempDir;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private int run(String... args) {
+        return FShowBuilderCLI.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWriteToStandardOutput() {
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/test.csv"));
+        assertEquals(new CSV.Builder().fileName("testing/data/test.csv").build().toString(),
+            out.toString(StandardCharsets.UTF_8));
+        assertEquals("", err.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSortToFile() throws IOException {
+        Path output = tempDir.resolve("sorted.csv");
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/sort.csv", output.toString(),
+            "--sort=alphabetical_by_last_name_then_first_name", "--parallel"));
+        CSV expected = new CSV.Builder().fileName("testing/data/sort.csv").build();
+        expected.sort(sortOrder.ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME);
+        assertEquals(expected.toString(), Files.readString(output, StandardCharsets.UTF_8));
+        assertEquals("", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSnapshot() throws IOException {
+        Path input = Files.copy(Paths.get("testing/data/sort.csv"), tempDir.resolve("sort.csv"));
+        Path output = tempDir.resolve("sorted.csv");
+        assertEquals(FShowBuilderCLI.SUCCESS, run(input.toString(), output.toString(), "--snapshot"));
+        assertTrue(Files.exists(tempDir.resolve("sort.csv.snapshot")));
+        String first = Files.readString(output);
+        assertEquals(FShowBuilderCLI.SUCCESS, run(input.toString(), output.toString(), "--snapshot", "--metrics"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("\nload.snapshot.time "));
+        assertEquals(first, Files.readString(output));
+    }
+
+    @Test
+    void testCollatedWithLocaleAndCharset() {
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/windows1252.csv", "-",
+            "--sort=COLLATED_BY_FULL_NAME", "--locale=fr-CA", "--charset=windows-1252"));
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].contains("John Doe"));
+        assertTrue(lines[2].contains("Zoë Adams"));
+    }
+
+    @Test
+    void testMetrics() {
+        assertEquals(FShowBuilderCLI.SUCCESS,
+            run("testing/data/sort.csv", "--metrics", "--sort=COLLATED_BY_FULL_NAME"));
+        String metrics = err.toString(StandardCharsets.UTF_8);
+        assertTrue(metrics.startsWith("Metrics:"));
+        for (String name : new String[] {"load.read.time", "load.read.bytes", "load.parse.rows",
+                "group.people", "sort.COLLATED_BY_FULL_NAME.time", "write.time", "total.time"}) {
+            assertTrue(metrics.contains("\n" + name + " "), name);
+        }
+        assertFalse(out.toString(StandardCharsets.UTF_8).contains("Metrics"));
+    }
+
+    @Test
+    void testHelp() {
+        assertEquals(FShowBuilderCLI.SUCCESS, run("--help"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("Usage:"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("COLLATED_BY_FULL_NAME"));
+    }
+
+    @Test
+    void testUsageErrors() {
+        String[][] invalid = {
+            {},
+            {"testing/data/test.csv", "--sort=SIDEWAYS"},
+            {"testing/data/test.csv", "--charset=no-such-charset"},
+            {"testing/data/test.csv", "--colour"},
+            {"a.csv", "b.csv", "c.csv"},
+            {"--batch", "testing/data"},
+            {"--batch", "testing/data", "out", "--jobs=0"},
+            {"testing/data/test.csv", "--validate-images", "--max-image-size=1920"},
+            {"testing/data/test.csv", "--images=testing"},
+            {"--batch", "testing/data", "out", "--validate-images"},
+            {"testing/data/test.csv", "--package=out", "--max-image-size=1920x1080"},
+            {"testing/data/test.csv", "--copy"},
+            {"--batch", "testing/data", "out", "--package=show"},
+            {"testing/data/test.csv", "--hash-cache=hashes"},
+            {"--batch", "testing/data", "out", "--find-duplicates"},
+            {"--batch", "testing/data", "out", "--snapshot"}
+        };
+        for (String[] args : invalid) {
+            err.reset();
+            assertEquals(FShowBuilderCLI.USAGE_ERROR, run(args), String.join(" ", args));
+            assertTrue(err.toString(StandardCharsets.UTF_8).startsWith("Error: "));
+            assertTrue(err.toString(StandardCharsets.UTF_8).contains("Usage:"));
+        }
+        assertEquals("", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMissingInputFile() {
+        String input = tempDir.resolve("missing.csv").toString();
+        assertEquals(FShowBuilderCLI.FAILURE, run(input));
+        assertEquals("Error reading " + input + ": file not found\n",
+            err.toString(StandardCharsets.UTF_8).replace("\r\n", "\n"));
+    }
+
+    @Test
+    void testInvalidInputFile() throws IOException {
+        Path input = tempDir.resolve("short.csv");
+        Files.writeString(input, "Filename,Title,Full Name,First Name,Last Name\nimage.jpg,Title\n");
+        assertEquals(FShowBuilderCLI.FAILURE, run(input.toString()));
+        Files.writeString(input, "Filename,Title,Full Name,First Name,Last Name\nimage.jpg,\"Title\n");
+        assertEquals(FShowBuilderCLI.FAILURE, run(input.toString()));
+        assertEquals(2, err.toString(StandardCharsets.UTF_8).lines().count());
+    }
+
+    @Test
+    void testUnwritableOutput() {
+        Path output = tempDir.resolve("no-such-directory").resolve("out.csv");
+        assertEquals(FShowBuilderCLI.FAILURE, run("testing/data/test.csv", output.toString()));
+        assertTrue(err.toString(StandardCharsets.UTF_8).startsWith("Error writing " + output));
+    }
+
+    @Test
+    void testBatch() throws IOException {
+        Path manifest = tempDir.resolve("shows.txt");
+        Path input = Paths.get("testing/data").toAbsolutePath();
+        Files.writeString(manifest, input.resolve("sort.csv") + "\n" + input.resolve("missing.csv") + "\n");
+        Path output = tempDir.resolve("sorted");
+        assertEquals(FShowBuilderCLI.FAILURE, run("--batch", manifest.toString(), output.toString(),
+            "--sort=ALPHABETICAL_BY_FULL_NAME", "--jobs=2"));
+        CSV expected = new CSV.Builder().fileName("testing/data/sort.csv").build();
+        expected.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        assertEquals(expected.toString(), Files.readString(output.resolve("sort.csv"), StandardCharsets.UTF_8));
+        String report = out.toString(StandardCharsets.UTF_8);
+        assertTrue(report.contains("FAILED: file not found"));
+        assertTrue(report.endsWith("2 jobs, 1 failed\n"));
+
+        out.reset();
+        assertEquals(FShowBuilderCLI.SUCCESS, run("--batch", "testing/data", output.toString(), "--metrics"));
+        assertTrue(Files.exists(output.resolve("quoted.csv")));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("\nbatch.jobs "));
+    }
+
+    @Test
+    void testValidateImages() throws IOException {
+        Files.write(tempDir.resolve("image1.jpg"), JPEGHeaderTests.jpeg(1024, 768, 100, 0xC0));
+        Files.write(tempDir.resolve("image2.jpg"), JPEGHeaderTests.jpeg(2048, 1536, 100, 0xC0));
+        Path output = tempDir.resolve("sorted.csv");
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/test.csv", output.toString(),
+            "--validate-images", "--images=" + tempDir));
+        assertEquals("2 images, 2 ok\n", err.toString(StandardCharsets.UTF_8));
+
+        err.reset();
+        assertEquals(FShowBuilderCLI.FAILURE, run("testing/data/test.csv", output.toString(),
+            "--validate-images", "--images=" + tempDir, "--max-image-size=1920x1080"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).contains("WRONG_SIZE image2.jpg"));
+        assertTrue(Files.exists(output));
+
+        err.reset();
+        assertEquals(FShowBuilderCLI.FAILURE, run("testing/data/test.csv", output.toString(), "--validate-images"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).endsWith("2 images, 2 missing\n"));
+    }
+
+    @Test
+    void testFindDuplicates() throws IOException {
+        byte[] image = JPEGHeaderTests.jpeg(1024, 768, 100, 0xC0);
+        Files.write(tempDir.resolve("image1.jpg"), image);
+        Files.write(tempDir.resolve("image2.jpg"), image);
+        Path output = tempDir.resolve("sorted.csv");
+        Path cache = tempDir.resolve("hashes");
+        assertEquals(FShowBuilderCLI.FAILURE, run("testing/data/test.csv", output.toString(),
+            "--find-duplicates", "--images=" + tempDir, "--hash-cache=" + cache));
+        assertEquals("DUPLICATE image1.jpg, image2.jpg (2 lines)\n1 set of duplicate images\n",
+            err.toString(StandardCharsets.UTF_8));
+        assertTrue(Files.exists(output));
+        assertTrue(Files.exists(cache));
+
+        err.reset();
+        Files.write(tempDir.resolve("image2.jpg"), JPEGHeaderTests.jpeg(1024, 768, 200, 0xC0));
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/test.csv", output.toString(),
+            "--find-duplicates", "--images=" + tempDir, "--hash-cache=" + cache));
+        assertEquals("0 sets of duplicate images\n", err.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testPackage() throws IOException {
+        Files.write(tempDir.resolve("image1.jpg"), JPEGHeaderTests.jpeg(1024, 768, 100, 0xC0));
+        Files.write(tempDir.resolve("image2.jpg"), JPEGHeaderTests.jpeg(2048, 1536, 100, 0xC0));
+        Path output = tempDir.resolve("sorted.csv");
+        Path show = tempDir.resolve("show");
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/test.csv", output.toString(),
+            "--images=" + tempDir, "--package=" + show, "--copy"));
+        assertTrue(err.toString(StandardCharsets.UTF_8).startsWith("2 images, 2 copied"));
+        assertArrayEquals(Files.readAllBytes(tempDir.resolve("image2.jpg")),
+            Files.readAllBytes(show.resolve("image2.jpg")));
+
+        err.reset();
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/test.csv", output.toString(),
+            "--images=" + tempDir, "--package=" + show));
+        assertEquals("2 images, 2 unchanged\n", err.toString(StandardCharsets.UTF_8));
+
+        err.reset();
+        assertEquals(FShowBuilderCLI.FAILURE, run("testing/data/test.csv", output.toString(), "--package=" + show));
+        assertTrue(err.toString(StandardCharsets.UTF_8).endsWith("2 images, 2 failed\n"));
+        assertTrue(Files.exists(output));
+    }
+
+    @Test
+    void testContactSheets() throws IOException {
+        Files.write(tempDir.resolve("image1.jpg"), JPEGHeaderTests.jpeg(1024, 768, 100, 0xC0));
+        Path output = tempDir.resolve("sorted.csv");
+        Path sheets = tempDir.resolve("sheets");
+        // An image that cannot be read does not change the exit status.
+        assertEquals(FShowBuilderCLI.SUCCESS, run("testing/data/test.csv", output.toString(),
+            "--images=" + tempDir, "--contact-sheets=" + sheets));
+        String report = err.toString(StandardCharsets.UTF_8);
+        assertTrue(report.endsWith("1 sheet, 2 thumbnails, 2 failed\n"), report);
+        assertTrue(Files.exists(sheets.resolve("sheet-001.jpg")));
+        assertTrue(Files.exists(output));
+
+        err.reset();
+        assertEquals(FShowBuilderCLI.USAGE_ERROR, run("testing/data", "--batch", "--contact-sheets=" + sheets));
+    }
+
+    // Runs the program in a new JVM and checks the classes that it loads.
+    @Test
+    void testDoesNotLoadSwingOrAwt() throws Exception {
+        Path classes = Paths.get(FShowBuilderCLI.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        Path output = tempDir.resolve("sorted.csv");
+        Process process = new ProcessBuilder(java.toString(), "-verbose:class", "-cp", classes.toString(),
+                "FShowBuilderCLI", "testing/data/sort.csv", output.toString(), "--sort=COLLATED_BY_FULL_NAME")
+            .redirectErrorStream(true)
+            .start();
+        List<String> loaded = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8)
+            .lines().toList();
+        assertEquals(0, process.waitFor());
+        assertTrue(loaded.stream().anyMatch(line -> line.contains("FShowBuilderCLI")));
+        assertTrue(loaded.stream().noneMatch(line ->
+            line.contains("javax.swing.") || line.contains("java.awt.") || line.contains("sun.awt.")),
+            "Swing or AWT classes were loaded");
+        assertTrue(Files.exists(output));
+    }
+}
@@ -1,32 +1,50 @@
+import java.util.Arrays;
+
 public class ImageAndPersonLine extends CSVLine {
     /**
-     * Constructor - creates an ImageAndPersonLine object from a CSV line. Special
-     * processing is required because the image title may contain commas. In that case,
-     * the title must be enclosed in double quotes, although no checking is done to
-     * ensure that this is the case.
+     * Constructor - creates an ImageAndPersonLine object from a CSV line. Any
+     * field may be enclosed in double quotes, in which case it may contain
+     * commas, line breaks and escaped quotes (""). The enclosing quotes are not
+     * part of the field's value.
      * @param line - the CSV input line. The fields must be in the following order:<br>
      *  0. image file name<br>
      *  1. image title<br>
      *  2. person's full name<br>
      *  3. person's first name<br>
      *  4. person's last name<br>
+     * If the line contains more than five fields, the extra fields are taken to
+     * be part of an image title that contains commas but is not quoted.
      * @throws ArrayIndexOutOfBoundsException if the line does not contain at least
      * five fields.
+     * @throws IllegalArgumentException if the line contains a quoted field that is
+     * not closed, or more than one CSV record.
      */
     public ImageAndPersonLine(String line) {
-        int first = line.indexOf(',');
-        int fourth = line.lastIndexOf(',');
-        int third = line.lastIndexOf(',', fourth - 1);
-        int second = line.lastIndexOf(',', third - 1); 
-        String[] fields = new String[5];
-        fields[0] = line.substring(0, first);
-        fields[1] = line.substring(first + 1, second);
-        fields[2] = line.substring(second + 1, third);
-        fields[3] = line.substring(third + 1, fourth);
-        fields[4] = line.substring(fourth + 1);
+        String[] fields = imageAndPersonFields(CSVTokenizer.split(line));
         super(fields);
     }
 
+    /**
+     * Constructor - creates an ImageAndPersonLine object from the values of the
+     * fields of a CSV line.
+     * @param fields - the value of each field, in the same order as for the
+     * String constructor. If there are more than five fields, the extra fields
+     * are taken to be part of the image title.
+     * @throws ArrayIndexOutOfBoundsException if there are fewer than five fields.
+     */
+    public ImageAndPersonLine(String[] fields) {
+        String[] fiveFields = imageAndPersonFields(fields);
+        super(fiveFields);
+    }
+
+    /**
+     * Constructor - creates an ImageAndPersonLine object with no fields. This is
+     * used by subclasses that supply the fields by overriding field and length.
+     */
+    protected ImageAndPersonLine() {
+        super();
+    }
+
     /**
      * Returns the image file name.
      * @return the image file name.
@@ -68,14 +86,35 @@ public class ImageAndPersonLine extends CSVLine {
     }
 
     /**
-     * Returns a String representation of the object.
+     * Returns a String representation of the object. This is a CSV line, with
+     * any field that needs it enclosed in quotes.
      * @return a String representation of the object.
      * @throws ArrayIndexOutOfBoundsException if the object does not
      * contain at least five fields.
      */
     @Override
     public String toString() {
-        return imageFileName() + "," + imageTitle() + "," + personFullName() + "," +
-            personFirstName() + "," + personLastName();
+        return quote(imageFileName()) + "," + quote(imageTitle()) + "," + quote(personFullName()) + "," +
+            quote(personFirstName()) + "," + quote(personLastName());
+    }
+
+    /**
+     * Returns exactly five fields. If there are more than five, the fields
+     * between the image file name and the person's names are joined with commas
+     * to form the image title, as for a title with commas that is not quoted.
+     * @param fields - the fields of a CSV line.
+     * @return the five fields.
+     * @throws ArrayIndexOutOfBoundsException if there are fewer than five fields.
+     */
+    static String[] imageAndPersonFields(String[] fields) {
+        if (fields.length < 5) {
+            throw new ArrayIndexOutOfBoundsException("Line does not contain five fields");
+        }
+        if (fields.length == 5) {
+            return fields;
+        }
+        int titleEnd = fields.length - 3;
+        String title = String.join(",", Arrays.asList(fields).subList(1, titleEnd));
+        return new String[] {fields[0], title, fields[titleEnd], fields[titleEnd + 1], fields[titleEnd + 2]};
     }
 }
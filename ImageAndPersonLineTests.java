@@ -18,7 +18,7 @@ public class ImageAndPersonLineTests {
         ImageAndPersonLine ipl = new ImageAndPersonLine("image.jpg,\"image, title\",John Doe,John,Doe");
         assertEquals(5, ipl.length());
         assertEquals("image.jpg", ipl.imageFileName());
-        assertEquals("\"image, title\"", ipl.imageTitle());
+        assertEquals("image, title", ipl.imageTitle());
         assertEquals("John Doe", ipl.personFullName());
         assertEquals("John", ipl.personFirstName());
         assertEquals("Doe", ipl.personLastName());
@@ -31,5 +31,49 @@ public class ImageAndPersonLineTests {
 
         ImageAndPersonLine ipl2 = new ImageAndPersonLine("image.jpg,\"image, title\",John Doe,John,Doe");
         assertEquals("image.jpg,\"image, title\",John Doe,John,Doe", ipl2.toString());
-    }   
+    }
+
+    @Test
+    void testQuotedFieldsConstructor() {
+        ImageAndPersonLine ipl = new ImageAndPersonLine(
+            "\"image.jpg\",\"The \"\"Best\"\" Shot\",\"Doe, John\",John,\"Doe\"");
+        assertEquals(5, ipl.length());
+        assertEquals("image.jpg", ipl.imageFileName());
+        assertEquals("The \"Best\" Shot", ipl.imageTitle());
+        assertEquals("Doe, John", ipl.personFullName());
+        assertEquals("John", ipl.personFirstName());
+        assertEquals("Doe", ipl.personLastName());
+        assertEquals("image.jpg,\"The \"\"Best\"\" Shot\",\"Doe, John\",John,Doe", ipl.toString());
+    }
+
+    @Test
+    void testUnquotedCommaInTitleConstructor() {
+        ImageAndPersonLine ipl = new ImageAndPersonLine("image.jpg,image, title, too,John Doe,John,Doe");
+        assertEquals(5, ipl.length());
+        assertEquals("image.jpg", ipl.imageFileName());
+        assertEquals("image, title, too", ipl.imageTitle());
+        assertEquals("John Doe", ipl.personFullName());
+        assertEquals("John", ipl.personFirstName());
+        assertEquals("Doe", ipl.personLastName());
+    }
+
+    @Test
+    void testFieldsConstructor() {
+        ImageAndPersonLine ipl = new ImageAndPersonLine(
+            new String[] {"image.jpg", "image, title", "John Doe", "John", "Doe"});
+        assertEquals("image, title", ipl.imageTitle());
+        assertEquals("Doe", ipl.personLastName());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            new ImageAndPersonLine(new String[] {"image.jpg", "image title", "John Doe", "John"}));
+    }
+
+    @Test
+    void testInvalidLines() {
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            new ImageAndPersonLine("image.jpg,image title,John Doe,John"));
+        assertThrows(IllegalArgumentException.class, () ->
+            new ImageAndPersonLine("image.jpg,\"image title,John Doe,John,Doe"));
+        assertThrows(IllegalArgumentException.class, () ->
+            new ImageAndPersonLine("image.jpg,image title,John Doe,John,Doe\nimage2.jpg,title,John Doe,John,Doe"));
+    }
 }
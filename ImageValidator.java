@@ -0,0 +1,313 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ImageValidator class checks the JPEG files that the lines of a CSV file
+ * refer to, so that missing or damaged images are found before the show is
+ * run rather than during it.
+ *
+ * Each image is checked by reading its JPEG header with JPEGHeader, and the
+ * last few kilobytes of the file for the end of image marker, so no pixels are
+ * decoded and only a few reads are made for each file. The images are checked
+ * on several threads at once, each with its own small direct buffer.
+ * ```java
+ * List<ImageValidator.Result> results = new ImageValidator.Builder()
+ *     .imageDirectory(Paths.get("downloads"))
+ *     .maxSize(1920, 1080)
+ *     .build()
+ *     .validate(csv);
+ * System.err.print(ImageValidator.report(results));
+ * ```
+ */
+public class ImageValidator {
+    /**
+     * The outcome of checking an image.
+     */
+    public enum Status {
+        /** The image is a complete JPEG file of an allowed size. */
+        OK,
+        /** There is no file with the image's name. */
+        MISSING,
+        /** The file exists but cannot be read. */
+        UNREADABLE,
+        /** The file is not a JPEG file, or its header is not valid. */
+        CORRUPT,
+        /** The file ends before the end of the image. */
+        TRUNCATED,
+        /** The image is larger than the maximum size. */
+        WRONG_SIZE
+    }
+
+    private final Path imageDirectory;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final int threads;
+    private final Metrics metrics;
+
+    private ImageValidator(Builder builder) {
+        this.imageDirectory = builder.imageDirectory;
+        this.maxWidth = builder.maxWidth;
+        this.maxHeight = builder.maxHeight;
+        this.threads = builder.threads;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * Builder class for ImageValidator objects.
+     */
+    public static class Builder {
+        private Path imageDirectory = null;
+        private int maxWidth = 0;
+        private int maxHeight = 0;
+        // The reads are small, so the threads mostly wait for the disk.
+        private int threads = 2 * Runtime.getRuntime().availableProcessors();
+        private Metrics metrics = null;
+
+        /**
+         * Sets the directory that the image file names are relative to.
+         * @param imageDirectory - the directory containing the images.
+         * @return returns the Builder object.
+         */
+        public Builder imageDirectory(Path imageDirectory) {
+            this.imageDirectory = imageDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the largest size allowed for an image. By default, images of
+         * any size are allowed.
+         * @param maxWidth - the largest width in pixels, or 0 for no limit.
+         * @param maxHeight - the largest height in pixels, or 0 for no limit.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if either value is negative.
+         */
+        public Builder maxSize(int maxWidth, int maxHeight) {
+            if (maxWidth < 0 || maxHeight < 0) {
+                throw new IllegalArgumentException("The maximum size must not be negative: "
+                    + maxWidth + "x" + maxHeight);
+            }
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that check images.
+         * @param threads - the number of threads. The default is twice the
+         * number of available processors.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if threads is less than 1.
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be at least 1: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics that the time taken and the number of images
+         * checked are recorded in, as "validate.time", "validate.images" and
+         * "validate.problems".
+         * @param metrics - the Metrics, or null to not record measurements.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds the ImageValidator object.
+         * @return the ImageValidator object.
+         * @throws IllegalStateException if no image directory has been set.
+         */
+        public ImageValidator build() {
+            if (imageDirectory == null) {
+                throw new IllegalStateException("No image directory has been set");
+            }
+            return new ImageValidator(this);
+        }
+    }
+
+    /**
+     * The outcome of checking one image.
+     * @param imageFileName - the image file name from the CSV file.
+     * @param path - the path of the image file, or null if the image file
+     * name is not a valid path.
+     * @param status - the outcome.
+     * @param width - the width of the image, or 0 if it could not be read.
+     * @param height - the height of the image, or 0 if it could not be read.
+     * @param detail - a description of the problem, or null if the status is
+     * OK.
+     */
+    public record Result(String imageFileName, Path path, Status status, int width, int height, String detail) {
+        /**
+         * Returns whether the image is OK.
+         * @return true if the status is OK.
+         */
+        public boolean ok() {
+            return status == Status.OK;
+        }
+    }
+
+    /**
+     * Checks the image of every line of a CSV object, after the header line.
+     * An image that is used by several lines is only checked once. Title
+     * slides are not downloaded images, so TitleImageLines are skipped.
+     * @param csv - the CSV object.
+     * @return the result for each image, in the order in which they first
+     * appear.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for the images to be checked.
+     */
+    public List<Result> validate(CSV csv) throws InterruptedException {
+        List<String> imageFileNames = new ArrayList<>();
+        for (int i = 1; i < csv.lines.size(); i++) {
+            if (csv.lines.get(i) instanceof ImageAndPersonLine line) {
+                imageFileNames.add(line.imageFileName());
+            }
+        }
+        return validate(imageFileNames);
+    }
+
+    /**
+     * Checks images. An image that is named more than once is only checked
+     * once.
+     * @param imageFileNames - the names of the images.
+     * @return the result for each image, in the order in which they first
+     * appear.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for the images to be checked.
+     */
+    public List<Result> validate(Collection<String> imageFileNames) throws InterruptedException {
+        PipelineEvents.Validate event = new PipelineEvents.Validate();
+        event.begin();
+        long start = System.nanoTime();
+        String[] names = new LinkedHashSet<>(imageFileNames).toArray(new String[0]);
+        Result[] results = new Result[names.length];
+        // Each thread takes the next unchecked image, so a slow file does not
+        // hold up the images after it.
+        AtomicInteger next = new AtomicInteger();
+        int threadCount = Math.max(1, Math.min(threads, names.length));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                futures.add(executor.submit(() -> {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(JPEGHeader.DEFAULT_BUFFER_SIZE);
+                    for (int i = next.getAndIncrement(); i < names.length; i = next.getAndIncrement()) {
+                        results[i] = check(names[i], buffer);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // check turns every problem with an image into a Result
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long problems = 0;
+        for (Result result : results) {
+            if (!result.ok()) {
+                problems++;
+            }
+        }
+        event.directory = imageDirectory.toString();
+        event.images = results.length;
+        event.problems = problems;
+        event.commit();
+        if (metrics != null) {
+            metrics.recordTime("validate.time", System.nanoTime() - start);
+            metrics.record("validate.images", Metrics.Unit.COUNT, results.length);
+            metrics.record("validate.problems", Metrics.Unit.COUNT, problems);
+        }
+        return List.of(results);
+    }
+
+    // Checks one image, reading through the calling thread's buffer. Every
+    // problem is turned into a Result.
+    private Result check(String imageFileName, ByteBuffer buffer) {
+        Path path;
+        try {
+            path = imageDirectory.resolve(imageFileName);
+        } catch (InvalidPathException e) {
+            return new Result(imageFileName, null, Status.MISSING, 0, 0, "not a valid file name");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            JPEGHeader header;
+            try {
+                header = JPEGHeader.read(channel, buffer);
+            } catch (EOFException e) {
+                return new Result(imageFileName, path, Status.TRUNCATED, 0, 0,
+                    channel.size() == 0 ? "the file is empty" : "the file ends before the image header");
+            } catch (IllegalArgumentException e) {
+                return new Result(imageFileName, path, Status.CORRUPT, 0, 0, e.getMessage());
+            }
+            int width = header.width();
+            int height = header.height();
+            if (!JPEGHeader.hasEndOfImage(channel, buffer)) {
+                return new Result(imageFileName, path, Status.TRUNCATED, width, height,
+                    "the file ends before the end of the image");
+            }
+            if ((maxWidth > 0 && width > maxWidth) || (maxHeight > 0 && height > maxHeight)) {
+                return new Result(imageFileName, path, Status.WRONG_SIZE, width, height,
+                    header + " is larger than " + (maxWidth > 0 ? maxWidth : "any") + "x"
+                        + (maxHeight > 0 ? maxHeight : "any"));
+            }
+            return new Result(imageFileName, path, Status.OK, width, height, null);
+        } catch (NoSuchFileException e) {
+            return new Result(imageFileName, path, Status.MISSING, 0, 0, "file not found");
+        } catch (IOException e) {
+            return new Result(imageFileName, path, Status.UNREADABLE, 0, 0,
+                e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    /**
+     * Returns a report of the images that have problems, with one line for
+     * each, followed by a line counting the images with each status.
+     * @param results - the results returned by validate.
+     * @return the report.
+     */
+    public static String report(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        int[] counts = new int[Status.values().length];
+        for (Result result : results) {
+            counts[result.status().ordinal()]++;
+            if (!result.ok()) {
+                sb.append(String.format(Locale.ROOT, "%-10s %s: %s\n",
+                    result.status(), result.imageFileName(), result.detail()));
+            }
+        }
+        sb.append(results.size()).append(" images");
+        for (Status status : Status.values()) {
+            if (counts[status.ordinal()] > 0) {
+                sb.append(", ").append(counts[status.ordinal()]).append(' ')
+                    .append(status.name().toLowerCase(Locale.ROOT).replace('_', ' '));
+            }
+        }
+        return sb.append('\n').toString();
+    }
+}
@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ImageValidatorTests {
+    @TempDir
+    Path tempDir;
+
+    // Writes a CSV file whose lines refer to an image of each kind, and the
+    // images that exist.
+    private CSV createShow() throws IOException {
+        byte[] ok = JPEGHeaderTests.jpeg(1920, 1080, 100, 0xC0);
+        Files.write(tempDir.resolve("ok.jpg"), ok);
+        Files.write(tempDir.resolve("large.jpg"), JPEGHeaderTests.jpeg(4000, 3000, 100, 0xC2));
+        Files.write(tempDir.resolve("truncated.jpg"), Arrays.copyOf(ok, ok.length - 100));
+        Files.write(tempDir.resolve("empty.jpg"), new byte[0]);
+        Files.writeString(tempDir.resolve("text.jpg"), "not an image");
+        Files.createDirectory(tempDir.resolve("directory.jpg"));
+        Path csv = tempDir.resolve("show.csv");
+        Files.writeString(csv, "Filename,Title,Full Name,First Name,Last Name\n" +
+            "ok.jpg,One,John Doe,John,Doe\n" +
+            "large.jpg,Two,John Doe,John,Doe\n" +
+            "truncated.jpg,Three,Jane Smith,Jane,Smith\n" +
+            "missing.jpg,Four,Jane Smith,Jane,Smith\n" +
+            "empty.jpg,Five,Jane Smith,Jane,Smith\n" +
+            "text.jpg,Six,Jane Smith,Jane,Smith\n" +
+            "directory.jpg,Seven,Jane Smith,Jane,Smith\n" +
+            "ok.jpg,Eight,Jane Smith,Jane,Smith\n");
+        return new CSV.Builder().fileName(csv.toString()).build();
+    }
+
+    @Test
+    void testValidate() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        Metrics metrics = new Metrics();
+        List<ImageValidator.Result> results = new ImageValidator.Builder()
+            .imageDirectory(tempDir)
+            .maxSize(1920, 1080)
+            .metrics(metrics)
+            .build()
+            .validate(csv);
+
+        List<ImageValidator.Status> statuses = new ArrayList<>();
+        for (ImageValidator.Result result : results) {
+            statuses.add(result.status());
+        }
+        assertEquals(List.of(ImageValidator.Status.OK, ImageValidator.Status.WRONG_SIZE,
+            ImageValidator.Status.TRUNCATED, ImageValidator.Status.MISSING, ImageValidator.Status.TRUNCATED,
+            ImageValidator.Status.CORRUPT, ImageValidator.Status.UNREADABLE), statuses);
+
+        ImageValidator.Result ok = results.get(0);
+        assertTrue(ok.ok());
+        assertEquals("ok.jpg", ok.imageFileName());
+        assertEquals(tempDir.resolve("ok.jpg"), ok.path());
+        assertEquals(1920, ok.width());
+        assertEquals(1080, ok.height());
+        assertNull(ok.detail());
+        assertEquals("4000x3000 is larger than 1920x1080", results.get(1).detail());
+        assertEquals(1920, results.get(2).width());
+        assertEquals("the file is empty", results.get(4).detail());
+
+        assertEquals(7, metrics.get("validate.images").total());
+        assertEquals(6, metrics.get("validate.problems").total());
+
+        String report = ImageValidator.report(results);
+        assertEquals(7, report.lines().count());
+        assertTrue(report.contains("MISSING    missing.jpg: file not found\n"));
+        assertTrue(report.endsWith("7 images, 1 ok, 1 missing, 1 unreadable, 1 corrupt, 2 truncated, 1 wrong size\n"));
+    }
+
+    // Title slides are drawn into another directory, so they are not checked.
+    @Test
+    void testTitleImageLinesAreSkipped() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        csv.insertAt(1, new TitleImageLine("title_john_doe.jpg"));
+        csv.insertAt(4, new TitleImageLine("title_jane_smith.jpg"));
+        List<ImageValidator.Result> results = new ImageValidator.Builder()
+            .imageDirectory(tempDir)
+            .maxSize(1920, 1080)
+            .build()
+            .validate(csv);
+        assertEquals(List.of("ok.jpg", "large.jpg", "truncated.jpg", "missing.jpg", "empty.jpg", "text.jpg",
+            "directory.jpg"), results.stream().map(ImageValidator.Result::imageFileName).toList());
+        assertEquals(1, results.stream().filter(result -> result.status() == ImageValidator.Status.MISSING).count());
+    }
+
+    @Test
+    void testNoSizeLimit() throws IOException, InterruptedException {
+        createShow();
+        List<ImageValidator.Result> results = new ImageValidator.Builder()
+            .imageDirectory(tempDir)
+            .maxSize(0, 3000)
+            .threads(1)
+            .build()
+            .validate(List.of("large.jpg", "ok.jpg", "large.jpg"));
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).ok());
+        assertTrue(results.get(1).ok());
+        assertEquals("2 images, 2 ok\n", ImageValidator.report(results));
+    }
+
+    @Test
+    void testManyImages() throws IOException, InterruptedException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String name = "image" + i + ".jpg";
+            names.add(name);
+            if (i % 7 != 0) {
+                Files.write(tempDir.resolve(name), JPEGHeaderTests.jpeg(100 + i, 100, 20 + i, 0xC0));
+            }
+        }
+        List<ImageValidator.Result> results = new ImageValidator.Builder()
+            .imageDirectory(tempDir)
+            .threads(8)
+            .build()
+            .validate(names);
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(names.get(i), results.get(i).imageFileName());
+            assertEquals(i % 7 == 0 ? ImageValidator.Status.MISSING : ImageValidator.Status.OK,
+                results.get(i).status());
+            assertEquals(i % 7 == 0 ? 0 : 100 + i, results.get(i).width());
+        }
+    }
+
+    @Test
+    void testBuilderErrors() {
+        assertThrows(IllegalStateException.class, () -> new ImageValidator.Builder().build());
+        assertThrows(IllegalArgumentException.class, () -> new ImageValidator.Builder().maxSize(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ImageValidator.Builder().threads(0));
+    }
+}
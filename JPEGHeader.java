@@ -0,0 +1,258 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The JPEGHeader class holds the size of a JPEG image, read from its frame
+ * header without decoding any pixels.
+ *
+ * A JPEG file is a series of marker segments, each of which starts with its
+ * length, so the frame header (the SOFn segment) is found by reading the first
+ * few bytes of each segment and skipping to the next. Only the segments before
+ * the frame header are read, which is usually a few kilobytes at most, however
+ * large the image is.
+ * ```java
+ * JPEGHeader header = JPEGHeader.read(Paths.get("image1.jpg"));
+ * System.out.println(header.width() + "x" + header.height());
+ * ```
+ */
+public final class JPEGHeader {
+    /**
+     * The size of the buffer used by read(Path). The segments before the frame
+     * header are nearly always smaller than this.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    // How far from the end of the file to look for the end of image marker.
+    // Some cameras add padding or other data after it.
+    private static final int END_SEARCH_LENGTH = 4096;
+
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+
+    private final int width;
+    private final int height;
+    private final int components;
+    private final int precision;
+    private final int frameMarker;
+
+    private JPEGHeader(int width, int height, int components, int precision, int frameMarker) {
+        this.width = width;
+        this.height = height;
+        this.components = components;
+        this.precision = precision;
+        this.frameMarker = frameMarker;
+    }
+
+    /**
+     * Returns the width of the image in pixels.
+     * @return the width of the image.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image in pixels.
+     * @return the height of the image.
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns the number of colour components, which is 1 for a greyscale
+     * image and 3 for a colour image.
+     * @return the number of components.
+     */
+    public int components() {
+        return components;
+    }
+
+    /**
+     * Returns the number of bits in each sample, which is nearly always 8.
+     * @return the sample precision.
+     */
+    public int precision() {
+        return precision;
+    }
+
+    /**
+     * Returns whether the image is progressive, rather than baseline or
+     * extended sequential.
+     * @return true if the image is progressive.
+     */
+    public boolean progressive() {
+        return frameMarker == 0xC2 || frameMarker == 0xC6 || frameMarker == 0xCA || frameMarker == 0xCE;
+    }
+
+    /**
+     * Returns the size of the image, such as "1920x1080".
+     */
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+
+    /**
+     * Reads the header of a JPEG file.
+     * @param path - the path of the JPEG file.
+     * @return the header.
+     * @throws EOFException if the file ends before the frame header.
+     * @throws IllegalArgumentException if the file is not a JPEG file, or its
+     * segments are not valid.
+     * @throws IOException if the file cannot be read.
+     */
+    public static JPEGHeader read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Reads the header of a JPEG file from an open channel. The buffer is
+     * only used while reading, so one buffer may be used to read many files
+     * in turn.
+     * @param channel - the channel to read from, starting at position 0.
+     * @param buffer - the buffer to read through. It must hold at least 16
+     * bytes.
+     * @return the header.
+     * @throws EOFException if the file ends before the frame header.
+     * @throws IllegalArgumentException if the file is not a JPEG file, or its
+     * segments are not valid.
+     * @throws IOException if the file cannot be read.
+     */
+    public static JPEGHeader read(FileChannel channel, ByteBuffer buffer) throws IOException {
+        Window window = new Window(channel, buffer);
+        window.require(0, 2);
+        if (window.get(0) != 0xFF || window.get(1) != SOI) {
+            throw new IllegalArgumentException("not a JPEG file");
+        }
+        long position = 2;
+        while (true) {
+            window.require(position, 2);
+            if (window.get(position) != 0xFF) {
+                throw new IllegalArgumentException("no marker at byte " + position);
+            }
+            int marker = window.get(position + 1);
+            if (marker == 0xFF) {
+                // a fill byte before the marker
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // markers without a segment
+                position += 2;
+                continue;
+            }
+            if (marker == SOS || marker == EOI || marker == SOI) {
+                throw new IllegalArgumentException("no frame header before byte " + position);
+            }
+            window.require(position + 2, 2);
+            int length = window.getShort(position + 2);
+            if (length < 2) {
+                throw new IllegalArgumentException("segment at byte " + position + " has length " + length);
+            }
+            if (isFrameMarker(marker)) {
+                if (length < 8) {
+                    throw new IllegalArgumentException("frame header is too short");
+                }
+                window.require(position + 4, 6);
+                int height = window.getShort(position + 5);
+                int width = window.getShort(position + 7);
+                if (width == 0 || height == 0) {
+                    throw new IllegalArgumentException("image has no width or height");
+                }
+                return new JPEGHeader(width, height, window.get(position + 9), window.get(position + 4), marker);
+            }
+            position += 2 + length;
+        }
+    }
+
+    // SOF0 to SOF15, except DHT (C4), JPG (C8) and DAC (CC), which share the
+    // range.
+    private static boolean isFrameMarker(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    /**
+     * Returns whether a JPEG file has an end of image marker near its end. A
+     * file without one was usually not downloaded completely.
+     * @param channel - the channel to read from.
+     * @param buffer - the buffer to read through.
+     * @return true if the end of image marker was found.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean hasEndOfImage(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long size = channel.size();
+        long start = Math.max(0, size - END_SEARCH_LENGTH);
+        while (start < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - start));
+            long end = start + fill(channel, buffer, start);
+            for (int i = buffer.limit() - 1; i > 0; i--) {
+                if (buffer.get(i) == (byte) EOI && buffer.get(i - 1) == (byte) 0xFF) {
+                    return true;
+                }
+            }
+            if (end >= size || end - 1 <= start) {
+                break;
+            }
+            // overlap by one byte in case the marker is split between reads
+            start = end - 1;
+        }
+        return false;
+    }
+
+    // Reads from position until the buffer is full or the file ends, and
+    // returns the number of bytes read. The buffer is flipped for reading.
+    private static int fill(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        buffer.flip();
+        return read;
+    }
+
+    // A part of the file held in the buffer, which is read again from a new
+    // position whenever bytes outside it are needed.
+    private static final class Window {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long start = 0;
+
+        Window(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            buffer.clear().limit(0);
+        }
+
+        void require(long position, int count) throws IOException {
+            if (position >= start && position + count <= start + buffer.limit()) {
+                return;
+            }
+            buffer.clear();
+            start = position;
+            if (fill(channel, buffer, position) < count) {
+                throw new EOFException("file ends at byte " + (position + buffer.limit()));
+            }
+        }
+
+        int get(long position) {
+            return buffer.get((int) (position - start)) & 0xFF;
+        }
+
+        int getShort(long position) {
+            return get(position) << 8 | get(position + 1);
+        }
+    }
+}
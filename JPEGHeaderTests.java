@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+public class JPEGHeaderTests {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Returns the bytes of a JPEG file with the given size. The file has an
+     * APP1 segment of the given length before the frame header, and scan data
+     * that is not a real image.
+     */
+    static byte[] jpeg(int width, int height, int appLength, int frameMarker) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xD8});
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xE1, (byte) (appLength >> 8), (byte) appLength});
+        out.writeBytes(new byte[appLength - 2]);
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xFF}); // fill byte
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xC4, 0, 4, 0, 0}); // DHT
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) frameMarker, 0, 17, 8,
+            (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 3});
+        out.writeBytes(new byte[9]);
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xDA, 0, 12});
+        out.writeBytes(new byte[10]);
+        out.writeBytes(new byte[1000]);
+        out.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xD9});
+        return out.toByteArray();
+    }
+
+    private Path write(String name, byte[] bytes) throws IOException {
+        return Files.write(tempDir.resolve(name), bytes);
+    }
+
+    @Test
+    void testReadHeader() throws IOException {
+        JPEGHeader header = JPEGHeader.read(write("image.jpg", jpeg(1920, 1080, 100, 0xC0)));
+        assertEquals(1920, header.width());
+        assertEquals(1080, header.height());
+        assertEquals(3, header.components());
+        assertEquals(8, header.precision());
+        assertFalse(header.progressive());
+        assertEquals("1920x1080", header.toString());
+        assertTrue(JPEGHeader.read(write("progressive.jpg", jpeg(640, 480, 100, 0xC2))).progressive());
+    }
+
+    // The APP1 segment is larger than the buffer, so the frame header is read
+    // by reading the file again from the end of the segment.
+    @Test
+    void testSegmentLargerThanBuffer() throws IOException {
+        Path path = write("exif.jpg", jpeg(4000, 3000, 60000, 0xC1));
+        try (FileChannel channel = FileChannel.open(path)) {
+            JPEGHeader header = JPEGHeader.read(channel, ByteBuffer.allocateDirect(16));
+            assertEquals(4000, header.width());
+            assertEquals(3000, header.height());
+            assertTrue(JPEGHeader.hasEndOfImage(channel, ByteBuffer.allocateDirect(16)));
+        }
+    }
+
+    @Test
+    void testReadImageWrittenByImageIO() throws IOException {
+        Path path = tempDir.resolve("real.jpg");
+        assertTrue(ImageIO.write(new BufferedImage(123, 45, BufferedImage.TYPE_INT_RGB), "jpg", path.toFile()));
+        JPEGHeader header = JPEGHeader.read(path);
+        assertEquals(123, header.width());
+        assertEquals(45, header.height());
+        try (FileChannel channel = FileChannel.open(path)) {
+            assertTrue(JPEGHeader.hasEndOfImage(channel, ByteBuffer.allocate(JPEGHeader.DEFAULT_BUFFER_SIZE)));
+        }
+    }
+
+    @Test
+    void testTruncated() throws IOException {
+        byte[] bytes = jpeg(800, 600, 2000, 0xC0);
+        assertThrows(EOFException.class, () -> JPEGHeader.read(write("empty.jpg", new byte[0])));
+        assertThrows(EOFException.class, () -> JPEGHeader.read(write("short.jpg", Arrays.copyOf(bytes, 1000))));
+        Path noEnd = write("noend.jpg", Arrays.copyOf(bytes, bytes.length - 500));
+        assertEquals(800, JPEGHeader.read(noEnd).width());
+        try (FileChannel channel = FileChannel.open(noEnd)) {
+            assertFalse(JPEGHeader.hasEndOfImage(channel, ByteBuffer.allocate(64)));
+        }
+    }
+
+    @Test
+    void testNotValid() throws IOException {
+        assertThrows(IllegalArgumentException.class,
+            () -> JPEGHeader.read(write("text.jpg", "Filename,Title\n".getBytes())));
+        byte[] bytes = jpeg(800, 600, 100, 0xC0);
+        bytes[2 + 100 + 2 + 2 + 6] = 0x12; // not a marker after the DHT segment
+        assertThrows(IllegalArgumentException.class, () -> JPEGHeader.read(write("nomarker.jpg", bytes)));
+        assertThrows(IllegalArgumentException.class,
+            () -> JPEGHeader.read(write("noframe.jpg",
+                new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9})));
+        assertThrows(IllegalArgumentException.class,
+            () -> JPEGHeader.read(write("nosize.jpg", jpeg(0, 600, 100, 0xC0))));
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The LazyImageAndPersonLine class is an ImageAndPersonLine that does not
+ * decode its fields when it is created.
+ *
+ * The line keeps the bytes of its CSV record, and the tokenizer records where
+ * each field starts and ends. A field's String is only created, and then kept,
+ * the first time it is asked for with field or one of the ImageAndPersonLine
+ * accessors. If the record is plain ASCII, fieldChars returns a field that is
+ * not quoted as a view of the record bytes, so fields can be compared without
+ * creating Strings. The fields follow the same rules as for ImageAndPersonLine.
+ */
+public class LazyImageAndPersonLine extends ImageAndPersonLine {
+    private final byte[] record;
+    private final int[] bounds;
+    private final Charset charset;
+    private String[] fields = null;
+
+    /**
+     * Constructor - creates a LazyImageAndPersonLine object from a CSV line.
+     * @param line - the CSV input line. The fields must be in the same order
+     * as for ImageAndPersonLine.
+     * @throws ArrayIndexOutOfBoundsException if the line does not contain at
+     * least five fields.
+     * @throws IllegalArgumentException if the line contains a quoted field that is
+     * not closed, or more than one CSV record.
+     */
+    public LazyImageAndPersonLine(String line) {
+        this(Record.parse(line));
+    }
+
+    /**
+     * Constructor - creates a LazyImageAndPersonLine object from the current
+     * record of a tokenizer. The bytes of the record are copied.
+     * @param tokenizer - the tokenizer positioned at the record.
+     * @throws ArrayIndexOutOfBoundsException if the record does not contain at
+     * least five fields.
+     */
+    public LazyImageAndPersonLine(CSVTokenizer tokenizer) {
+        this(Record.copy(tokenizer));
+    }
+
+    private LazyImageAndPersonLine(Record source) {
+        int count = source.fieldCount();
+        if (count < 5) {
+            throw new ArrayIndexOutOfBoundsException("Line does not contain five fields");
+        }
+        record = source.bytes();
+        charset = source.charset();
+        bounds = new int[10];
+        // the file name, then the last four fields; extra fields belong to the title
+        System.arraycopy(source.bounds(), 0, bounds, 0, 4);
+        System.arraycopy(source.bounds(), 2 * (count - 3), bounds, 4, 6);
+        if (count > 5) {
+            String[] titleParts = new String[count - 4];
+            for (int i = 0; i < titleParts.length; i++) {
+                titleParts[i] = CSVTokenizer.decodeField(record, source.bounds()[2 * i + 2],
+                    source.bounds()[2 * i + 3], charset);
+            }
+            fields = new String[5];
+            fields[1] = String.join(",", titleParts);
+        }
+    }
+
+    @Override
+    public int length() {
+        return 5;
+    }
+
+    @Override
+    public String field(int index) {
+        if (fields == null) {
+            fields = new String[5];
+        }
+        String field = fields[index];
+        if (field == null) {
+            field = CSVTokenizer.decodeField(record, bounds[2 * index], bounds[2 * index + 1], charset);
+            fields[index] = field;
+        }
+        return field;
+    }
+
+    /**
+     * Returns the characters of a field. If the record is plain ASCII and the
+     * field is not quoted, this is a view of the record bytes and no characters
+     * are copied.
+     * @param index - the index of the field to return.
+     * @return the characters of the field.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * greater than 4.
+     */
+    @Override
+    public CharSequence fieldChars(int index) {
+        if (fields != null && fields[index] != null) {
+            return fields[index];
+        }
+        int start = bounds[2 * index];
+        int end = bounds[2 * index + 1];
+        if (charset != StandardCharsets.ISO_8859_1 || (start < end && record[start] == '"')) {
+            return field(index);
+        }
+        return new AsciiChars(record, start, end);
+    }
+
+    /**
+     * Fields cannot be added to a LazyImageAndPersonLine.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void addField(String field) {
+        throw new UnsupportedOperationException("Fields cannot be added to a lazy line");
+    }
+
+    /**
+     * Fields cannot be added to a LazyImageAndPersonLine.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void addFields(String[] newFields) {
+        throw new UnsupportedOperationException("Fields cannot be added to a lazy line");
+    }
+
+    // The bytes of one CSV record, the bounds of its fields, and the charset
+    // to decode them with. The charset is ISO-8859-1 if the record is ASCII.
+    private record Record(byte[] bytes, int[] bounds, int fieldCount, Charset charset) {
+        static Record copy(CSVTokenizer tokenizer) {
+            int[] bounds = new int[2 * tokenizer.fieldCount()];
+            byte[] bytes = tokenizer.recordBytes(bounds);
+            return new Record(bytes, bounds, tokenizer.fieldCount(), tokenizer.recordCharset());
+        }
+
+        static Record parse(String line) {
+            try (CSVTokenizer tokenizer = new CSVTokenizer(line.getBytes(StandardCharsets.UTF_8))) {
+                if (!tokenizer.next()) {
+                    return new Record(new byte[0], new int[2], 1, StandardCharsets.ISO_8859_1);
+                }
+                Record record = copy(tokenizer);
+                if (tokenizer.next()) {
+                    throw new IllegalArgumentException("Text contains more than one record: " + line);
+                }
+                return record;
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+    }
+
+    // A view of ASCII bytes as characters.
+    private static final class AsciiChars implements CharSequence {
+        private final byte[] bytes;
+        private final int start;
+        private final int end;
+
+        AsciiChars(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+            }
+            return (char) bytes[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || from > to || to > end - start) {
+                throw new IndexOutOfBoundsException("Range out of bounds: " + from + ", " + to);
+            }
+            return new AsciiChars(bytes, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+        }
+    }
+}
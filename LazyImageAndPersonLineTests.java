@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class LazyImageAndPersonLineTests {
+    @Test
+    void testNoCommaConstructor() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine("image.jpg,image title,John Doe,John,Doe");
+        assertEquals(5, ipl.length());
+        assertEquals("image.jpg", ipl.imageFileName());
+        assertEquals("image title", ipl.imageTitle());
+        assertEquals("John Doe", ipl.personFullName());
+        assertEquals("John", ipl.personFirstName());
+        assertEquals("Doe", ipl.personLastName());
+    }
+
+    @Test
+    void testCommaInTitleConstructor() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine("image.jpg,\"image, title, too\",John Doe,John,Doe");
+        assertEquals("image.jpg", ipl.imageFileName());
+        assertEquals("image, title, too", ipl.imageTitle());
+        assertEquals("John Doe", ipl.personFullName());
+        assertEquals("John", ipl.personFirstName());
+        assertEquals("Doe", ipl.personLastName());
+    }
+
+    @Test
+    void testEmptyFields() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine(",,,,");
+        for (int i = 0; i < 5; i++) {
+            assertEquals("", ipl.field(i));
+        }
+    }
+
+    @Test
+    void testFieldsAreCreatedOnce() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine("image.jpg,image title,John Doe,John,Doe");
+        assertSame(ipl.imageTitle(), ipl.imageTitle());
+        assertSame(ipl.imageTitle(), ipl.fieldChars(1));
+    }
+
+    @Test
+    void testFieldChars() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine("image.jpg,image title,John Doe,John,Doe");
+        CharSequence name = ipl.fieldChars(2);
+        assertFalse(name instanceof String);
+        assertEquals(0, CharSequence.compare("John Doe", name));
+        assertEquals("Doe", ipl.fieldChars(4).toString());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> ipl.fieldChars(5));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> ipl.field(5));
+    }
+
+    @Test
+    void testMatchesImageAndPersonLine() {
+        String line = "image.jpg,\"image, title\",John Doe,John,Doe";
+        ImageAndPersonLine eager = new ImageAndPersonLine(line);
+        LazyImageAndPersonLine lazy = new LazyImageAndPersonLine(line);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(eager.field(i), lazy.field(i));
+        }
+        assertEquals(eager.toString(), lazy.toString());
+    }
+
+    @Test
+    void testTooFewFields() {
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            new LazyImageAndPersonLine("image.jpg,image title,John Doe,John"));
+    }
+
+    @Test
+    void testFieldsCannotBeAdded() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine("image.jpg,image title,John Doe,John,Doe");
+        assertThrows(UnsupportedOperationException.class, () -> ipl.addField("club"));
+    }
+
+    @Test
+    void testQuotedFields() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine(
+            "image.jpg,\"The \"\"Best\"\" Shot\",\"Doe, John\",John,Doe");
+        assertEquals("The \"Best\" Shot", ipl.imageTitle());
+        assertEquals("Doe, John", ipl.fieldChars(2).toString());
+        assertTrue(ipl.fieldChars(2) instanceof String);
+    }
+
+    @Test
+    void testUnquotedCommaInTitle() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine("image.jpg,image, title, too,John Doe,John,Doe");
+        assertEquals("image.jpg", ipl.imageFileName());
+        assertEquals("image, title, too", ipl.imageTitle());
+        assertEquals("John Doe", ipl.personFullName());
+        assertEquals("Doe", ipl.personLastName());
+    }
+
+    @Test
+    void testNonAsciiFieldChars() {
+        LazyImageAndPersonLine ipl = new LazyImageAndPersonLine("image.jpg,Títle,Zoë Brontë,Zoë,Brontë");
+        assertEquals("Zoë Brontë", ipl.fieldChars(2).toString());
+        assertEquals("Títle", ipl.imageTitle());
+    }
+
+    @Test
+    void testFromTokenizer() throws Exception {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(java.nio.file.Paths.get("testing/data/test.csv"))) {
+            assertTrue(tokenizer.next());
+            assertTrue(tokenizer.next());
+            assertTrue(tokenizer.next());
+            LazyImageAndPersonLine ipl = new LazyImageAndPersonLine(tokenizer);
+            assertFalse(tokenizer.next());
+            assertEquals("image2.jpg", ipl.imageFileName());
+            assertEquals("Image, Two", ipl.imageTitle());
+            assertEquals("Jane Smith", ipl.personFullName());
+        }
+    }
+
+    @Test
+    void testWindows1252() throws Exception {
+        byte[] data = "image.jpg,Café,Zoë Adams,Zoë,Adams".getBytes("windows-1252");
+        try (CSVTokenizer tokenizer = new CSVTokenizer(data, java.nio.charset.Charset.forName("windows-1252"))) {
+            assertTrue(tokenizer.next());
+            LazyImageAndPersonLine ipl = new LazyImageAndPersonLine(tokenizer);
+            assertEquals("Zoë Adams", ipl.fieldChars(2).toString());
+            assertEquals("Café", ipl.imageTitle());
+            assertEquals("image.jpg", ipl.imageFileName());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Metrics class collects measurements of the stages of building a show.
+ *
+ * Each measurement has a name, such as "load.read.time", and is made up of the
+ * values recorded for it. For each measurement, the number of values, their
+ * total, and the smallest and largest value are kept. Values may be recorded
+ * from several threads at once.
+ * ```java
+ * Metrics metrics = new Metrics();
+ * CSV csv = new CSV.Builder()
+ *     .fileName("test.csv")
+ *     .metrics(metrics)
+ *     .build();
+ * System.err.print(metrics.summary());
+ * ```
+ */
+public class Metrics {
+    /**
+     * The unit of the values of a measurement.
+     */
+    public enum Unit {
+        COUNT,
+        BYTES,
+        NANOSECONDS
+    }
+
+    private final Map<String, Accumulator> measurements = new ConcurrentHashMap<>();
+
+    /**
+     * Records a value.
+     * @param name - the name of the measurement.
+     * @param unit - the unit of the value. Every value of a measurement must
+     * have the same unit.
+     * @param value - the value.
+     * @throws IllegalArgumentException if values with a different unit have
+     * been recorded for the measurement.
+     */
+    public void record(String name, Unit unit, long value) {
+        Accumulator accumulator = measurements.computeIfAbsent(name, key -> new Accumulator(unit));
+        if (accumulator.unit != unit) {
+            throw new IllegalArgumentException(name + " is measured in " + accumulator.unit);
+        }
+        accumulator.add(value);
+    }
+
+    /**
+     * Records a time, in nanoseconds.
+     * @param name - the name of the measurement.
+     * @param nanos - the time, in nanoseconds.
+     */
+    public void recordTime(String name, long nanos) {
+        record(name, Unit.NANOSECONDS, nanos);
+    }
+
+    /**
+     * Returns the values recorded so far for a measurement.
+     * @param name - the name of the measurement.
+     * @return the measurement, or null if no values have been recorded for it.
+     */
+    public Stat get(String name) {
+        Accumulator accumulator = measurements.get(name);
+        return accumulator == null ? null : accumulator.stat(name);
+    }
+
+    /**
+     * Returns all of the measurements, sorted by name.
+     * @return the measurements.
+     */
+    public List<Stat> stats() {
+        List<Stat> stats = new ArrayList<>();
+        for (Map.Entry<String, Accumulator> entry : new TreeMap<>(measurements).entrySet()) {
+            stats.add(entry.getValue().stat(entry.getKey()));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns a summary of all of the measurements, one per line, sorted by
+     * name.
+     * @return the summary.
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Stat stat : stats()) {
+            sb.append(stat).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The values recorded for a measurement.
+     * @param name - the name of the measurement.
+     * @param unit - the unit of the values.
+     * @param count - the number of values.
+     * @param total - the total of the values.
+     * @param min - the smallest value.
+     * @param max - the largest value.
+     */
+    public record Stat(String name, Unit unit, long count, long total, long min, long max) {
+        /**
+         * Returns the mean of the values.
+         * @return the mean of the values.
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Returns the measurement as a line of text. A measurement with a
+         * single value only shows that value.
+         */
+        @Override
+        public String toString() {
+            if (count == 1) {
+                return String.format(Locale.ROOT, "%-40s %s", name, format(total));
+            }
+            return String.format(Locale.ROOT, "%-40s total %s, count %d, mean %s, min %s, max %s",
+                name, format(total), count, format(Math.round(mean())), format(min), format(max));
+        }
+
+        private String format(long value) {
+            switch (unit) {
+                case NANOSECONDS:
+                    return String.format(Locale.ROOT, "%.3f ms", value / 1e6);
+                case BYTES:
+                    return value + " B";
+                default:
+                    return Long.toString(value);
+            }
+        }
+    }
+
+    private static final class Accumulator {
+        private final Unit unit;
+        private long count = 0;
+        private long total = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        Accumulator(Unit unit) {
+            this.unit = unit;
+        }
+
+        synchronized void add(long value) {
+            count++;
+            total += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        synchronized Stat stat(String name) {
+            return new Stat(name, unit, count, total, min, max);
+        }
+    }
+}
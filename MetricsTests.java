@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsTests {
+    @Test
+    void testRecord() {
+        Metrics metrics = new Metrics();
+        metrics.record("rows", Metrics.Unit.COUNT, 5);
+        metrics.record("rows", Metrics.Unit.COUNT, 1);
+        metrics.record("rows", Metrics.Unit.COUNT, 12);
+        Metrics.Stat stat = metrics.get("rows");
+        assertEquals("rows", stat.name());
+        assertEquals(Metrics.Unit.COUNT, stat.unit());
+        assertEquals(3, stat.count());
+        assertEquals(18, stat.total());
+        assertEquals(1, stat.min());
+        assertEquals(12, stat.max());
+        assertEquals(6.0, stat.mean());
+        assertNull(metrics.get("missing"));
+    }
+
+    @Test
+    void testUnitMismatch() {
+        Metrics metrics = new Metrics();
+        metrics.recordTime("read", 1000);
+        assertThrows(IllegalArgumentException.class, () -> metrics.record("read", Metrics.Unit.BYTES, 10));
+    }
+
+    @Test
+    void testSummary() {
+        Metrics metrics = new Metrics();
+        metrics.record("b.bytes", Metrics.Unit.BYTES, 2048);
+        metrics.recordTime("a.time", 1_500_000);
+        metrics.recordTime("a.time", 2_500_000);
+        List<Metrics.Stat> stats = metrics.stats();
+        assertEquals("a.time", stats.get(0).name());
+        assertEquals("b.bytes", stats.get(1).name());
+        String[] lines = metrics.summary().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("a.time"));
+        assertTrue(lines[0].contains("total 4.000 ms, count 2, mean 2.000 ms, min 1.500 ms, max 2.500 ms"),
+            lines[0]);
+        assertTrue(lines[1].startsWith("b.bytes"));
+        assertTrue(lines[1].endsWith(" 2048 B"), lines[1]);
+    }
+
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        Metrics metrics = new Metrics();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 1; i <= 10000; i++) {
+                    metrics.record("value", Metrics.Unit.COUNT, i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Metrics.Stat stat = metrics.get("value");
+        assertEquals(40000, stat.count());
+        assertEquals(4 * 50005000L, stat.total());
+        assertEquals(1, stat.min());
+        assertEquals(10000, stat.max());
+    }
+}
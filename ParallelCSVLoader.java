@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * The ParallelCSVLoader class loads a CSV file using all available cores.
+ *
+ * The file is split into byte ranges that each start at the beginning of a
+ * record. Each range is tokenized and parsed into lines on the common fork-join
+ * pool, and the results are joined back together in file order.
+ *
+ * A quoted field may contain line breaks, so a line break is only used as a
+ * split point if an even number of quotes come before it. The quotes in each
+ * part of the file are counted in parallel first. This assumes that quotes only
+ * appear as RFC 4180 allows; a quote inside a field that is not quoted can make
+ * the file split inside a quoted field, so such files should be loaded
+ * sequentially. A UTF-8 byte order mark at the start of the file is skipped,
+ * and the file is then read as UTF-8.
+ */
+public class ParallelCSVLoader {
+    /**
+     * Ranges are never made smaller than this, so that small files are not
+     * split into more tasks than it is worth.
+     */
+    static final long MIN_RANGE_SIZE = 1024 * 1024;
+
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private ParallelCSVLoader() {
+    }
+
+    /**
+     * Loads all lines of the CSV file in parallel as ImageAndPersonLine objects.
+     * @param path - the path to the CSV file.
+     * @return the lines of the file, in file order.
+     * @throws IOException if the file cannot be read.
+     */
+    public static CSVLine[] load(Path path) throws IOException {
+        return load(path, tokenizer -> new ImageAndPersonLine(tokenizer.fields()));
+    }
+
+    /**
+     * Loads all lines of the CSV file in parallel.
+     * @param path - the path to the CSV file.
+     * @param parser - creates the line object for the current record of a
+     * tokenizer, or returns null to skip the record. It is called from several
+     * threads at once.
+     * @return the lines of the file, in file order.
+     * @throws IOException if the file cannot be read.
+     */
+    public static CSVLine[] load(Path path, Function<CSVTokenizer, ? extends CSVLine> parser) throws IOException {
+        return load(path, StandardCharsets.UTF_8, parser);
+    }
+
+    /**
+     * Loads all lines of the CSV file in parallel.
+     * @param path - the path to the CSV file.
+     * @param charset - the charset of the file. The ASCII characters must be
+     * single bytes in the charset.
+     * @param parser - creates the line object for the current record of a
+     * tokenizer, or returns null to skip the record. It is called from several
+     * threads at once.
+     * @return the lines of the file, in file order.
+     * @throws IOException if the file cannot be read.
+     */
+    public static CSVLine[] load(Path path, Charset charset,
+            Function<CSVTokenizer, ? extends CSVLine> parser) throws IOException {
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long maxRanges = Math.max(1, channel.size() / MIN_RANGE_SIZE);
+            return load(channel, (int)Math.min(maxRanges, parallelism * 4L), charset, parser);
+        }
+    }
+
+    /**
+     * Loads all lines of the CSV file in parallel as ImageAndPersonLine objects,
+     * splitting it into at most the given number of ranges.
+     * @param channel - the open file.
+     * @param rangeCount - the maximum number of ranges to split the file into.
+     * @return the lines of the file, in file order.
+     * @throws IOException if the file cannot be read.
+     */
+    static CSVLine[] load(FileChannel channel, int rangeCount) throws IOException {
+        return load(channel, rangeCount, StandardCharsets.UTF_8,
+            tokenizer -> new ImageAndPersonLine(tokenizer.fields()));
+    }
+
+    private static CSVLine[] load(FileChannel channel, int rangeCount, Charset charset,
+            Function<CSVTokenizer, ? extends CSVLine> parser) throws IOException {
+        long[] bounds = splitAtRecords(channel, rangeCount);
+        // Each range is read by its own tokenizer, so the byte order mark is
+        // dealt with here rather than by the tokenizer of the first range.
+        byte[] start = new byte[3];
+        int read = channel.read(ByteBuffer.wrap(start), 0);
+        Charset rangeCharset = charset;
+        if (CSVTokenizer.isByteOrderMark(start, 0, read)) {
+            bounds[0] = start.length;
+            rangeCharset = StandardCharsets.UTF_8;
+        }
+        List<Callable<CSVLine[]>> tasks = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            long rangeStart = bounds[i];
+            long rangeEnd = bounds[i + 1];
+            Charset tokenizerCharset = rangeCharset;
+            tasks.add(() -> parseRange(channel, rangeStart, rangeEnd, tokenizerCharset, parser));
+        }
+        List<CSVLine[]> parts = invokeAll(tasks);
+        int total = 0;
+        for (CSVLine[] part : parts) {
+            total += part.length;
+        }
+        CSVLine[] lines = new CSVLine[total];
+        int offset = 0;
+        for (CSVLine[] part : parts) {
+            System.arraycopy(part, 0, lines, offset, part.length);
+            offset += part.length;
+        }
+        return lines;
+    }
+
+    /**
+     * Splits the file into ranges that each start at the beginning of a record.
+     * @param channel - the open file.
+     * @param rangeCount - the maximum number of ranges.
+     * @return the range boundaries. Range i runs from bounds[i] up to, but not
+     * including, bounds[i + 1]. Empty ranges are dropped.
+     */
+    static long[] splitAtRecords(FileChannel channel, int rangeCount) throws IOException {
+        long size = channel.size();
+        long[] targets = new long[rangeCount + 1];
+        for (int i = 0; i <= rangeCount; i++) {
+            targets[i] = size / rangeCount * i + Math.min(i, size % rangeCount);
+        }
+        List<Callable<Integer>> counts = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            long start = targets[i];
+            long end = targets[i + 1];
+            counts.add(() -> countQuotes(channel, start, end));
+        }
+        List<Integer> quotes = invokeAll(counts);
+
+        long[] bounds = new long[rangeCount + 1];
+        int count = 1;
+        int quoteParity = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        for (int i = 1; i < rangeCount; i++) {
+            quoteParity ^= quotes.get(i - 1) & 1;
+            if (targets[i] < bounds[count - 1]) {
+                continue;
+            }
+            long boundary = nextRecordStart(channel, targets[i], quoteParity, buffer);
+            if (boundary > bounds[count - 1] && boundary < size) {
+                bounds[count++] = boundary;
+            }
+        }
+        bounds[count++] = size;
+        long[] result = new long[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    private static int countQuotes(FileChannel channel, long start, long end) throws IOException {
+        byte[] bytes = new byte[SCAN_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int quotes = 0;
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int)Math.min(bytes.length, end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            quotes += CSVTokenizer.countQuotes(bytes, 0, read);
+            position += read;
+        }
+        return quotes;
+    }
+
+    // Returns the position just after the first '\n' at or after position that
+    // is not inside a quoted field, or the size of the file if there is none.
+    // quoteParity is 1 if an odd number of quotes come before position.
+    private static long nextRecordStart(FileChannel channel, long position, int quoteParity,
+            ByteBuffer buffer) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoteParity ^= 1;
+                } else if (b == '\n' && quoteParity == 0) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private static CSVLine[] parseRange(FileChannel channel, long start, long end, Charset charset,
+            Function<CSVTokenizer, ? extends CSVLine> parser) throws IOException {
+        List<CSVLine> lines = new ArrayList<CSVLine>();
+        try (CSVTokenizer tokenizer = new CSVTokenizer(new RangeChannel(channel, start, end),
+                CSVTokenizer.DEFAULT_BUFFER_SIZE, charset, false)) {
+            while (tokenizer.next()) {
+                CSVLine line = parser.apply(tokenizer);
+                if (line != null) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines.toArray(new CSVLine[lines.size()]);
+    }
+
+    // Runs the tasks on the common pool, and returns their results in order.
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            results.add(getResult(future));
+        }
+        return results;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading file", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * A read-only view of a byte range of a shared FileChannel. Positional reads
+     * are used, so several RangeChannels may read the same file concurrently.
+     * Closing a RangeChannel does not close the underlying file.
+     */
+    private static class RangeChannel implements ReadableByteChannel {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+        private boolean open = true;
+
+        RangeChannel(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int limit = dst.limit();
+            if (dst.remaining() > end - position) {
+                dst.limit(dst.position() + (int)(end - position));
+            }
+            try {
+                int read = channel.read(dst, position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
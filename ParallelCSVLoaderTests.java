@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ParallelCSVLoaderTests {
+    @TempDir
+    Path tempDir;
+
+    private Path writeRows(int rows, String terminator, boolean trailingTerminator) throws IOException {
+        Path path = tempDir.resolve("rows.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("Filename,Title,Full Name,First Name,Last Name");
+            for (int i = 0; i < rows; i++) {
+                writer.write(terminator);
+                writer.write("IMG-" + i + ".jpg,\"Títle, " + i + "\",Person " + (i % 17) + ",Person," + (i % 17));
+            }
+            if (trailingTerminator) {
+                writer.write(terminator);
+            }
+        }
+        return path;
+    }
+
+    private CSVLine[] load(Path path, int rangeCount) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return ParallelCSVLoader.load(channel, rangeCount);
+        }
+    }
+
+    private void assertRows(int rows, CSVLine[] lines) {
+        assertEquals(rows + 1, lines.length);
+        assertEquals("Filename", ((ImageAndPersonLine)lines[0]).imageFileName());
+        for (int i = 0; i < rows; i++) {
+            ImageAndPersonLine line = (ImageAndPersonLine)lines[i + 1];
+            assertEquals("IMG-" + i + ".jpg", line.imageFileName());
+            assertEquals("Títle, " + i, line.imageTitle());
+        }
+    }
+
+    @Test
+    void testKeepsFileOrder() throws IOException {
+        Path path = writeRows(20000, "\n", true);
+        for (int ranges : new int[] {1, 2, 3, 7, 64}) {
+            assertRows(20000, load(path, ranges));
+        }
+    }
+
+    @Test
+    void testNoTrailingNewline() throws IOException {
+        Path path = writeRows(1000, "\n", false);
+        assertRows(1000, load(path, 16));
+    }
+
+    @Test
+    void testWindowsLineEndings() throws IOException {
+        Path path = writeRows(1000, "\r\n", true);
+        assertRows(1000, load(path, 16));
+    }
+
+    @Test
+    void testMoreRangesThanLines() throws IOException {
+        Path path = writeRows(2, "\n", true);
+        assertRows(2, load(path, 1000));
+    }
+
+    @Test
+    void testQuotedLineBreaks() throws IOException {
+        Path path = tempDir.resolve("quoted.csv");
+        StringBuilder content = new StringBuilder("Filename,Title,Full Name,First Name,Last Name\n");
+        for (int i = 0; i < 1000; i++) {
+            content.append("IMG-" + i + ".jpg,\"Line one\nline \"\"two\"\"\n\",\"Doe, John\",John,Doe\n");
+        }
+        Files.writeString(path, content, StandardCharsets.UTF_8);
+        for (int ranges : new int[] {1, 5, 64, 999}) {
+            CSVLine[] lines = load(path, ranges);
+            assertEquals(1001, lines.length);
+            for (int i = 0; i < 1000; i++) {
+                ImageAndPersonLine line = (ImageAndPersonLine)lines[i + 1];
+                assertEquals("IMG-" + i + ".jpg", line.imageFileName());
+                assertEquals("Line one\nline \"two\"\n", line.imageTitle());
+                assertEquals("Doe, John", line.personFullName());
+            }
+        }
+    }
+
+    @Test
+    void testSplitAtRecords() throws IOException {
+        Path path = writeRows(500, "\n", true);
+        byte[] content = Files.readAllBytes(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = ParallelCSVLoader.splitAtRecords(channel, 8);
+            assertEquals(0, bounds[0]);
+            assertEquals(content.length, bounds[bounds.length - 1]);
+            for (int i = 1; i < bounds.length - 1; i++) {
+                assertTrue(bounds[i] > bounds[i - 1]);
+                assertEquals('\n', content[(int)bounds[i] - 1]);
+            }
+        }
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path path = tempDir.resolve("empty.csv");
+        Files.createFile(path);
+        assertEquals(0, load(path, 8).length);
+        assertEquals(0, ParallelCSVLoader.load(path).length);
+    }
+
+    @Test
+    void testByteOrderMarkAndCharset() throws IOException {
+        Charset windows1252 = Charset.forName("windows-1252");
+        StringBuilder content = new StringBuilder("Filename,Title,Full Name,First Name,Last Name\n");
+        for (int i = 0; i < 1000; i++) {
+            content.append("IMG-" + i + ".jpg,Café " + i + ",Zoë Adams,Zoë,Adams\n");
+        }
+        Path bom = tempDir.resolve("bom.csv");
+        Files.writeString(bom, "\uFEFF" + content, StandardCharsets.UTF_8);
+        Path ansi = tempDir.resolve("ansi.csv");
+        Files.writeString(ansi, content, windows1252);
+        for (int ranges : new int[] {1, 7, 64}) {
+            CSVLine[] fromBom;
+            try (FileChannel channel = FileChannel.open(bom, StandardOpenOption.READ)) {
+                fromBom = ParallelCSVLoader.load(channel, ranges);
+            }
+            CSVLine[] fromAnsi = ParallelCSVLoader.load(ansi, windows1252,
+                tokenizer -> new ImageAndPersonLine(tokenizer.fields()));
+            assertEquals(1001, fromBom.length);
+            assertEquals(1001, fromAnsi.length);
+            assertEquals("Filename", fromBom[0].field(0));
+            for (int i = 1; i <= 1000; i++) {
+                assertEquals("Café " + (i - 1), fromBom[i].field(1));
+                assertEquals("Zoë Adams", fromAnsi[i].field(2));
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The PersonGroup class holds all of the lines for one person, in the order in
+ * which they appear in the CSV file.
+ *
+ * The keys used to sort people are computed once, when the group is created,
+ * so comparing two groups never allocates. The first and last names used for
+ * sorting are the first and last words of the person's full name.
+ *
+ * For locale-aware sorting, collate must be called before using one of the
+ * collated comparators. It computes a CollationKey once for each distinct name,
+ * and the collated comparators compare those keys.
+ */
+public class PersonGroup {
+    /**
+     * Orders groups by where the person first appears in the CSV file.
+     */
+    static final Comparator<PersonGroup> BY_FILE_ORDER =
+        Comparator.comparingInt(PersonGroup::firstIndex);
+
+    /**
+     * Orders groups alphabetically by full name.
+     */
+    static final Comparator<PersonGroup> BY_FULL_NAME =
+        (group1, group2) -> group1.fullName.compareTo(group2.fullName);
+
+    /**
+     * Orders groups alphabetically by last name, then by first name. People
+     * whose first and last names are both the same are ordered by full name.
+     */
+    static final Comparator<PersonGroup> BY_LAST_NAME_THEN_FIRST_NAME = (group1, group2) -> {
+        int comparison = group1.lastName.compareTo(group2.lastName);
+        if (comparison == 0) {
+            comparison = group1.firstName.compareTo(group2.firstName);
+        }
+        return comparison != 0 ? comparison : group1.fullName.compareTo(group2.fullName);
+    };
+
+    /**
+     * Orders groups by full name using the collation keys set by collate.
+     */
+    static final Comparator<PersonGroup> BY_FULL_NAME_COLLATED =
+        (group1, group2) -> group1.fullNameKey.compareTo(group2.fullNameKey);
+
+    /**
+     * Orders groups by last name, then by first name, then by full name using
+     * the collation keys set by collate.
+     */
+    static final Comparator<PersonGroup> BY_LAST_NAME_THEN_FIRST_NAME_COLLATED = (group1, group2) -> {
+        int comparison = group1.lastNameKey.compareTo(group2.lastNameKey);
+        if (comparison == 0) {
+            comparison = group1.firstNameKey.compareTo(group2.firstNameKey);
+        }
+        return comparison != 0 ? comparison : group1.fullNameKey.compareTo(group2.fullNameKey);
+    };
+
+    private final String fullName;
+    private final String firstName;
+    private final String lastName;
+    private final int firstIndex;
+    private ImageAndPersonLine[] lines = new ImageAndPersonLine[2];
+    private int count = 0;
+    private CollationKey fullNameKey;
+    private CollationKey firstNameKey;
+    private CollationKey lastNameKey;
+
+    /**
+     * Constructor - creates an empty group for a person.
+     * @param fullName - the person's full name.
+     * @param firstIndex - the index in the CSV object of the person's first line.
+     */
+    public PersonGroup(String fullName, int firstIndex) {
+        this.fullName = fullName;
+        this.firstIndex = firstIndex;
+        int end = fullName.length();
+        while (end > 0 && fullName.charAt(end - 1) == ' ') {
+            end--;
+        }
+        int firstSpace = fullName.indexOf(' ');
+        firstName = fullName.substring(0, firstSpace < 0 || firstSpace > end ? end : firstSpace);
+        lastName = fullName.substring(fullName.lastIndexOf(' ', end - 1) + 1, end);
+    }
+
+    /**
+     * Returns the person's full name.
+     * @return the person's full name.
+     */
+    public String fullName() {
+        return fullName;
+    }
+
+    /**
+     * Returns the first word of the person's full name.
+     * @return the first word of the person's full name.
+     */
+    public String firstName() {
+        return firstName;
+    }
+
+    /**
+     * Returns the last word of the person's full name.
+     * @return the last word of the person's full name.
+     */
+    public String lastName() {
+        return lastName;
+    }
+
+    /**
+     * Returns the index in the CSV object of the person's first line.
+     * @return the index of the person's first line.
+     */
+    public int firstIndex() {
+        return firstIndex;
+    }
+
+    /**
+     * Returns the number of lines in the group.
+     * @return the number of lines in the group.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the line at the specified position in the group.
+     * @param index - the position of the line in the group.
+     * @return the line at the specified position.
+     * @throws ArrayIndexOutOfBoundsException if the index is negative, or
+     * not less than the number of lines.
+     */
+    public ImageAndPersonLine line(int index) {
+        if (index >= count) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        return lines[index];
+    }
+
+    /**
+     * Adds a line to the end of the group.
+     * @param line - the line to add.
+     */
+    public void add(ImageAndPersonLine line) {
+        if (count == lines.length) {
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+        lines[count++] = line;
+    }
+
+    /**
+     * Copies the lines in the group into an array.
+     * @param destination - the array to copy the lines into.
+     * @param offset - the index in destination of the first line.
+     * @return the index in destination just after the last line copied.
+     */
+    public int copyTo(CSVLine[] destination, int offset) {
+        System.arraycopy(lines, 0, destination, offset, count);
+        return offset + count;
+    }
+
+    /**
+     * Computes the collation keys used by the collated comparators. A key is
+     * computed only once for each distinct name, even when a first or last
+     * name is shared by several people.
+     * @param groups - the groups to compute the keys for.
+     * @param collator - the collator for the locale to sort in.
+     */
+    static void collate(PersonGroup[] groups, Collator collator) {
+        HashMap<String, CollationKey> keys = new HashMap<>();
+        for (PersonGroup group : groups) {
+            group.fullNameKey = collationKey(group.fullName, collator, keys);
+            group.firstNameKey = collationKey(group.firstName, collator, keys);
+            group.lastNameKey = collationKey(group.lastName, collator, keys);
+        }
+    }
+
+    /**
+     * Computes the collation keys used by the collated comparators, on all
+     * available cores if parallel is true. A Collator cannot be shared
+     * between threads, so each thread uses its own clone of the collator,
+     * which makes the same keys.
+     * @param groups - the groups to compute the keys for.
+     * @param collator - the collator for the locale to sort in.
+     * @param parallel - true to compute the keys on all available cores.
+     */
+    static void collate(PersonGroup[] groups, Collator collator, boolean parallel) {
+        if (!parallel) {
+            collate(groups, collator);
+            return;
+        }
+        ConcurrentHashMap<String, CollationKey> keys = new ConcurrentHashMap<>();
+        ThreadLocal<Collator> collators = ThreadLocal.withInitial(() -> (Collator) collator.clone());
+        Arrays.stream(groups).parallel().forEach(group -> {
+            Collator threadCollator = collators.get();
+            group.fullNameKey = keys.computeIfAbsent(group.fullName, threadCollator::getCollationKey);
+            group.firstNameKey = keys.computeIfAbsent(group.firstName, threadCollator::getCollationKey);
+            group.lastNameKey = keys.computeIfAbsent(group.lastName, threadCollator::getCollationKey);
+        });
+    }
+
+    private static CollationKey collationKey(String name, Collator collator,
+            HashMap<String, CollationKey> keys) {
+        CollationKey key = keys.get(name);
+        if (key == null) {
+            key = collator.getCollationKey(name);
+            keys.put(name, key);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+public class PersonGroupTests {
+    @Test
+    void testNames() {
+        PersonGroup group = new PersonGroup("Mary Ann Smith", 3);
+        assertEquals("Mary Ann Smith", group.fullName());
+        assertEquals("Mary", group.firstName());
+        assertEquals("Smith", group.lastName());
+        assertEquals(3, group.firstIndex());
+
+        PersonGroup single = new PersonGroup("Cher", 1);
+        assertEquals("Cher", single.firstName());
+        assertEquals("Cher", single.lastName());
+
+        PersonGroup trailing = new PersonGroup("Fred Flintstone ", 1);
+        assertEquals("Fred", trailing.firstName());
+        assertEquals("Flintstone", trailing.lastName());
+    }
+
+    @Test
+    void testAddLines() {
+        PersonGroup group = new PersonGroup("John Doe", 1);
+        assertEquals(0, group.size());
+        for (int i = 0; i < 5; i++) {
+            group.add(new ImageAndPersonLine("image" + i + ".jpg,Title,John Doe,John,Doe"));
+        }
+        assertEquals(5, group.size());
+        assertEquals("image0.jpg", group.line(0).imageFileName());
+        assertEquals("image4.jpg", group.line(4).imageFileName());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () ->
+            group.line(5));
+
+        CSVLine[] lines = new CSVLine[7];
+        assertEquals(6, group.copyTo(lines, 1));
+        assertNull(lines[0]);
+        assertEquals("image0.jpg", ((ImageAndPersonLine)lines[1]).imageFileName());
+        assertEquals("image4.jpg", ((ImageAndPersonLine)lines[5]).imageFileName());
+    }
+
+    @Test
+    void testComparators() {
+        PersonGroup fred = new PersonGroup("Fred Flintstone", 2);
+        PersonGroup wilma = new PersonGroup("Wilma Flintstone", 1);
+        PersonGroup barney = new PersonGroup("Barney Rubble", 3);
+        assertTrue(PersonGroup.BY_FILE_ORDER.compare(wilma, fred) < 0);
+        assertTrue(PersonGroup.BY_FULL_NAME.compare(barney, fred) < 0);
+        assertTrue(PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME.compare(fred, wilma) < 0);
+        assertTrue(PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME.compare(wilma, barney) < 0);
+
+        PersonGroup maryAnn = new PersonGroup("Mary Ann Smith", 4);
+        PersonGroup maryJo = new PersonGroup("Mary Jo Smith", 5);
+        assertTrue(PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME.compare(maryAnn, maryJo) < 0);
+    }
+
+    @Test
+    void testCollateInParallel() {
+        String[] names = {"Zoë Adams", "émile Zola", "Emile Zola", "Édith Brontë", "anne Smith", "Anne Smith",
+            "Mary Ann Smith", "Mary Jo Smith", "Bob Ng"};
+        PersonGroup[] sequential = new PersonGroup[names.length * 50];
+        PersonGroup[] parallel = new PersonGroup[sequential.length];
+        for (int i = 0; i < sequential.length; i++) {
+            String name = names[i % names.length] + (i / names.length);
+            sequential[i] = new PersonGroup(name, i);
+            parallel[i] = new PersonGroup(name, i);
+        }
+        Collator collator = Collator.getInstance(Locale.FRENCH);
+        PersonGroup.collate(sequential, collator, false);
+        PersonGroup.collate(parallel, collator, true);
+        Arrays.sort(sequential, PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME_COLLATED);
+        Arrays.sort(parallel, PersonGroup.BY_LAST_NAME_THEN_FIRST_NAME_COLLATED);
+        for (int i = 0; i < sequential.length; i++) {
+            assertEquals(sequential[i].firstIndex(), parallel[i].firstIndex());
+        }
+    }
+}
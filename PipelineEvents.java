@@ -0,0 +1,315 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The PipelineEvents class holds the Java Flight Recorder events that are
+ * emitted by each stage of building a show.
+ *
+ * There is one event for each run of a stage, never one for each line, so the
+ * events cost almost nothing when no recording is running. To record them,
+ * start Java with a recording, such as:
+ * ```
+ * java -XX:StartFlightRecording=filename=build.jfr -jar fshowbuilder.jar input.csv out.csv
+ * jfr print --categories FShowBuilder build.jfr
+ * ```
+ */
+public final class PipelineEvents {
+    private PipelineEvents() {
+    }
+
+    /**
+     * Emitted when a CSV file is read. In streaming and parallel modes, reading
+     * and parsing overlap, so the event lasts for the whole load.
+     */
+    @Name("fshowbuilder.FileRead")
+    @Label("File Read")
+    @Category("FShowBuilder")
+    @Description("Reading of a CSV file")
+    @StackTrace(false)
+    static final class FileRead extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Mode")
+        @Description("memory, streaming, parallel, preloaded if the contents were read beforehand, "
+            + "channel if they were read from a channel, or snapshot if the lines were read from a snapshot")
+        String mode;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+    }
+
+    /**
+     * Emitted when the records of a CSV file are parsed into lines.
+     */
+    @Name("fshowbuilder.Parse")
+    @Label("Parse")
+    @Category("FShowBuilder")
+    @Description("Parsing of the records of a CSV file into lines")
+    @StackTrace(false)
+    static final class Parse extends Event {
+        @Label("Rows")
+        @Description("The number of lines created, including the header line")
+        long rows;
+
+        @Label("Malformed Rows")
+        @Description("Rows with more than five fields, whose extra fields were joined into the title")
+        long malformedRows;
+
+        @Label("Empty Lines")
+        @Description("Empty lines that were skipped")
+        long emptyLines;
+
+        @Label("Rows per Second")
+        double rowsPerSecond;
+    }
+
+    /**
+     * Emitted when the lines are grouped by person before sorting. It is not
+     * emitted when an indexed CSV object is sorted, because the index already
+     * holds the groups.
+     */
+    @Name("fshowbuilder.Group")
+    @Label("Group")
+    @Category("FShowBuilder")
+    @Description("Grouping of the lines by person's full name")
+    @StackTrace(false)
+    static final class Group extends Event {
+        @Label("Rows")
+        long rows;
+
+        @Label("People")
+        @Description("The number of distinct full names")
+        long people;
+
+        @Label("Largest Group")
+        @Description("The most lines for one person")
+        long largestGroup;
+    }
+
+    /**
+     * Emitted when the lines are sorted. The Group event for the sort, if
+     * there is one, happens during this event.
+     */
+    @Name("fshowbuilder.Sort")
+    @Label("Sort")
+    @Category("FShowBuilder")
+    @Description("Sorting of the lines")
+    @StackTrace(false)
+    static final class Sort extends Event {
+        @Label("Order")
+        String order;
+
+        @Label("Locale")
+        String locale;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("People")
+        long people;
+
+        @Label("Parallel")
+        @Description("Whether the people were sorted on all available cores")
+        boolean parallel;
+    }
+
+    /**
+     * Emitted when the images referred to by the lines are checked.
+     */
+    @Name("fshowbuilder.Validate")
+    @Label("Validate Images")
+    @Category("FShowBuilder")
+    @Description("Checking of the JPEG headers of the images")
+    @StackTrace(false)
+    static final class Validate extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Images")
+        long images;
+
+        @Label("Problems")
+        @Description("Images that are missing, unreadable, corrupt, truncated or too large")
+        long problems;
+    }
+
+    /**
+     * Emitted when DuplicateFinder looks for images with the same contents.
+     */
+    @Name("fshowbuilder.Duplicates")
+    @Label("Find Duplicates")
+    @Category("FShowBuilder")
+    @Description("Hashing of the images to find any with the same contents")
+    @StackTrace(false)
+    static final class Duplicates extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Images")
+        long images;
+
+        @Label("Hashed")
+        @Description("Images that were the same size as another, and whose hash was not cached")
+        long hashed;
+
+        @Label("Cached")
+        @Description("Images whose hash was cached")
+        long cached;
+
+        @Label("Groups")
+        @Description("Sets of images with the same contents")
+        long groups;
+    }
+
+    /**
+     * Emitted when ShowPackager collects the images of a show.
+     */
+    @Name("fshowbuilder.Package")
+    @Label("Package")
+    @Category("FShowBuilder")
+    @Description("Collection of the images of a show into one directory")
+    @StackTrace(false)
+    static final class Package extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Images")
+        long images;
+
+        @Label("Unchanged")
+        @Description("Images whose copy was already up to date")
+        long unchanged;
+
+        @Label("Linked")
+        long linked;
+
+        @Label("Copied")
+        long copied;
+
+        @Label("Failed")
+        long failed;
+
+        @Label("Bytes Copied")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+    }
+
+    /**
+     * Emitted when contact sheets are drawn.
+     */
+    @Name("fshowbuilder.ContactSheets")
+    @Label("Contact Sheets")
+    @Category("FShowBuilder")
+    @Description("Drawing of contact sheets of the images of a show")
+    @StackTrace(false)
+    static final class ContactSheets extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Sheets")
+        long sheets;
+
+        @Label("Thumbnails")
+        long thumbnails;
+
+        @Label("Cached")
+        @Description("Thumbnails read from the thumbnail cache")
+        long cached;
+
+        @Label("Embedded")
+        @Description("Thumbnails read from the EXIF data of the images")
+        long embedded;
+
+        @Label("Decoded")
+        @Description("Thumbnails made by decoding the images with subsampling")
+        long decoded;
+
+        @Label("Failed")
+        long failed;
+    }
+
+    /**
+     * Emitted when title slides are drawn.
+     */
+    @Name("fshowbuilder.Titles")
+    @Label("Titles")
+    @Category("FShowBuilder")
+    @Description("Drawing of the title slides of a show")
+    @StackTrace(false)
+    static final class Titles extends Event {
+        @Label("Directory")
+        String directory;
+
+        @Label("Slides")
+        long slides;
+
+        @Label("Failed")
+        long failed;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+    }
+
+    /**
+     * Emitted when the lines are written out.
+     */
+    @Name("fshowbuilder.Write")
+    @Label("Write")
+    @Category("FShowBuilder")
+    @Description("Writing of the lines as CSV text")
+    @StackTrace(false)
+    static final class Write extends Event {
+        @Label("Destination")
+        @Description("The path of the file, or the class of the Appendable")
+        String destination;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes")
+        @Description("The size of the file, or 0 if the lines were not written to a file")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+    }
+
+    /**
+     * Emitted for each queue between two stages when a ShowPipeline finishes.
+     */
+    @Name("fshowbuilder.Queue")
+    @Label("Queue")
+    @Category("FShowBuilder")
+    @Description("How full a queue between two stages of a pipeline became")
+    @StackTrace(false)
+    static final class Queue extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Capacity")
+        int capacity;
+
+        @Label("Items")
+        long items;
+
+        @Label("Maximum Depth")
+        int maxDepth;
+
+        @Label("Producer Wait")
+        @Description("The time the stage before the queue spent waiting for room")
+        @Timespan(Timespan.NANOSECONDS)
+        long producerWait;
+
+        @Label("Consumer Wait")
+        @Description("The time the stage after the queue spent waiting for an item")
+        @Timespan(Timespan.NANOSECONDS)
+        long consumerWait;
+    }
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class PipelineEventsTests {
+    @TempDir
+    Path tempDir;
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        fail("No " + name + " event was recorded");
+        return null;
+    }
+
+    @Test
+    void testEventsAreRecorded() throws IOException {
+        Path recordingFile = tempDir.resolve("build.jfr");
+        Path output = tempDir.resolve("sorted.csv");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"FileRead", "Parse", "Group", "Sort", "Write"}) {
+                recording.enable("fshowbuilder." + name);
+            }
+            recording.start();
+            CSV csv = new CSV.Builder()
+                .fileName("testing/data/quoted.csv")
+                .build();
+            csv.sort(sortOrder.COLLATED_BY_FULL_NAME, Locale.CANADA_FRENCH);
+            csv.writeTo(output);
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+
+        RecordedEvent read = find(events, "fshowbuilder.FileRead");
+        assertEquals("testing/data/quoted.csv", read.getString("path"));
+        assertEquals("memory", read.getString("mode"));
+        assertTrue(read.getLong("bytes") > 0);
+
+        RecordedEvent parse = find(events, "fshowbuilder.Parse");
+        assertEquals(3, parse.getLong("rows"));
+        assertEquals(0, parse.getLong("malformedRows"));
+        assertEquals(1, parse.getLong("emptyLines"));
+
+        RecordedEvent group = find(events, "fshowbuilder.Group");
+        assertEquals(2, group.getLong("rows"));
+        assertEquals(2, group.getLong("people"));
+        assertEquals(1, group.getLong("largestGroup"));
+
+        RecordedEvent sort = find(events, "fshowbuilder.Sort");
+        assertEquals("COLLATED_BY_FULL_NAME", sort.getString("order"));
+        assertEquals("fr-CA", sort.getString("locale"));
+        assertEquals(2, sort.getLong("people"));
+
+        RecordedEvent write = find(events, "fshowbuilder.Write");
+        assertEquals(output.toString(), write.getString("destination"));
+        assertEquals(3, write.getLong("rows"));
+        assertTrue(write.getLong("bytes") > 0);
+    }
+}
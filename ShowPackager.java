@@ -0,0 +1,416 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The ShowPackager class collects the images of a show into one directory.
+ *
+ * The images are those of the lines of a CSV object, in slide order: the
+ * downloaded image of each ImageAndPersonLine, and the generated image of each
+ * TitleImageLine. Each image keeps its file name.
+ *
+ * An image whose copy in the output directory has the same size and last
+ * modified time as the original is left alone, so packaging a show again only
+ * costs a few metadata reads for each image that has not changed. Otherwise,
+ * if the output directory is on the same file system as the image, a hard link
+ * is made, so no bytes are copied at all. If not, the file is copied with
+ * FileChannel.transferTo, which lets the operating system copy it without
+ * passing the bytes through Java, to a temporary file that then replaces the
+ * old copy. The images are packaged on virtual threads, at most
+ * maxConcurrentCopies at a time.
+ * ```java
+ * List<ShowPackager.Result> results = new ShowPackager.Builder()
+ *     .imageDirectory(Paths.get("downloads"))
+ *     .outputDirectory(Paths.get("show"))
+ *     .build()
+ *     .packageImages(csv);
+ * System.err.print(ShowPackager.report(results));
+ * ```
+ */
+public class ShowPackager {
+    /**
+     * What was done with an image.
+     */
+    public enum Action {
+        /** The copy in the output directory was already up to date. */
+        UNCHANGED,
+        /** A hard link to the image was made in the output directory. */
+        LINKED,
+        /** The image was copied to the output directory. */
+        COPIED,
+        /** The image could not be packaged. */
+        FAILED
+    }
+
+    private final Path imageDirectory;
+    private final Path titleImageDirectory;
+    private final Path outputDirectory;
+    private final boolean links;
+    private final int maxConcurrentCopies;
+    private final Metrics metrics;
+
+    private ShowPackager(Builder builder) {
+        this.imageDirectory = builder.imageDirectory;
+        this.titleImageDirectory = builder.titleImageDirectory != null
+            ? builder.titleImageDirectory : builder.imageDirectory;
+        this.outputDirectory = builder.outputDirectory;
+        this.links = builder.links;
+        this.maxConcurrentCopies = builder.maxConcurrentCopies;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * Builder class for ShowPackager objects.
+     */
+    public static class Builder {
+        private Path imageDirectory = null;
+        private Path titleImageDirectory = null;
+        private Path outputDirectory = null;
+        private boolean links = true;
+        private int maxConcurrentCopies = 2 * Runtime.getRuntime().availableProcessors();
+        private Metrics metrics = null;
+
+        /**
+         * Sets the directory that the downloaded images are in.
+         * @param imageDirectory - the directory containing the images.
+         * @return returns the Builder object.
+         */
+        public Builder imageDirectory(Path imageDirectory) {
+            this.imageDirectory = imageDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the directory that the generated title images are in. The
+         * default is the image directory.
+         * @param titleImageDirectory - the directory containing the title
+         * images.
+         * @return returns the Builder object.
+         */
+        public Builder titleImageDirectory(Path titleImageDirectory) {
+            this.titleImageDirectory = titleImageDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the directory that the images are collected into. It is created
+         * if it does not exist.
+         * @param outputDirectory - the output directory.
+         * @return returns the Builder object.
+         */
+        public Builder outputDirectory(Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        /**
+         * Sets whether hard links are made when the output directory is on the
+         * same file system as an image. A hard link is the same file as the
+         * image, so a program that changes one of them in place also changes
+         * the other.
+         * @param links - false to always copy the images. The default is true.
+         * @return returns the Builder object.
+         */
+        public Builder links(boolean links) {
+            this.links = links;
+            return this;
+        }
+
+        /**
+         * Sets the number of images that may be copied at once.
+         * @param maxConcurrentCopies - the number of images. The default is
+         * twice the number of available processors.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if maxConcurrentCopies is less
+         * than 1.
+         */
+        public Builder maxConcurrentCopies(int maxConcurrentCopies) {
+            if (maxConcurrentCopies < 1) {
+                throw new IllegalArgumentException("maxConcurrentCopies must be at least 1: " + maxConcurrentCopies);
+            }
+            this.maxConcurrentCopies = maxConcurrentCopies;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics that the time taken and the number of images and
+         * bytes are recorded in. The names of the measurements begin with
+         * "package.".
+         * @param metrics - the Metrics, or null to not record measurements.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds the ShowPackager object.
+         * @return the ShowPackager object.
+         * @throws IllegalStateException if the image directory or the output
+         * directory has not been set.
+         */
+        public ShowPackager build() {
+            if (imageDirectory == null) {
+                throw new IllegalStateException("No image directory has been set");
+            }
+            if (outputDirectory == null) {
+                throw new IllegalStateException("No output directory has been set");
+            }
+            return new ShowPackager(this);
+        }
+    }
+
+    /**
+     * What was done with one image.
+     * @param imageFileName - the image file name from the CSV object.
+     * @param source - the path of the image, or null if the image file name
+     * is not a valid path.
+     * @param destination - the path of the image in the output directory, or
+     * null if the image file name is not a valid path.
+     * @param action - what was done.
+     * @param bytes - the number of bytes copied, which is 0 unless the image
+     * was copied.
+     * @param error - a description of why the image could not be packaged, or
+     * null if it was.
+     */
+    public record Result(String imageFileName, Path source, Path destination, Action action, long bytes,
+            String error) {
+    }
+
+    /**
+     * Packages the image of every line of a CSV object, after the header line.
+     * An image that is used by several lines is only packaged once. An image
+     * that cannot be packaged does not stop the others.
+     * @param csv - the CSV object.
+     * @return what was done with each image, in slide order.
+     * @throws IOException if the output directory cannot be created.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the images to be packaged.
+     */
+    public List<Result> packageImages(CSV csv) throws IOException, InterruptedException {
+        PipelineEvents.Package event = new PipelineEvents.Package();
+        event.begin();
+        long start = System.nanoTime();
+        Files.createDirectories(outputDirectory);
+        Semaphore permits = new Semaphore(maxConcurrentCopies);
+        Map<String, Path> sources = new HashMap<>();
+        List<Result> results = new ArrayList<>();
+        List<Future<Result>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                for (int i = 1; i < csv.lines.size(); i++) {
+                    CSVLine line = csv.lines.get(i);
+                    String name = line.field(0);
+                    Path directory = line instanceof TitleImageLine ? titleImageDirectory : imageDirectory;
+                    Path source;
+                    Path destination;
+                    try {
+                        source = directory.resolve(name);
+                        destination = outputDirectory.resolve(source.getFileName().toString());
+                    } catch (InvalidPathException | NullPointerException e) {
+                        // getFileName is null for an empty name
+                        results.add(new Result(name, null, null, Action.FAILED, 0, "not a valid file name"));
+                        futures.add(null);
+                        continue;
+                    }
+                    Path previous = sources.putIfAbsent(destination.getFileName().toString(), source);
+                    if (previous != null) {
+                        if (!previous.equals(source)) {
+                            results.add(new Result(name, source, destination, Action.FAILED, 0,
+                                "has the same file name as " + previous));
+                            futures.add(null);
+                        }
+                        continue;
+                    }
+                    results.add(null);
+                    futures.add(executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            return packageImage(name, source, destination);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    if (futures.get(i) != null) {
+                        results.set(i, futures.get(i).get());
+                    }
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                throw e;
+            } catch (ExecutionException e) {
+                // packageImage turns every IOException into a Result
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        long[] counts = new long[Action.values().length];
+        long bytes = 0;
+        for (Result result : results) {
+            counts[result.action().ordinal()]++;
+            bytes += result.bytes();
+        }
+        event.directory = outputDirectory.toString();
+        event.images = results.size();
+        event.unchanged = counts[Action.UNCHANGED.ordinal()];
+        event.linked = counts[Action.LINKED.ordinal()];
+        event.copied = counts[Action.COPIED.ordinal()];
+        event.failed = counts[Action.FAILED.ordinal()];
+        event.bytes = bytes;
+        event.commit();
+        if (metrics != null) {
+            metrics.recordTime("package.time", System.nanoTime() - start);
+            for (Action action : Action.values()) {
+                metrics.record("package." + action.name().toLowerCase(Locale.ROOT), Metrics.Unit.COUNT,
+                    counts[action.ordinal()]);
+            }
+            metrics.record("package.bytes", Metrics.Unit.BYTES, bytes);
+        }
+        return results;
+    }
+
+    // Packages one image. Every IOException is turned into a Result, so that
+    // the other images are still packaged.
+    private Result packageImage(String name, Path source, Path destination) {
+        try {
+            BasicFileAttributes original = Files.readAttributes(source, BasicFileAttributes.class);
+            if (!original.isRegularFile()) {
+                return new Result(name, source, destination, Action.FAILED, 0, "not a file");
+            }
+            if (isUnchanged(original, destination)) {
+                return new Result(name, source, destination, Action.UNCHANGED, 0, null);
+            }
+            if (links && link(source, destination)) {
+                return new Result(name, source, destination, Action.LINKED, 0, null);
+            }
+            long bytes = copy(source, destination, original);
+            return new Result(name, source, destination, Action.COPIED, bytes, null);
+        } catch (NoSuchFileException e) {
+            return new Result(name, source, destination, Action.FAILED, 0, "file not found");
+        } catch (IOException e) {
+            return new Result(name, source, destination, Action.FAILED, 0,
+                e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private static boolean isUnchanged(BasicFileAttributes original, Path destination) throws IOException {
+        BasicFileAttributes copy;
+        try {
+            copy = Files.readAttributes(destination, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return copy.isRegularFile() && copy.size() == original.size()
+            && copy.lastModifiedTime().toMillis() == original.lastModifiedTime().toMillis();
+    }
+
+    // Makes destination a hard link to source, and returns false if the file
+    // system cannot link them, such as when they are on different devices.
+    private static boolean link(Path source, Path destination) throws IOException {
+        if (!Files.getFileStore(source).equals(Files.getFileStore(destination.getParent()))) {
+            return false;
+        }
+        Path temporary = temporaryPath(destination);
+        try {
+            Files.createLink(temporary, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Some file systems, and some permissions, do not allow links.
+            return false;
+        }
+        replace(temporary, destination);
+        return true;
+    }
+
+    // Copies source to destination with the same last modified time, and
+    // returns the number of bytes copied.
+    private static long copy(Path source, Path destination, BasicFileAttributes original) throws IOException {
+        Path temporary = temporaryPath(destination);
+        long copied = 0;
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE_NEW)) {
+                long size = in.size();
+                while (copied < size) {
+                    long count = in.transferTo(copied, size - copied, out);
+                    if (count <= 0) {
+                        break;
+                    }
+                    copied += count;
+                }
+            }
+            Files.setLastModifiedTime(temporary, original.lastModifiedTime());
+            replace(temporary, destination);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return copied;
+    }
+
+    // A unique name in the output directory, so that a copy is never seen
+    // half written.
+    private static Path temporaryPath(Path destination) {
+        return destination.resolveSibling("." + destination.getFileName() + "." + Thread.currentThread().threadId()
+            + ".part");
+    }
+
+    private static void replace(Path temporary, Path destination) throws IOException {
+        try {
+            Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns a report of the images that could not be packaged, with one
+     * line for each, followed by a line counting what was done.
+     * @param results - the results returned by packageImages.
+     * @return the report.
+     */
+    public static String report(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        long[] counts = new long[Action.values().length];
+        long bytes = 0;
+        for (Result result : results) {
+            counts[result.action().ordinal()]++;
+            bytes += result.bytes();
+            if (result.action() == Action.FAILED) {
+                sb.append(String.format(Locale.ROOT, "FAILED %s: %s\n",
+                    result.imageFileName(), result.error()));
+            }
+        }
+        sb.append(results.size()).append(" images");
+        for (Action action : Action.values()) {
+            if (counts[action.ordinal()] > 0) {
+                sb.append(", ").append(counts[action.ordinal()]).append(' ')
+                    .append(action.name().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (bytes > 0) {
+            sb.append(" (").append(bytes).append(" bytes copied)");
+        }
+        return sb.append('\n').toString();
+    }
+}
@@ -0,0 +1,156 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ShowPackagerTests {
+    @TempDir
+    Path tempDir;
+
+    private Path images;
+    private Path titles;
+    private Path output;
+
+    @BeforeEach
+    void createDirectories() throws IOException {
+        images = Files.createDirectory(tempDir.resolve("images"));
+        titles = Files.createDirectory(tempDir.resolve("titles"));
+        output = tempDir.resolve("show");
+    }
+
+    // Writes the images and a CSV file whose lines refer to them, with a
+    // title image before each person.
+    private CSV createShow() throws IOException {
+        Files.write(images.resolve("image1.jpg"), JPEGHeaderTests.jpeg(1024, 768, 100, 0xC0));
+        Files.write(images.resolve("image2.jpg"), JPEGHeaderTests.jpeg(2048, 1536, 300, 0xC0));
+        Files.write(titles.resolve("title1.jpg"), JPEGHeaderTests.jpeg(1920, 1080, 10, 0xC0));
+        Files.write(titles.resolve("title2.jpg"), JPEGHeaderTests.jpeg(1920, 1080, 20, 0xC0));
+        Path csv = tempDir.resolve("show.csv");
+        Files.writeString(csv, "Filename,Title,Full Name,First Name,Last Name\n" +
+            "image1.jpg,One,John Doe,John,Doe\n" +
+            "image2.jpg,Two,Jane Smith,Jane,Smith\n" +
+            "image1.jpg,Three,Jane Smith,Jane,Smith\n");
+        CSV show = new CSV.Builder().fileName(csv.toString()).build();
+        show.insertAt(1, new TitleImageLine("title1.jpg"));
+        show.insertAt(3, new TitleImageLine("title2.jpg"));
+        return show;
+    }
+
+    private ShowPackager.Builder packager() {
+        return new ShowPackager.Builder().imageDirectory(images).titleImageDirectory(titles).outputDirectory(output);
+    }
+
+    private static List<ShowPackager.Action> actions(List<ShowPackager.Result> results) {
+        List<ShowPackager.Action> actions = new ArrayList<>();
+        for (ShowPackager.Result result : results) {
+            actions.add(result.action());
+        }
+        return actions;
+    }
+
+    private static void assertSameFile(Path expected, Path actual) throws IOException {
+        assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual), actual.toString());
+        assertEquals(Files.getLastModifiedTime(expected).toMillis(), Files.getLastModifiedTime(actual).toMillis(),
+            actual.toString());
+    }
+
+    @Test
+    void testPackage() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        Metrics metrics = new Metrics();
+        List<ShowPackager.Result> results = packager().metrics(metrics).build().packageImages(csv);
+
+        List<String> names = new ArrayList<>();
+        for (ShowPackager.Result result : results) {
+            names.add(result.imageFileName());
+            assertNotEquals(ShowPackager.Action.FAILED, result.action(), result.error());
+            assertNull(result.error());
+        }
+        assertEquals(List.of("title1.jpg", "image1.jpg", "title2.jpg", "image2.jpg"), names);
+        assertEquals(titles.resolve("title1.jpg"), results.get(0).source());
+        assertEquals(output.resolve("image1.jpg"), results.get(1).destination());
+        assertSameFile(titles.resolve("title1.jpg"), output.resolve("title1.jpg"));
+        assertSameFile(titles.resolve("title2.jpg"), output.resolve("title2.jpg"));
+        assertSameFile(images.resolve("image1.jpg"), output.resolve("image1.jpg"));
+        assertSameFile(images.resolve("image2.jpg"), output.resolve("image2.jpg"));
+        try (Stream<Path> files = Files.list(output)) {
+            assertEquals(4, files.count());
+        }
+        assertEquals(1, metrics.get("package.time").count());
+        assertEquals(4, metrics.get("package.linked").total() + metrics.get("package.copied").total());
+
+        // Nothing has changed, so nothing is copied.
+        results = packager().build().packageImages(csv);
+        assertEquals(List.of(ShowPackager.Action.UNCHANGED, ShowPackager.Action.UNCHANGED,
+            ShowPackager.Action.UNCHANGED, ShowPackager.Action.UNCHANGED), actions(results));
+        assertEquals("4 images, 4 unchanged\n", ShowPackager.report(results));
+    }
+
+    @Test
+    void testCopy() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        List<ShowPackager.Result> results = packager().links(false).maxConcurrentCopies(1).build().packageImages(csv);
+        assertEquals(List.of(ShowPackager.Action.COPIED, ShowPackager.Action.COPIED, ShowPackager.Action.COPIED,
+            ShowPackager.Action.COPIED), actions(results));
+        assertEquals(Files.size(images.resolve("image2.jpg")), results.get(3).bytes());
+        assertSameFile(images.resolve("image2.jpg"), output.resolve("image2.jpg"));
+        assertFalse(Files.isSameFile(images.resolve("image2.jpg"), output.resolve("image2.jpg")));
+        long bytes = 0;
+        for (ShowPackager.Result result : results) {
+            bytes += result.bytes();
+        }
+        assertEquals("4 images, 4 copied (" + bytes + " bytes copied)\n", ShowPackager.report(results));
+
+        // A changed image is copied again, and so is a copy with a different
+        // modification time.
+        Files.write(images.resolve("image1.jpg"), JPEGHeaderTests.jpeg(800, 600, 50, 0xC0));
+        Files.setLastModifiedTime(output.resolve("title2.jpg"), FileTime.fromMillis(0));
+        results = packager().links(false).build().packageImages(csv);
+        assertEquals(List.of(ShowPackager.Action.UNCHANGED, ShowPackager.Action.COPIED,
+            ShowPackager.Action.COPIED, ShowPackager.Action.UNCHANGED), actions(results));
+        assertSameFile(images.resolve("image1.jpg"), output.resolve("image1.jpg"));
+        assertSameFile(titles.resolve("title2.jpg"), output.resolve("title2.jpg"));
+        try (Stream<Path> files = Files.list(output)) {
+            assertEquals(4, files.count());
+        }
+    }
+
+    @Test
+    void testFailures() throws IOException, InterruptedException {
+        CSV csv = createShow();
+        csv.append(new ImageAndPersonLine(new String[] {"missing.jpg", "Four", "John Doe", "John", "Doe"}));
+        // the same file name as an image in the other directory
+        Files.write(titles.resolve("image2.jpg"), JPEGHeaderTests.jpeg(1920, 1080, 30, 0xC0));
+        csv.append(new TitleImageLine("image2.jpg"));
+        Files.createDirectory(images.resolve("directory.jpg"));
+        csv.append(new ImageAndPersonLine(new String[] {"directory.jpg", "Five", "John Doe", "John", "Doe"}));
+
+        List<ShowPackager.Result> results = packager().build().packageImages(csv);
+        assertEquals(7, results.size());
+        assertEquals(ShowPackager.Action.FAILED, results.get(4).action());
+        assertEquals("file not found", results.get(4).error());
+        assertEquals(ShowPackager.Action.FAILED, results.get(5).action());
+        assertEquals("has the same file name as " + images.resolve("image2.jpg"), results.get(5).error());
+        assertEquals(ShowPackager.Action.FAILED, results.get(6).action());
+        assertEquals("not a file", results.get(6).error());
+        assertSameFile(images.resolve("image2.jpg"), output.resolve("image2.jpg"));
+        String report = ShowPackager.report(results);
+        assertTrue(report.startsWith("FAILED missing.jpg: file not found\n"), report);
+        assertTrue(report.endsWith(", 3 failed\n"), report);
+    }
+
+    @Test
+    void testBuilder() {
+        assertThrows(IllegalStateException.class, () -> new ShowPackager.Builder().outputDirectory(output).build());
+        assertThrows(IllegalStateException.class, () -> new ShowPackager.Builder().imageDirectory(images).build());
+        assertThrows(IllegalArgumentException.class, () -> new ShowPackager.Builder().maxConcurrentCopies(0));
+    }
+}
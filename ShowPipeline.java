@@ -0,0 +1,852 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ShowPipeline class builds a show in stages that run at the same time, so
+ * that reading from the disk, parsing, checking images and writing overlap.
+ *
+ * The stages are:
+ * <ol>
+ * <li>read: reads the CSV file in chunks into the "chunks" queue.</li>
+ * <li>parse: parses the chunks into lines, and passes them on in batches
+ * through the "lines" queue.</li>
+ * <li>images: checks the images of each batch of lines with an ImageValidator
+ * as soon as the batch is parsed.</li>
+ * <li>duplicates: finds images with the same contents with a DuplicateFinder,
+ * once every line has been parsed.</li>
+ * <li>sheets: draws contact sheets of the images in file order with a
+ * ContactSheetMaker, once every line has been parsed.</li>
+ * <li>sort: sorts the lines, once every line has been parsed.</li>
+ * <li>titles: draws the title slides with a TitleRenderer, from the start.</li>
+ * <li>write: writes the sorted lines.</li>
+ * <li>package: collects the images in slide order with a ShowPackager, at the
+ * same time as the lines are written.</li>
+ * </ol>
+ * Sorting, finding duplicates and drawing contact sheets need every line, so
+ * they wait for parsing to finish, and writing and packaging wait for sorting.
+ * Packaging also waits for the title slides, which it collects. The other
+ * stages stream.
+ * The queues are bounded, so a stage that falls behind makes the stages before
+ * it wait rather than filling the memory. The depth of each queue can be read
+ * while the pipeline runs with queueDepths, and is summarized afterwards by
+ * the Result and the Metrics. Only the stages that are set up in the Builder
+ * are run.
+ * ```java
+ * ShowPipeline.Result result = new ShowPipeline.Builder()
+ *     .input(Paths.get("show.csv"))
+ *     .sortOrder(sortOrder.COLLATED_BY_FULL_NAME)
+ *     .output(Paths.get("sorted.csv"))
+ *     .validator(new ImageValidator.Builder().imageDirectory(Paths.get("downloads")))
+ *     .build()
+ *     .run();
+ * ```
+ */
+public class ShowPipeline {
+    /**
+     * The default capacity of each queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private final Path input;
+    private final CSV.Builder csvBuilder;
+    private final sortOrder order;
+    private final Locale locale;
+    private final Path outputPath;
+    private final Appendable outputAppendable;
+    private final ImageValidator validator;
+    private final DuplicateFinder duplicateFinder;
+    private final ShowPackager packager;
+    private final TitleRenderer titleRenderer;
+    private final ContactSheetMaker contactSheetMaker;
+    private final List<TitleImage> titles;
+    private final int queueCapacity;
+    private final Metrics metrics;
+    private final List<StageQueue<?>> queues = new ArrayList<>();
+    private boolean started = false;
+
+    private ShowPipeline(Builder builder) {
+        this.input = builder.input;
+        this.csvBuilder = builder.csvBuilder != null ? builder.csvBuilder : new CSV.Builder();
+        this.order = builder.order;
+        this.locale = builder.locale;
+        this.outputPath = builder.outputPath;
+        this.outputAppendable = builder.outputAppendable;
+        this.queueCapacity = builder.queueCapacity;
+        this.metrics = builder.metrics;
+        if (metrics != null) {
+            csvBuilder.metrics(metrics);
+            if (builder.validator != null) {
+                builder.validator.metrics(metrics);
+            }
+            if (builder.duplicateFinder != null) {
+                builder.duplicateFinder.metrics(metrics);
+            }
+            if (builder.packager != null) {
+                builder.packager.metrics(metrics);
+            }
+            if (builder.titleRenderer != null) {
+                builder.titleRenderer.metrics(metrics);
+            }
+            if (builder.contactSheetMaker != null) {
+                builder.contactSheetMaker.metrics(metrics);
+            }
+        }
+        this.validator = builder.validator != null ? builder.validator.build() : null;
+        this.duplicateFinder = builder.duplicateFinder != null ? builder.duplicateFinder.build() : null;
+        this.packager = builder.packager != null ? builder.packager.build() : null;
+        this.titleRenderer = builder.titleRenderer != null ? builder.titleRenderer.build() : null;
+        this.titles = builder.titles;
+        this.contactSheetMaker = builder.contactSheetMaker != null ? builder.contactSheetMaker.build() : null;
+    }
+
+    /**
+     * Builder class for ShowPipeline objects.
+     */
+    public static class Builder {
+        private Path input = null;
+        private CSV.Builder csvBuilder = null;
+        private sortOrder order = sortOrder.NONE;
+        private Locale locale = Locale.getDefault();
+        private Path outputPath = null;
+        private Appendable outputAppendable = null;
+        private ImageValidator.Builder validator = null;
+        private DuplicateFinder.Builder duplicateFinder = null;
+        private ShowPackager.Builder packager = null;
+        private TitleRenderer.Builder titleRenderer = null;
+        private List<TitleImage> titles = List.of();
+        private ContactSheetMaker.Builder contactSheetMaker = null;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private Metrics metrics = null;
+
+        /**
+         * Sets the CSV file to build the show from.
+         * @param input - the path of the CSV file.
+         * @return returns the Builder object.
+         */
+        public Builder input(Path input) {
+            this.input = input;
+            return this;
+        }
+
+        /**
+         * Sets the Builder used to load the CSV file, for settings such as the
+         * charset. Its file name is set by the pipeline. If it loads the file
+         * in parallel or from a snapshot, the CSV object reads the file itself,
+         * and the read stage is not run.
+         * @param csvBuilder - the Builder. The default is a new CSV.Builder.
+         * @return returns the Builder object.
+         */
+        public Builder csv(CSV.Builder csvBuilder) {
+            this.csvBuilder = csvBuilder;
+            return this;
+        }
+
+        /**
+         * Sets the order to sort the lines in.
+         * @param order - the sort order. The default is NONE.
+         * @return returns the Builder object.
+         */
+        public Builder sortOrder(sortOrder order) {
+            this.order = order;
+            return this;
+        }
+
+        /**
+         * Sets the locale whose rules are used by the COLLATED orders.
+         * @param locale - the locale. The default is the default locale.
+         * @return returns the Builder object.
+         */
+        public Builder locale(Locale locale) {
+            this.locale = locale;
+            return this;
+        }
+
+        /**
+         * Sets the file that the sorted lines are written to, in UTF-8. A file
+         * whose name ends in .xls is written as an Excel workbook for
+         * Flexishow instead, by an XLSWriter.
+         * @param output - the path of the file.
+         * @return returns the Builder object.
+         */
+        public Builder output(Path output) {
+            this.outputPath = output;
+            this.outputAppendable = null;
+            return this;
+        }
+
+        /**
+         * Sets the Appendable that the sorted lines are written to. It is not
+         * flushed or closed.
+         * @param output - the Appendable.
+         * @return returns the Builder object.
+         */
+        public Builder output(Appendable output) {
+            this.outputAppendable = output;
+            this.outputPath = null;
+            return this;
+        }
+
+        /**
+         * Sets up the images stage. If the pipeline has Metrics, they are
+         * used by the ImageValidator too.
+         * @param validator - the Builder for the ImageValidator, or null to not
+         * check the images.
+         * @return returns the Builder object.
+         */
+        public Builder validator(ImageValidator.Builder validator) {
+            this.validator = validator;
+            return this;
+        }
+
+        /**
+         * Sets up the duplicates stage. If the pipeline has Metrics, they are
+         * used by the DuplicateFinder too.
+         * @param duplicateFinder - the Builder for the DuplicateFinder, or null
+         * to not look for duplicates.
+         * @return returns the Builder object.
+         */
+        public Builder duplicateFinder(DuplicateFinder.Builder duplicateFinder) {
+            this.duplicateFinder = duplicateFinder;
+            return this;
+        }
+
+        /**
+         * Sets up the package stage. If the pipeline has Metrics, they are
+         * used by the ShowPackager too.
+         * @param packager - the Builder for the ShowPackager, or null to not
+         * package the images.
+         * @return returns the Builder object.
+         */
+        public Builder packager(ShowPackager.Builder packager) {
+            this.packager = packager;
+            return this;
+        }
+
+        /**
+         * Sets up the titles stage. If the pipeline has Metrics, they are
+         * used by the TitleRenderer too. To package the title slides, set the
+         * ShowPackager's title image directory to the TitleRenderer's output
+         * directory.
+         * @param titleRenderer - the Builder for the TitleRenderer, or null to
+         * not draw title slides.
+         * @param titles - the title slides to draw.
+         * @return returns the Builder object.
+         */
+        public Builder titles(TitleRenderer.Builder titleRenderer, Collection<TitleImage> titles) {
+            this.titleRenderer = titleRenderer;
+            this.titles = List.copyOf(titles);
+            return this;
+        }
+
+        /**
+         * Sets up the sheets stage. If the pipeline has Metrics, they are
+         * used by the ContactSheetMaker too.
+         * @param contactSheetMaker - the Builder for the ContactSheetMaker, or
+         * null to not draw contact sheets.
+         * @return returns the Builder object.
+         */
+        public Builder contactSheets(ContactSheetMaker.Builder contactSheetMaker) {
+            this.contactSheetMaker = contactSheetMaker;
+            return this;
+        }
+
+        /**
+         * Sets the number of items that each queue holds before the stage
+         * that fills it has to wait. A chunk is 64 KiB, and a batch of lines
+         * is CSV.LINE_BATCH_SIZE lines.
+         * @param queueCapacity - the capacity. The default is
+         * DEFAULT_QUEUE_CAPACITY.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if queueCapacity is less than 1.
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("queueCapacity must be at least 1: " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics that every stage records its measurements in. The
+         * pipeline itself records "pipeline.time", and for each queue
+         * "pipeline.<queue>.maxDepth", "pipeline.<queue>.producerWait.time"
+         * and "pipeline.<queue>.consumerWait.time".
+         * @param metrics - the Metrics, or null to not record measurements.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds the ShowPipeline object.
+         * @return the ShowPipeline object.
+         * @throws IllegalStateException if no input file has been set, or a
+         * stage's Builder is missing a required setting.
+         */
+        public ShowPipeline build() {
+            if (input == null) {
+                throw new IllegalStateException("No input file has been set");
+            }
+            return new ShowPipeline(this);
+        }
+    }
+
+    /**
+     * What the pipeline produced.
+     * @param csv - the sorted CSV object.
+     * @param validation - the results of the images stage, in the order in
+     * which the images first appear in the file, or null if it was not run.
+     * @param duplicates - the results of the duplicates stage, with the lines
+     * in file order, or null if it was not run.
+     * @param titles - the results of the titles stage, or null if it was not
+     * run.
+     * @param sheets - the result of the sheets stage, or null if it was not
+     * run.
+     * @param packaged - the results of the package stage, in slide order, or
+     * null if it was not run.
+     * @param queues - how full each queue became.
+     */
+    public record Result(CSV csv, List<ImageValidator.Result> validation, List<DuplicateFinder.Group> duplicates,
+            List<TitleRenderer.Result> titles, ContactSheetMaker.Result sheets, List<ShowPackager.Result> packaged,
+            List<QueueStats> queues) {
+    }
+
+    /**
+     * How full a queue between two stages became, for choosing its capacity.
+     * A queue that is often full, with a long producer wait, feeds a stage
+     * that is slower than the one before it.
+     * @param name - the name of the queue.
+     * @param capacity - the capacity of the queue.
+     * @param items - the number of items that passed through it.
+     * @param maxDepth - the largest number of items it held at once.
+     * @param producerWaitNanos - the time the stage before it spent waiting
+     * for room.
+     * @param consumerWaitNanos - the time the stage after it spent waiting for
+     * an item.
+     */
+    public record QueueStats(String name, int capacity, long items, int maxDepth, long producerWaitNanos,
+            long consumerWaitNanos) {
+    }
+
+    /**
+     * Thrown by run when a stage fails. The cause is the exception thrown by
+     * the stage.
+     */
+    public static class StageException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String stage;
+
+        StageException(String stage, Throwable cause) {
+            super(stage + " stage failed: " + cause.getMessage(), cause);
+            this.stage = stage;
+        }
+
+        /**
+         * Returns the name of the stage that failed, such as "parse" or
+         * "write".
+         * @return the name of the stage.
+         */
+        public String stage() {
+            return stage;
+        }
+    }
+
+    /**
+     * Returns the number of items in each queue now. It may be called from
+     * another thread while the pipeline runs.
+     * @return the depth of each queue by name, which is empty until the
+     * pipeline starts.
+     */
+    public Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        synchronized (queues) {
+            for (StageQueue<?> queue : queues) {
+                depths.put(queue.name, queue.depth());
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Runs the pipeline. A pipeline can only be run once. If a stage fails,
+     * the stages that depend on it do not run, and the others are stopped
+     * as soon as possible.
+     * @return what the pipeline produced.
+     * @throws StageException if a stage fails.
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for the stages.
+     * @throws IllegalStateException if the pipeline has already been run.
+     */
+    public Result run() throws InterruptedException {
+        synchronized (queues) {
+            if (started) {
+                throw new IllegalStateException("The pipeline has already been run");
+            }
+            started = true;
+        }
+        long start = System.nanoTime();
+        ExecutorService io = Executors.newVirtualThreadPerTaskExecutor();
+        // Parsing and sorting are CPU work, and take turns on one thread.
+        ExecutorService cpu = Executors.newSingleThreadExecutor();
+        StageQueue<ByteBuffer> chunks = null;
+        StageQueue<List<CSVLine>> lineBatches = null;
+        try {
+            csvBuilder.fileName(input.toString());
+            if (!csvBuilder.readsFileItself()) {
+                chunks = addQueue(new StageQueue<>("chunks", queueCapacity));
+                csvBuilder.channel(new QueueChannel(chunks));
+            }
+            if (validator != null) {
+                lineBatches = addQueue(new StageQueue<>("lines", queueCapacity));
+                StageQueue<List<CSVLine>> batches = lineBatches;
+                csvBuilder.lineBatches(batch -> {
+                    if (!batches.put(batch)) {
+                        throw new UncheckedIOException(new StageAbortedException());
+                    }
+                });
+            }
+
+            CompletableFuture<Void> read = chunks == null ? CompletableFuture.completedFuture(null)
+                : stage("read", io, readFile(chunks));
+            StageQueue<ByteBuffer> chunkQueue = chunks;
+            StageQueue<List<CSVLine>> batchQueue = lineBatches;
+            CompletableFuture<Loaded> load = stage("parse", cpu, () -> {
+                try {
+                    CSV csv = csvBuilder.build();
+                    // copied before sorting starts, for the duplicates stage
+                    return new Loaded(csv, duplicateFinder != null ? List.copyOf(csv.lines) : null,
+                        contactSheetMaker != null ? csv.personGroups() : null);
+                } finally {
+                    if (chunkQueue != null) {
+                        chunkQueue.abort();
+                    }
+                    if (batchQueue != null) {
+                        batchQueue.close();
+                    }
+                }
+            });
+            CompletableFuture<List<ImageValidator.Result>> images = lineBatches == null
+                ? CompletableFuture.completedFuture(null) : stage("images", io, () -> checkImages(batchQueue));
+            CompletableFuture<List<DuplicateFinder.Group>> duplicates = duplicateFinder == null
+                ? CompletableFuture.completedFuture(null)
+                : load.thenCompose(loaded -> stage("duplicates", io,
+                    () -> duplicateFinder.find(loaded.fileOrder())));
+            CompletableFuture<ContactSheetMaker.Result> sheets = contactSheetMaker == null
+                ? CompletableFuture.completedFuture(null)
+                : load.thenCompose(loaded -> stage("sheets", io, () -> contactSheetMaker.make(loaded.groups())));
+            CompletableFuture<CSV> sort = load.thenCompose(loaded -> stage("sort", cpu, () -> {
+                loaded.csv().sort(order, locale);
+                return loaded.csv();
+            }));
+            CompletableFuture<Void> write = outputPath == null && outputAppendable == null
+                ? CompletableFuture.completedFuture(null)
+                : sort.thenCompose(csv -> stage("write", io, () -> {
+                    if (outputPath != null && outputPath.toString().toLowerCase(Locale.ROOT).endsWith(".xls")) {
+                        csv.writeXLSTo(outputPath);
+                    } else if (outputPath != null) {
+                        csv.writeTo(outputPath);
+                    } else {
+                        csv.writeTo(outputAppendable);
+                    }
+                    return null;
+                }));
+            CompletableFuture<List<TitleRenderer.Result>> rendered = titleRenderer == null
+                ? CompletableFuture.completedFuture(null) : stage("titles", io, () -> titleRenderer.render(titles));
+            CompletableFuture<List<ShowPackager.Result>> packaged = packager == null
+                ? CompletableFuture.completedFuture(null)
+                : sort.thenCombine(rendered, (csv, slides) -> csv)
+                    .thenCompose(csv -> stage("package", io, () -> packager.packageImages(csv)));
+
+            // A failed stage stops the stages that feed it or are fed by it.
+            for (CompletableFuture<?> future : List.of(read, load, images)) {
+                future.whenComplete((value, failure) -> {
+                    if (failure != null) {
+                        abortAll();
+                    }
+                });
+            }
+            try {
+                CompletableFuture.allOf(read, load, images, duplicates, sheets, sort, rendered, write, packaged).get();
+            } catch (ExecutionException e) {
+                // Every stage fails with a StageException. The first stage to
+                // fail is reported, rather than a later one that failed because
+                // of it.
+                throw firstFailure(e, read, load, images, duplicates, sheets, sort, rendered, write, packaged);
+            }
+            Result result = new Result(sort.join(), images.join(), duplicates.join(), rendered.join(),
+                sheets.join(), packaged.join(), queueStats());
+            recordQueues(result.queues(), System.nanoTime() - start);
+            return result;
+        } catch (InterruptedException e) {
+            abortAll();
+            io.shutdownNow();
+            cpu.shutdownNow();
+            throw e;
+        } finally {
+            io.shutdown();
+            cpu.shutdown();
+        }
+    }
+
+    // The loaded CSV object, a copy of its lines in file order if the
+    // duplicates stage needs one, and its lines grouped by person in file
+    // order if the sheets stage needs them.
+    private record Loaded(CSV csv, List<CSVLine> fileOrder, List<PersonGroup> groups) {
+    }
+
+    private interface StageTask<T> {
+        T run() throws Exception;
+    }
+
+    // Runs a stage, turning anything it throws into a StageException.
+    private static <T> CompletableFuture<T> stage(String name, ExecutorService executor, StageTask<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run();
+            } catch (StageException e) {
+                throw e;
+            } catch (UncheckedIOException e) {
+                throw new StageException(name, e.getCause());
+            } catch (Exception e) {
+                throw new StageException(name, e);
+            } catch (Error e) {
+                throw new StageException(name, e);
+            }
+        }, executor);
+    }
+
+    private static StageException firstFailure(ExecutionException e, CompletableFuture<?>... stages) {
+        for (CompletableFuture<?> stage : stages) {
+            if (stage.isCompletedExceptionally()) {
+                try {
+                    stage.join();
+                } catch (CompletionException failure) {
+                    if (failure.getCause() instanceof StageException stageException
+                            && !(stageException.getCause() instanceof StageAbortedException)) {
+                        return stageException;
+                    }
+                }
+            }
+        }
+        Throwable cause = e.getCause();
+        return cause instanceof StageException ? (StageException) cause : new StageException("pipeline", cause);
+    }
+
+    // Thrown inside a stage that was stopped because another stage failed.
+    private static final class StageAbortedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StageAbortedException() {
+            super("stopped because another stage failed");
+        }
+    }
+
+    private <T> StageQueue<T> addQueue(StageQueue<T> queue) {
+        synchronized (queues) {
+            queues.add(queue);
+        }
+        return queue;
+    }
+
+    private void abortAll() {
+        synchronized (queues) {
+            for (StageQueue<?> queue : queues) {
+                queue.abort();
+            }
+        }
+    }
+
+    private List<QueueStats> queueStats() {
+        List<QueueStats> stats = new ArrayList<>();
+        synchronized (queues) {
+            for (StageQueue<?> queue : queues) {
+                stats.add(queue.stats());
+            }
+        }
+        return stats;
+    }
+
+    private void recordQueues(List<QueueStats> stats, long nanos) {
+        for (QueueStats queue : stats) {
+            PipelineEvents.Queue event = new PipelineEvents.Queue();
+            event.name = queue.name();
+            event.capacity = queue.capacity();
+            event.items = queue.items();
+            event.maxDepth = queue.maxDepth();
+            event.producerWait = queue.producerWaitNanos();
+            event.consumerWait = queue.consumerWaitNanos();
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.recordTime("pipeline.time", nanos);
+            for (QueueStats queue : stats) {
+                String prefix = "pipeline." + queue.name();
+                metrics.record(prefix + ".maxDepth", Metrics.Unit.COUNT, queue.maxDepth());
+                metrics.recordTime(prefix + ".producerWait.time", queue.producerWaitNanos());
+                metrics.recordTime(prefix + ".consumerWait.time", queue.consumerWaitNanos());
+            }
+        }
+    }
+
+    // The read stage: reads the file in chunks into the queue.
+    private StageTask<Void> readFile(StageQueue<ByteBuffer> chunks) {
+        return () -> {
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                while (true) {
+                    ByteBuffer chunk = ByteBuffer.allocate(CSVTokenizer.DEFAULT_BUFFER_SIZE);
+                    while (chunk.hasRemaining() && channel.read(chunk) >= 0) {
+                        // until the chunk is full or the file ends
+                    }
+                    chunk.flip();
+                    if (!chunk.hasRemaining()) {
+                        break;
+                    }
+                    if (!chunks.put(chunk)) {
+                        throw new StageAbortedException();
+                    }
+                }
+                chunks.close();
+            } catch (IOException e) {
+                // so that the parse stage stops with the same failure
+                chunks.fail(e);
+                throw e;
+            }
+            return null;
+        };
+    }
+
+    // The images stage: checks the images of each batch of lines that has
+    // been parsed, taking every batch that is waiting at once.
+    private List<ImageValidator.Result> checkImages(StageQueue<List<CSVLine>> lineBatches)
+            throws InterruptedException, StageAbortedException {
+        List<ImageValidator.Result> results = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        List<List<CSVLine>> batches = new ArrayList<>();
+        boolean header = true;
+        while (lineBatches.takeAll(batches)) {
+            List<String> names = new ArrayList<>();
+            for (List<CSVLine> batch : batches) {
+                for (CSVLine line : batch) {
+                    if (header) {
+                        header = false;
+                    } else if (seen.add(line.field(0))) {
+                        names.add(line.field(0));
+                    }
+                }
+            }
+            batches.clear();
+            results.addAll(validator.validate(names));
+        }
+        if (lineBatches.aborted()) {
+            throw new StageAbortedException();
+        }
+        return results;
+    }
+
+    // A bounded queue between two stages that counts how full it becomes.
+    // The stage that fills it closes it at the end. Aborting it makes both
+    // stages stop waiting.
+    static final class StageQueue<T> {
+        private static final Object END = new Object();
+
+        final String name;
+        private final int capacity;
+        private final ArrayBlockingQueue<Object> queue;
+        private final AtomicInteger maxDepth = new AtomicInteger();
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong producerWaitNanos = new AtomicLong();
+        private final AtomicLong consumerWaitNanos = new AtomicLong();
+        private volatile boolean aborted = false;
+        private volatile IOException failure = null;
+        private boolean ended = false;
+
+        StageQueue(String name, int capacity) {
+            this.name = name;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // Adds an item, waiting while the queue is full. Returns false if the
+        // queue has been aborted.
+        boolean put(T item) {
+            if (!offer(item)) {
+                return false;
+            }
+            items.incrementAndGet();
+            maxDepth.accumulateAndGet(queue.size(), Math::max);
+            return true;
+        }
+
+        private boolean offer(Object item) {
+            if (aborted) {
+                return false;
+            }
+            if (queue.offer(item)) {
+                return true;
+            }
+            long start = System.nanoTime();
+            try {
+                // polled, so that aborting the queue stops the wait
+                while (!aborted) {
+                    if (queue.offer(item, 10, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                aborted = true;
+                return false;
+            } finally {
+                producerWaitNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        // Marks the end of the items.
+        void close() {
+            offer(END);
+        }
+
+        // Marks the end of the items, because the stage that fills the queue
+        // failed.
+        void fail(IOException failure) {
+            this.failure = failure;
+            close();
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        boolean aborted() {
+            return aborted;
+        }
+
+        // Takes the next item, waiting while the queue is empty. Returns null
+        // at the end of the items, or if the queue has been aborted.
+        T take() throws InterruptedException {
+            if (ended) {
+                return null;
+            }
+            Object item = queue.poll();
+            if (item == null) {
+                long start = System.nanoTime();
+                while (item == null && !aborted) {
+                    item = queue.poll(10, TimeUnit.MILLISECONDS);
+                }
+                consumerWaitNanos.addAndGet(System.nanoTime() - start);
+            }
+            if (item == null || item == END) {
+                ended = true;
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            T next = (T) item;
+            return next;
+        }
+
+        // Waits for the next item, then takes it and every other item that is
+        // waiting. Returns false at the end of the items.
+        boolean takeAll(List<T> into) throws InterruptedException {
+            T first = take();
+            if (first == null) {
+                return false;
+            }
+            into.add(first);
+            while (!ended && queue.peek() != null) {
+                T next = take();
+                if (next != null) {
+                    into.add(next);
+                }
+            }
+            return true;
+        }
+
+        int depth() {
+            int depth = queue.size();
+            return queue.contains(END) ? depth - 1 : depth;
+        }
+
+        IOException failure() {
+            return failure;
+        }
+
+        QueueStats stats() {
+            return new QueueStats(name, capacity, items.get(), maxDepth.get(), producerWaitNanos.get(),
+                consumerWaitNanos.get());
+        }
+    }
+
+    // A channel that reads the chunks put in a queue by the read stage.
+    private static final class QueueChannel implements ReadableByteChannel {
+        private final StageQueue<ByteBuffer> chunks;
+        private ByteBuffer chunk = null;
+        private boolean open = true;
+
+        QueueChannel(StageQueue<ByteBuffer> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            while (chunk == null || !chunk.hasRemaining()) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while reading", e);
+                }
+                if (chunk == null) {
+                    if (chunks.failure() != null) {
+                        throw chunks.failure();
+                    }
+                    if (chunks.aborted()) {
+                        throw new StageAbortedException();
+                    }
+                    return -1;
+                }
+            }
+            int count = Math.min(chunk.remaining(), destination.remaining());
+            destination.put(destination.position(), chunk, chunk.position(), count);
+            destination.position(destination.position() + count);
+            chunk.position(chunk.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
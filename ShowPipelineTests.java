@@ -0,0 +1,282 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+public class ShowPipelineTests {
+    @TempDir
+    Path tempDir;
+
+    // Writes a CSV file that is several chunks long.
+    private Path createLargeFile(int rows) throws IOException {
+        StringBuilder text = new StringBuilder("Filename,Title,Full Name,First Name,Last Name\n");
+        for (int i = 0; i < rows; i++) {
+            int person = (i * 7919) % 1000;
+            text.append("image").append(i).append(".jpg,Image ").append(i).append(",First").append(person)
+                .append(" Last").append(person).append(",First").append(person).append(",Last").append(person)
+                .append('\n');
+        }
+        Path path = tempDir.resolve("large.csv");
+        Files.writeString(path, text);
+        return path;
+    }
+
+    private static String sortedSequentially(Path path, sortOrder order) {
+        CSV csv = new CSV.Builder().fileName(path.toString()).build();
+        csv.sort(order, Locale.ROOT);
+        return csv.toString();
+    }
+
+    @Test
+    void testMatchesSequentialBuild() throws IOException, InterruptedException {
+        Path large = createLargeFile(20_000);
+        for (Path path : new Path[] {Paths.get("testing/data/sort.csv"), Paths.get("testing/data/quoted.csv"),
+                Paths.get("testing/data/bom.csv"), Paths.get("testing/data/empty.csv"), large}) {
+            for (sortOrder order : sortOrder.values()) {
+                StringBuilder output = new StringBuilder();
+                ShowPipeline.Result result = new ShowPipeline.Builder()
+                    .input(path)
+                    .sortOrder(order)
+                    .locale(Locale.ROOT)
+                    .output(output)
+                    .queueCapacity(1)
+                    .build()
+                    .run();
+                String expected = sortedSequentially(path, order);
+                assertEquals(expected, output.toString(), path + " " + order);
+                assertEquals(expected, result.csv().toString(), path + " " + order);
+                assertNull(result.validation());
+                assertNull(result.duplicates());
+                assertNull(result.packaged());
+            }
+        }
+    }
+
+    @Test
+    void testWriteToFile() throws IOException, InterruptedException {
+        Path output = tempDir.resolve("sorted.csv");
+        new ShowPipeline.Builder()
+            .input(Paths.get("testing/data/sort.csv"))
+            .sortOrder(sortOrder.ALPHABETICAL_BY_FULL_NAME)
+            .output(output)
+            .build()
+            .run();
+        CSV expected = new CSV.Builder().fileName("testing/data/sort.csv").build();
+        expected.sort(sortOrder.ALPHABETICAL_BY_FULL_NAME);
+        Path expectedPath = tempDir.resolve("expected.csv");
+        expected.writeTo(expectedPath);
+        assertEquals(Files.readString(expectedPath), Files.readString(output));
+
+        Path workbook = tempDir.resolve("show.XLS");
+        new ShowPipeline.Builder()
+            .input(Paths.get("testing/data/sort.csv"))
+            .sortOrder(sortOrder.ALPHABETICAL_BY_FULL_NAME)
+            .output(workbook)
+            .build()
+            .run();
+        XLSWriterTests.Sheet sheet = XLSWriterTests.read(workbook);
+        assertEquals(expected.lines.size(), sheet.rows());
+        assertEquals(expected.lines.get(1).field(0), sheet.cells().get(1).get(0));
+    }
+
+    @Test
+    void testQueueStats() throws IOException, InterruptedException {
+        Path path = createLargeFile(20_000);
+        Metrics metrics = new Metrics();
+        Files.write(tempDir.resolve("image0.jpg"), JPEGHeaderTests.jpeg(640, 480, 10, 0xC0));
+        ShowPipeline.Result result = new ShowPipeline.Builder()
+            .input(path)
+            .validator(new ImageValidator.Builder().imageDirectory(tempDir))
+            .queueCapacity(2)
+            .metrics(metrics)
+            .build()
+            .run();
+        List<ShowPipeline.QueueStats> queues = result.queues();
+        assertEquals(List.of("chunks", "lines"), queues.stream().map(ShowPipeline.QueueStats::name).toList());
+
+        ShowPipeline.QueueStats chunks = queues.get(0);
+        long chunkCount = (Files.size(path) + CSVTokenizer.DEFAULT_BUFFER_SIZE - 1) / CSVTokenizer.DEFAULT_BUFFER_SIZE;
+        assertEquals(chunkCount, chunks.items());
+        assertEquals(2, chunks.capacity());
+        assertTrue(chunks.maxDepth() >= 1 && chunks.maxDepth() <= 2);
+
+        ShowPipeline.QueueStats lines = queues.get(1);
+        long batchCount = (result.csv().lines.size() + CSV.LINE_BATCH_SIZE - 1) / CSV.LINE_BATCH_SIZE;
+        assertEquals(batchCount, lines.items());
+        assertTrue(lines.maxDepth() >= 1 && lines.maxDepth() <= 2);
+
+        assertEquals(20_000, result.validation().size());
+        assertEquals(ImageValidator.Status.OK, result.validation().get(0).status());
+        assertEquals(ImageValidator.Status.MISSING, result.validation().get(1).status());
+
+        assertEquals(1, metrics.get("pipeline.time").count());
+        assertEquals(chunks.maxDepth(), metrics.get("pipeline.chunks.maxDepth").max());
+        assertNotNull(metrics.get("pipeline.lines.producerWait.time"));
+        assertNotNull(metrics.get("pipeline.lines.consumerWait.time"));
+        assertNotNull(metrics.get("validate.time"));
+    }
+
+    @Test
+    void testAllStages() throws IOException, InterruptedException {
+        byte[] photo = JPEGHeaderTests.jpeg(1920, 1080, 100, 0xC0);
+        Path images = Files.createDirectory(tempDir.resolve("images"));
+        Files.write(images.resolve("photo.jpg"), photo);
+        Files.write(images.resolve("copy.jpg"), photo);
+        Files.write(images.resolve("other.jpg"), JPEGHeaderTests.jpeg(640, 480, 10, 0xC0));
+        Path input = tempDir.resolve("show.csv");
+        Files.writeString(input, "Filename,Title,Full Name,First Name,Last Name\n" +
+            "photo.jpg,One,John Doe,John,Doe\n" +
+            "other.jpg,Two,Jane Smith,Jane,Smith\n" +
+            "copy.jpg,Three,Adam Brown,Adam,Brown\n" +
+            "missing.jpg,Four,Adam Brown,Adam,Brown\n");
+        Path packaged = tempDir.resolve("packaged");
+        StringBuilder output = new StringBuilder();
+
+        ShowPipeline.Result result = new ShowPipeline.Builder()
+            .input(input)
+            .sortOrder(sortOrder.ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME)
+            .output(output)
+            .validator(new ImageValidator.Builder().imageDirectory(images))
+            .duplicateFinder(new DuplicateFinder.Builder().imageDirectory(images))
+            .packager(new ShowPackager.Builder().imageDirectory(images).outputDirectory(packaged))
+            .contactSheets(new ContactSheetMaker.Builder().imageDirectory(images)
+                .outputDirectory(tempDir.resolve("sheets")).sheetSize(800, 600))
+            .build()
+            .run();
+
+        assertEquals(sortedSequentially(input, sortOrder.ALPHABETICAL_BY_LAST_NAME_THEN_FIRST_NAME),
+            output.toString());
+        assertEquals(List.of("photo.jpg", "other.jpg", "copy.jpg", "missing.jpg"),
+            result.validation().stream().map(ImageValidator.Result::imageFileName).toList());
+        assertEquals(ImageValidator.Status.MISSING, result.validation().get(3).status());
+
+        // The lines of a group are in file order, although the lines were
+        // sorted.
+        assertEquals(1, result.duplicates().size());
+        assertEquals(List.of("photo.jpg", "copy.jpg"), result.duplicates().get(0).imageFileNames());
+
+        assertEquals(List.of("copy.jpg", "missing.jpg", "photo.jpg", "other.jpg"),
+            result.packaged().stream().map(ShowPackager.Result::imageFileName).toList());
+        assertEquals(ShowPackager.Action.FAILED, result.packaged().get(1).action());
+        assertTrue(Files.exists(packaged.resolve("photo.jpg")));
+        assertTrue(Files.exists(packaged.resolve("other.jpg")));
+
+        // The people are grouped in the order in which they first appear.
+        assertTrue(Files.exists(tempDir.resolve("sheets/sheet-001.jpg")));
+        assertEquals(List.of("photo.jpg", "other.jpg", "copy.jpg", "missing.jpg"),
+            result.sheets().thumbnails().stream().map(ContactSheetMaker.Thumbnail::imageFileName).toList());
+    }
+
+    @Test
+    void testTitlesArePackaged() throws IOException, InterruptedException {
+        Path images = Files.createDirectory(tempDir.resolve("images"));
+        Files.write(images.resolve("photo.jpg"), JPEGHeaderTests.jpeg(640, 480, 10, 0xC0));
+        Path input = tempDir.resolve("show.csv");
+        Files.writeString(input, "Filename,Title,Full Name,First Name,Last Name\n" +
+            "photo.jpg,One,John Doe,John,Doe\n");
+        Path titles = tempDir.resolve("titles");
+        Path packaged = tempDir.resolve("packaged");
+        CSV.Builder csv = new CSV.Builder();
+        Metrics metrics = new Metrics();
+
+        ShowPipeline.Result result = new ShowPipeline.Builder()
+            .input(input)
+            .csv(csv)
+            .titles(new TitleRenderer.Builder().outputDirectory(titles).size(320, 180),
+                List.of(new TitleImage("John Doe", "title_john_doe.jpg")))
+            .packager(new ShowPackager.Builder().imageDirectory(images).titleImageDirectory(titles)
+                .outputDirectory(packaged))
+            .metrics(metrics)
+            .build()
+            .run();
+        assertEquals(1, result.titles().size());
+        assertTrue(result.titles().get(0).ok());
+        assertEquals(1, metrics.get("titles.rendered").total());
+        assertTrue(result.packaged().stream().allMatch(image -> image.action() != ShowPackager.Action.FAILED));
+
+        // A title slide added to the loaded lines is packaged with them.
+        result.csv().insertAt(1, new TitleImageLine("title_john_doe.jpg"));
+        new ShowPackager.Builder().imageDirectory(images).titleImageDirectory(titles).outputDirectory(packaged)
+            .build().packageImages(result.csv());
+        assertEquals(Files.size(titles.resolve("title_john_doe.jpg")),
+            Files.size(packaged.resolve("title_john_doe.jpg")));
+    }
+
+    @Test
+    void testFileReadByCSV() throws IOException, InterruptedException {
+        Path path = Files.copy(Paths.get("testing/data/sort.csv"), tempDir.resolve("sort.csv"));
+        for (CSV.Builder csv : new CSV.Builder[] {new CSV.Builder().parallel(true),
+                new CSV.Builder().snapshot(true), new CSV.Builder().snapshot(true)}) {
+            StringBuilder output = new StringBuilder();
+            ShowPipeline.Result result = new ShowPipeline.Builder()
+                .input(path)
+                .csv(csv)
+                .sortOrder(sortOrder.COLLATED_BY_FULL_NAME)
+                .locale(Locale.ROOT)
+                .output(output)
+                .validator(new ImageValidator.Builder().imageDirectory(tempDir))
+                .build()
+                .run();
+            assertEquals(sortedSequentially(path, sortOrder.COLLATED_BY_FULL_NAME), output.toString());
+            // The lines are given to the images stage all at once.
+            assertEquals(List.of("lines"), result.queues().stream().map(ShowPipeline.QueueStats::name).toList());
+            assertEquals(1, result.queues().get(0).items());
+            assertEquals(result.csv().lines.size() - 1, result.validation().size());
+        }
+        assertTrue(Files.exists(CSVSnapshot.pathFor(path)));
+    }
+
+    @Test
+    void testFailedStages() throws IOException, InterruptedException {
+        ShowPipeline.StageException e = assertThrows(ShowPipeline.StageException.class,
+            () -> new ShowPipeline.Builder()
+                .input(tempDir.resolve("missing.csv"))
+                .validator(new ImageValidator.Builder().imageDirectory(tempDir))
+                .output(new StringBuilder())
+                .build()
+                .run());
+        assertEquals("read", e.stage());
+        assertTrue(e.getCause() instanceof NoSuchFileException);
+
+        e = assertThrows(ShowPipeline.StageException.class,
+            () -> new ShowPipeline.Builder()
+                .input(tempDir.resolve("missing.csv"))
+                .csv(new CSV.Builder().parallel(true))
+                .build()
+                .run());
+        assertEquals("parse", e.stage());
+        assertTrue(e.getCause() instanceof NoSuchFileException);
+
+        // A directory cannot be written to.
+        e = assertThrows(ShowPipeline.StageException.class,
+            () -> new ShowPipeline.Builder()
+                .input(createLargeFile(20_000))
+                .output(tempDir)
+                .build()
+                .run());
+        assertEquals("write", e.stage());
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    void testBuilder() throws InterruptedException {
+        assertThrows(IllegalStateException.class, () -> new ShowPipeline.Builder().build());
+        assertThrows(IllegalArgumentException.class, () -> new ShowPipeline.Builder().queueCapacity(0));
+        assertThrows(IllegalStateException.class,
+            () -> new ShowPipeline.Builder().input(Paths.get("testing/data/sort.csv"))
+                .validator(new ImageValidator.Builder()).build());
+
+        ShowPipeline pipeline = new ShowPipeline.Builder().input(Paths.get("testing/data/sort.csv")).build();
+        assertTrue(pipeline.queueDepths().isEmpty());
+        pipeline.run();
+        assertEquals(0, pipeline.queueDepths().get("chunks"));
+        assertThrows(IllegalStateException.class, pipeline::run);
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The StringTable class assigns an int id to each distinct string added to it.
+ *
+ * Adding a string that is already in the table returns the id it was given the
+ * first time, so repeated values, such as a person's name on every image they
+ * submit, are stored only once. Ids are assigned in order, starting at 0.
+ */
+public class StringTable {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private String[] strings;
+    private int count = 0;
+
+    /**
+     * Constructor - creates an empty table.
+     */
+    public StringTable() {
+        this(16);
+    }
+
+    /**
+     * Constructor - creates an empty table with room for the specified number
+     * of distinct strings before it has to grow.
+     * @param capacity - the expected number of distinct strings.
+     */
+    public StringTable(int capacity) {
+        strings = new String[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Returns the id of a string, adding the string to the table if it is not
+     * already there.
+     * @param string - the string to look up.
+     * @return the id of the string.
+     */
+    public int id(String string) {
+        Integer id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        if (count == strings.length) {
+            strings = Arrays.copyOf(strings, strings.length * 2);
+        }
+        strings[count] = string;
+        ids.put(string, count);
+        return count++;
+    }
+
+    /**
+     * Returns the string with the specified id.
+     * @param id - the id of the string.
+     * @return the string with the specified id.
+     * @throws ArrayIndexOutOfBoundsException if there is no string with that id.
+     */
+    public String string(int id) {
+        if (id >= count) {
+            throw new ArrayIndexOutOfBoundsException("Index out of bounds: " + id);
+        }
+        return strings[id];
+    }
+
+    /**
+     * Returns the number of distinct strings in the table.
+     * @return the number of distinct strings in the table.
+     */
+    public int size() {
+        return count;
+    }
+}
@@ -0,0 +1,26 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class StringTableTests {
+    @Test
+    void testIds() {
+        StringTable table = new StringTable(1);
+        assertEquals(0, table.size());
+        assertEquals(0, table.id("John Doe"));
+        assertEquals(1, table.id("John"));
+        assertEquals(2, table.id("Doe"));
+        assertEquals(0, table.id(new String("John Doe")));
+        assertEquals(1, table.id("John"));
+        assertEquals(3, table.size());
+        assertEquals("John Doe", table.string(0));
+        assertEquals("Doe", table.string(2));
+    }
+
+    @Test
+    void testInvalidId() {
+        StringTable table = new StringTable();
+        table.id("a");
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> table.string(1));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> table.string(-1));
+    }
+}
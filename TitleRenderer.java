@@ -0,0 +1,553 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * The TitleRenderer class draws the JPEG title slides described by TitleImage
+ * objects, such as a slide with an entrant's name before their images.
+ *
+ * Each title is drawn centered on a plain background, in the largest font
+ * size at which it fits inside the margins, wrapping at spaces and at line
+ * breaks in the title. The slides are drawn on several threads at once. Each
+ * thread keeps its own image, Graphics2D, JPEG writer and output buffer for
+ * every slide it draws, and the fonts and the layout of each distinct title
+ * are shared by all of the threads, so drawing a slide allocates almost
+ * nothing and hundreds of slides are limited only by the processors.
+ * ```java
+ * List<TitleRenderer.Result> results = new TitleRenderer.Builder()
+ *     .outputDirectory(Paths.get("titles"))
+ *     .size(1920, 1080)
+ *     .build()
+ *     .render(titles);
+ * System.err.print(TitleRenderer.report(results));
+ * ```
+ */
+public class TitleRenderer {
+    /**
+     * The default width of a slide, in pixels.
+     */
+    public static final int DEFAULT_WIDTH = 1920;
+
+    /**
+     * The default height of a slide, in pixels.
+     */
+    public static final int DEFAULT_HEIGHT = 1080;
+
+    private final Path outputDirectory;
+    private final int width;
+    private final int height;
+    private final Font font;
+    private final Color background;
+    private final Color foreground;
+    private final float quality;
+    private final int threads;
+    private final Metrics metrics;
+    // The font in each size that has been tried, and the layout of each
+    // distinct title, shared by every thread.
+    private final Map<Integer, Font> fonts = new ConcurrentHashMap<>();
+    private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+
+    private TitleRenderer(Builder builder) {
+        this.outputDirectory = builder.outputDirectory;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.font = new Font(builder.fontName, builder.fontStyle, 1);
+        this.background = builder.background;
+        this.foreground = builder.foreground;
+        this.quality = builder.quality;
+        this.threads = builder.threads;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * Builder class for TitleRenderer objects.
+     */
+    public static class Builder {
+        private Path outputDirectory = null;
+        private int width = DEFAULT_WIDTH;
+        private int height = DEFAULT_HEIGHT;
+        private String fontName = Font.SANS_SERIF;
+        private int fontStyle = Font.BOLD;
+        private Color background = Color.BLACK;
+        private Color foreground = Color.WHITE;
+        private float quality = 0.9f;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private Metrics metrics = null;
+
+        /**
+         * Sets the directory that the slides are written to. It is created if
+         * it does not exist.
+         * @param outputDirectory - the output directory.
+         * @return returns the Builder object.
+         */
+        public Builder outputDirectory(Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the size of the slides.
+         * @param width - the width in pixels. The default is DEFAULT_WIDTH.
+         * @param height - the height in pixels. The default is DEFAULT_HEIGHT.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if width or height is less than 1.
+         */
+        public Builder size(int width, int height) {
+            if (width < 1 || height < 1) {
+                throw new IllegalArgumentException("The size must be at least 1x1: " + width + "x" + height);
+            }
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        /**
+         * Sets the font that the titles are drawn in.
+         * @param name - the name of the font, such as Font.SERIF. The default
+         * is Font.SANS_SERIF.
+         * @param style - the style of the font, such as Font.PLAIN. The
+         * default is Font.BOLD.
+         * @return returns the Builder object.
+         */
+        public Builder font(String name, int style) {
+            this.fontName = name;
+            this.fontStyle = style;
+            return this;
+        }
+
+        /**
+         * Sets the colors of the slides.
+         * @param background - the background color. The default is black.
+         * @param foreground - the color of the title. The default is white.
+         * @return returns the Builder object.
+         */
+        public Builder colors(Color background, Color foreground) {
+            this.background = background;
+            this.foreground = foreground;
+            return this;
+        }
+
+        /**
+         * Sets the JPEG quality of the slides.
+         * @param quality - the quality, from 0 for the smallest files to 1 for
+         * the best images. The default is 0.9.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if quality is not between 0 and 1.
+         */
+        public Builder quality(float quality) {
+            if (!(quality >= 0 && quality <= 1)) {
+                throw new IllegalArgumentException("quality must be between 0 and 1: " + quality);
+            }
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that draw slides.
+         * @param threads - the number of threads. The default is the number
+         * of available processors.
+         * @return returns the Builder object.
+         * @throws IllegalArgumentException if threads is less than 1.
+         */
+        public Builder threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be at least 1: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the Metrics that the time taken and the number of slides and
+         * bytes are recorded in, as "titles.time", "titles.rendered",
+         * "titles.failed", "titles.layouts" and "titles.bytes".
+         * @param metrics - the Metrics, or null to not record measurements.
+         * @return returns the Builder object.
+         */
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds the TitleRenderer object.
+         * @return the TitleRenderer object.
+         * @throws IllegalStateException if no output directory has been set.
+         */
+        public TitleRenderer build() {
+            if (outputDirectory == null) {
+                throw new IllegalStateException("No output directory has been set");
+            }
+            return new TitleRenderer(this);
+        }
+    }
+
+    /**
+     * What was done with one title.
+     * @param imageName - the image file name of the title.
+     * @param path - the path of the slide, or null if the image file name is
+     * not valid.
+     * @param bytes - the size of the slide, or 0 if it could not be written.
+     * @param error - a description of why the slide could not be written, or
+     * null if it was.
+     */
+    public record Result(String imageName, Path path, long bytes, String error) {
+        /**
+         * Returns whether the slide was written.
+         * @return true if there is no error.
+         */
+        public boolean ok() {
+            return error == null;
+        }
+    }
+
+    // Where each line of a title is drawn, in the font size that fits.
+    private record Layout(Font font, String[] lines, int[] x, int[] y) {
+    }
+
+    /**
+     * Draws a slide for each title. A title that is given more than once is
+     * only drawn once. A slide that cannot be written does not stop the others.
+     * @param titles - the titles.
+     * @return what was done with each title, in the order in which they first
+     * appear.
+     * @throws IOException if the output directory cannot be created.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the slides to be drawn.
+     */
+    public List<Result> render(Collection<TitleImage> titles) throws IOException, InterruptedException {
+        PipelineEvents.Titles event = new PipelineEvents.Titles();
+        event.begin();
+        long start = System.nanoTime();
+        Files.createDirectories(outputDirectory);
+        int layoutsBefore = layouts.size();
+
+        List<TitleImage> unique = new ArrayList<>();
+        List<Result> conflicts = new ArrayList<>();
+        Map<String, String> seen = new HashMap<>();
+        for (TitleImage title : titles) {
+            String previous = seen.putIfAbsent(title.imageName, title.title);
+            if (previous == null) {
+                unique.add(title);
+            } else if (!previous.equals(title.title)) {
+                conflicts.add(new Result(title.imageName, null, 0,
+                    "has the same file name as the title \"" + previous + "\""));
+            }
+        }
+        TitleImage[] work = unique.toArray(new TitleImage[0]);
+        Result[] results = new Result[work.length];
+        // Each thread takes the next title that has not been drawn, drawing
+        // them all with the same image and writer.
+        AtomicInteger next = new AtomicInteger();
+        int threadCount = Math.max(1, Math.min(threads, work.length));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                futures.add(executor.submit(() -> {
+                    try (Worker worker = new Worker()) {
+                        for (int i = next.getAndIncrement(); i < work.length; i = next.getAndIncrement()) {
+                            results[i] = worker.render(work[i]);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        } catch (ExecutionException e) {
+            // render turns every IOException into a Result
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Result> all = new ArrayList<>(Arrays.asList(results));
+        all.addAll(conflicts);
+        long failed = 0;
+        long bytes = 0;
+        for (Result result : all) {
+            if (!result.ok()) {
+                failed++;
+            }
+            bytes += result.bytes();
+        }
+        event.directory = outputDirectory.toString();
+        event.slides = all.size() - failed;
+        event.failed = failed;
+        event.bytes = bytes;
+        event.commit();
+        if (metrics != null) {
+            metrics.recordTime("titles.time", System.nanoTime() - start);
+            metrics.record("titles.rendered", Metrics.Unit.COUNT, all.size() - failed);
+            metrics.record("titles.failed", Metrics.Unit.COUNT, failed);
+            metrics.record("titles.layouts", Metrics.Unit.COUNT, layouts.size() - layoutsBefore);
+            metrics.record("titles.bytes", Metrics.Unit.BYTES, bytes);
+        }
+        return all;
+    }
+
+    /**
+     * Returns a report of the titles that could not be drawn, with one line
+     * for each, followed by a line counting the slides.
+     * @param results - the results returned by render.
+     * @return the report.
+     */
+    public static String report(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        long failed = 0;
+        long bytes = 0;
+        for (Result result : results) {
+            bytes += result.bytes();
+            if (!result.ok()) {
+                failed++;
+                sb.append(String.format(Locale.ROOT, "FAILED %s: %s\n", result.imageName(), result.error()));
+            }
+        }
+        sb.append(results.size()).append(" title slides");
+        if (results.size() - failed > 0) {
+            sb.append(", ").append(results.size() - failed).append(" rendered");
+        }
+        if (failed > 0) {
+            sb.append(", ").append(failed).append(" failed");
+        }
+        if (bytes > 0) {
+            sb.append(" (").append(bytes).append(" bytes)");
+        }
+        return sb.append('\n').toString();
+    }
+
+    private Font font(int size) {
+        return fonts.computeIfAbsent(size, s -> font.deriveFont((float) s));
+    }
+
+    // Finds the largest font size at which the title fits inside the
+    // margins, from a sixth of the height down to a fortieth. A title that
+    // does not fit even then is drawn in the smallest size.
+    private Layout layout(String title, Graphics2D graphics) {
+        int maxWidth = width - 2 * (width / 12);
+        int maxHeight = height - 2 * (height / 10);
+        int minSize = Math.max(8, height / 40);
+        String[] paragraphs = title.strip().split("\\s*(\\r\\n|\\r|\\n)\\s*");
+        for (int size = Math.max(minSize, height / 6);; size = Math.max(minSize, size * 9 / 10)) {
+            Font sizedFont = font(size);
+            FontMetrics fontMetrics = graphics.getFontMetrics(sizedFont);
+            List<String> lines = new ArrayList<>();
+            boolean fits = wrap(paragraphs, fontMetrics, maxWidth, lines)
+                && lines.size() * fontMetrics.getHeight() <= maxHeight;
+            if (fits || size == minSize) {
+                int[] x = new int[lines.size()];
+                int[] y = new int[lines.size()];
+                int top = (height - lines.size() * fontMetrics.getHeight()) / 2 + fontMetrics.getAscent();
+                for (int i = 0; i < lines.size(); i++) {
+                    x[i] = (width - fontMetrics.stringWidth(lines.get(i))) / 2;
+                    y[i] = top + i * fontMetrics.getHeight();
+                }
+                return new Layout(sizedFont, lines.toArray(new String[0]), x, y);
+            }
+        }
+    }
+
+    // Wraps each paragraph at spaces into lines no wider than maxWidth, and
+    // returns false if a single word is wider.
+    private static boolean wrap(String[] paragraphs, FontMetrics fontMetrics, int maxWidth, List<String> lines) {
+        boolean fits = true;
+        for (String paragraph : paragraphs) {
+            StringBuilder line = new StringBuilder();
+            for (String word : paragraph.split(" +")) {
+                if (line.length() > 0 && fontMetrics.stringWidth(line + " " + word) > maxWidth) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+                if (line.length() > 0) {
+                    line.append(' ');
+                }
+                line.append(word);
+                fits &= fontMetrics.stringWidth(word) <= maxWidth;
+            }
+            lines.add(line.toString());
+        }
+        return fits;
+    }
+
+    // The image, Graphics2D, JPEG writer and buffer that one thread draws
+    // every one of its slides with.
+    private final class Worker implements AutoCloseable {
+        private final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        private final Graphics2D graphics = image.createGraphics();
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+        private final IIOImage frame = new IIOImage(image, null, null);
+        private final ByteArrayImageOutputStream output = new ByteArrayImageOutputStream();
+
+        Worker() {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!writers.hasNext()) {
+                // Every Java implementation includes a JPEG writer.
+                throw new IllegalStateException("No JPEG writer is available");
+            }
+            writer = writers.next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        }
+
+        // Draws and writes one slide. Every IOException is turned into a
+        // Result, so that the other slides are still drawn.
+        Result render(TitleImage title) {
+            Path path;
+            try {
+                path = outputDirectory.resolve(title.imageName);
+                if (!path.getParent().equals(outputDirectory) || !title.imageName.toLowerCase(Locale.ROOT)
+                        .endsWith(".jpg")) {
+                    return new Result(title.imageName, null, 0, "not a valid file name");
+                }
+            } catch (InvalidPathException | NullPointerException e) {
+                return new Result(title.imageName, null, 0, "not a valid file name");
+            }
+            Layout layout = layouts.get(title.title);
+            if (layout == null) {
+                layout = layout(title.title, graphics);
+                Layout previous = layouts.putIfAbsent(title.title, layout);
+                if (previous != null) {
+                    layout = previous;
+                }
+            }
+            graphics.setColor(background);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setColor(foreground);
+            graphics.setFont(layout.font());
+            for (int i = 0; i < layout.lines().length; i++) {
+                graphics.drawString(layout.lines()[i], layout.x()[i], layout.y()[i]);
+            }
+            Path temporary = path.resolveSibling("." + path.getFileName() + "." + Thread.currentThread().threadId()
+                + ".part");
+            try {
+                output.clear();
+                writer.setOutput(output);
+                writer.write(null, frame, param);
+                output.flush();
+                try (OutputStream out = Files.newOutputStream(temporary)) {
+                    output.writeTo(out);
+                }
+                try {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return new Result(title.imageName, path, output.length(), null);
+            } catch (IOException e) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException deleteFailure) {
+                    e.addSuppressed(deleteFailure);
+                }
+                return new Result(title.imageName, path, 0, e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        }
+
+        @Override
+        public void close() {
+            writer.dispose();
+            graphics.dispose();
+        }
+    }
+
+    // An ImageOutputStream that writes into a byte array that is kept and
+    // reused for the next slide.
+    private static final class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+        private byte[] bytes = new byte[256 * 1024];
+        private int length = 0;
+
+        void clear() {
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+            length = 0;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            bytes[(int) streamPos++] = (byte) b;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int count) {
+            ensure(count);
+            System.arraycopy(b, offset, bytes, (int) streamPos, count);
+            streamPos += count;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public int read() {
+            bitOffset = 0;
+            return streamPos < length ? bytes[(int) streamPos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int count) {
+            bitOffset = 0;
+            if (streamPos >= length) {
+                return -1;
+            }
+            int available = Math.min(count, length - (int) streamPos);
+            System.arraycopy(bytes, (int) streamPos, b, offset, available);
+            streamPos += available;
+            return available;
+        }
+
+        private void ensure(int count) {
+            if (streamPos + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.max(streamPos + count, 2L * bytes.length));
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+        }
+    }
+}
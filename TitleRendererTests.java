@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+
+public class TitleRendererTests {
+    @TempDir
+    Path tempDir;
+
+    private static boolean isBackground(int rgb) {
+        Color color = new Color(rgb);
+        // JPEG compression leaves a little noise near the text.
+        return color.getRed() < 40 && color.getGreen() < 40 && color.getBlue() < 40;
+    }
+
+    // Returns the number of pixels in the rectangle that are not background.
+    private static int drawnPixels(BufferedImage image, int x0, int y0, int x1, int y1) {
+        int count = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                if (!isBackground(image.getRGB(x, y))) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void testRender() throws IOException, InterruptedException {
+        Metrics metrics = new Metrics();
+        List<TitleImage> titles = List.of(new TitleImage("John Doe", "john_doe.jpg"),
+            new TitleImage("Jane Smith", "jane_smith.JPG"), new TitleImage("John Doe", "john_doe.jpg"));
+        List<TitleRenderer.Result> results = new TitleRenderer.Builder()
+            .outputDirectory(tempDir.resolve("titles"))
+            .size(640, 360)
+            .threads(2)
+            .metrics(metrics)
+            .build()
+            .render(titles);
+
+        assertEquals(2, results.size());
+        for (TitleRenderer.Result result : results) {
+            assertTrue(result.ok(), result.error());
+            assertEquals(Files.size(result.path()), result.bytes());
+            BufferedImage image = ImageIO.read(result.path().toFile());
+            assertEquals(640, image.getWidth());
+            assertEquals(360, image.getHeight());
+            // The title is in the middle, and the margins are empty.
+            assertTrue(drawnPixels(image, 0, 150, 640, 210) > 100);
+            assertEquals(0, drawnPixels(image, 0, 0, 640, 30));
+            assertEquals(0, drawnPixels(image, 0, 0, 40, 360));
+        }
+        assertEquals(tempDir.resolve("titles/john_doe.jpg"), results.get(0).path());
+        // no temporary files are left behind
+        try (Stream<Path> files = Files.list(tempDir.resolve("titles"))) {
+            assertEquals(2, files.count());
+        }
+
+        assertEquals(2, metrics.get("titles.rendered").total());
+        assertEquals(0, metrics.get("titles.failed").total());
+        assertEquals(2, metrics.get("titles.layouts").total());
+        assertEquals(results.get(0).bytes() + results.get(1).bytes(), metrics.get("titles.bytes").total());
+        assertEquals("2 title slides, 2 rendered (" + metrics.get("titles.bytes").total() + " bytes)\n",
+            TitleRenderer.report(results));
+    }
+
+    @Test
+    void testLongTitlesFitInsideTheMargins() throws IOException, InterruptedException {
+        String longTitle = "Round 3: Nature and Wildlife Photography\nBest in Show, Honourable Mentions and "
+            + "Judges' Comments for Every Entrant in the Competition";
+        String longWord = "Pneumonoultramicroscopicsilicovolcanoconiosis".repeat(2);
+        List<TitleRenderer.Result> results = new TitleRenderer.Builder()
+            .outputDirectory(tempDir)
+            .size(640, 360)
+            .build()
+            .render(List.of(new TitleImage(longTitle, "long.jpg"), new TitleImage(longWord, "word.jpg")));
+        BufferedImage image = ImageIO.read(results.get(0).path().toFile());
+        assertEquals(0, drawnPixels(image, 0, 0, 640, 30));
+        assertEquals(0, drawnPixels(image, 0, 330, 640, 360));
+        assertEquals(0, drawnPixels(image, 0, 0, 45, 360));
+        assertEquals(0, drawnPixels(image, 595, 0, 640, 360));
+        // A word that does not fit even in the smallest size is still drawn.
+        assertTrue(results.get(1).ok());
+        image = ImageIO.read(results.get(1).path().toFile());
+        assertTrue(drawnPixels(image, 0, 150, 640, 210) > 100);
+    }
+
+    @Test
+    void testColorsAndLayoutsAreReused() throws IOException, InterruptedException {
+        Metrics metrics = new Metrics();
+        TitleRenderer renderer = new TitleRenderer.Builder()
+            .outputDirectory(tempDir)
+            .size(320, 180)
+            .colors(Color.WHITE, Color.BLACK)
+            .metrics(metrics)
+            .build();
+        List<TitleImage> titles = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            titles.add(new TitleImage(i % 2 == 0 ? "Round One" : "Round Two", "title" + i + ".jpg"));
+        }
+        assertEquals(50, renderer.render(titles).size());
+        assertEquals(2, metrics.get("titles.layouts").total());
+        renderer.render(titles);
+        assertEquals(2, metrics.get("titles.layouts").total());
+        BufferedImage image = ImageIO.read(tempDir.resolve("title7.jpg").toFile());
+        assertEquals(Color.WHITE.getRGB(), image.getRGB(0, 0) | 0x0f0f0f);
+    }
+
+    @Test
+    void testFailures() throws IOException, InterruptedException {
+        List<TitleRenderer.Result> results = new TitleRenderer.Builder()
+            .outputDirectory(tempDir)
+            .size(320, 180)
+            .build()
+            .render(List.of(new TitleImage("One", "one.jpg"), new TitleImage("Two", "one.jpg"),
+                new TitleImage("Three", "three.png"), new TitleImage("Four", "../four.jpg"),
+                new TitleImage("Five", "sub/five.jpg")));
+        assertTrue(results.get(0).ok());
+        assertEquals("not a valid file name", results.get(1).error());
+        assertEquals("not a valid file name", results.get(2).error());
+        assertEquals("not a valid file name", results.get(3).error());
+        assertEquals("has the same file name as the title \"One\"", results.get(4).error());
+        assertFalse(Files.exists(tempDir.resolveSibling("four.jpg")));
+        String report = TitleRenderer.report(results);
+        assertTrue(report.startsWith("FAILED three.png: not a valid file name\n"), report);
+        assertTrue(report.endsWith("5 title slides, 1 rendered, 4 failed (" + results.get(0).bytes()
+            + " bytes)\n"), report);
+    }
+
+    @Test
+    void testBuilder() {
+        assertThrows(IllegalStateException.class, () -> new TitleRenderer.Builder().build());
+        assertThrows(IllegalArgumentException.class, () -> new TitleRenderer.Builder().size(0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new TitleRenderer.Builder().quality(1.5f));
+        assertThrows(IllegalArgumentException.class, () -> new TitleRenderer.Builder().quality(Float.NaN));
+        assertThrows(IllegalArgumentException.class, () -> new TitleRenderer.Builder().threads(0));
+    }
+}
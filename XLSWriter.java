@@ -0,0 +1,447 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The XLSWriter class writes CSV lines to an Excel 97 (.xls) workbook, the
+ * format that Flexishow reads, one at a time.
+ *
+ * Each line is written as a row of the workbook's only worksheet, with each
+ * field as a text cell. The cells are written straight into a fixed-size
+ * buffer, and the tables of the compound file that holds them are only
+ * written when the writer is closed, so the memory used does not depend on
+ * how many lines are written.
+ * ```java
+ * try (XLSWriter writer = new XLSWriter(Paths.get("show.xls"))) {
+ *     for (CSVLine line : lines) {
+ *         writer.writeLine(line);
+ *     }
+ * }
+ * ```
+ * A worksheet holds at most 65536 rows of 256 cells, and each cell at most
+ * 255 characters.
+ */
+public class XLSWriter implements Closeable {
+    /**
+     * The size of the byte buffer used if no size is specified.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The name of the worksheet if no name is specified.
+     */
+    public static final String DEFAULT_SHEET_NAME = "Sheet1";
+
+    /**
+     * The largest number of lines that a worksheet holds.
+     */
+    public static final int MAX_ROWS = 65536;
+
+    /**
+     * The largest number of fields that a line can have.
+     */
+    public static final int MAX_COLUMNS = 256;
+
+    /**
+     * The largest number of characters that a field can have.
+     */
+    public static final int MAX_CELL_LENGTH = 255;
+
+    // BIFF8 record types
+    private static final int BOF = 0x0809;
+    private static final int EOF = 0x000A;
+    private static final int CODEPAGE = 0x0042;
+    private static final int WINDOW1 = 0x003D;
+    private static final int FONT = 0x0031;
+    private static final int XF = 0x00E0;
+    private static final int STYLE = 0x0293;
+    private static final int BOUNDSHEET = 0x0085;
+    private static final int DIMENSIONS = 0x0200;
+    private static final int LABEL = 0x0204;
+    private static final int WINDOW2 = 0x023E;
+
+    // Excel expects 15 style XF records and then the default cell XF record,
+    // which every cell uses.
+    private static final int STYLE_XFS = 15;
+    private static final int CELL_XF = STYLE_XFS;
+    // Excel skips font 4, so at least five are written.
+    private static final int FONTS = 5;
+
+    // compound file layout
+    private static final int SECTOR_SIZE = 512;
+    private static final int MINI_SECTOR_SIZE = 64;
+    private static final int MINI_STREAM_CUTOFF = 4096;
+    private static final int IDS_PER_SECTOR = SECTOR_SIZE / 4;
+    private static final int HEADER_FAT_SECTORS = 109;
+    private static final int FREE_SECTOR = -1;
+    private static final int END_OF_CHAIN = -2;
+    private static final int FAT_SECTOR = -3;
+    private static final int DIFAT_SECTOR = -4;
+    private static final int NO_STREAM = -1;
+
+    private final SeekableByteChannel channel;
+    private final ByteBuffer bytes;
+    // the fields of the line being written, which are all checked before
+    // any of them is written
+    private final CharSequence[] fields = new CharSequence[MAX_COLUMNS];
+    // the offset in the Workbook stream of the DIMENSIONS record's data,
+    // which is only known once every line has been written
+    private final int dimensionsOffset;
+    // the number of bytes of the Workbook stream written to the channel
+    private long written = 0;
+    private int rows = 0;
+    private int columns = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor - creates or replaces the specified file, using the default
+     * worksheet name and buffer size.
+     * @param path - the path to the .xls file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public XLSWriter(Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING), DEFAULT_SHEET_NAME, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor - writes a workbook to an already open, empty channel. The
+     * channel is closed when the writer is closed.
+     * @param channel - the channel to write to.
+     * @param sheetName - the name of the worksheet.
+     * @param bufferSize - the size in bytes of the write buffer.
+     * @throws IllegalArgumentException if sheetName is empty, longer than 31
+     * characters or contains any of []:*?/\, or bufferSize is less than 8192.
+     */
+    public XLSWriter(SeekableByteChannel channel, String sheetName, int bufferSize) {
+        if (sheetName.isEmpty() || sheetName.length() > 31 || sheetName.matches(".*[\\[\\]:*?/\\\\].*")) {
+            throw new IllegalArgumentException("sheetName is not a valid worksheet name");
+        }
+        // A full buffer then always holds more than a mini stream can.
+        if (bufferSize < 2 * MINI_STREAM_CUTOFF) {
+            throw new IllegalArgumentException("bufferSize must be at least " + 2 * MINI_STREAM_CUTOFF);
+        }
+        this.channel = channel;
+        bytes = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        writeGlobals(sheetName);
+        beginOfFile(0x0010);
+        header(DIMENSIONS, 14);
+        dimensionsOffset = bytes.position();
+        bytes.put(new byte[14]);
+    }
+
+    /**
+     * Writes a line as the next row of the worksheet, with each field that is
+     * not empty as a text cell.
+     * @param line - the line to write.
+     * @throws IOException if the line cannot be written, the worksheet already
+     * holds MAX_ROWS lines, or the line has more than MAX_COLUMNS fields or a
+     * field longer than MAX_CELL_LENGTH characters. Nothing is written for a
+     * line that does not fit.
+     */
+    public void writeLine(CSVLine line) throws IOException {
+        ensureOpen();
+        if (rows == MAX_ROWS) {
+            throw new IOException("A worksheet cannot hold more than " + MAX_ROWS + " lines");
+        }
+        int length = line.length();
+        if (length > MAX_COLUMNS) {
+            throw new IOException("Line " + (rows + 1) + " has more than " + MAX_COLUMNS + " fields");
+        }
+        for (int i = 0; i < length; i++) {
+            fields[i] = line.fieldChars(i);
+            if (fields[i].length() > MAX_CELL_LENGTH) {
+                Arrays.fill(fields, 0, i + 1, null);
+                throw new IOException("Field " + (i + 1) + " of line " + (rows + 1) + " is longer than "
+                    + MAX_CELL_LENGTH + " characters");
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (fields[i].length() > 0) {
+                writeLabel(i, fields[i]);
+                columns = Math.max(columns, i + 1);
+            }
+            fields[i] = null;
+        }
+        rows++;
+    }
+
+    /**
+     * Returns the number of lines that have been written.
+     * @return the number of rows in the worksheet.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Ends the worksheet, writes the tables of the compound file, and closes
+     * the channel.
+     * @throws IOException if the workbook cannot be written, or the channel
+     * cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            reserve(4 + 18 + 4);
+            header(WINDOW2, 18);
+            // show the grid lines and the row and column headings
+            bytes.putShort((short) 0x06B6).putShort((short) 0).putShort((short) 0).putShort((short) 0x40);
+            bytes.put(new byte[10]);
+            header(EOF, 0);
+            long size = written + bytes.position();
+
+            ByteBuffer dimensions = ByteBuffer.allocate(14).order(ByteOrder.LITTLE_ENDIAN);
+            dimensions.putInt(0).putInt(rows).putShort((short) 0).putShort((short) columns).putShort((short) 0);
+            dimensions.flip();
+            if (written == 0) {
+                bytes.put(dimensionsOffset, dimensions, 0, dimensions.limit());
+            } else {
+                writeAt(SECTOR_SIZE + dimensionsOffset, dimensions);
+            }
+            writeCompoundFile(size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("XLSWriter is closed");
+        }
+    }
+
+    // Writes the workbook globals: the fonts and formats that the cells use,
+    // and the worksheet's name and offset.
+    private void writeGlobals(String sheetName) {
+        beginOfFile(0x0005);
+        header(CODEPAGE, 2);
+        bytes.putShort((short) 1200);
+        header(WINDOW1, 18);
+        bytes.putShort((short) 0).putShort((short) 0).putShort((short) 0x4000).putShort((short) 0x2000)
+            .putShort((short) 0x38).putShort((short) 0).putShort((short) 0).putShort((short) 1)
+            .putShort((short) 0x258);
+        for (int i = 0; i < FONTS; i++) {
+            // 10 point Arial
+            header(FONT, 14 + 2 + 5);
+            bytes.putShort((short) 200).putShort((short) 0).putShort((short) 0x7FFF).putShort((short) 400)
+                .putShort((short) 0).putInt(0);
+            putShortString("Arial");
+        }
+        for (int i = 0; i <= STYLE_XFS; i++) {
+            header(XF, 20);
+            bytes.putShort((short) 0).putShort((short) 0);
+            if (i < STYLE_XFS) {
+                bytes.putShort((short) 0xFFF5).put((byte) 0x20).put((byte) 0).put((byte) 0).put((byte) 0xF4);
+            } else {
+                bytes.putShort((short) 0x0001).put((byte) 0x20).put((byte) 0).put((byte) 0).put((byte) 0);
+            }
+            bytes.putInt(0).putInt(0).putShort((short) 0x20C0);
+        }
+        // the built-in Normal style
+        header(STYLE, 4);
+        bytes.putShort((short) 0x8000).put((byte) 0).put((byte) 0xFF);
+        header(BOUNDSHEET, 6 + 2 + sheetName.length() * (isCompressible(sheetName) ? 1 : 2));
+        int sheetOffset = bytes.position();
+        bytes.putInt(0).put((byte) 0).put((byte) 0);
+        putShortString(sheetName);
+        header(EOF, 0);
+        // The worksheet starts straight after the globals.
+        bytes.putInt(sheetOffset, bytes.position());
+    }
+
+    private void beginOfFile(int type) {
+        header(BOF, 16);
+        bytes.putShort((short) 0x0600).putShort((short) type).putShort((short) 0x0DBB).putShort((short) 0x07CC)
+            .putInt(0x41).putInt(0x06);
+    }
+
+    private void header(int type, int length) {
+        bytes.putShort((short) type).putShort((short) length);
+    }
+
+    private void writeLabel(int column, CharSequence field) throws IOException {
+        boolean compressed = isCompressible(field);
+        int length = 9 + field.length() * (compressed ? 1 : 2);
+        reserve(4 + length);
+        header(LABEL, length);
+        bytes.putShort((short) rows).putShort((short) column).putShort((short) CELL_XF)
+            .putShort((short) field.length()).put((byte) (compressed ? 0 : 1));
+        putChars(field, compressed);
+    }
+
+    // Strings whose characters are all below U+0100 are stored with one byte
+    // per character.
+    private static boolean isCompressible(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void putShortString(String text) {
+        boolean compressed = isCompressible(text);
+        bytes.put((byte) text.length()).put((byte) (compressed ? 0 : 1));
+        putChars(text, compressed);
+    }
+
+    private void putChars(CharSequence text, boolean compressed) {
+        for (int i = 0; i < text.length(); i++) {
+            if (compressed) {
+                bytes.put((byte) text.charAt(i));
+            } else {
+                bytes.putChar(text.charAt(i));
+            }
+        }
+    }
+
+    // Makes room in the buffer for a record, writing the buffer to the channel
+    // if it does not fit.
+    private void reserve(int length) throws IOException {
+        if (bytes.remaining() < length) {
+            writeBytes();
+        }
+    }
+
+    private void putId(int id) throws IOException {
+        reserve(4);
+        bytes.putInt(id);
+    }
+
+    // Writes the buffer to the channel. The Workbook stream starts in the
+    // sector after the header, which is written last.
+    private void writeBytes() throws IOException {
+        if (written == 0) {
+            channel.position(SECTOR_SIZE);
+        }
+        bytes.flip();
+        written += bytes.remaining();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void writeAt(long position, ByteBuffer buffer) throws IOException {
+        long end = channel.position();
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.position(end);
+    }
+
+    // Writes the compound file around the Workbook stream, which takes the
+    // first sectors of the file. They are followed by the sector allocation
+    // table (FAT), any sectors listing the FAT sectors that do not fit in the
+    // header (DIFAT), the directory, and, for a stream small enough to be kept
+    // in the mini stream, the mini stream's allocation table. Each table is
+    // made up of chains of consecutive sectors, so none of them is held in
+    // memory.
+    private void writeCompoundFile(long size) throws IOException {
+        boolean mini = size < MINI_STREAM_CUTOFF;
+        long dataSectors = (size + SECTOR_SIZE - 1) / SECTOR_SIZE;
+        int miniFatSectors = mini ? 1 : 0;
+        long fatSectors = 0;
+        long difatSectors = 0;
+        while (true) {
+            long sectors = dataSectors + fatSectors + difatSectors + 1 + miniFatSectors;
+            long neededFat = (sectors + IDS_PER_SECTOR - 1) / IDS_PER_SECTOR;
+            long neededDifat = neededFat > HEADER_FAT_SECTORS
+                ? (neededFat - HEADER_FAT_SECTORS + IDS_PER_SECTOR - 2) / (IDS_PER_SECTOR - 1) : 0;
+            if (neededFat == fatSectors && neededDifat == difatSectors) {
+                break;
+            }
+            fatSectors = neededFat;
+            difatSectors = neededDifat;
+        }
+        int firstFat = (int) dataSectors;
+        int firstDifat = (int) (firstFat + fatSectors);
+        int directory = (int) (firstDifat + difatSectors);
+        int miniFat = directory + 1;
+
+        for (long i = size; i < dataSectors * SECTOR_SIZE; i++) {
+            reserve(1);
+            bytes.put((byte) 0);
+        }
+        for (int i = 1; i < dataSectors; i++) {
+            putId(i);
+        }
+        putId(END_OF_CHAIN);
+        for (long i = 0; i < fatSectors; i++) {
+            putId(FAT_SECTOR);
+        }
+        for (long i = 0; i < difatSectors; i++) {
+            putId(DIFAT_SECTOR);
+        }
+        putId(END_OF_CHAIN);
+        if (mini) {
+            putId(END_OF_CHAIN);
+        }
+        for (long i = miniFat + miniFatSectors; i < fatSectors * IDS_PER_SECTOR; i++) {
+            putId(FREE_SECTOR);
+        }
+
+        for (int i = 0; i < difatSectors; i++) {
+            for (int j = 0; j < IDS_PER_SECTOR - 1; j++) {
+                long fat = HEADER_FAT_SECTORS + (long) i * (IDS_PER_SECTOR - 1) + j;
+                putId(fat < fatSectors ? (int) (firstFat + fat) : FREE_SECTOR);
+            }
+            putId(i + 1 < difatSectors ? firstDifat + i + 1 : END_OF_CHAIN);
+        }
+
+        long miniSectors = (size + MINI_SECTOR_SIZE - 1) / MINI_SECTOR_SIZE;
+        reserve(SECTOR_SIZE);
+        // In a mini stream, the root entry's stream holds the mini sectors.
+        putDirectoryEntry("Root Entry", 5, 1, mini ? 0 : END_OF_CHAIN, mini ? miniSectors * MINI_SECTOR_SIZE : 0);
+        putDirectoryEntry("Workbook", 2, NO_STREAM, 0, size);
+        putDirectoryEntry("", 0, NO_STREAM, 0, 0);
+        putDirectoryEntry("", 0, NO_STREAM, 0, 0);
+        if (mini) {
+            for (int i = 1; i < IDS_PER_SECTOR; i++) {
+                putId(i < miniSectors ? i : i == miniSectors ? END_OF_CHAIN : FREE_SECTOR);
+            }
+            putId(FREE_SECTOR);
+        }
+        writeBytes();
+
+        ByteBuffer header = ByteBuffer.allocate(SECTOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(0xE11AB1A1E011CFD0L).put(new byte[16]);
+        // version 3, little-endian, 512-byte sectors and 64-byte mini sectors
+        header.putShort((short) 0x003E).putShort((short) 3).putShort((short) 0xFFFE).putShort((short) 9)
+            .putShort((short) 6).put(new byte[6]).putInt(0);
+        header.putInt((int) fatSectors).putInt(directory).putInt(0).putInt(MINI_STREAM_CUTOFF)
+            .putInt(mini ? miniFat : END_OF_CHAIN).putInt(miniFatSectors)
+            .putInt(difatSectors > 0 ? firstDifat : END_OF_CHAIN).putInt((int) difatSectors);
+        for (int i = 0; i < HEADER_FAT_SECTORS; i++) {
+            header.putInt(i < fatSectors ? firstFat + i : FREE_SECTOR);
+        }
+        header.flip();
+        writeAt(0, header);
+    }
+
+    // Writes a 128-byte directory entry with no siblings. An entry of type 0
+    // is unused.
+    private void putDirectoryEntry(String name, int type, int child, int start, long size) {
+        for (int i = 0; i < 32; i++) {
+            bytes.putChar(i < name.length() ? name.charAt(i) : 0);
+        }
+        bytes.putShort((short) (name.isEmpty() ? 0 : (name.length() + 1) * 2))
+            .put((byte) type).put((byte) (type == 0 ? 0 : 1))
+            .putInt(NO_STREAM).putInt(NO_STREAM).putInt(child)
+            .put(new byte[16 + 4 + 8 + 8])
+            .putInt(start).putLong(size);
+    }
+}
@@ -0,0 +1,300 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class XLSWriterTests {
+    private static final int END_OF_CHAIN = -2;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * The worksheet of a workbook, as read back by read.
+     * @param name - the name of the worksheet.
+     * @param rows - the number of rows given by the DIMENSIONS record.
+     * @param columns - the number of columns given by the DIMENSIONS record.
+     * @param cells - the text of each row's cells, with "" for a missing cell
+     * before the last one.
+     * @param miniStream - whether the workbook was in the mini stream.
+     */
+    record Sheet(String name, int rows, int columns, List<List<String>> cells, boolean miniStream) {
+    }
+
+    // Reads the only worksheet of a workbook written by XLSWriter, checking
+    // the tables of the compound file on the way.
+    static Sheet read(Path path) throws IOException {
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0xE11AB1A1E011CFD0L, file.getLong(0));
+        assertEquals(0, file.limit() % 512);
+        int fatSectors = file.getInt(44);
+        List<Integer> fat = new ArrayList<>();
+        for (int i = 0; i < Math.min(fatSectors, 109); i++) {
+            fat.add(file.getInt(76 + 4 * i));
+        }
+        for (int difat = file.getInt(68); difat != END_OF_CHAIN; difat = file.getInt(offset(difat) + 508)) {
+            for (int i = 0; i < 127 && fat.size() < fatSectors; i++) {
+                fat.add(file.getInt(offset(difat) + 4 * i));
+            }
+        }
+        assertEquals(fatSectors, fat.size());
+        int[] next = new int[fatSectors * 128];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = file.getInt(offset(fat.get(i / 128)) + 4 * (i % 128));
+        }
+        for (int sector : fat) {
+            assertEquals(-3, next[sector]);
+        }
+
+        byte[] directory = chain(file, next, file.getInt(48), 512);
+        ByteBuffer entries = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("Root Entry", entryName(entries, 0));
+        assertEquals(5, entries.get(66));
+        assertEquals(1, entries.getInt(76));
+        assertEquals("Workbook", entryName(entries, 128));
+        assertEquals(2, entries.get(128 + 66));
+        int size = (int) entries.getLong(128 + 120);
+        byte[] stream;
+        boolean miniStream = size < 4096;
+        if (miniStream) {
+            byte[] container = chain(file, next, entries.getInt(116), (int) entries.getLong(120));
+            ByteBuffer miniFat = ByteBuffer.wrap(chain(file, next, file.getInt(60), file.getInt(64) * 512))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (int sector = entries.getInt(128 + 116); sector != END_OF_CHAIN; sector = miniFat.getInt(4 * sector)) {
+                out.write(container, sector * 64, 64);
+            }
+            stream = Arrays.copyOf(out.toByteArray(), size);
+            assertEquals((size + 63) / 64 * 64, out.size());
+        } else {
+            stream = chain(file, next, entries.getInt(128 + 116), size);
+        }
+        return readSheet(ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN), miniStream);
+    }
+
+    private static int offset(int sector) {
+        return 512 + sector * 512;
+    }
+
+    // Reads the sectors of a chain, which must hold exactly size bytes.
+    private static byte[] chain(ByteBuffer file, int[] next, int start, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int sector = start; sector != END_OF_CHAIN; sector = next[sector]) {
+            out.write(file.array(), offset(sector), 512);
+        }
+        assertEquals((size + 511) / 512 * 512, out.size());
+        return Arrays.copyOf(out.toByteArray(), size);
+    }
+
+    private static String entryName(ByteBuffer entries, int offset) {
+        int length = entries.getShort(offset + 64) / 2 - 1;
+        char[] name = new char[length];
+        for (int i = 0; i < length; i++) {
+            name[i] = entries.getChar(offset + 2 * i);
+        }
+        return new String(name);
+    }
+
+    private static String string(ByteBuffer biff, int length) {
+        boolean compressed = biff.get() == 0;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = compressed ? (char) (biff.get() & 0xFF) : biff.getChar();
+        }
+        return new String(chars);
+    }
+
+    // Reads the records of the Workbook stream.
+    private static Sheet readSheet(ByteBuffer biff, boolean miniStream) {
+        assertEquals(0x0809, biff.getShort(0));
+        assertEquals(0x0005, biff.getShort(6));
+        String name = null;
+        int sheetOffset = -1;
+        while (true) {
+            int type = biff.getShort() & 0xFFFF;
+            int length = biff.getShort() & 0xFFFF;
+            int end = biff.position() + length;
+            if (type == 0x0085) {
+                sheetOffset = biff.getInt();
+                biff.getShort();
+                name = string(biff, biff.get() & 0xFF);
+                assertEquals(end, biff.position());
+            } else if (type == 0x000A) {
+                break;
+            }
+            biff.position(end);
+        }
+        assertEquals(biff.position(), sheetOffset);
+
+        assertEquals(0x0809, biff.getShort());
+        biff.getShort();
+        assertEquals(0x0600, biff.getShort());
+        assertEquals(0x0010, biff.getShort());
+        biff.position(biff.position() + 12);
+        int rows = -1;
+        int columns = -1;
+        List<List<String>> cells = new ArrayList<>();
+        while (true) {
+            int type = biff.getShort() & 0xFFFF;
+            int length = biff.getShort() & 0xFFFF;
+            int end = biff.position() + length;
+            if (type == 0x0200) {
+                assertEquals(0, biff.getInt());
+                rows = biff.getInt();
+                assertEquals(0, biff.getShort());
+                columns = biff.getShort() & 0xFFFF;
+            } else if (type == 0x0204) {
+                int row = biff.getShort() & 0xFFFF;
+                int column = biff.getShort() & 0xFFFF;
+                assertEquals(15, biff.getShort());
+                String text = string(biff, biff.getShort() & 0xFFFF);
+                assertEquals(end, biff.position());
+                while (cells.size() <= row) {
+                    cells.add(new ArrayList<>());
+                }
+                List<String> cellsOfRow = cells.get(row);
+                while (cellsOfRow.size() < column) {
+                    cellsOfRow.add("");
+                }
+                assertEquals(column, cellsOfRow.size(), "cells are in order");
+                cellsOfRow.add(text);
+            } else if (type == 0x000A) {
+                assertEquals(end, biff.limit());
+                break;
+            }
+            biff.position(end);
+        }
+        while (cells.size() < rows) {
+            cells.add(new ArrayList<>());
+        }
+        return new Sheet(name, rows, columns, cells, miniStream);
+    }
+
+    private static CSVLine line(String... fields) {
+        return new CSVLine(fields);
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        List<CSVLine> lines = List.of(
+            line("Filename", "Title", "Full Name", "First Name", "Last Name"),
+            new TitleImageLine("title.jpg"),
+            line("image1.jpg", "Zoë's \"Café\", 2", "Zoë Smith", "Zoë", "Smith"),
+            new LazyImageAndPersonLine("image2.jpg,\"Image, Two\",Jane Smith,Jane,Smith"),
+            line("image3.jpg", "", "山田 太郎", "太郎", "山田"),
+            line(),
+            line("image4.jpg", "Line 1\nLine 2"));
+        Path path = tempDir.resolve("show.xls");
+        try (XLSWriter writer = new XLSWriter(path)) {
+            for (CSVLine line : lines) {
+                writer.writeLine(line);
+            }
+            assertEquals(lines.size(), writer.rows());
+        }
+        Sheet sheet = read(path);
+        assertTrue(sheet.miniStream());
+        assertEquals(XLSWriter.DEFAULT_SHEET_NAME, sheet.name());
+        assertEquals(lines.size(), sheet.rows());
+        assertEquals(5, sheet.columns());
+        for (int i = 0; i < lines.size(); i++) {
+            CSVLine line = lines.get(i);
+            List<String> expected = new ArrayList<>();
+            for (int j = 0; j < line.length(); j++) {
+                expected.add(line.field(j));
+            }
+            assertEquals(expected, sheet.cells().get(i));
+        }
+    }
+
+    @Test
+    void testSizes() throws IOException {
+        // in the mini stream, in one buffer, and spilling over many buffers
+        for (int rows : new int[] {0, 1, 100, 5000}) {
+            Path path = tempDir.resolve("show" + rows + ".xls");
+            try (XLSWriter writer = new XLSWriter(FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE), "Round 1 – Nature", 8192)) {
+                for (int i = 0; i < rows; i++) {
+                    writer.writeLine(line("image" + i + ".jpg", "Image " + i));
+                }
+            }
+            Sheet sheet = read(path);
+            assertEquals(rows <= 1, sheet.miniStream(), "rows " + rows);
+            assertEquals("Round 1 – Nature", sheet.name());
+            assertEquals(rows, sheet.rows());
+            assertEquals(rows == 0 ? 0 : 2, sheet.columns());
+            for (int i = 0; i < rows; i++) {
+                assertEquals(List.of("image" + i + ".jpg", "Image " + i), sheet.cells().get(i));
+            }
+        }
+    }
+
+    // A workbook of more than 7 MB needs more FAT sectors than the header
+    // lists, so some are listed in DIFAT sectors.
+    @Test
+    void testLargeWorkbook() throws IOException {
+        Path path = tempDir.resolve("large.xls");
+        String padding = "x".repeat(20);
+        try (XLSWriter writer = new XLSWriter(path)) {
+            for (int i = 0; i < XLSWriter.MAX_ROWS; i++) {
+                writer.writeLine(line("image" + i + ".jpg", padding, padding, padding, "Last" + i));
+            }
+            IOException e = assertThrows(IOException.class, () -> writer.writeLine(line("one more")));
+            assertEquals("A worksheet cannot hold more than 65536 lines", e.getMessage());
+        }
+        assertTrue(Files.size(path) > 109 * 128 * 512);
+        Sheet sheet = read(path);
+        assertEquals(XLSWriter.MAX_ROWS, sheet.rows());
+        assertEquals(5, sheet.columns());
+        for (int i = 0; i < XLSWriter.MAX_ROWS; i += 997) {
+            assertEquals(List.of("image" + i + ".jpg", padding, padding, padding, "Last" + i), sheet.cells().get(i));
+        }
+        assertEquals("Last65535", sheet.cells().get(65535).get(4));
+    }
+
+    @Test
+    void testLinesThatDoNotFit() throws IOException {
+        Path path = tempDir.resolve("show.xls");
+        XLSWriter writer = new XLSWriter(path);
+        writer.writeLine(line("a", "b"));
+        IOException e = assertThrows(IOException.class, () -> writer.writeLine(new CSVLine(new String[257])));
+        assertEquals("Line 2 has more than 256 fields", e.getMessage());
+        e = assertThrows(IOException.class, () -> writer.writeLine(line("c", "d".repeat(256))));
+        assertEquals("Field 2 of line 2 is longer than 255 characters", e.getMessage());
+        writer.writeLine(line("e", "f".repeat(255)));
+        assertEquals(2, writer.rows());
+        writer.close();
+        writer.close();
+        assertThrows(IOException.class, () -> writer.writeLine(line("g")));
+
+        Sheet sheet = read(path);
+        assertEquals(List.of(List.of("a", "b"), List.of("e", "f".repeat(255))), sheet.cells());
+    }
+
+    @Test
+    void testConstructor() throws IOException {
+        Path path = tempDir.resolve("show.xls");
+        for (String name : new String[] {"", "a".repeat(32), "Round [1]", "1/2", "What?", "a:b", "a*", "a\\b"}) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                assertThrows(IllegalArgumentException.class, () -> new XLSWriter(channel, name, 65536), name);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertThrows(IllegalArgumentException.class, () -> new XLSWriter(channel, "Sheet1", 4096));
+        }
+        Files.writeString(path, "not a workbook".repeat(1000), StandardCharsets.UTF_8);
+        new XLSWriter(path).close();
+        assertEquals(0, read(path).rows());
+    }
+}
@@ -0,0 +1,186 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * The BenchmarkRunner class measures how many times per second an operation
+ * runs, and how much memory it allocates.
+ *
+ * It works in the same way as JMH. The operation is first run for a number of
+ * warmup iterations, so that it is compiled, and then for a number of measured
+ * iterations. Each iteration runs the operation repeatedly for a fixed time.
+ * The result of each run is kept, so the work cannot be optimized away. The
+ * memory allocated by all threads is counted, as JMH's gc profiler does, so the
+ * allocation of parallel operations is included.
+ * ```java
+ * BenchmarkRunner runner = new BenchmarkRunner(3, 5, 1000);
+ * runner.run("toString", 1000, null, () -> csv.toString()).print();
+ * ```
+ */
+public class BenchmarkRunner {
+    /**
+     * An operation to measure.
+     */
+    public interface Operation {
+        /**
+         * Runs the operation once.
+         * @return the result of the operation.
+         * @throws Exception if the operation fails.
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * Work that must be done before each run of an operation, but that is not
+     * part of what is measured.
+     */
+    public interface Setup {
+        /**
+         * Prepares for one run of the operation.
+         * @throws Exception if the preparation fails.
+         */
+        void run() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final long allocationOverhead;
+    private Object sink;
+
+    /**
+     * Constructor - creates a BenchmarkRunner.
+     * @param warmupIterations - the number of iterations that are not measured.
+     * @param measurementIterations - the number of iterations that are measured.
+     * @param iterationMillis - how long each iteration lasts, in milliseconds.
+     * @throws IllegalArgumentException if measurementIterations or
+     * iterationMillis is less than 1, or warmupIterations is negative.
+     */
+    public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        if (warmupIterations < 0 || measurementIterations < 1 || iterationMillis < 1) {
+            throw new IllegalArgumentException("Invalid iteration settings");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        allocatedBytes();
+        long start = allocatedBytes();
+        allocationOverhead = allocatedBytes() - start;
+    }
+
+    /**
+     * Measures an operation.
+     * @param name - the name of the benchmark.
+     * @param rows - the number of rows in the data used by the benchmark.
+     * @param setup - work done before each run of the operation that is not
+     * measured, or null if there is none. If there is, each run is timed on its
+     * own, so the operation should take at least several microseconds.
+     * @param operation - the operation to measure.
+     * @return the result of the measurement.
+     * @throws Exception if the setup or operation fails.
+     */
+    public Result run(String name, int rows, Setup setup, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(setup, operation);
+        }
+        double[] opsPerSecond = new double[measurementIterations];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] measured = iteration(setup, operation);
+            opsPerSecond[i] = measured[0] * 1e9 / measured[1];
+            totalOps += measured[0];
+            totalNanos += measured[1];
+            totalBytes += measured[2];
+        }
+        double mean = 0;
+        for (double ops : opsPerSecond) {
+            mean += ops / opsPerSecond.length;
+        }
+        double variance = 0;
+        for (double ops : opsPerSecond) {
+            variance += (ops - mean) * (ops - mean) / Math.max(1, opsPerSecond.length - 1);
+        }
+        return new Result(name, rows, mean, Math.sqrt(variance),
+            (double) totalBytes / totalOps, totalBytes * 1e9 / totalNanos / (1024 * 1024));
+    }
+
+    // Runs one iteration, and returns the number of runs, the nanoseconds they
+    // took and the bytes they allocated.
+    private long[] iteration(Setup setup, Operation operation) throws Exception {
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        if (setup == null) {
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            do {
+                sink = operation.run();
+                ops++;
+                nanos = System.nanoTime() - start;
+            } while (nanos < iterationNanos);
+            bytes = allocatedBytes() - startBytes - allocationOverhead;
+        } else {
+            while (nanos < iterationNanos) {
+                setup.run();
+                long startBytes = allocatedBytes();
+                long start = System.nanoTime();
+                sink = operation.run();
+                nanos += System.nanoTime() - start;
+                bytes += allocatedBytes() - startBytes - allocationOverhead;
+                ops++;
+            }
+        }
+        sink = null;
+        return new long[] {ops, nanos, Math.max(0, bytes)};
+    }
+
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The result of measuring an operation.
+     * @param name - the name of the benchmark.
+     * @param rows - the number of rows in the data used by the benchmark.
+     * @param opsPerSecond - the mean number of runs per second.
+     * @param error - the standard deviation of the runs per second of the
+     * measured iterations.
+     * @param bytesPerOp - the mean number of bytes allocated by each run.
+     * @param allocationRate - the allocation rate, in MB per second.
+     */
+    public record Result(String name, int rows, double opsPerSecond, double error,
+            double bytesPerOp, double allocationRate) {
+        /**
+         * Returns the heading line for the lines returned by toString.
+         * @return the heading line.
+         */
+        public static String heading() {
+            return String.format(Locale.ROOT, "%-52s %9s %14s %12s %16s %12s",
+                "Benchmark", "Rows", "ops/s", "error", "alloc B/op", "alloc MB/s");
+        }
+
+        /**
+         * Prints the result on the standard output.
+         */
+        public void print() {
+            System.out.println(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-52s %9d %14.3f %12.3f %16.1f %12.1f",
+                name, rows, opsPerSecond, error, bytesPerOp, allocationRate);
+        }
+    }
+}
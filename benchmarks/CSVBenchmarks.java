@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The CSVBenchmarks class measures loading, parsing, sorting, inserting,
+ * printing and writing CSV files of different sizes.
+ *
+ * The files are created by SyntheticCSV. The options are:<br>
+ *  --rows=1000,10000,100000,1000000 - the file sizes to measure<br>
+ *  --filter=regex - only run the benchmarks whose names contain a match<br>
+ *  --warmup=3 - the number of warmup iterations<br>
+ *  --iterations=5 - the number of measured iterations<br>
+ *  --time=1000 - the length of each iteration in milliseconds<br>
+ *  --seed=42 - the seed used to create the files<br>
+ * For each benchmark, the runs per second and the memory allocated are printed.
+ */
+public class CSVBenchmarks {
+    private int[] rowCounts = {1_000, 10_000, 100_000, 1_000_000};
+    private Pattern filter = Pattern.compile("");
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 1000;
+    private long seed = 42;
+    private BenchmarkRunner runner;
+
+    public static void main(String[] args) throws Exception {
+        CSVBenchmarks benchmarks = new CSVBenchmarks();
+        benchmarks.parseArguments(args);
+        benchmarks.runAll();
+    }
+
+    private void parseArguments(String[] args) {
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Options must be written as --name=value: " + arg);
+            }
+            switch (option[0]) {
+                case "--rows":
+                    String[] counts = option[1].split(",");
+                    rowCounts = new int[counts.length];
+                    for (int i = 0; i < counts.length; i++) {
+                        rowCounts[i] = Integer.parseInt(counts[i].trim());
+                    }
+                    break;
+                case "--filter":
+                    filter = Pattern.compile(option[1]);
+                    break;
+                case "--warmup":
+                    warmupIterations = Integer.parseInt(option[1]);
+                    break;
+                case "--iterations":
+                    measurementIterations = Integer.parseInt(option[1]);
+                    break;
+                case "--time":
+                    iterationMillis = Long.parseLong(option[1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(option[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option[0]);
+            }
+        }
+    }
+
+    private void runAll() throws Exception {
+        runner = new BenchmarkRunner(warmupIterations, measurementIterations, iterationMillis);
+        Path directory = Files.createTempDirectory("fshowbuilder-benchmarks");
+        System.out.println(BenchmarkRunner.Result.heading());
+        try {
+            for (int rows : rowCounts) {
+                Path file = SyntheticCSV.write(directory.resolve("rows-" + rows + ".csv"), rows, seed);
+                try {
+                    runFileBenchmarks(file, rows);
+                } finally {
+                    Files.delete(file);
+                    Files.deleteIfExists(CSVSnapshot.pathFor(file));
+                }
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    private void runFileBenchmarks(Path file, int rows) throws Exception {
+        String fileName = file.toString();
+        String[] lines = SyntheticCSV.lines(rows, seed).toArray(new String[0]);
+        byte[] bytes = Files.readAllBytes(file);
+
+        measure("tokenize", rows, null, () -> tokenize(bytes));
+        measure("tokenize baseline indexOf", rows, null, () -> splitWithIndexOf(bytes));
+        measure("tokenize file", rows, null, () -> tokenize(file));
+        measure("tokenize file baseline readAllLines", rows, null, () -> splitWithIndexOf(file));
+        measure("readAllLines", rows, null, () -> Files.readAllLines(file, StandardCharsets.UTF_8));
+        measure("loadCSVFile", rows, null, () -> new CSV.Builder().fileName(fileName).build());
+        measure("loadCSVFile lazy", rows, null,
+            () -> new CSV.Builder().fileName(fileName).lazyFields(true).build());
+        measure("loadCSVFile streaming", rows, null,
+            () -> new CSV.Builder().fileName(fileName).streaming(true).build());
+        measure("loadCSVFile parallel", rows, null,
+            () -> new CSV.Builder().fileName(fileName).parallel(true).build());
+        measure("loadCSVFile columnar", rows, null,
+            () -> new CSV.Builder().fileName(fileName).columnar(true).build());
+        // The first warmup iteration writes the snapshot.
+        measure("loadCSVFile snapshot", rows, null,
+            () -> new CSV.Builder().fileName(fileName).snapshot(true).build());
+
+        int[] next = {1};
+        measure("ImageAndPersonLine(String)", rows, null, () -> {
+            ImageAndPersonLine line = new ImageAndPersonLine(lines[next[0]]);
+            next[0] = next[0] == lines.length - 1 ? 1 : next[0] + 1;
+            return line;
+        });
+
+        for (boolean lazy : new boolean[] {true, false}) {
+            CSV csv = new CSV.Builder().fileName(fileName).lazyFields(lazy).build();
+            CSVLine[] loaded = csv.lines.toArray(new CSVLine[0]);
+            for (sortOrder order : sortOrder.values()) {
+                measure("sort " + order + (lazy ? " lazy" : ""), rows,
+                    () -> csv.lines = new CSVLineList(loaded.clone()),
+                    () -> {
+                        csv.sort(order);
+                        return csv.lines;
+                    });
+            }
+        }
+
+        for (boolean parallel : new boolean[] {false, true}) {
+            CSV csv = new CSV.Builder().fileName(fileName)
+                .parallelSortThreshold(parallel ? 0 : Integer.MAX_VALUE).build();
+            CSVLine[] loaded = csv.lines.toArray(new CSVLine[0]);
+            for (sortOrder order : new sortOrder[] {sortOrder.ALPHABETICAL_BY_FULL_NAME,
+                    sortOrder.COLLATED_BY_FULL_NAME}) {
+                measure("sort " + order + (parallel ? " parallel" : " sequential"), rows,
+                    () -> csv.lines = new CSVLineList(loaded.clone()),
+                    () -> {
+                        csv.sort(order);
+                        return csv.lines;
+                    });
+            }
+        }
+
+        CSV csv = new CSV.Builder().fileName(fileName).build();
+        CSVLine newLine = new ImageAndPersonLine(lines[lines.length / 2]);
+        measure("insertAt middle", rows, null, () -> {
+            int index = csv.lines.size() / 2;
+            csv.insertAt(index, newLine);
+            return csv.lines.remove(index);
+        });
+        measure("append", rows, null, () -> {
+            csv.append(newLine);
+            return csv.lines.remove(csv.lines.size() - 1);
+        });
+        String person = ((ImageAndPersonLine) csv.lines.get(csv.lines.size() / 2)).personFullName();
+        CSV indexed = new CSV.Builder().fileName(fileName).indexed(true).build();
+        measure("linesForPerson", rows, null, () -> csv.linesForPerson(person));
+        measure("linesForPerson indexed", rows, null, () -> indexed.linesForPerson(person));
+        measure("sort COLLATED_BY_FULL_NAME indexed", rows, null, () -> {
+            indexed.sort(sortOrder.COLLATED_BY_FULL_NAME);
+            return indexed.lines;
+        });
+        measure("toString", rows, null, () -> csv.toString());
+        Path output = file.resolveSibling("output.csv");
+        measure("writeTo(Path)", rows, null, () -> {
+            csv.writeTo(output);
+            return output;
+        });
+        Path workbook = file.resolveSibling("output.xls");
+        measure("writeXLSTo(Path)", rows, null, () -> {
+            csv.writeXLSTo(workbook);
+            return workbook;
+        });
+        measure("build sequential", rows, null, () -> {
+            CSV built = new CSV.Builder().fileName(fileName).build();
+            built.sort(sortOrder.COLLATED_BY_FULL_NAME);
+            built.writeTo(output);
+            return built;
+        });
+        measure("build pipeline", rows, null, () -> new ShowPipeline.Builder()
+            .input(file)
+            .sortOrder(sortOrder.COLLATED_BY_FULL_NAME)
+            .output(output)
+            .build()
+            .run());
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(workbook);
+    }
+
+    private void measure(String name, int rows, BenchmarkRunner.Setup setup,
+            BenchmarkRunner.Operation operation) throws Exception {
+        if (filter.matcher(name).find()) {
+            runner.run(name, rows, setup, operation).print();
+        }
+    }
+
+    // Reads every field of every record, as the loaders do.
+    private static List<String[]> tokenize(byte[] bytes) throws IOException {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(bytes)) {
+            return tokenize(tokenizer);
+        }
+    }
+
+    private static List<String[]> tokenize(Path file) throws IOException {
+        try (CSVTokenizer tokenizer = new CSVTokenizer(file)) {
+            return tokenize(tokenizer);
+        }
+    }
+
+    private static List<String[]> tokenize(CSVTokenizer tokenizer) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        while (tokenizer.next()) {
+            records.add(tokenizer.fields());
+        }
+        return records;
+    }
+
+    // Splits every record as the loader did before CSVTokenizer: the file is
+    // read with readAllLines, and the five fields of each line are cut out
+    // with indexOf and substring.
+    private static List<String[]> splitWithIndexOf(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        List<String[]> records = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            records.add(splitWithIndexOf(line));
+        }
+        return records;
+    }
+
+    // Splits data that is already in memory in the same way, except that the
+    // text is decoded at once and cut into lines with indexOf, which is faster
+    // than readAllLines. Quoted fields are not handled, so this is only a
+    // measure of speed.
+    private static List<String[]> splitWithIndexOf(byte[] bytes) {
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        List<String[]> records = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            String line = text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end);
+            start = end + 1;
+            records.add(splitWithIndexOf(line));
+        }
+        return records;
+    }
+
+    // Cuts out the five fields of a line as ImageAndPersonLine did.
+    private static String[] splitWithIndexOf(String line) {
+        int first = line.indexOf(',');
+        int fourth = line.lastIndexOf(',');
+        int third = line.lastIndexOf(',', fourth - 1);
+        int second = line.lastIndexOf(',', third - 1);
+        return new String[] {line.substring(0, first), line.substring(first + 1, second),
+            line.substring(second + 1, third), line.substring(third + 1, fourth), line.substring(fourth + 1)};
+    }
+}
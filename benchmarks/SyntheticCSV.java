@@ -0,0 +1,124 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The SyntheticCSV class creates CSV files that look like those downloaded from
+ * the club website, for use in benchmarks.
+ *
+ * The same number of rows and seed always give the same file. As in real
+ * downloads, each person submits several images: most people submit a few,
+ * and a few people submit many. Some names contain accented letters, about one
+ * title in twenty contains a comma, and about one in a hundred contains quotes.
+ * ```java
+ * Path file = SyntheticCSV.write(Paths.get("bench.csv"), 100000, 42);
+ * ```
+ */
+public class SyntheticCSV {
+    /**
+     * The header line of every file.
+     */
+    public static final String HEADER = "Filename,Title,Full Name,First Name,Last Name";
+
+    private static final String[] FIRST_NAMES = {
+        "Alice", "Bob", "Carol", "Chloé", "David", "Émile", "Eve", "Frank", "Grace", "Hélène",
+        "Ian", "Jane", "John", "José", "Karen", "Liam", "Maria", "Noah", "Olivia", "Pat",
+        "Quinn", "Rosa", "Sam", "Søren", "Tom", "Uma", "Victor", "Wendy", "Yusuf", "Zoë"
+    };
+
+    private static final String[] SYLLABLES = {
+        "an", "ber", "bro", "chen", "da", "el", "fer", "gar", "ha", "in", "jo", "kow", "la",
+        "mar", "ner", "o", "pa", "ri", "son", "ta", "u", "vic", "wil", "zo", "lé", "nö", "ñez"
+    };
+
+    private static final String[] WORDS = {
+        "Autumn", "Bridge", "Light", "Morning", "Heron", "Harbour", "Winter", "Shadows", "Old",
+        "Barn", "Reflections", "Fog", "Lake", "Street", "Portrait", "Sunset", "Garden", "Storm",
+        "Window", "Tulips", "Road", "Blue", "Quiet", "City", "Rain", "Forest", "Dunes", "Fox"
+    };
+
+    private SyntheticCSV() {
+    }
+
+    /**
+     * Creates the lines of a file, starting with the header line.
+     * @param rows - the number of image rows, not counting the header line.
+     * @param seed - the seed for the random choices.
+     * @return the lines of the file, without line terminators.
+     */
+    public static List<String> lines(int rows, long seed) {
+        Random random = new Random(seed);
+        int people = Math.max(1, rows / 5);
+        String[][] names = new String[people][];
+        List<String> lines = new ArrayList<>(rows + 1);
+        lines.add(HEADER);
+        for (int row = 0; row < rows; row++) {
+            // Cubing the random number makes low person numbers much more likely.
+            int person = (int) (people * Math.pow(random.nextDouble(), 3));
+            if (names[person] == null) {
+                names[person] = name(random);
+            }
+            String[] name = names[person];
+            lines.add(String.format("IMG_%07d.jpg", row) + ","
+                + CSVLine.quote(title(random)) + ","
+                + CSVLine.quote(name[0] + " " + name[1]) + ","
+                + CSVLine.quote(name[0]) + ","
+                + CSVLine.quote(name[1]));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes a file in UTF-8, with "\n" line terminators.
+     * @param file - the path of the file to write.
+     * @param rows - the number of image rows, not counting the header line.
+     * @param seed - the seed for the random choices.
+     * @return the path of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static Path write(Path file, int rows, long seed) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String line : lines(rows, seed)) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    // Returns a first name and a last name. Last names are made of two or
+    // three syllables, so large files contain many different people.
+    private static String[] name(Random random) {
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        StringBuilder lastName = new StringBuilder();
+        int syllables = 2 + random.nextInt(2);
+        for (int i = 0; i < syllables; i++) {
+            lastName.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        lastName.setCharAt(0, Character.toUpperCase(lastName.charAt(0)));
+        return new String[] {firstName, lastName.toString()};
+    }
+
+    private static String title(Random random) {
+        StringBuilder title = new StringBuilder();
+        int words = 1 + random.nextInt(3);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        int kind = random.nextInt(100);
+        if (kind < 5) {
+            title.append(", ").append(WORDS[random.nextInt(WORDS.length)]);
+        } else if (kind == 5) {
+            title.insert(0, '"').append('"');
+        }
+        return title.toString();
+    }
+}